@@ -0,0 +1,73 @@
+/*
+ * Copyright (c) 2010-2014 Stratumsoft Technologies Pvt. Ltd.
+ *
+ * This file (BenchmarkRunner.java) is part of xsd2xml.
+ *
+ * xsd2xml is a Java program to generate XML instances from an XML Schema document
+ *
+ * xsd2xml is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * xsd2xml is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; If not, see <http://www.gnu.org/licenses/>.
+ *
+ * To use xsd2xml in your non-GPL licensed software, contact Stratumsoft Technologies
+ * support at support@stratumsoft.com or visit http://www.stratumsoft.com to obtain
+ * a commercial license.
+ */
+
+
+package com.stratumsoft.xmlgen;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Main class of the benchmark jar. Takes the usual JMH command line, and unless the command line says otherwise
+ * adds the GC profiler (for the allocation rate) and writes the results as json to <code>jmh-result.json</code>.
+ * The benchmarks report both throughput and sampled latency percentiles.
+ *
+ * @author murakris@stratumsoft.com
+ */
+public final class BenchmarkRunner {
+
+    private BenchmarkRunner() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        CommandLineOptions cmdOptions;
+        try {
+            cmdOptions = new CommandLineOptions(args);
+        } catch (CommandLineOptionException e) {
+            System.err.println("Error parsing command line: " + e.getMessage());
+            System.exit(1);
+            return;
+        }
+        if (cmdOptions.shouldHelp() || cmdOptions.shouldList() || cmdOptions.shouldListProfilers()
+                || cmdOptions.shouldListResultFormats()) {
+            org.openjdk.jmh.Main.main(args);
+            return;
+        }
+
+        ChainedOptionsBuilder options = new OptionsBuilder().parent(cmdOptions);
+        if (cmdOptions.getProfilers().isEmpty()) {
+            options.addProfiler(GCProfiler.class);
+        }
+        if (!cmdOptions.getResult().hasValue()) {
+            options.result("jmh-result.json").resultFormat(ResultFormatType.JSON); //NON-NLS
+        }
+        new Runner(options.build()).run();
+    }
+}
@@ -0,0 +1,118 @@
+/*
+ * Copyright (c) 2010-2014 Stratumsoft Technologies Pvt. Ltd.
+ *
+ * This file (BenchmarkSchemas.java) is part of xsd2xml.
+ *
+ * xsd2xml is a Java program to generate XML instances from an XML Schema document
+ *
+ * xsd2xml is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * xsd2xml is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; If not, see <http://www.gnu.org/licenses/>.
+ *
+ * To use xsd2xml in your non-GPL licensed software, contact Stratumsoft Technologies
+ * support at support@stratumsoft.com or visit http://www.stratumsoft.com to obtain
+ * a commercial license.
+ */
+
+
+package com.stratumsoft.xmlgen;
+
+import org.apache.ws.commons.schema.XmlSchemaCollection;
+
+import javax.xml.namespace.QName;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The schemas of the test resources that the benchmarks run over, and the option sets they are run with
+ *
+ * @author murakris@stratumsoft.com
+ */
+final class BenchmarkSchemas {
+
+    /**
+     * system property with the directory of the schemas; defaults to the test resources of the project
+     */
+    static final String DIR_PROPERTY = "xsd2xml.schemas"; //NON-NLS
+
+    private static final String DEFAULT_DIR = "src/test/resources/schemas"; //NON-NLS
+
+    private static final Map<String, QName> ROOTS = new HashMap<>();
+
+    static {
+        ROOTS.put("catalog.xsd", new QName("", "catalog")); //NON-NLS
+        ROOTS.put("SimpleStockQuote.xsd", new QName("http://services.samples/xsd", "getFullQuoteResponse")); //NON-NLS
+        ROOTS.put("TestGroup.xsd", new QName("", "test")); //NON-NLS
+    }
+
+    private BenchmarkSchemas() {
+    }
+
+    /**
+     * @param schema file name of a benchmark schema
+     * @return the path of the schema file
+     * @throws FileNotFoundException if the schema file does not exist
+     */
+    static String getPath(String schema) throws FileNotFoundException {
+        File file = new File(System.getProperty(DIR_PROPERTY, DEFAULT_DIR), schema);
+        if (!file.isFile()) {
+            throw new FileNotFoundException(file.getAbsolutePath() + " (run from the project directory or set -D"
+                    + DIR_PROPERTY + ")");
+        }
+        return file.getPath();
+    }
+
+    static XmlSchemaCollection load(String schema) throws FileNotFoundException {
+        return SchemaUtil.getSchemaCollection(getPath(schema), null);
+    }
+
+    /**
+     * @param schema file name of a benchmark schema
+     * @return the qname of the root element generated for the schema
+     */
+    static QName getRoot(String schema) {
+        QName root = ROOTS.get(schema);
+        if (root == null) {
+            throw new IllegalArgumentException("Unknown benchmark schema: " + schema);
+        }
+        return root;
+    }
+
+    /**
+     * @param name name of an option set: <code>minimal</code> (the defaults), <code>full</code> (optional
+     *             attributes and elements, comments and repeated elements) or <code>random</code> (random choices
+     *             and values from a fixed seed)
+     * @return the options
+     */
+    static XmlGenOptions getOptions(String name) {
+        XmlGenOptions options = new XmlGenOptions();
+        if ("minimal".equals(name)) { //NON-NLS
+            return options;
+        }
+        options.setGenOptionalAttributes(true);
+        options.setGenOptionalElements(true);
+        options.setMaxRepeatingElements(3);
+        if ("full".equals(name)) { //NON-NLS
+            options.setGenCommentsForParticles(true);
+            options.setGenChoiceOptionsAsComments(true);
+        } else if ("random".equals(name)) { //NON-NLS
+            options.setChoiceOptions(ChoiceOptions.RANDOM);
+            options.setDefVals(DefaultValues.RANDOM);
+            options.setSeed(42L);
+        } else {
+            throw new IllegalArgumentException("Unknown option set: " + name);
+        }
+        return options;
+    }
+}
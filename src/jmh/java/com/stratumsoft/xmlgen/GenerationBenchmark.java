@@ -0,0 +1,117 @@
+/*
+ * Copyright (c) 2010-2014 Stratumsoft Technologies Pvt. Ltd.
+ *
+ * This file (GenerationBenchmark.java) is part of xsd2xml.
+ *
+ * xsd2xml is a Java program to generate XML instances from an XML Schema document
+ *
+ * xsd2xml is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * xsd2xml is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; If not, see <http://www.gnu.org/licenses/>.
+ *
+ * To use xsd2xml in your non-GPL licensed software, contact Stratumsoft Technologies
+ * support at support@stratumsoft.com or visit http://www.stratumsoft.com to obtain
+ * a commercial license.
+ */
+
+
+package com.stratumsoft.xmlgen;
+
+import org.dom4j.Element;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import javax.xml.namespace.QName;
+import javax.xml.stream.XMLStreamException;
+import java.io.FileNotFoundException;
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of generating xml for a root element with a warm generator: as a dom4j element, as compact and pretty-printed
+ * xml strings, and streamed to an output stream. {@link #compile()} measures the compilation of a plan, which the
+ * other benchmarks only replay.
+ *
+ * @author murakris@stratumsoft.com
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GenerationBenchmark {
+
+    @Param({"catalog.xsd", "SimpleStockQuote.xsd", "TestGroup.xsd"})
+    public String schema;
+
+    @Param({"minimal", "full", "random"})
+    public String options;
+
+    private QName root;
+
+    private SchemaTypeXmlGenerator generator;
+
+    private final OutputStream nullStream = new OutputStream() {
+        @Override
+        public void write(int b) {
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+        }
+    };
+
+    @Setup
+    public void setup() throws FileNotFoundException {
+        root = BenchmarkSchemas.getRoot(schema);
+        generator = new SchemaTypeXmlGenerator(BenchmarkSchemas.load(schema), BenchmarkSchemas.getOptions(options));
+        if (generator.generateElement(root) == null) {
+            throw new IllegalStateException("Nothing generated for " + root + " in " + schema);
+        }
+    }
+
+    @Benchmark
+    public GenerationPlan compile() {
+        generator.clearPlanCache();
+        return generator.compile(root);
+    }
+
+    @Benchmark
+    public Element generateElement() {
+        return generator.generateElement(root);
+    }
+
+    @Benchmark
+    public String generateXmlCompact() {
+        return generator.generateXml(root, false);
+    }
+
+    @Benchmark
+    public String generateXmlPretty() {
+        return generator.generateXml(root, true);
+    }
+
+    @Benchmark
+    public void generateXmlStream() throws XMLStreamException {
+        generator.generateXml(root, nullStream);
+    }
+}
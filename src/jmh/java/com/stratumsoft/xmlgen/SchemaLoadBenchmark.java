@@ -0,0 +1,81 @@
+/*
+ * Copyright (c) 2010-2014 Stratumsoft Technologies Pvt. Ltd.
+ *
+ * This file (SchemaLoadBenchmark.java) is part of xsd2xml.
+ *
+ * xsd2xml is a Java program to generate XML instances from an XML Schema document
+ *
+ * xsd2xml is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * xsd2xml is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; If not, see <http://www.gnu.org/licenses/>.
+ *
+ * To use xsd2xml in your non-GPL licensed software, contact Stratumsoft Technologies
+ * support at support@stratumsoft.com or visit http://www.stratumsoft.com to obtain
+ * a commercial license.
+ */
+
+
+package com.stratumsoft.xmlgen;
+
+import org.apache.ws.commons.schema.XmlSchemaCollection;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.FileNotFoundException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of reading and parsing the schemas, and of creating a generator for a parsed schema collection (which resolves
+ * the namespace map of the collection)
+ *
+ * @author murakris@stratumsoft.com
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SchemaLoadBenchmark {
+
+    @Param({"catalog.xsd", "SimpleStockQuote.xsd", "TestGroup.xsd"})
+    public String schema;
+
+    private String path;
+
+    private XmlSchemaCollection coll;
+
+    @Setup
+    public void setup() throws FileNotFoundException {
+        path = BenchmarkSchemas.getPath(schema);
+        coll = BenchmarkSchemas.load(schema);
+    }
+
+    @Benchmark
+    public XmlSchemaCollection getSchemaCollection() throws FileNotFoundException {
+        return SchemaUtil.getSchemaCollection(path, null);
+    }
+
+    @Benchmark
+    public SchemaTypeXmlGenerator newGenerator() {
+        return new SchemaTypeXmlGenerator(coll);
+    }
+}
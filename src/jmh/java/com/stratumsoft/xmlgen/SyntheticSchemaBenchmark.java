@@ -0,0 +1,127 @@
+/*
+ * Copyright (c) 2010-2014 Stratumsoft Technologies Pvt. Ltd.
+ *
+ * This file (SyntheticSchemaBenchmark.java) is part of xsd2xml.
+ *
+ * xsd2xml is a Java program to generate XML instances from an XML Schema document
+ *
+ * xsd2xml is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * xsd2xml is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; If not, see <http://www.gnu.org/licenses/>.
+ *
+ * To use xsd2xml in your non-GPL licensed software, contact Stratumsoft Technologies
+ * support at support@stratumsoft.com or visit http://www.stratumsoft.com to obtain
+ * a commercial license.
+ */
+
+
+package com.stratumsoft.xmlgen;
+
+import org.apache.ws.commons.schema.XmlSchemaCollection;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Loading and generation over the schema sets written by {@link SchemaSynthesizer}: the default set (20 documents,
+ * 500 types) and the {@link SchemaSynthesizer#large(long) large} one (200 documents, 5000 types)
+ *
+ * @author murakris@stratumsoft.com
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SyntheticSchemaBenchmark {
+
+    @Param({"default", "large"})
+    public String size;
+
+    private File main;
+
+    private XmlGenEngine engine;
+
+    private XmlGenOptions options;
+
+    @Setup
+    public void setup() throws IOException {
+        SchemaSynthesizer synthesizer = "large".equals(size) ? SchemaSynthesizer.large(42L) //NON-NLS
+                : new SchemaSynthesizer(42L);
+        main = synthesizer.writeToTempDir();
+        engine = new XmlGenEngine(SchemaUtil.getSchemaCollection(main.getPath(), null));
+        options = new XmlGenOptions();
+    }
+
+    @TearDown
+    public void cleanup() {
+        File dir = main.getParentFile();
+        File[] files = dir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        dir.delete();
+    }
+
+    @Benchmark
+    public XmlSchemaCollection load() throws FileNotFoundException {
+        return SchemaUtil.getSchemaCollection(main.getPath(), null);
+    }
+
+    @Benchmark
+    public XmlGenEngine newEngine() throws FileNotFoundException {
+        return new XmlGenEngine(SchemaUtil.getSchemaCollection(main.getPath(), null));
+    }
+
+    @Benchmark
+    public GenerationPlan compileDocument() {
+        engine.clearPlanCache();
+        return engine.compile(SchemaSynthesizer.DOCUMENT_ELEMENT, options);
+    }
+
+    @Benchmark
+    public String generateWide() {
+        return engine.generateXml(SchemaSynthesizer.WIDE_ELEMENT, options, false);
+    }
+
+    @Benchmark
+    public String generateDeep() {
+        return engine.generateXml(SchemaSynthesizer.DEEP_ELEMENT, options, false);
+    }
+
+    @Benchmark
+    public String generateRecursive() {
+        return engine.generateXml(SchemaSynthesizer.RECURSIVE_ELEMENT, options, false);
+    }
+
+    @Benchmark
+    public String generateDocument() {
+        return engine.generateXml(SchemaSynthesizer.DOCUMENT_ELEMENT, options, false);
+    }
+}
@@ -0,0 +1,371 @@
+/*
+ * Copyright (c) 2010-2014 Stratumsoft Technologies Pvt. Ltd.
+ *
+ * This file (BatchGenerator.java) is part of xsd2xml.
+ *
+ * xsd2xml is a Java program to generate XML instances from an XML Schema document
+ *
+ * xsd2xml is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * xsd2xml is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; If not, see <http://www.gnu.org/licenses/>.
+ *
+ * To use xsd2xml in your non-GPL licensed software, contact Stratumsoft Technologies
+ * support at support@stratumsoft.com or visit http://www.stratumsoft.com to obtain
+ * a commercial license.
+ */
+
+
+package com.stratumsoft.xmlgen;
+
+import org.dom4j.Attribute;
+import org.dom4j.Document;
+import org.dom4j.DocumentException;
+import org.dom4j.Element;
+import org.dom4j.io.SAXReader;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.xml.namespace.QName;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs a batch of generation jobs in one process, so that the JVM start and the parsing of each schema are paid once
+ * for the whole batch instead of once per job. The jobs are read from a manifest:
+ * <pre>
+ * &lt;batch outputDir="fixtures" threads="8" summary="summary.tsv"&gt;
+ *     &lt;profile name="full" maxRepeat="5" values="random" choice="random"/&gt;
+ *     &lt;job schema="orders/order.xsd" element="{urn:orders}order" profile="full" count="100" seed="1"
+ *          output="orders"/&gt;
+ * &lt;/batch&gt;
+ * </pre>
+ * A profile is a named set of options, with the attribute names of the {@link GenerationService} option parameters.
+ * Schema paths are relative to the manifest, output directories to the batch output directory; the output directory of
+ * a job defaults to the local name of its element, and no two jobs may have the same one. Document <i>i</i> of
+ * a job is written to <code>&lt;output&gt;/&lt;element local name&gt;-&lt;i&gt;.xml</code> and is the same document
+ * as document <i>i</i> of a {@link CorpusGenerator} run with the seed of the job.
+ * <p/>
+ * The jobs run in parallel on a fixed number of threads; each distinct schema is loaded once through a shared
+ * {@link SchemaRepository}, by the first job that needs it. A failed job does not stop the others. A summary with the
+ * status, the schema load, compile and generation times and the bytes written of each job is written as tab
+ * separated values.
+ *
+ * @author murakris@stratumsoft.com
+ */
+public final class BatchGenerator {
+
+    private static final Logger logger = LoggerFactory.getLogger(BatchGenerator.class);
+
+    private final int threads;
+
+    /**
+     * the schemas of the batch, which are all kept once loaded
+     */
+    final SchemaRepository repository = new SchemaRepository(Integer.MAX_VALUE);
+
+    /**
+     * @param threads number of jobs run at the same time
+     */
+    public BatchGenerator(int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("threads must be at least 1");
+        }
+        this.threads = threads;
+    }
+
+    /**
+     * Run the jobs of a manifest and write its summary
+     *
+     * @param args the manifest file, and optionally the number of threads, which overrides the one of the manifest
+     */
+    public static void main(String[] args) throws Exception {
+        if (args.length < 1 || args.length > 2) {
+            System.err.println("usage: BatchGenerator <manifest.xml> [threads]"); //NON-NLS
+            System.exit(2);
+        }
+        Manifest manifest = readManifest(new File(args[0]));
+        int threads = args.length > 1 ? Integer.parseInt(args[1]) : manifest.threads;
+
+        long start = System.nanoTime();
+        List<JobResult> results = new BatchGenerator(threads).run(manifest.jobs);
+        long elapsed = System.nanoTime() - start;
+
+        writeSummary(results, manifest.summary);
+        int failed = 0;
+        long documents = 0;
+        for (JobResult result : results) {
+            failed += result.error != null ? 1 : 0;
+            documents += result.documents;
+        }
+        System.out.println(String.format("%d jobs, %d failed, %d documents in %d ms; summary in %s", //NON-NLS
+                results.size(), failed, documents, TimeUnit.NANOSECONDS.toMillis(elapsed), manifest.summary));
+        System.exit(failed > 0 ? 1 : 0);
+    }
+
+    /**
+     * Run the given jobs
+     *
+     * @param jobs the jobs to run
+     * @return the result of each job, in the order of the jobs
+     */
+    List<JobResult> run(List<Job> jobs) throws InterruptedException {
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<JobResult>> futures = new ArrayList<>(jobs.size());
+            for (final Job job : jobs) {
+                futures.add(pool.submit(new Callable<JobResult>() {
+                    @Override
+                    public JobResult call() {
+                        return run(job);
+                    }
+                }));
+            }
+            List<JobResult> results = new ArrayList<>(jobs.size());
+            for (Future<JobResult> future : futures) {
+                try {
+                    results.add(future.get());
+                } catch (ExecutionException e) {
+                    throw new IllegalStateException("job failed to report its result", e.getCause());
+                }
+            }
+            return results;
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    private JobResult run(Job job) {
+        JobResult result = new JobResult(job);
+        try {
+            long start = System.nanoTime();
+            XmlGenEngine engine = repository.getEngine(job.schema.getPath(), null);
+            result.loadNanos = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            GenerationPlan plan = engine.compile(job.element, job.options);
+            result.compileNanos = System.nanoTime() - start;
+            if (plan.isEmpty()) {
+                throw new IllegalStateException("no document is generated for " + job.element);
+            }
+
+            start = System.nanoTime();
+            if (!job.output.isDirectory() && !job.output.mkdirs()) {
+                throw new IOException("Could not create directory: " + job.output);
+            }
+            String fileFormat = CorpusGenerator.fileFormat(job.element, job.count);
+            for (long i = 0; i < job.count; i++) {
+                File file = new File(job.output, String.format(fileFormat, i));
+                try (OutputStream out = new BufferedOutputStream(new FileOutputStream(file))) {
+                    plan.writeDocument(out, SeededRandom.forIndex(job.seed, i));
+                }
+                result.documents++;
+                result.bytes += file.length();
+            }
+            result.generateNanos = System.nanoTime() - start;
+        } catch (Exception e) {
+            logger.warn("Job {} ({} in {}) failed", new Object[]{job.index, job.element, job.schema, e});
+            result.error = e.toString();
+        }
+        return result;
+    }
+
+    ///////////////////////////////////////// manifest /////////////////////////////////////////
+
+    /**
+     * Read the jobs of a manifest
+     *
+     * @param file the manifest file
+     * @return the manifest
+     * @throws IOException if the manifest could not be read or is not valid
+     */
+    static Manifest readManifest(File file) throws IOException {
+        Document doc;
+        try {
+            doc = new SAXReader().read(file);
+        } catch (DocumentException e) {
+            throw new IOException("Could not read manifest " + file, e);
+        }
+        File baseDir = file.getAbsoluteFile().getParentFile();
+        Element batch = doc.getRootElement();
+        File outputDir = resolve(baseDir, attribute(batch, "outputDir", ".")); //NON-NLS
+
+        Manifest manifest = new Manifest();
+        manifest.threads = (int) number(batch, "threads", Runtime.getRuntime().availableProcessors()); //NON-NLS
+        manifest.summary = resolve(outputDir, attribute(batch, "summary", "summary.tsv")); //NON-NLS
+
+        Map<String, Map<String, String>> profiles = new HashMap<>();
+        Map<File, Integer> outputs = new HashMap<>();
+        for (Object o : batch.elements("profile")) { //NON-NLS
+            Element profile = (Element) o;
+            Map<String, String> params = attributes(profile);
+            String name = params.remove("name"); //NON-NLS
+            if (name == null) {
+                throw new IOException("Profile without a name in manifest " + file);
+            }
+            for (String param : params.keySet()) {
+                if (!OptionParameters.NAMES.contains(param)) {
+                    throw new IOException("Unknown option " + param + " in profile " + name);
+                }
+            }
+            profiles.put(name, params);
+        }
+
+        for (Object o : batch.elements("job")) { //NON-NLS
+            Element el = (Element) o;
+            Job job = new Job();
+            job.index = manifest.jobs.size();
+            try {
+                job.schema = resolve(baseDir, required(el, "schema")); //NON-NLS
+                job.element = QName.valueOf(required(el, "element")); //NON-NLS
+                job.profile = attribute(el, "profile", null); //NON-NLS
+                Map<String, String> params = new HashMap<>();
+                if (job.profile != null) {
+                    if (!profiles.containsKey(job.profile)) {
+                        throw new IllegalArgumentException("Unknown profile " + job.profile);
+                    }
+                    params.putAll(profiles.get(job.profile));
+                }
+                job.options = OptionParameters.parse(params);
+                job.count = number(el, "count", 1); //NON-NLS
+                Long profileSeed = job.options.getSeed();
+                job.seed = number(el, "seed", profileSeed != null ? profileSeed : 0); //NON-NLS
+                job.output = resolve(outputDir, attribute(el, "output", job.element.getLocalPart())); //NON-NLS
+            } catch (IllegalArgumentException e) {
+                throw new IOException("Job " + job.index + " of manifest " + file + ": " + e.getMessage(), e);
+            }
+            if (job.count < 0) {
+                throw new IOException("Job " + job.index + " of manifest " + file + ": count cannot be negative");
+            }
+            Integer other = outputs.put(job.output.getCanonicalFile(), job.index);
+            if (other != null) {
+                throw new IOException("Job " + job.index + " of manifest " + file + ": output " + job.output
+                        + " is the output of job " + other);
+            }
+            manifest.jobs.add(job);
+        }
+        return manifest;
+    }
+
+    private static File resolve(File dir, String path) {
+        File file = new File(path);
+        return file.isAbsolute() ? file : new File(dir, path);
+    }
+
+    private static Map<String, String> attributes(Element el) {
+        Map<String, String> attributes = new LinkedHashMap<>();
+        for (Object o : el.attributes()) {
+            Attribute attr = (Attribute) o;
+            attributes.put(attr.getName(), attr.getValue());
+        }
+        return attributes;
+    }
+
+    private static String attribute(Element el, String name, String defaultValue) {
+        String value = el.attributeValue(name);
+        return value != null ? value : defaultValue;
+    }
+
+    private static String required(Element el, String name) {
+        String value = el.attributeValue(name);
+        if (value == null || value.isEmpty()) {
+            throw new IllegalArgumentException("missing attribute " + name);
+        }
+        return value;
+    }
+
+    private static long number(Element el, String name, long defaultValue) {
+        String value = el.attributeValue(name);
+        try {
+            return value != null ? Long.parseLong(value) : defaultValue;
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("attribute " + name + " must be a number");
+        }
+    }
+
+    ///////////////////////////////////////// summary /////////////////////////////////////////
+
+    /**
+     * Write the results of the jobs as tab separated values, with a header line
+     */
+    static void writeSummary(List<JobResult> results, File file) throws IOException {
+        File dir = file.getAbsoluteFile().getParentFile();
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("Could not create directory: " + dir);
+        }
+        try (PrintWriter out = new PrintWriter(new OutputStreamWriter(new FileOutputStream(file),
+                StandardCharsets.UTF_8))) {
+            out.println("job\tschema\telement\tprofile\tcount\tstatus\tloadMs\tcompileMs\tgenerateMs\tbytes\terror"); //NON-NLS
+            for (JobResult result : results) {
+                Job job = result.job;
+                out.println(job.index + "\t" + job.schema.getPath() + '\t' + job.element + '\t'
+                        + (job.profile != null ? job.profile : "") + '\t' + job.count + '\t'
+                        + (result.error == null ? "OK" : "FAILED") + '\t' //NON-NLS
+                        + millis(result.loadNanos) + '\t' + millis(result.compileNanos) + '\t'
+                        + millis(result.generateNanos) + '\t' + result.bytes + '\t'
+                        + (result.error != null ? result.error.replace('\t', ' ').replace('\n', ' ') : ""));
+            }
+        }
+    }
+
+    private static String millis(long nanos) {
+        return String.format(Locale.ROOT, "%.3f", nanos / 1e6); //NON-NLS
+    }
+
+    static final class Manifest {
+        int threads;
+        File summary;
+        final List<Job> jobs = new ArrayList<>();
+    }
+
+    static final class Job {
+        int index;
+        File schema;
+        QName element;
+        String profile;
+        XmlGenOptions options;
+        long count;
+        long seed;
+        File output;
+    }
+
+    static final class JobResult {
+        final Job job;
+        long loadNanos;
+        long compileNanos;
+        long generateNanos;
+        long documents;
+        long bytes;
+        String error;
+
+        JobResult(Job job) {
+            this.job = job;
+        }
+    }
+}
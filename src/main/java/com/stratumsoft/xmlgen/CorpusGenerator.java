@@ -0,0 +1,296 @@
+/*
+ * Copyright (c) 2010-2014 Stratumsoft Technologies Pvt. Ltd.
+ *
+ * This file (CorpusGenerator.java) is part of xsd2xml.
+ *
+ * xsd2xml is a Java program to generate XML instances from an XML Schema document
+ *
+ * xsd2xml is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * xsd2xml is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; If not, see <http://www.gnu.org/licenses/>.
+ *
+ * To use xsd2xml in your non-GPL licensed software, contact Stratumsoft Technologies
+ * support at support@stratumsoft.com or visit http://www.stratumsoft.com to obtain
+ * a commercial license.
+ */
+
+package com.stratumsoft.xmlgen;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.xml.namespace.QName;
+import javax.xml.stream.XMLStreamException;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Generates a corpus of xml documents for a schema element in parallel. The plan is compiled once and replayed by
+ * the workers of a fork-join pool; the per-document values (xs:ID values and random choice branches) of the document
+ * with index <i>i</i> are taken from {@link SeededRandom#forIndex(long, long) SeededRandom.forIndex(seed, i)}, so
+ * the generated documents only depend on the seed and are byte-identical whatever the number of workers.
+ * <p/>
+ * A generator owns its pool and must be closed once it is no longer needed.
+ *
+ * @author murakris@stratumsoft.com
+ */
+public final class CorpusGenerator implements Closeable {
+
+    private static final Logger logger = LoggerFactory.getLogger(CorpusGenerator.class);
+
+    /**
+     * number of documents generated ahead of the consumer, per worker
+     */
+    private static final int READ_AHEAD = 4;
+
+    private final XmlGenEngine engine;
+
+    private final int parallelism;
+
+    private final ForkJoinPool pool;
+
+    public CorpusGenerator(XmlGenEngine engine) {
+        this(engine, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * @param engine      the engine to generate the documents with
+     * @param parallelism number of worker threads
+     */
+    public CorpusGenerator(XmlGenEngine engine, int parallelism) {
+        if (engine == null) {
+            throw new IllegalArgumentException("engine cannot be null");
+        }
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("parallelism must be at least 1");
+        }
+        this.engine = engine;
+        this.parallelism = parallelism;
+        this.pool = new ForkJoinPool(parallelism);
+    }
+
+    /**
+     * Lazily generate the documents of a corpus. Documents are generated in parallel, at most a few per worker ahead
+     * of the consumer, and are returned in index order as utf-8 encoded bytes. Closing the iterator cancels the
+     * documents that were not consumed yet.
+     *
+     * @param elName  the QName of the element for which the documents should be generated
+     * @param options options for the documents, or null to use the engine defaults
+     * @param count   number of documents to generate
+     * @param seed    seed of the corpus
+     * @return an iterator over the generated documents
+     */
+    public DocumentIterator generate(QName elName, XmlGenOptions options, long count, long seed) {
+        checkCount(count);
+        return new DocumentIterator(engine.compile(elName, options), count, seed);
+    }
+
+    /**
+     * Generate the documents of a corpus into the given directory. The document with index <i>i</i> is written to
+     * the file <code>&lt;element local name&gt;-&lt;i&gt;.xml</code>, with the index zero padded so that the files
+     * sort in index order. Each worker writes its documents directly to their files.
+     *
+     * @param elName  the QName of the element for which the documents should be generated
+     * @param options options for the documents, or null to use the engine defaults
+     * @param count   number of documents to generate
+     * @param seed    seed of the corpus
+     * @param dir     the directory to write the documents to; it is created if needed
+     * @throws IOException if a document could not be written
+     */
+    public void generate(QName elName, XmlGenOptions options, final long count, final long seed, final File dir)
+            throws IOException {
+        checkCount(count);
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("Could not create directory: " + dir);
+        }
+        final GenerationPlan plan = engine.compile(elName, options);
+        final String fileFormat = fileFormat(elName, count);
+
+        final AtomicLong nextIndex = new AtomicLong();
+        List<Callable<Void>> workers = new ArrayList<>(parallelism);
+        for (int w = 0; w < parallelism; w++) {
+            workers.add(new Callable<Void>() {
+                @Override
+                public Void call() throws Exception {
+                    try {
+                        for (long i = nextIndex.getAndIncrement(); i < count; i = nextIndex.getAndIncrement()) {
+                            File file = new File(dir, String.format(fileFormat, i));
+                            try (OutputStream out = new BufferedOutputStream(new FileOutputStream(file))) {
+                                plan.writeDocument(out, SeededRandom.forIndex(seed, i));
+                            }
+                        }
+                    } catch (Exception e) {
+                        nextIndex.set(count);       //stop the other workers
+                        throw e;
+                    }
+                    return null;
+                }
+            });
+        }
+
+        logger.debug("Generating {} documents into {}", count, dir);
+        List<Future<Void>> results = pool.invokeAll(workers);
+        for (Future<Void> result : results) {
+            try {
+                result.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while generating documents", e);
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof IOException) {
+                    throw (IOException) cause;
+                }
+                throw new IOException("Could not generate documents", cause);
+            }
+        }
+    }
+
+    /**
+     * Generate a single document of a corpus, as it would be generated by a parallel run
+     *
+     * @param plan  the plan to replay
+     * @param seed  seed of the corpus
+     * @param index index of the document in the corpus
+     * @return the utf-8 encoded document
+     */
+    public byte[] generateDocument(GenerationPlan plan, long seed, long index) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try {
+            plan.writeDocument(out, SeededRandom.forIndex(seed, index));
+        } catch (XMLStreamException e) {
+            throw new IllegalStateException("Could not write document " + index, e);
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Shut down the worker pool
+     */
+    @Override
+    public void close() {
+        pool.shutdownNow();
+    }
+
+    /**
+     * @return the format of the file names of the documents of a corpus, with the index zero padded so that the
+     *         files sort in index order
+     */
+    static String fileFormat(QName elName, long count) {
+        return elName.getLocalPart() + "-%0" + String.valueOf(Math.max(count - 1, 0)).length() + "d.xml"; //NON-NLS
+    }
+
+    private static void checkCount(long count) {
+        if (count < 0) {
+            throw new IllegalArgumentException("count cannot be negative");
+        }
+    }
+
+    /**
+     * Ordered iterator over the documents of a corpus, backed by a bounded window of pending documents
+     */
+    public final class DocumentIterator implements Iterator<byte[]>, Closeable {
+
+        private final GenerationPlan plan;
+
+        private final long count;
+
+        private final long seed;
+
+        private final Deque<Future<byte[]>> pending = new ArrayDeque<>();
+
+        private long submitted;
+
+        private long consumed;
+
+        private DocumentIterator(GenerationPlan plan, long count, long seed) {
+            this.plan = plan;
+            this.count = count;
+            this.seed = seed;
+            fill();
+        }
+
+        @Override
+        public boolean hasNext() {
+            return consumed < count;
+        }
+
+        @Override
+        public byte[] next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            Future<byte[]> result = pending.poll();
+            consumed++;
+            fill();
+            try {
+                return result.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while generating documents", e);
+            } catch (ExecutionException e) {
+                close();
+                Throwable cause = e.getCause();
+                if (cause instanceof RuntimeException) {
+                    throw (RuntimeException) cause;
+                }
+                throw new IllegalStateException(cause);
+            }
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+
+        /**
+         * Cancel the documents that were generated ahead and not consumed
+         */
+        @Override
+        public void close() {
+            for (Future<byte[]> result : pending) {
+                result.cancel(true);
+            }
+            pending.clear();
+            consumed = count;
+        }
+
+        private void fill() {
+            int window = parallelism * READ_AHEAD;
+            while (submitted < count && pending.size() < window) {
+                final long index = submitted++;
+                pending.add(pool.submit(new Callable<byte[]>() {
+                    @Override
+                    public byte[] call() throws Exception {
+                        return generateDocument(plan, seed, index);
+                    }
+                }));
+            }
+        }
+    }
+}
@@ -31,6 +31,6 @@ package com.stratumsoft.xmlgen;
 
 public enum DefaultValues {
     NONE,       //no value generated
-    DEFAULT,    //ignore restrictions
-//        RANDOM    //generate random values - apply restrictions
+    DEFAULT,    //a sample value, adjusted to the restrictions of the type
+    RANDOM      //generate random values - apply restrictions
 }
@@ -0,0 +1,282 @@
+/*
+ * Copyright (c) 2010-2014 Stratumsoft Technologies Pvt. Ltd.
+ *
+ * This file (DocumentPublisher.java) is part of xsd2xml.
+ *
+ * xsd2xml is a Java program to generate XML instances from an XML Schema document
+ *
+ * xsd2xml is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * xsd2xml is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; If not, see <http://www.gnu.org/licenses/>.
+ *
+ * To use xsd2xml in your non-GPL licensed software, contact Stratumsoft Technologies
+ * support at support@stratumsoft.com or visit http://www.stratumsoft.com to obtain
+ * a commercial license.
+ */
+
+
+package com.stratumsoft.xmlgen;
+
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A Reactive Streams publisher of a generated xml document, as utf-8 encoded chunks. The document is generated
+ * on demand: each chunk is generated when the subscriber has requested it, by replaying the plan step by step until
+ * the chunk is full, so a slow subscriber holds back generation and the memory used is bounded by the chunk size
+ * and the depth of the document. The bytes are the same as the ones written by
+ * {@link GenerationPlan#writeDocument(java.io.OutputStream, SeededRandom)}.
+ * <p/>
+ * Each subscriber gets its own copy of the document, generated with the per-document values of document 0 of the
+ * given seed. Chunks have the chunk size, except the last one, and are not reused once they have been passed to the
+ * subscriber. Without an executor, chunks are generated on the thread that requests them; signals to a subscriber are
+ * always serialized. Java 9 <code>Flow</code> users can adapt the publisher with
+ * <code>org.reactivestreams.FlowAdapters</code>.
+ *
+ * @author murakris@stratumsoft.com
+ */
+public final class DocumentPublisher implements Publisher<ByteBuffer> {
+
+    /**
+     * number of plan steps replayed before the writer is flushed to see whether a chunk is full; the writer buffers
+     * its output, and flushing it after each step would dominate the generation time
+     */
+    private static final int STEPS_PER_FLUSH = 32;
+
+    private final GenerationPlan plan;
+
+    private final Long seed;
+
+    private final int chunkSize;
+
+    private final Executor executor;
+
+    /**
+     * @param plan      the plan to replay
+     * @param seed      seed of the per-document values, or null for unseeded values
+     * @param chunkSize number of bytes in each chunk
+     */
+    public DocumentPublisher(GenerationPlan plan, Long seed, int chunkSize) {
+        this(plan, seed, chunkSize, null);
+    }
+
+    /**
+     * @param plan      the plan to replay
+     * @param seed      seed of the per-document values, or null for unseeded values
+     * @param chunkSize number of bytes in each chunk
+     * @param executor  the executor to generate the chunks on, or null to generate them on the requesting thread
+     */
+    public DocumentPublisher(GenerationPlan plan, Long seed, int chunkSize, Executor executor) {
+        if (plan == null) {
+            throw new IllegalArgumentException("plan cannot be null");
+        }
+        if (chunkSize < 1) {
+            throw new IllegalArgumentException("chunk size must be at least 1");
+        }
+        this.plan = plan;
+        this.seed = seed;
+        this.chunkSize = chunkSize;
+        this.executor = executor;
+    }
+
+    @Override
+    public void subscribe(Subscriber<? super ByteBuffer> subscriber) {
+        if (subscriber == null) {
+            throw new NullPointerException("subscriber cannot be null");
+        }
+        subscriber.onSubscribe(new ChunkSubscription(subscriber));
+    }
+
+    /**
+     * The generation of one document for one subscriber. Demand is added by {@link #request(long)}, and the chunks
+     * are emitted by a drain loop that only one thread runs at a time; a request made from within onNext adds to
+     * the demand of the running loop instead of recursing.
+     */
+    private final class ChunkSubscription implements Subscription, Runnable {
+
+        private final Subscriber<? super ByteBuffer> subscriber;
+
+        private final AtomicLong requested = new AtomicLong();
+
+        private final AtomicInteger pendingDrains = new AtomicInteger();
+
+        private volatile boolean isCancelled;
+
+        private volatile boolean isInvalidRequest;
+
+        //state of the generation, only used by the drain loop
+        private ChunkBuffer buffer;
+        private XMLStreamWriter writer;
+        private PlanCursor cursor;
+        private boolean isEnded;
+
+        ChunkSubscription(Subscriber<? super ByteBuffer> subscriber) {
+            this.subscriber = subscriber;
+        }
+
+        @Override
+        public void request(long n) {
+            if (n <= 0) {
+                isInvalidRequest = true;
+            } else {
+                long current;
+                long next;
+                do {
+                    current = requested.get();
+                    next = current + n < 0 ? Long.MAX_VALUE : current + n;     //demand is capped, not overflowed
+                } while (!requested.compareAndSet(current, next));
+            }
+            schedule();
+        }
+
+        @Override
+        public void cancel() {
+            isCancelled = true;
+            schedule();         //the drain loop releases the generation state
+        }
+
+        private void schedule() {
+            if (pendingDrains.getAndIncrement() == 0) {
+                if (executor != null) {
+                    executor.execute(this);
+                } else {
+                    run();
+                }
+            }
+        }
+
+        @Override
+        public void run() {
+            int missed = 1;
+            do {
+                if (!isCancelled && isInvalidRequest) {
+                    isCancelled = true;
+                    subscriber.onError(new IllegalArgumentException(
+                            "non-positive request signals are illegal (Reactive Streams rule 3.9)"));
+                }
+                long demand = requested.get();
+                long emitted = 0;
+                while (emitted != demand && !isCancelled) {
+                    ByteBuffer chunk;
+                    try {
+                        chunk = nextChunk();
+                    } catch (XMLStreamException e) {
+                        isCancelled = true;
+                        subscriber.onError(e);
+                        break;
+                    }
+                    emitted++;
+                    subscriber.onNext(chunk);
+                    if (isEnded && buffer.size() == 0 && !isCancelled) {
+                        isCancelled = true;
+                        subscriber.onComplete();
+                    }
+                }
+                if (isCancelled) {
+                    release();
+                } else if (emitted != 0 && demand != Long.MAX_VALUE) {
+                    requested.addAndGet(-emitted);
+                }
+                missed = pendingDrains.addAndGet(-missed);
+            } while (missed != 0);
+        }
+
+        /**
+         * Replay the plan until a chunk is full or the document is complete
+         */
+        private ByteBuffer nextChunk() throws XMLStreamException {
+            if (buffer == null) {
+                buffer = new ChunkBuffer(chunkSize);
+                writer = GenerationPlan.createWriter(buffer);
+                cursor = new PlanCursor(plan, new StaxPlanSink(writer),
+                        seed != null ? SeededRandom.forIndex(seed, 0) : null);
+                writer.writeStartDocument("utf-8", "1.0"); //NON-NLS
+            }
+            while (buffer.size() < chunkSize && !cursor.isDone()) {
+                for (int i = 0; i < STEPS_PER_FLUSH && !cursor.isDone(); i++) {
+                    cursor.step();
+                }
+                writer.flush();
+            }
+            if (cursor.isDone() && !isEnded) {
+                writer.writeEndDocument();
+                writer.flush();
+                writer.close();
+                isEnded = true;
+            }
+            return ByteBuffer.wrap(buffer.take(chunkSize));
+        }
+
+        private void release() {
+            buffer = null;
+            writer = null;
+            cursor = null;
+        }
+    }
+
+    /**
+     * The bytes written but not yet emitted. The stax writer writes its output a byte at a time, so unlike
+     * {@link java.io.ByteArrayOutputStream} the buffer is not synchronized
+     */
+    private static final class ChunkBuffer extends OutputStream {
+
+        private byte[] buf;
+
+        private int count;
+
+        ChunkBuffer(int chunkSize) {
+            buf = new byte[chunkSize + 256];
+        }
+
+        int size() {
+            return count;
+        }
+
+        @Override
+        public void write(int b) {
+            if (count == buf.length) {
+                buf = Arrays.copyOf(buf, buf.length * 2);
+            }
+            buf[count++] = (byte) b;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            if (count + len > buf.length) {
+                buf = Arrays.copyOf(buf, Math.max(buf.length * 2, count + len));
+            }
+            System.arraycopy(b, off, buf, count, len);
+            count += len;
+        }
+
+        /**
+         * @return up to the given number of bytes, which are removed from the buffer
+         */
+        byte[] take(int length) {
+            int n = Math.min(length, count);
+            byte[] chunk = Arrays.copyOf(buf, n);
+            System.arraycopy(buf, n, buf, 0, count - n);
+            count -= n;
+            return chunk;
+        }
+    }
+}
@@ -0,0 +1,101 @@
+/*
+ * Copyright (c) 2010-2014 Stratumsoft Technologies Pvt. Ltd.
+ *
+ * This file (Dom4jPlanSink.java) is part of xsd2xml.
+ *
+ * xsd2xml is a Java program to generate XML instances from an XML Schema document
+ *
+ * xsd2xml is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * xsd2xml is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; If not, see <http://www.gnu.org/licenses/>.
+ *
+ * To use xsd2xml in your non-GPL licensed software, contact Stratumsoft Technologies
+ * support at support@stratumsoft.com or visit http://www.stratumsoft.com to obtain
+ * a commercial license.
+ */
+
+package com.stratumsoft.xmlgen;
+
+import org.dom4j.DocumentFactory;
+import org.dom4j.Element;
+import org.dom4j.QName;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Builds a dom4j element tree from the replayed plan events
+ *
+ * @author murakris@stratumsoft.com
+ */
+class Dom4jPlanSink implements PlanSink {
+
+    private final DocumentFactory factory;
+
+    private final List<Element> stack = new ArrayList<>();
+
+    private Element root;
+
+    Dom4jPlanSink(DocumentFactory factory) {
+        this.factory = factory;
+    }
+
+    /**
+     * @param factory factory to create the dom4j nodes with
+     * @param parent  existing element to which the events must be added
+     */
+    Dom4jPlanSink(DocumentFactory factory, Element parent) {
+        this(factory);
+        stack.add(parent);
+        root = parent;
+    }
+
+    Element getRoot() {
+        return root;
+    }
+
+    @Override
+    public void startElement(QName name) {
+        Element el = factory.createElement(name);
+        if (stack.isEmpty()) {
+            root = el;
+        } else {
+            current().add(el);
+        }
+        stack.add(el);
+    }
+
+    @Override
+    public void attribute(QName name, String value) {
+        Element el = current();
+        el.add(factory.createAttribute(el, name, value));
+    }
+
+    @Override
+    public void text(String value) {
+        current().addText(value);
+    }
+
+    @Override
+    public void comment(String text) {
+        current().add(factory.createComment(text));
+    }
+
+    @Override
+    public void endElement() {
+        stack.remove(stack.size() - 1);
+    }
+
+    private Element current() {
+        return stack.get(stack.size() - 1);
+    }
+}
@@ -0,0 +1,183 @@
+/*
+ * Copyright (c) 2010-2014 Stratumsoft Technologies Pvt. Ltd.
+ *
+ * This file (FragmentCache.java) is part of xsd2xml.
+ *
+ * xsd2xml is a Java program to generate XML instances from an XML Schema document
+ *
+ * xsd2xml is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * xsd2xml is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; If not, see <http://www.gnu.org/licenses/>.
+ *
+ * To use xsd2xml in your non-GPL licensed software, contact Stratumsoft Technologies
+ * support at support@stratumsoft.com or visit http://www.stratumsoft.com to obtain
+ * a commercial license.
+ */
+
+
+package com.stratumsoft.xmlgen;
+
+import com.stratumsoft.xmlgen.GenerationPlan.AttributeNode;
+import com.stratumsoft.xmlgen.GenerationPlan.ElementNode;
+import com.stratumsoft.xmlgen.GenerationPlan.Node;
+import org.apache.ws.commons.schema.XmlSchema;
+import org.apache.ws.commons.schema.XmlSchemaComplexType;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Compiled attributes and content of complex types, so that a type that occurs many times in a schema is compiled
+ * once. The subtree compiled for a type only depends on the type, the schema of the enclosing element (for the form
+ * of its local attributes and elements), the nesting of the recursive types on the path and the options, so a
+ * fragment is keyed by the first three and a cache only holds fragments compiled with the same options.
+ * <p/>
+ * The nodes of a fragment are frozen when it is stored and are shared by all the plans it is spliced into; their
+ * per-document values (volatile attributes, random values and choices, xs:ID values) are still generated on each
+ * replay. A cache is safe to share between threads.
+ *
+ * @author murakris@stratumsoft.com
+ */
+final class FragmentCache {
+
+    private static final int[] NO_DEPTHS = new int[0];
+
+    private final ConcurrentMap<Key, Fragment> fragments = new ConcurrentHashMap<>();
+
+    private final AtomicLong hits = new AtomicLong();
+
+    private final AtomicLong misses = new AtomicLong();
+
+    /**
+     * @param type   the complex type of the element
+     * @param schema the schema of the enclosing element, or null
+     * @param depths the nesting of the recursive types on the path, or null if the type is not recursive
+     * @return the key of the fragment of the type in this state
+     */
+    static Key key(XmlSchemaComplexType type, XmlSchema schema, int[] depths) {
+        return new Key(type, schema, depths != null ? depths : NO_DEPTHS);
+    }
+
+    /**
+     * @return the fragment compiled for the key, or null
+     */
+    Fragment get(Key key) {
+        Fragment fragment = fragments.get(key);
+        (fragment != null ? hits : misses).incrementAndGet();
+        return fragment;
+    }
+
+    /**
+     * Freeze the attributes and content compiled into the node and store them as the fragment of the key
+     *
+     * @param key          the key of the fragment
+     * @param node         the node the type was compiled into
+     * @param cutoffs      number of elements cut off by the recursion limit while compiling the type
+     * @param firstChoices number of choices compiled to their first branch while compiling the type
+     * @return the stored fragment
+     */
+    Fragment put(Key key, ElementNode node, int cutoffs, int firstChoices) {
+        ElementNode template = new ElementNode(null);
+        template.attributes = node.attributes;
+        template.content = node.content;
+        template.freeze();
+
+        Fragment fragment = new Fragment(template.attributes, template.content, cutoffs, firstChoices);
+        Fragment existing = fragments.putIfAbsent(key, fragment);
+        return existing != null ? existing : fragment;
+    }
+
+    long getHitCount() {
+        return hits.get();
+    }
+
+    long getMissCount() {
+        return misses.get();
+    }
+
+    int size() {
+        return fragments.size();
+    }
+
+    void clear() {
+        fragments.clear();
+    }
+
+    /**
+     * The compiled attributes and content of a type, along with the compile counts they account for
+     */
+    static final class Fragment {
+
+        private final List<AttributeNode> attributes;
+
+        private final List<Node> content;
+
+        final int cutoffs;
+
+        final int firstChoices;
+
+        private Fragment(List<AttributeNode> attributes, List<Node> content, int cutoffs, int firstChoices) {
+            this.attributes = attributes;
+            this.content = content;
+            this.cutoffs = cutoffs;
+            this.firstChoices = firstChoices;
+        }
+
+        /**
+         * Splice the fragment into the given node; the node gets its own lists, which share the fragment's nodes
+         */
+        void applyTo(ElementNode node) {
+            node.attributes = new ArrayList<>(attributes);
+            node.content = new ArrayList<>(content);
+        }
+    }
+
+    /**
+     * Identity of the type and schema, and the nesting of the recursive types
+     */
+    static final class Key {
+
+        private final XmlSchemaComplexType type;
+
+        private final XmlSchema schema;
+
+        private final int[] depths;
+
+        private final int hash;
+
+        private Key(XmlSchemaComplexType type, XmlSchema schema, int[] depths) {
+            this.type = type;
+            this.schema = schema;
+            this.depths = depths;
+            this.hash = 31 * (31 * System.identityHashCode(type) + System.identityHashCode(schema))
+                    + Arrays.hashCode(depths);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Key)) return false;
+
+            Key that = (Key) o;
+            return type == that.type && schema == that.schema && Arrays.equals(depths, that.depths);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
@@ -0,0 +1,221 @@
+/*
+ * Copyright (c) 2010-2014 Stratumsoft Technologies Pvt. Ltd.
+ *
+ * This file (GenerationContext.java) is part of xsd2xml.
+ *
+ * xsd2xml is a Java program to generate XML instances from an XML Schema document
+ *
+ * xsd2xml is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * xsd2xml is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; If not, see <http://www.gnu.org/licenses/>.
+ *
+ * To use xsd2xml in your non-GPL licensed software, contact Stratumsoft Technologies
+ * support at support@stratumsoft.com or visit http://www.stratumsoft.com to obtain
+ * a commercial license.
+ */
+
+package com.stratumsoft.xmlgen;
+
+import org.apache.ws.commons.schema.XmlSchema;
+import org.apache.ws.commons.schema.XmlSchemaComplexType;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The mutable state of a single generation call. A context is created for each invocation of
+ * {@link XmlGenEngine} and is never shared between threads, which keeps the engine itself free of any
+ * per-run state.
+ *
+ * @author murakris@stratumsoft.com
+ */
+final class GenerationContext {
+
+    private final XmlGenOptions options;
+
+    /**
+     * prefixes generated during this run for namespaces not declared in the schemas
+     */
+    private Map<String, String> generatedPrefixes;
+
+    private int prefixCounter = 1;
+
+    /**
+     * number of generated prefixes looked up during this run; a subtree that looks one up depends on this run
+     */
+    int generatedPrefixLookups;
+
+    private final RecursionAnalysis recursion;
+
+    /**
+     * number of times each recursive type is nested on the current path, indexed by the type's slot
+     */
+    private final int[] typeDepths;
+
+    /**
+     * nesting of the complex types unknown to the recursion analysis, created when first needed
+     */
+    private Map<XmlSchemaComplexType, Integer> unknownTypeDepths;
+
+    /**
+     * Keep track of the current schema whose element's /attributes are being processed
+     */
+    final Deque<XmlSchema> schemaStack = new ArrayDeque<>();
+
+    /**
+     * number of elements cut off by the recursion limit, see {@link GenerationMetrics}
+     */
+    int recursionCutoffs;
+
+    /**
+     * number of choices compiled to their first branch
+     */
+    int firstChoices;
+
+    /**
+     * recorder of the compilation profile, or null if the compilation is not profiled
+     */
+    SchemaProfiler.Recorder profile;
+
+    /**
+     * fragments of the types compiled in this run, including those that depend on its generated prefixes
+     */
+    final FragmentCache fragments = new FragmentCache();
+
+    /**
+     * fragments shared by all the runs with the same options, or null if types are not memoized across runs
+     */
+    FragmentCache sharedFragments;
+
+    /**
+     * @return a generator for the values rendered while compiling (e.g. optional elements rendered as comments); its
+     *         seed is fixed, since a compiled plan is shared by all the seeds
+     */
+    SeededRandom newCompileRandom() {
+        return new SeededRandom(0);
+    }
+
+    /**
+     * @param options   snapshot of the options for this call; must not be modified while the context is in use
+     * @param recursion the recursion analysis of the schema collection
+     */
+    GenerationContext(XmlGenOptions options, RecursionAnalysis recursion) {
+        this.options = options;
+        this.recursion = recursion;
+        this.typeDepths = new int[recursion.getSlotCount()];
+    }
+
+    XmlGenOptions getOptions() {
+        return options;
+    }
+
+    /**
+     * Enter an element of the given complex type on the current path. A recursive type may be nested at most
+     * {@link XmlGenOptions#getMaxRecursiveDepth()} times below its first occurrence on a path; every successful
+     * call must be matched by a call to {@link #exitType(XmlSchemaComplexType)} once the element is processed.
+     *
+     * @param type the type of the element
+     * @return false if the recursion budget of the type is exhausted on this path and the element must be cut off
+     */
+    boolean enterType(XmlSchemaComplexType type) {
+        int slot = recursion.slotOf(type);
+        if (slot == RecursionAnalysis.NOT_RECURSIVE) {
+            return true;
+        }
+
+        int depth = slot >= 0 ? typeDepths[slot] : unknownTypeDepth(type);
+        if (depth > options.getMaxRecursiveDepth()) {
+            return false;
+        }
+        setTypeDepth(slot, type, depth + 1);
+        return true;
+    }
+
+    void exitType(XmlSchemaComplexType type) {
+        int slot = recursion.slotOf(type);
+        if (slot != RecursionAnalysis.NOT_RECURSIVE) {
+            int depth = slot >= 0 ? typeDepths[slot] : unknownTypeDepth(type);
+            setTypeDepth(slot, type, depth - 1);
+        }
+    }
+
+    /**
+     * Get the part of the recursion state the subtree of an element of the given type depends on. The subtree of a
+     * non recursive type does not depend on it, since none of the types it can contain is on the current path.
+     *
+     * @param type the type of the element, entered on the current path
+     * @return null for a non recursive type, otherwise a copy of the nesting of all the recursive types
+     * @throws IllegalStateException if the state includes types unknown to the recursion analysis
+     */
+    int[] getRecursionState(XmlSchemaComplexType type) {
+        if (!isRecursionStateKnown()) {
+            throw new IllegalStateException("Recursion state includes unknown types");
+        }
+        return recursion.slotOf(type) == RecursionAnalysis.NOT_RECURSIVE ? null : typeDepths.clone();
+    }
+
+    /**
+     * @return false if a type unknown to the recursion analysis is nested on the current path
+     */
+    boolean isRecursionStateKnown() {
+        if (unknownTypeDepths != null) {
+            for (int depth : unknownTypeDepths.values()) {
+                if (depth != 0) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    private int unknownTypeDepth(XmlSchemaComplexType type) {
+        Integer depth = unknownTypeDepths != null ? unknownTypeDepths.get(type) : null;
+        return depth != null ? depth : 0;
+    }
+
+    private void setTypeDepth(int slot, XmlSchemaComplexType type, int depth) {
+        if (slot >= 0) {
+            typeDepths[slot] = depth;
+        } else {
+            if (unknownTypeDepths == null) {
+                unknownTypeDepths = new IdentityHashMap<>();
+            }
+            unknownTypeDepths.put(type, depth);
+        }
+    }
+
+    /**
+     * Get the prefix generated in this run for the given namespace uri, generating a new one if needed
+     *
+     * @param nsUri            namespace uri that has no declared prefix
+     * @param declaredPrefixes prefixes declared in the schemas, which must not be generated again
+     * @return the generated prefix
+     */
+    String getGeneratedPrefix(String nsUri, Set<String> declaredPrefixes) {
+        generatedPrefixLookups++;
+        if (generatedPrefixes == null) {
+            generatedPrefixes = new HashMap<>();
+        }
+        String prefix = generatedPrefixes.get(nsUri);
+        if (prefix == null) {
+            do {
+                prefix = SchemaTypeXmlGenerator.DEFAULT_PREFIX + prefixCounter++;
+            } while (declaredPrefixes.contains(prefix));
+            generatedPrefixes.put(nsUri, prefix);
+        }
+        return prefix;
+    }
+}
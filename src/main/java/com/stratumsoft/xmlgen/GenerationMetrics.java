@@ -0,0 +1,393 @@
+/*
+ * Copyright (c) 2010-2014 Stratumsoft Technologies Pvt. Ltd.
+ *
+ * This file (GenerationMetrics.java) is part of xsd2xml.
+ *
+ * xsd2xml is a Java program to generate XML instances from an XML Schema document
+ *
+ * xsd2xml is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * xsd2xml is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; If not, see <http://www.gnu.org/licenses/>.
+ *
+ * To use xsd2xml in your non-GPL licensed software, contact Stratumsoft Technologies
+ * support at support@stratumsoft.com or visit http://www.stratumsoft.com to obtain
+ * a commercial license.
+ */
+
+
+package com.stratumsoft.xmlgen;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Timers and counters of the work done by the engines the metrics are attached to (see
+ * {@link XmlGenEngine#setMetrics(GenerationMetrics)} and {@link SchemaRepository#setMetrics(GenerationMetrics)}).
+ * Engines without metrics do not record anything, not even the time.
+ * <p/>
+ * The phases timed are:
+ * <ul>
+ * <li>schema load: parsing a schema collection and creating its engine, in a {@link SchemaRepository}</li>
+ * <li>compile: compiling a generation plan; calls served from the plan cache only count a hit</li>
+ * <li>build: replaying a plan into a dom4j element tree</li>
+ * <li>serialization: writing a dom4j tree as xml or, when streaming, replaying a plan to the output</li>
+ * </ul>
+ * The elements, attributes, random choice branches and repeated element occurrences are counted for each document
+ * generated. Recursion cut-offs and the choices resolved to their first branch are counted when a plan is compiled,
+ * since every replay of the plan repeats them.
+ * <p/>
+ * The accumulators are striped by thread, so concurrent generation threads do not contend on them, and the counts
+ * of a document are added once the document is complete. The metrics implement a standard MBean and can be
+ * registered with the platform MBean server with {@link #register(String)}.
+ *
+ * @author murakris@stratumsoft.com
+ */
+public final class GenerationMetrics implements GenerationMetricsMBean {
+
+    /**
+     * domain of the object names the metrics are registered with
+     */
+    public static final String JMX_DOMAIN = "com.stratumsoft.xmlgen"; //NON-NLS
+
+    private static final double NANOS_PER_MILLI = 1e6;
+
+    private final Timer schemaLoad = new Timer();
+
+    private final Timer compile = new Timer();
+
+    private final Timer build = new Timer();
+
+    private final Timer serialization = new Timer();
+
+    private final Counter planCacheHits = new Counter();
+
+    private final Counter documents = new Counter();
+
+    private final Counter elements = new Counter();
+
+    private final Counter attributes = new Counter();
+
+    private final Counter choiceBranches = new Counter();
+
+    private final Counter repeatedElements = new Counter();
+
+    private final Counter recursionCutoffs = new Counter();
+
+    private volatile ObjectName objectName;
+
+    /**
+     * Register the metrics with the platform MBean server
+     *
+     * @param name value of the <code>name</code> key of the object name, e.g. the name of the schema
+     * @return the object name the metrics were registered with:
+     *         <code>com.stratumsoft.xmlgen:type=GenerationMetrics,name=&lt;name&gt;</code>
+     * @throws JMException if the metrics could not be registered, e.g. because the name is taken
+     */
+    public synchronized ObjectName register(String name) throws JMException {
+        if (objectName != null) {
+            throw new IllegalStateException("metrics are already registered as " + objectName);
+        }
+        ObjectName on = new ObjectName(JMX_DOMAIN + ":type=GenerationMetrics,name=" + ObjectName.quote(name)); //NON-NLS
+        ManagementFactory.getPlatformMBeanServer().registerMBean(this, on);
+        objectName = on;
+        return on;
+    }
+
+    /**
+     * Unregister the metrics from the platform MBean server, if they are registered
+     *
+     * @throws JMException if the metrics could not be unregistered
+     */
+    public synchronized void unregister() throws JMException {
+        if (objectName != null) {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            if (server.isRegistered(objectName)) {
+                server.unregisterMBean(objectName);
+            }
+            objectName = null;
+        }
+    }
+
+    /**
+     * Record the load of a schema collection
+     *
+     * @param nanos time taken to load the schema, in nanoseconds
+     */
+    public void recordSchemaLoad(long nanos) {
+        schemaLoad.record(nanos);
+    }
+
+    void recordCompile(long nanos, int cutoffs, int firstChoices) {
+        compile.record(nanos);
+        recursionCutoffs.add(cutoffs);
+        choiceBranches.add(firstChoices);
+    }
+
+    void recordPlanCacheHit() {
+        planCacheHits.add(1);
+    }
+
+    void recordBuild(long nanos) {
+        build.record(nanos);
+    }
+
+    void recordSerialization(long nanos) {
+        serialization.record(nanos);
+    }
+
+    void recordDocument(DocumentCounts counts) {
+        documents.add(1);
+        elements.add(counts.elements);
+        attributes.add(counts.attributes);
+        choiceBranches.add(counts.choiceBranches);
+        repeatedElements.add(counts.repeatedElements);
+    }
+
+    @Override
+    public long getSchemaLoadCount() {
+        return schemaLoad.count.sum();
+    }
+
+    @Override
+    public double getSchemaLoadMillis() {
+        return schemaLoad.getMillis();
+    }
+
+    @Override
+    public double getMaxSchemaLoadMillis() {
+        return schemaLoad.getMaxMillis();
+    }
+
+    @Override
+    public long getCompileCount() {
+        return compile.count.sum();
+    }
+
+    @Override
+    public double getCompileMillis() {
+        return compile.getMillis();
+    }
+
+    @Override
+    public double getMaxCompileMillis() {
+        return compile.getMaxMillis();
+    }
+
+    @Override
+    public long getPlanCacheHitCount() {
+        return planCacheHits.sum();
+    }
+
+    @Override
+    public long getBuildCount() {
+        return build.count.sum();
+    }
+
+    @Override
+    public double getBuildMillis() {
+        return build.getMillis();
+    }
+
+    @Override
+    public double getMaxBuildMillis() {
+        return build.getMaxMillis();
+    }
+
+    @Override
+    public long getSerializationCount() {
+        return serialization.count.sum();
+    }
+
+    @Override
+    public double getSerializationMillis() {
+        return serialization.getMillis();
+    }
+
+    @Override
+    public double getMaxSerializationMillis() {
+        return serialization.getMaxMillis();
+    }
+
+    @Override
+    public long getDocumentCount() {
+        return documents.sum();
+    }
+
+    @Override
+    public long getElementCount() {
+        return elements.sum();
+    }
+
+    @Override
+    public long getAttributeCount() {
+        return attributes.sum();
+    }
+
+    /**
+     * @return the number of branches picked by random choices, plus the number of choices compiled to their first
+     *         branch
+     */
+    @Override
+    public long getChoiceBranchCount() {
+        return choiceBranches.sum();
+    }
+
+    /**
+     * @return the number of element occurrences replayed as repetitions of an earlier occurrence
+     */
+    @Override
+    public long getRepeatedElementCount() {
+        return repeatedElements.sum();
+    }
+
+    /**
+     * @return the number of elements cut off by the recursion limit in the compiled plans
+     */
+    @Override
+    public long getRecursionCutoffCount() {
+        return recursionCutoffs.sum();
+    }
+
+    @Override
+    public double getElementsPerDocument() {
+        long docs = documents.sum();
+        return docs > 0 ? (double) elements.sum() / docs : 0;
+    }
+
+    @Override
+    public double getAttributesPerDocument() {
+        long docs = documents.sum();
+        return docs > 0 ? (double) attributes.sum() / docs : 0;
+    }
+
+    /**
+     * Reset all the counts and times. Updates made concurrently with the reset may be lost.
+     */
+    @Override
+    public void reset() {
+        schemaLoad.reset();
+        compile.reset();
+        build.reset();
+        serialization.reset();
+        planCacheHits.reset();
+        documents.reset();
+        elements.reset();
+        attributes.reset();
+        choiceBranches.reset();
+        repeatedElements.reset();
+        recursionCutoffs.reset();
+    }
+
+    /**
+     * The counts of a single document, accumulated by the thread generating it
+     */
+    static final class DocumentCounts {
+        int elements;
+        int attributes;
+        int choiceBranches;
+        int repeatedElements;
+    }
+
+    /**
+     * A sum striped over a few cells, each on its own cache line. A thread always updates the same cell
+     */
+    private static final class Counter {
+
+        private static final int STRIPES = stripeCount();
+
+        /**
+         * longs per cell, so that the cells are on different cache lines
+         */
+        private static final int PAD = 8;
+
+        final AtomicLongArray cells = new AtomicLongArray(STRIPES * PAD);
+
+        private static int stripeCount() {
+            int stripes = Integer.highestOneBit(Math.max(1, Runtime.getRuntime().availableProcessors()) * 2 - 1) * 2;
+            return Math.min(stripes, 64);
+        }
+
+        static int cell() {
+            long id = Thread.currentThread().getId();
+            int h = (int) (id ^ (id >>> 32)) * 0x9e3779b9;
+            return ((h >>> 16) & (STRIPES - 1)) * PAD;
+        }
+
+        void add(long x) {
+            if (x != 0) {
+                cells.addAndGet(cell(), x);
+            }
+        }
+
+        void max(long x) {
+            int i = cell();
+            long current = cells.get(i);
+            while (x > current && !cells.compareAndSet(i, current, x)) {
+                current = cells.get(i);
+            }
+        }
+
+        long sum() {
+            long sum = 0;
+            for (int i = 0; i < cells.length(); i += PAD) {
+                sum += cells.get(i);
+            }
+            return sum;
+        }
+
+        long max() {
+            long max = 0;
+            for (int i = 0; i < cells.length(); i += PAD) {
+                max = Math.max(max, cells.get(i));
+            }
+            return max;
+        }
+
+        void reset() {
+            for (int i = 0; i < cells.length(); i += PAD) {
+                cells.set(i, 0);
+            }
+        }
+    }
+
+    private static final class Timer {
+
+        final Counter count = new Counter();
+
+        final Counter nanos = new Counter();
+
+        final Counter maxNanos = new Counter();
+
+        void record(long elapsed) {
+            count.add(1);
+            nanos.add(elapsed);
+            maxNanos.max(elapsed);
+        }
+
+        double getMillis() {
+            return nanos.sum() / NANOS_PER_MILLI;
+        }
+
+        double getMaxMillis() {
+            return maxNanos.max() / NANOS_PER_MILLI;
+        }
+
+        void reset() {
+            count.reset();
+            nanos.reset();
+            maxNanos.reset();
+        }
+    }
+}
@@ -0,0 +1,552 @@
+/*
+ * Copyright (c) 2010-2014 Stratumsoft Technologies Pvt. Ltd.
+ *
+ * This file (GenerationPlan.java) is part of xsd2xml.
+ *
+ * xsd2xml is a Java program to generate XML instances from an XML Schema document
+ *
+ * xsd2xml is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * xsd2xml is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; If not, see <http://www.gnu.org/licenses/>.
+ *
+ * To use xsd2xml in your non-GPL licensed software, contact Stratumsoft Technologies
+ * support at support@stratumsoft.com or visit http://www.stratumsoft.com to obtain
+ * a commercial license.
+ */
+
+package com.stratumsoft.xmlgen;
+
+import org.dom4j.DocumentFactory;
+import org.dom4j.Element;
+
+import javax.xml.namespace.QName;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * An immutable, pre-resolved plan for generating the xml instance of a schema element. The plan is compiled once
+ * by walking the schema (see {@link SchemaTypeXmlGenerator#compile(QName)}) and holds the resolved element and
+ * attribute names, the repeat counts, the sample values and the recursion cut points. Replaying a plan does not
+ * perform any schema lookups; only the values that must differ for each document (the volatile values, such as
+ * xs:ID values, and random choice branches) are resolved at replay time.
+ *
+ * @author murakris@stratumsoft.com
+ */
+public final class GenerationPlan {
+
+    private static final org.dom4j.QName ID_ATTR = org.dom4j.QName.get("id"); //NON-NLS
+
+    private static final XMLOutputFactory outputFactory = XMLOutputFactory.newInstance();
+
+    private final QName rootName;
+
+    private final ElementNode root;
+
+    private final ValueProviders values;
+
+    /**
+     * @param values providers of the volatile values, which must be the providers the plan was compiled with
+     */
+    GenerationPlan(QName rootName, ElementNode root, ValueProviders values) {
+        this.rootName = rootName;
+        this.root = root;
+        this.values = values;
+        if (root != null) {
+            root.freeze();
+        }
+    }
+
+    /**
+     * @return the qname of the schema element this plan was compiled for
+     */
+    public QName getRootName() {
+        return rootName;
+    }
+
+    /**
+     * @return true if the root element was cut off (e.g. due to recursion) and nothing will be generated
+     */
+    public boolean isEmpty() {
+        return root == null;
+    }
+
+    ElementNode getRoot() {
+        return root;
+    }
+
+    ValueProviders getValues() {
+        return values;
+    }
+
+    /**
+     * Estimate the size of the documents replayed from this plan. Sizes in bytes are those of the compact utf-8
+     * document written by {@link #writeDocument(OutputStream, SeededRandom)}; the size of volatile values and random
+     * choice branches is averaged, so the size of a single document varies around the estimate.
+     *
+     * @param unit the unit of the size
+     * @return the expected size of a document
+     */
+    public long estimateSize(SizeUnit unit) {
+        return Math.round(PlanSizer.estimate(this, unit, values));
+    }
+
+    /**
+     * Fit the repeat counts of this plan to the given size, within the minOccurs and maxOccurs of the repeatable
+     * elements and particles, see {@link XmlGenOptions#setTargetSize(long, SizeUnit)}. The counts of the returned
+     * plan only depend on this plan and the target, so the result is the same each time.
+     *
+     * @param targetSize the size to fit the documents to
+     * @param unit       the unit of the size
+     * @return a new plan with the fitted counts; this plan is not changed
+     */
+    public GenerationPlan resize(long targetSize, SizeUnit unit) {
+        if (targetSize < 0) {
+            throw new IllegalArgumentException("target size cannot be negative");
+        }
+        return PlanSizer.resize(this, targetSize, unit, values);
+    }
+
+    /**
+     * Replay this plan into a new dom4j element tree
+     *
+     * @return the root element, or null if the plan is empty
+     */
+    public Element toElement() {
+        return toElement(null);
+    }
+
+    /**
+     * Replay this plan into a new dom4j element tree, taking the per-document values from the given generator
+     *
+     * @param random generator for the per-document values, or null to use unseeded values
+     * @return the root element, or null if the plan is empty
+     */
+    public Element toElement(SeededRandom random) {
+        return toElement(random, null);
+    }
+
+    /**
+     * @param counts the counts of the document to add to, or null
+     */
+    Element toElement(SeededRandom random, GenerationMetrics.DocumentCounts counts) {
+        if (root == null) {
+            return null;
+        }
+        Dom4jPlanSink sink = new Dom4jPlanSink(DocumentFactory.getInstance());
+        try {
+            replay(sink, random, counts);
+        } catch (XMLStreamException e) {
+            throw new IllegalStateException("dom4j plan sink does not throw", e); //NON-NLS
+        }
+        return sink.getRoot();
+    }
+
+    /**
+     * Replay this plan by writing the element events directly to the given stream writer. No start/end document
+     * events are written, so the generated element can be embedded in a larger document.
+     *
+     * @param writer the writer to write to
+     * @throws XMLStreamException if the writer fails
+     */
+    public void write(XMLStreamWriter writer) throws XMLStreamException {
+        write(writer, null);
+    }
+
+    /**
+     * Replay this plan to the given stream writer, taking the per-document values (xs:ID values and random choice
+     * branches) from the given generator. Replaying with generators in the same state writes the same xml.
+     *
+     * @param writer the writer to write to
+     * @param random generator for the per-document values, or null to use unseeded values
+     * @throws XMLStreamException if the writer fails
+     */
+    public void write(XMLStreamWriter writer, SeededRandom random) throws XMLStreamException {
+        write(writer, random, null);
+    }
+
+    /**
+     * @param counts the counts of the document to add to, or null
+     */
+    void write(XMLStreamWriter writer, SeededRandom random, GenerationMetrics.DocumentCounts counts)
+            throws XMLStreamException {
+        if (root != null) {
+            replay(new StaxPlanSink(writer), random, counts);
+        }
+    }
+
+    /**
+     * Replay this plan as a complete utf-8 encoded document to the given stream, which is not closed
+     *
+     * @param out    the stream to write to
+     * @param random generator for the per-document values, or null to use unseeded values
+     * @throws XMLStreamException if the document could not be written
+     */
+    public void writeDocument(OutputStream out, SeededRandom random) throws XMLStreamException {
+        writeDocument(out, random, null);
+    }
+
+    /**
+     * @param counts the counts of the document to add to, or null
+     */
+    void writeDocument(OutputStream out, SeededRandom random, GenerationMetrics.DocumentCounts counts)
+            throws XMLStreamException {
+        XMLStreamWriter writer = createWriter(out);
+        try {
+            writer.writeStartDocument("utf-8", "1.0"); //NON-NLS
+            write(writer, random, counts);
+            writer.writeEndDocument();
+            writer.flush();
+        } finally {
+            writer.close();
+        }
+    }
+
+    /**
+     * @return a writer of utf-8 encoded xml to the given stream
+     */
+    static XMLStreamWriter createWriter(OutputStream out) throws XMLStreamException {
+        synchronized (outputFactory) {      //factories are not guaranteed to be thread-safe
+            return outputFactory.createXMLStreamWriter(out, "utf-8"); //NON-NLS
+        }
+    }
+
+    private void replay(PlanSink sink, SeededRandom random, GenerationMetrics.DocumentCounts counts)
+            throws XMLStreamException {
+        replayElement(root, sink, false, values, random != null ? random : new SeededRandom(), true, counts);
+    }
+
+    /**
+     * Render a single element node (one occurrence, ignoring its repeat count) into a dom4j element. This is used
+     * while compiling, so all the values are taken from the given generator, whether or not parts of the subtree are
+     * already frozen
+     */
+    static Element render(ElementNode node, DocumentFactory factory, ValueProviders values, SeededRandom random) {
+        Dom4jPlanSink sink = new Dom4jPlanSink(factory);
+        try {
+            replayElement(node, sink, false, values, random, false, null);
+        } catch (XMLStreamException e) {
+            throw new IllegalStateException("dom4j plan sink does not throw", e); //NON-NLS
+        }
+        return sink.getRoot();
+    }
+
+    /**
+     * Replay the attributes and content of the given node into an existing dom4j element
+     */
+    static void renderInto(ElementNode node, Element el, DocumentFactory factory, ValueProviders values,
+                           SeededRandom random) {
+        Dom4jPlanSink sink = new Dom4jPlanSink(factory, el);
+        try {
+            replayAttributes(node, sink, false, values, random);
+            replayContent(node.content, sink, values, random, true, null);
+        } catch (XMLStreamException e) {
+            throw new IllegalStateException("dom4j plan sink does not throw", e); //NON-NLS
+        }
+    }
+
+    /**
+     * An element whose subtree has per-document values gets its own generator split from the one of its parent, so
+     * that the values of a subtree do not depend on how many values its preceding siblings took
+     */
+    private static void replayElement(ElementNode node, PlanSink sink, boolean isCopy, ValueProviders values,
+                                      SeededRandom parentRandom, boolean isSplit,
+                                      GenerationMetrics.DocumentCounts counts) throws XMLStreamException {
+        SeededRandom random = isSplit && node.isRandom ? parentRandom.split() : parentRandom;
+        if (counts != null) {
+            counts.elements++;
+            counts.attributes += node.attributes.size();
+            if (isCopy) {
+                counts.repeatedElements++;
+            }
+        }
+        sink.startElement(node.name);
+        replayAttributes(node, sink, isCopy, values, random);
+        replayContent(node.content, sink, values, random, isSplit, counts);
+        sink.endElement();
+    }
+
+    private static void replayAttributes(ElementNode node, PlanSink sink, boolean isCopy, ValueProviders values,
+                                         SeededRandom random) throws XMLStreamException {
+        List<AttributeNode> attributes = node.attributes;
+        for (int i = 0, n = attributes.size(); i < n; i++) {
+            AttributeNode attr = attributes.get(i);
+            sink.attribute(attr.name, attr.value(isCopy, values, random));
+        }
+    }
+
+    private static void replayContent(List<Node> content, PlanSink sink, ValueProviders values,
+                                      SeededRandom random, boolean isSplit, GenerationMetrics.DocumentCounts counts)
+            throws XMLStreamException {
+        for (int n = 0, size = content.size(); n < size; n++) {
+            Node node = content.get(n);
+            if (node instanceof ElementNode) {
+                ElementNode elNode = (ElementNode) node;
+                for (long i = 1; i <= elNode.count; i++) {
+                    if (i > elNode.minCount && elNode.isCommentOptional) {
+                        sink.comment("optional");
+                    }
+                    replayElement(elNode, sink, i > 1, values, random, isSplit, counts);
+                }
+            } else if (node instanceof TextNode) {
+                String text = ((TextNode) node).value(random);
+                if (text != null) {
+                    sink.text(text);
+                }
+            } else if (node instanceof CommentNode) {
+                sink.comment(((CommentNode) node).text);
+            } else if (node instanceof ChoiceNode) {
+                if (counts != null) {
+                    counts.choiceBranches++;
+                }
+                replayContent(((ChoiceNode) node).pickBranch(random), sink, values, random, isSplit, counts);
+            } else if (node instanceof RepeatNode) {
+                RepeatNode repeat = (RepeatNode) node;
+                for (long i = 0; i < repeat.count; i++) {
+                    replayContent(repeat.content, sink, values, random, isSplit, counts);
+                }
+            }
+        }
+    }
+
+    ///////////////////////////////////////// plan nodes /////////////////////////////////////////
+
+    abstract static class Node {
+    }
+
+    /**
+     * An element and the number of times it must be generated. The attribute and content lists are only
+     * modified while the plan is being compiled and are frozen once the plan is created
+     */
+    static final class ElementNode extends Node {
+        final org.dom4j.QName name;
+
+        long minCount = 1;
+        long count = 1;
+        boolean isCommentOptional;
+
+        /**
+         * the maxOccurs of the element in the schema, which bounds the count when the plan is resized
+         */
+        long maxCount = 1;
+
+        /**
+         * true if the subtree of the element has per-document values; set when the node is frozen
+         */
+        boolean isRandom;
+
+        /**
+         * true once the node is frozen; the subtrees of memoized types are shared and only need to be frozen once
+         */
+        private boolean isFrozen;
+
+        List<AttributeNode> attributes = new ArrayList<>();
+        List<Node> content = new ArrayList<>();
+
+        ElementNode(org.dom4j.QName name) {
+            this.name = name;
+        }
+
+        /**
+         * Same semantics as {@link Element#add(org.dom4j.Attribute)}: an attribute without a value is not added
+         * and removes any existing attribute with the same name
+         */
+        void addAttribute(AttributeNode attr) {
+            if (attr.value != null || attr.isVolatile()) {
+                attributes.add(attr);
+            } else {
+                AttributeNode existing = attribute(attr.name);
+                if (existing != null) {
+                    attributes.remove(existing);
+                }
+            }
+        }
+
+        AttributeNode attribute(org.dom4j.QName qname) {
+            for (AttributeNode attr : attributes) {
+                if (attr.name.equals(qname)) {
+                    return attr;
+                }
+            }
+            return null;
+        }
+
+        void removeAttribute(AttributeNode attr) {
+            attributes.remove(attr);
+        }
+
+        void addComment(String text) {
+            content.add(new CommentNode(text));
+        }
+
+        void addElement(ElementNode el) {
+            content.add(el);
+        }
+
+        void addChoice(ChoiceNode choice) {
+            content.add(choice);
+        }
+
+        void addRepeat(RepeatNode repeat) {
+            content.add(repeat);
+        }
+
+        /**
+         * Same semantics as {@link Element#setText(String)}: any existing text is removed and the new text
+         * is appended to the content
+         */
+        void setText(String value, ValueProvider provider) {
+            for (int i = content.size() - 1; i >= 0; i--) {
+                if (content.get(i) instanceof TextNode) {
+                    content.remove(i);
+                }
+            }
+            content.add(new TextNode(value, provider));
+        }
+
+        void freeze() {
+            if (isFrozen) {
+                return;
+            }
+            isFrozen = true;
+            attributes = Collections.unmodifiableList(new ArrayList<>(attributes));
+            content = Collections.unmodifiableList(new ArrayList<>(content));
+            isRandom = freeze(content);
+            for (AttributeNode attr : attributes) {
+                isRandom |= attr.isVolatile() || (count > 1 && ID_ATTR.equals(attr.name));
+            }
+        }
+
+        /**
+         * @return true if the nodes have per-document values
+         */
+        private static boolean freeze(List<Node> nodes) {
+            boolean isRandom = false;
+            for (Node node : nodes) {
+                if (node instanceof ElementNode) {
+                    ((ElementNode) node).freeze();
+                    isRandom |= ((ElementNode) node).isRandom;
+                } else if (node instanceof TextNode) {
+                    isRandom |= ((TextNode) node).provider != null;
+                } else if (node instanceof ChoiceNode) {
+                    ChoiceNode choice = (ChoiceNode) node;
+                    List<List<Node>> branches = new ArrayList<>(choice.branches.size());
+                    for (List<Node> branch : choice.branches) {
+                        freeze(branch);
+                        branches.add(Collections.unmodifiableList(new ArrayList<>(branch)));
+                    }
+                    choice.branches = Collections.unmodifiableList(branches);
+                    isRandom = true;
+                } else if (node instanceof RepeatNode) {
+                    RepeatNode repeat = (RepeatNode) node;
+                    isRandom |= freeze(repeat.content);
+                    repeat.content = Collections.unmodifiableList(new ArrayList<>(repeat.content));
+                }
+            }
+            return isRandom;
+        }
+    }
+
+    /**
+     * An attribute with either a constant value or a volatile value, which is generated again on each replay by the
+     * provider of the attribute (the {@link ValueProviders} provider of its type, or the value generator of a simple
+     * type when generating random values)
+     */
+    static final class AttributeNode {
+        final org.dom4j.QName name;
+        final String value;
+        final ValueProvider provider;
+
+        AttributeNode(org.dom4j.QName name, String value, ValueProvider provider) {
+            this.name = name;
+            this.value = value;
+            this.provider = provider;
+        }
+
+        boolean isVolatile() {
+            return provider != null;
+        }
+
+        /**
+         * @param isCopy true if this is the attribute of a repeated occurrence of an element; an 'id' attribute
+         *               always needs a new value in that case
+         */
+        String value(boolean isCopy, ValueProviders values, SeededRandom random) {
+            if (isVolatile()) {
+                return provider.getValue(random);
+            } else if (isCopy && ID_ATTR.equals(name)) {
+                return values.getValue(ValueProviders.ID_SLOT, random);
+            }
+            return value;
+        }
+    }
+
+    /**
+     * Text with either a constant value or a volatile value, see {@link AttributeNode}
+     */
+    static final class TextNode extends Node {
+        final String value;
+        final ValueProvider provider;
+
+        TextNode(String value, ValueProvider provider) {
+            this.value = value;
+            this.provider = provider;
+        }
+
+        String value(SeededRandom random) {
+            return provider != null ? provider.getValue(random) : value;
+        }
+    }
+
+    static final class CommentNode extends Node {
+        final String text;
+
+        CommentNode(String text) {
+            this.text = text;
+        }
+    }
+
+    /**
+     * Content that is repeated as a whole, e.g. the particles of a sequence or group with a maxOccurs. The content is
+     * compiled once and shared by all the repetitions; only the volatile values are generated again for each of them.
+     * The minOccurs and maxOccurs of the particle bound the count when the plan is resized
+     */
+    static final class RepeatNode extends Node {
+        final long minCount;
+        final long maxCount;
+        final long count;
+        List<Node> content;
+
+        RepeatNode(long minCount, long maxCount, long count, List<Node> content) {
+            this.minCount = minCount;
+            this.maxCount = maxCount;
+            this.count = count;
+            this.content = content;
+        }
+    }
+
+    /**
+     * A choice whose branch is picked at random each time the plan is replayed
+     */
+    static final class ChoiceNode extends Node {
+        List<List<Node>> branches = new ArrayList<>();
+
+        List<Node> pickBranch(SeededRandom random) {
+            int size = branches.size();
+            return branches.get(random.nextInt(size));
+        }
+    }
+}
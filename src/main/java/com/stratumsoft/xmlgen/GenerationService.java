@@ -0,0 +1,577 @@
+/*
+ * Copyright (c) 2010-2014 Stratumsoft Technologies Pvt. Ltd.
+ *
+ * This file (GenerationService.java) is part of xsd2xml.
+ *
+ * xsd2xml is a Java program to generate XML instances from an XML Schema document
+ *
+ * xsd2xml is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * xsd2xml is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; If not, see <http://www.gnu.org/licenses/>.
+ *
+ * To use xsd2xml in your non-GPL licensed software, contact Stratumsoft Technologies
+ * support at support@stratumsoft.com or visit http://www.stratumsoft.com to obtain
+ * a commercial license.
+ */
+
+
+package com.stratumsoft.xmlgen;
+
+import com.sun.net.httpserver.Headers;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.xml.namespace.QName;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * An embeddable http service that generates xml instances of the schemas in a directory, on the JDK's built-in http
+ * server. Parsed schemas and compiled plans are shared by all requests through a {@link SchemaRepository}.
+ * <p/>
+ * <code>GET /generate?schema=orders/order.xsd&amp;ns=urn:orders&amp;element=order</code> returns the document of the
+ * element; the schema path is relative to the schema directory. Generation options are given as query parameters:
+ * <code>optionalAttributes</code>, <code>optionalElements</code>, <code>choiceComments</code>,
+ * <code>particleComments</code> (true or false), <code>maxRepeat</code>, <code>maxRecursion</code>,
+ * <code>choice</code> ({@link ChoiceOptions}), <code>values</code> ({@link DefaultValues}), <code>seed</code>,
+ * <code>size</code> and <code>unit</code> (the target size, see {@link XmlGenOptions#setTargetSize(long, SizeUnit)})
+ * and <code>pretty</code>; documents larger than the cached responses cannot be pretty printed. Requests whose
+ * repeat counts, recursion depth or target size are beyond the limits of the service get a 400 response, and the
+ * plans cached for the requests are limited as well.
+ * <p/>
+ * Responses that are the same for every request (those of seeded requests, and of plans without per-document values)
+ * are cached along with an ETag, and a request whose <code>If-None-Match</code> header matches gets a 304 response;
+ * other responses are streamed as they are generated and are not cacheable. Each tenant, named by the
+ * <code>X-Tenant</code> request header, may only have a limited number of requests in progress; requests beyond the
+ * limit get a 429 response, so a tenant generating large documents cannot take all the worker threads. Only the
+ * tenants added with {@link #addTenant(String)} have their own limit; requests naming no tenant or another one share
+ * the limit of the default tenant.
+ *
+ * @author murakris@stratumsoft.com
+ */
+public final class GenerationService implements Closeable {
+
+    private static final Logger logger = LoggerFactory.getLogger(GenerationService.class);
+
+    public static final String GENERATE_PATH = "/generate"; //NON-NLS
+
+    public static final String TENANT_HEADER = "X-Tenant"; //NON-NLS
+
+    public static final String DEFAULT_TENANT = "default"; //NON-NLS
+
+    private static final String XML_CONTENT_TYPE = "application/xml; charset=utf-8"; //NON-NLS
+
+    private static final String TEXT_CONTENT_TYPE = "text/plain; charset=utf-8"; //NON-NLS
+
+    private static final List<String> PARAMETERS = Arrays.asList("schema", "ns", "element", "pretty"); //NON-NLS
+
+    private final SchemaRepository repository;
+
+    private final File schemaDir;
+
+    private int threads = Runtime.getRuntime().availableProcessors() * 2;
+
+    private int maxRequestsPerTenant = 4;
+
+    private int maxCachedResponses = 256;
+
+    private long maxCachedResponseBytes = 1024 * 1024;
+
+    private int maxCachedPlans = 256;
+
+    private int maxRepeat = 100;
+
+    private int maxRecursion = 10;
+
+    private long maxTargetSize = 1024L * 1024 * 1024;
+
+    private final ConcurrentMap<String, Semaphore> tenants = new ConcurrentHashMap<>();
+
+    /**
+     * cached responses in access order, eldest first; guarded by itself
+     */
+    private final LinkedHashMap<String, CachedResponse> responses = new LinkedHashMap<>(16, 0.75f, true);
+
+    private final AtomicLong cacheHits = new AtomicLong();
+
+    private final AtomicLong rejections = new AtomicLong();
+
+    private HttpServer server;
+
+    private ExecutorService executor;
+
+    /**
+     * @param repository the repository to load the schemas from
+     * @param schemaDir  the directory of the schemas the service generates documents for
+     * @throws IOException if the directory could not be resolved
+     */
+    public GenerationService(SchemaRepository repository, File schemaDir) throws IOException {
+        if (repository == null) {
+            throw new IllegalArgumentException("repository cannot be null");
+        }
+        if (!schemaDir.isDirectory()) {
+            throw new FileNotFoundException(schemaDir.getPath());
+        }
+        this.repository = repository;
+        this.schemaDir = schemaDir.getCanonicalFile();
+        tenants.put(DEFAULT_TENANT, new Semaphore(maxRequestsPerTenant));
+    }
+
+    /**
+     * @param threads number of worker threads, which should be more than the requests allowed per tenant
+     */
+    public void setThreads(int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("threads must be at least 1");
+        }
+        this.threads = threads;
+    }
+
+    /**
+     * @param maxRequestsPerTenant number of requests of a tenant that may be in progress at the same time
+     */
+    public void setMaxRequestsPerTenant(int maxRequestsPerTenant) {
+        if (maxRequestsPerTenant < 1) {
+            throw new IllegalArgumentException("maxRequestsPerTenant must be at least 1");
+        }
+        this.maxRequestsPerTenant = maxRequestsPerTenant;
+        for (Map.Entry<String, Semaphore> entry : tenants.entrySet()) {
+            entry.setValue(new Semaphore(maxRequestsPerTenant));
+        }
+    }
+
+    /**
+     * Give a tenant its own limit of requests in progress; requests of other tenants share the limit of the default
+     * tenant, so a client cannot get more requests in progress by naming new tenants
+     *
+     * @param name the tenant name, as given by the <code>X-Tenant</code> request header
+     */
+    public void addTenant(String name) {
+        if (name == null || name.isEmpty()) {
+            throw new IllegalArgumentException("tenant name cannot be empty");
+        }
+        tenants.putIfAbsent(name, new Semaphore(maxRequestsPerTenant));
+    }
+
+    /**
+     * @param maxCachedResponses     maximum number of cached responses
+     * @param maxCachedResponseBytes size of the largest response that is cached; larger responses are streamed
+     */
+    public void setResponseCache(int maxCachedResponses, long maxCachedResponseBytes) {
+        this.maxCachedResponses = maxCachedResponses;
+        this.maxCachedResponseBytes = maxCachedResponseBytes;
+    }
+
+    /**
+     * @param maxCachedPlans maximum number of generation plans the engines keep cached for the requests, see
+     *                       {@link XmlGenEngine#setMaxCachedPlans(int)}
+     */
+    public void setMaxCachedPlans(int maxCachedPlans) {
+        if (maxCachedPlans < 1) {
+            throw new IllegalArgumentException("maxCachedPlans must be at least 1");
+        }
+        this.maxCachedPlans = maxCachedPlans;
+    }
+
+    /**
+     * @param maxRepeat     largest <code>maxRepeat</code> parameter accepted
+     * @param maxRecursion  largest <code>maxRecursion</code> parameter accepted
+     * @param maxTargetSize largest <code>size</code> parameter accepted, in bytes or elements as given by
+     *                      <code>unit</code>
+     */
+    public void setOptionLimits(int maxRepeat, int maxRecursion, long maxTargetSize) {
+        this.maxRepeat = maxRepeat;
+        this.maxRecursion = maxRecursion;
+        this.maxTargetSize = maxTargetSize;
+    }
+
+    /**
+     * Start serving requests
+     *
+     * @param address the address to listen on, e.g. <code>new InetSocketAddress("localhost", 0)</code> for any free
+     *                local port
+     * @throws IOException if the server could not be bound to the address
+     */
+    public synchronized void start(InetSocketAddress address) throws IOException {
+        if (server != null) {
+            throw new IllegalStateException("service is already started");
+        }
+        server = HttpServer.create(address, 0);
+        server.createContext(GENERATE_PATH, new GenerateHandler());
+        executor = Executors.newFixedThreadPool(threads, new WorkerThreadFactory());
+        server.setExecutor(executor);
+        server.start();
+        logger.info("Generation service listening on {}", server.getAddress());
+    }
+
+    /**
+     * @return the port the service listens on
+     */
+    public synchronized int getPort() {
+        if (server == null) {
+            throw new IllegalStateException("service is not started");
+        }
+        return server.getAddress().getPort();
+    }
+
+    /**
+     * Stop the service; the requests in progress are aborted
+     */
+    @Override
+    public synchronized void close() {
+        if (server != null) {
+            server.stop(0);
+            executor.shutdownNow();
+            server = null;
+            executor = null;
+        }
+    }
+
+    /**
+     * @return the number of responses served from the cache, including the 304 responses
+     */
+    public long getCacheHitCount() {
+        return cacheHits.get();
+    }
+
+    /**
+     * @return the number of requests rejected because their tenant had too many requests in progress
+     */
+    public long getRejectedCount() {
+        return rejections.get();
+    }
+
+    /**
+     * @return the permits of the tenant, or of the default tenant if it has none of its own
+     */
+    private Semaphore tenant(String name) {
+        Semaphore permits = name != null ? tenants.get(name) : null;
+        return permits != null ? permits : tenants.get(DEFAULT_TENANT);
+    }
+
+    private final class GenerateHandler implements HttpHandler {
+
+        @Override
+        public void handle(HttpExchange exchange) throws IOException {
+            try {
+                String method = exchange.getRequestMethod();
+                if (!"GET".equals(method) && !"HEAD".equals(method)) { //NON-NLS
+                    exchange.getResponseHeaders().set("Allow", "GET, HEAD"); //NON-NLS
+                    sendText(exchange, 405, "Method not allowed");
+                    return;
+                }
+
+                String tenantName = exchange.getRequestHeaders().getFirst(TENANT_HEADER);
+                Semaphore permits = tenant(tenantName);
+                if (!permits.tryAcquire()) {
+                    rejections.incrementAndGet();
+                    exchange.getResponseHeaders().set("Retry-After", "1"); //NON-NLS
+                    sendText(exchange, 429, "Too many requests in progress for tenant");
+                    return;
+                }
+                Permit permit = new Permit(permits);
+                try {
+                    generate(exchange, parseQuery(exchange.getRequestURI().getRawQuery()), permit);
+                } finally {
+                    permit.release();
+                }
+            } catch (BadRequestException e) {
+                sendText(exchange, 400, e.getMessage());
+            } catch (FileNotFoundException e) {
+                sendText(exchange, 404, "Not found: " + e.getMessage());
+            } catch (IOException e) {
+                logger.debug("Could not send response to {}", exchange.getRemoteAddress(), e);
+            } catch (RuntimeException e) {
+                logger.error("Could not generate response for " + exchange.getRequestURI(), e);
+                sendText(exchange, 500, "Could not generate the document");
+            } finally {
+                exchange.close();
+            }
+        }
+
+        /**
+         * Generate the response; the permit is released once the document is generated, before a cached or rendered
+         * body is sent, and held while a document is streamed
+         */
+        private void generate(HttpExchange exchange, Map<String, String> params, Permit permit) throws IOException {
+            File schemaFile = schemaFile(required(params, "schema")); //NON-NLS
+            String ns = params.get("ns"); //NON-NLS
+            QName elName = new QName(ns != null ? ns : "", required(params, "element")); //NON-NLS
+            XmlGenOptions options = options(params);
+            boolean isPretty = bool(params, "pretty", false); //NON-NLS
+
+            XmlGenEngine engine = repository.getEngine(schemaFile.getPath(), null);
+            if (engine.getMaxCachedPlans() > maxCachedPlans) {
+                engine.setMaxCachedPlans(maxCachedPlans);
+            }
+            if (engine.getRegistry().getElement(elName) == null) {
+                throw new FileNotFoundException(elName.toString());
+            }
+            GenerationPlan plan = engine.compile(elName, options);
+            if (plan.isEmpty()) {
+                throw new FileNotFoundException(elName.toString());
+            }
+
+            boolean isLarge = plan.estimateSize(SizeUnit.BYTES) > maxCachedResponseBytes;
+            if (isPretty && isLarge) {
+                //pretty documents are built in memory
+                throw new BadRequestException("Document is too large to be pretty printed");
+            }
+
+            Headers headers = exchange.getResponseHeaders();
+            headers.set("Content-Type", XML_CONTENT_TYPE); //NON-NLS
+            boolean isDeterministic = options.getSeed() != null || !plan.getRoot().isRandom;
+            if (!isDeterministic || isLarge) {
+                headers.set("Cache-Control", "no-store"); //NON-NLS
+                if ("HEAD".equals(exchange.getRequestMethod())) { //NON-NLS
+                    permit.release();
+                    exchange.sendResponseHeaders(200, -1);
+                    return;
+                }
+                exchange.sendResponseHeaders(200, 0);       //chunked
+                OutputStream out = exchange.getResponseBody();
+                if (isPretty) {
+                    out.write(engine.generateXml(elName, options, true).getBytes(StandardCharsets.UTF_8));
+                } else {
+                    try {
+                        engine.generateXml(elName, options, out);
+                    } catch (javax.xml.stream.XMLStreamException e) {
+                        throw new IOException(e);
+                    }
+                }
+                return;
+            }
+
+            String cacheKey = schemaFile.getPath() + '?' + new TreeMap<>(params);
+            CachedResponse response = cached(cacheKey, engine);
+            if (response != null) {
+                cacheHits.incrementAndGet();
+            } else {
+                response = new CachedResponse(engine, render(engine, elName, options, isPretty));
+                cache(cacheKey, response);
+            }
+            permit.release();
+
+            headers.set("ETag", response.etag); //NON-NLS
+            String ifNoneMatch = exchange.getRequestHeaders().getFirst("If-None-Match"); //NON-NLS
+            if (ifNoneMatch != null && (ifNoneMatch.contains(response.etag) || "*".equals(ifNoneMatch.trim()))) {
+                exchange.sendResponseHeaders(304, -1);
+            } else if ("HEAD".equals(exchange.getRequestMethod())) { //NON-NLS
+                exchange.sendResponseHeaders(200, -1);
+            } else {
+                exchange.sendResponseHeaders(200, response.body.length);
+                exchange.getResponseBody().write(response.body);
+            }
+        }
+
+        private byte[] render(XmlGenEngine engine, QName elName, XmlGenOptions options, boolean isPretty)
+                throws IOException {
+            if (isPretty) {
+                return engine.generateXml(elName, options, true).getBytes(StandardCharsets.UTF_8);
+            }
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            try {
+                engine.generateXml(elName, options, out);
+            } catch (javax.xml.stream.XMLStreamException e) {
+                throw new IOException(e);
+            }
+            return out.toByteArray();
+        }
+
+        /**
+         * @return the schema file, which must be within the schema directory
+         */
+        private File schemaFile(String path) throws IOException {
+            File file = new File(schemaDir, path).getCanonicalFile();
+            if (!file.getPath().startsWith(schemaDir.getPath() + File.separator)) {
+                throw new BadRequestException("Schema is not in the schema directory: " + path);
+            }
+            if (!file.isFile()) {
+                throw new FileNotFoundException(path);
+            }
+            return file;
+        }
+    }
+
+    ///////////////////////////////////////// response cache /////////////////////////////////////////
+
+    /**
+     * @return the cached response, unless the schema was reloaded since it was generated
+     */
+    private CachedResponse cached(String key, XmlGenEngine engine) {
+        synchronized (responses) {
+            CachedResponse response = responses.get(key);
+            if (response != null && response.engine != engine) {
+                responses.remove(key);
+                response = null;
+            }
+            return response;
+        }
+    }
+
+    private void cache(String key, CachedResponse response) {
+        synchronized (responses) {
+            responses.put(key, response);
+            Iterator<CachedResponse> eldest = responses.values().iterator();
+            while (responses.size() > maxCachedResponses && eldest.hasNext()) {
+                eldest.next();
+                eldest.remove();
+            }
+        }
+    }
+
+    /**
+     * A permit of a tenant, which is released at most once
+     */
+    private static final class Permit {
+        private final Semaphore permits;
+        private boolean isHeld = true;
+
+        Permit(Semaphore permits) {
+            this.permits = permits;
+        }
+
+        void release() {
+            if (isHeld) {
+                isHeld = false;
+                permits.release();
+            }
+        }
+    }
+
+    private static final class CachedResponse {
+        final XmlGenEngine engine;
+        final byte[] body;
+        final String etag;
+
+        CachedResponse(XmlGenEngine engine, byte[] body) {
+            this.engine = engine;
+            this.body = body;
+            this.etag = '"' + DigestUtils.sha1Hex(body) + '"';
+        }
+    }
+
+    ///////////////////////////////////////// request parameters /////////////////////////////////////////
+
+    private static Map<String, String> parseQuery(String query) throws UnsupportedEncodingException {
+        Map<String, String> params = new LinkedHashMap<>();
+        if (query == null || query.isEmpty()) {
+            return params;
+        }
+        for (String pair : query.split("&")) {
+            if (pair.isEmpty()) {
+                continue;
+            }
+            int eq = pair.indexOf('=');
+            String name = URLDecoder.decode(eq >= 0 ? pair.substring(0, eq) : pair, "utf-8"); //NON-NLS
+            String value = eq >= 0 ? URLDecoder.decode(pair.substring(eq + 1), "utf-8") : ""; //NON-NLS
+            if (!PARAMETERS.contains(name) && !OptionParameters.NAMES.contains(name)) {
+                throw new BadRequestException("Unknown parameter: " + name);
+            }
+            params.put(name, value);
+        }
+        return params;
+    }
+
+    private XmlGenOptions options(Map<String, String> params) {
+        XmlGenOptions options;
+        try {
+            options = OptionParameters.parse(params);
+        } catch (IllegalArgumentException e) {
+            throw new BadRequestException(e.getMessage());
+        }
+        if (options.getMaxRepeatingElements() > maxRepeat) {
+            throw new BadRequestException("Parameter maxRepeat cannot be more than " + maxRepeat);
+        }
+        if (options.getMaxRecursiveDepth() > maxRecursion) {
+            throw new BadRequestException("Parameter maxRecursion cannot be more than " + maxRecursion);
+        }
+        if (options.getTargetSize() > maxTargetSize) {
+            throw new BadRequestException("Parameter size cannot be more than " + maxTargetSize);
+        }
+        return options;
+    }
+
+    private static String required(Map<String, String> params, String name) {
+        String value = params.get(name);
+        if (value == null || value.isEmpty()) {
+            throw new BadRequestException("Missing parameter: " + name);
+        }
+        return value;
+    }
+
+    private static boolean bool(Map<String, String> params, String name, boolean defaultValue) {
+        try {
+            return OptionParameters.bool(params, name, defaultValue);
+        } catch (IllegalArgumentException e) {
+            throw new BadRequestException(e.getMessage());
+        }
+    }
+
+    private static void sendText(HttpExchange exchange, int status, String message) {
+        byte[] body = (message + '\n').getBytes(StandardCharsets.UTF_8);
+        try {
+            exchange.getResponseHeaders().set("Content-Type", TEXT_CONTENT_TYPE); //NON-NLS
+            exchange.sendResponseHeaders(status, body.length);
+            exchange.getResponseBody().write(body);
+        } catch (IOException e) {
+            logger.debug("Could not send {} response", status, e);
+        } catch (IllegalStateException e) {
+            logger.debug("Response already started, could not send {} response", status);
+        }
+    }
+
+    private static final class BadRequestException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        BadRequestException(String message) {
+            super(message);
+        }
+    }
+
+    private static final class WorkerThreadFactory implements ThreadFactory {
+        private final AtomicInteger count = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "xsd2xml-service-" + count.incrementAndGet()); //NON-NLS
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
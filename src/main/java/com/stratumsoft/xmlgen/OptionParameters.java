@@ -0,0 +1,126 @@
+/*
+ * Copyright (c) 2010-2014 Stratumsoft Technologies Pvt. Ltd.
+ *
+ * This file (OptionParameters.java) is part of xsd2xml.
+ *
+ * xsd2xml is a Java program to generate XML instances from an XML Schema document
+ *
+ * xsd2xml is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * xsd2xml is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; If not, see <http://www.gnu.org/licenses/>.
+ *
+ * To use xsd2xml in your non-GPL licensed software, contact Stratumsoft Technologies
+ * support at support@stratumsoft.com or visit http://www.stratumsoft.com to obtain
+ * a commercial license.
+ */
+
+
+package com.stratumsoft.xmlgen;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Reads {@link XmlGenOptions} from named string parameters, such as the query parameters of a
+ * {@link GenerationService} request or the attributes of a {@link BatchGenerator} profile. Parameters that are not
+ * given keep the default of the option.
+ *
+ * @author murakris@stratumsoft.com
+ */
+final class OptionParameters {
+
+    /**
+     * names of the option parameters
+     */
+    static final List<String> NAMES = Collections.unmodifiableList(Arrays.asList(
+            "optionalAttributes", "optionalElements", "choiceComments", "particleComments", "maxRepeat", //NON-NLS
+            "maxRecursion", "choice", "values", "seed", "size", "unit")); //NON-NLS
+
+    private OptionParameters() {
+    }
+
+    /**
+     * @param params the parameters, by name; other parameters than the option ones are ignored
+     * @return the options
+     * @throws IllegalArgumentException if a parameter value is not valid
+     */
+    static XmlGenOptions parse(Map<String, String> params) {
+        XmlGenOptions options = new XmlGenOptions();
+        options.setGenOptionalAttributes(bool(params, "optionalAttributes", options.isGenOptionalAttributes())); //NON-NLS
+        options.setGenOptionalElements(bool(params, "optionalElements", options.isGenOptionalElements())); //NON-NLS
+        options.setGenChoiceOptionsAsComments(bool(params, "choiceComments", //NON-NLS
+                options.isGenChoiceOptionsAsComments()));
+        options.setGenCommentsForParticles(bool(params, "particleComments", //NON-NLS
+                options.isGenCommentsForParticles()));
+        options.setMaxRepeatingElements((int) number(params, "maxRepeat", options.getMaxRepeatingElements(), //NON-NLS
+                0, Integer.MAX_VALUE));
+        options.setMaxRecursiveDepth((int) number(params, "maxRecursion", options.getMaxRecursiveDepth(), //NON-NLS
+                0, Integer.MAX_VALUE));
+        options.setChoiceOptions(constant(params, "choice", ChoiceOptions.class, options.getChoiceOptions())); //NON-NLS
+        options.setDefVals(constant(params, "values", DefaultValues.class, options.getDefVals())); //NON-NLS
+        if (params.containsKey("seed")) { //NON-NLS
+            options.setSeed(number(params, "seed", 0)); //NON-NLS
+        }
+        long size = number(params, "size", 0, 0, Long.MAX_VALUE); //NON-NLS
+        options.setTargetSize(size, constant(params, "unit", SizeUnit.class, SizeUnit.BYTES)); //NON-NLS
+        return options;
+    }
+
+    static boolean bool(Map<String, String> params, String name, boolean defaultValue) {
+        String value = params.get(name);
+        if (value == null) {
+            return defaultValue;
+        }
+        if (!"true".equals(value) && !"false".equals(value)) { //NON-NLS
+            throw new IllegalArgumentException("Parameter " + name + " must be true or false");
+        }
+        return Boolean.parseBoolean(value);
+    }
+
+    static long number(Map<String, String> params, String name, long defaultValue) {
+        String value = params.get(name);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Parameter " + name + " must be a number");
+        }
+    }
+
+    /**
+     * @return the number, which must be within the given bounds
+     */
+    static long number(Map<String, String> params, String name, long defaultValue, long min, long max) {
+        long value = number(params, name, defaultValue);
+        if (value < min || value > max) {
+            throw new IllegalArgumentException("Parameter " + name + " must be between " + min + " and " + max);
+        }
+        return value;
+    }
+
+    static <E extends Enum<E>> E constant(Map<String, String> params, String name, Class<E> type, E defaultValue) {
+        String value = params.get(name);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Enum.valueOf(type, value.toUpperCase());
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Parameter " + name + " must be one of "
+                    + Arrays.toString(type.getEnumConstants()));
+        }
+    }
+}
@@ -0,0 +1,1278 @@
+/*
+ * Copyright (c) 2010-2014 Stratumsoft Technologies Pvt. Ltd.
+ *
+ * This file (PatternAutomaton.java) is part of xsd2xml.
+ *
+ * xsd2xml is a Java program to generate XML instances from an XML Schema document
+ *
+ * xsd2xml is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * xsd2xml is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; If not, see <http://www.gnu.org/licenses/>.
+ *
+ * To use xsd2xml in your non-GPL licensed software, contact Stratumsoft Technologies
+ * support at support@stratumsoft.com or visit http://www.stratumsoft.com to obtain
+ * a commercial license.
+ */
+
+
+package com.stratumsoft.xmlgen;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * A minimized deterministic automaton for an XML Schema regular expression (the syntax of the <code>xs:pattern</code>
+ * facet, which is implicitly anchored at both ends and has no back references). The expression is parsed, turned into
+ * a Thompson NFA, determinized over the elementary character intervals of the expression and minimized; states from
+ * which no accepting state can be reached are removed, so that a walk of the automaton never has to backtrack.
+ * <p/>
+ * Strings are generated by a random walk that first extends the string to a target length and then follows a
+ * shortest path to an accepting state. Characters are taken from the printable ASCII characters when a transition
+ * allows any of them, and from the other xml characters of the basic multilingual plane otherwise.
+ * <p/>
+ * An automaton is immutable and can be used concurrently.
+ *
+ * @author murakris@stratumsoft.com
+ */
+final class PatternAutomaton {
+
+    /**
+     * limits on the size of the automata, beyond which a pattern is rejected as too complex
+     */
+    private static final int MAX_NFA_STATES = 20000;
+    private static final int MAX_DFA_STATES = 5000;
+
+    /**
+     * number of characters a random walk may add beyond the shortest matching length
+     */
+    private static final int RANDOM_EXTRA_LENGTH = 12;
+
+    private static final int MAX_ATTEMPTS = 16;
+
+    private final int start;
+    private final boolean[] accept;
+    private final int[][] targets;
+    private final CharSet[][] labels;
+
+    /**
+     * the characters that are generated for a transition
+     */
+    private final CharSet[][] generated;
+
+    /**
+     * length of the shortest path from a state to an accepting state
+     */
+    private final int[] dist;
+
+    private PatternAutomaton(int start, boolean[] accept, int[][] targets, CharSet[][] labels) {
+        this.start = start;
+        this.accept = accept;
+        this.targets = targets;
+        this.labels = labels;
+        this.dist = distances(accept, targets);
+        this.generated = new CharSet[labels.length][];
+        for (int s = 0; s < labels.length; s++) {
+            generated[s] = new CharSet[labels[s].length];
+            for (int t = 0; t < labels[s].length; t++) {
+                CharSet preferred = labels[s][t].intersect(CharSet.PRINTABLE);
+                generated[s][t] = !preferred.isEmpty() ? preferred : labels[s][t].intersect(CharSet.XML_CHARS);
+            }
+        }
+    }
+
+    /**
+     * Compile an XML Schema regular expression
+     *
+     * @param regex the expression
+     * @return the automaton
+     * @throws IllegalArgumentException if the expression is invalid, too complex or matches no string that can be
+     *                                  generated
+     */
+    static PatternAutomaton compile(String regex) {
+        Nfa nfa = new Nfa();
+        Parser parser = new Parser(regex);
+        int end = nfa.build(parser.parse(), nfa.start);
+        nfa.accept = end;
+        return nfa.toDfa().trim();
+    }
+
+    /**
+     * @return an automaton for the strings matched by both this automaton and the other one
+     */
+    PatternAutomaton intersect(PatternAutomaton other) {
+        Map<Long, Integer> ids = new LinkedHashMap<>();
+        List<int[]> pairs = new ArrayList<>();
+        List<int[]> productTargets = new ArrayList<>();
+        List<CharSet[]> productLabels = new ArrayList<>();
+        ids.put(pair(start, other.start), 0);
+        pairs.add(new int[]{start, other.start});
+
+        for (int i = 0; i < pairs.size(); i++) {
+            int a = pairs.get(i)[0];
+            int b = pairs.get(i)[1];
+            List<Integer> stateTargets = new ArrayList<>();
+            List<CharSet> stateLabels = new ArrayList<>();
+            for (int ta = 0; ta < targets[a].length; ta++) {
+                for (int tb = 0; tb < other.targets[b].length; tb++) {
+                    CharSet label = labels[a][ta].intersect(other.labels[b][tb]);
+                    if (label.isEmpty()) {
+                        continue;
+                    }
+                    long key = pair(targets[a][ta], other.targets[b][tb]);
+                    Integer id = ids.get(key);
+                    if (id == null) {
+                        id = pairs.size();
+                        if (id >= MAX_DFA_STATES) {
+                            throw new IllegalArgumentException("patterns are too complex to intersect");
+                        }
+                        ids.put(key, id);
+                        pairs.add(new int[]{targets[a][ta], other.targets[b][tb]});
+                    }
+                    stateTargets.add(id);
+                    stateLabels.add(label);
+                }
+            }
+            productTargets.add(toIntArray(stateTargets));
+            productLabels.add(stateLabels.toArray(new CharSet[stateLabels.size()]));
+        }
+
+        boolean[] productAccept = new boolean[pairs.size()];
+        for (int i = 0; i < productAccept.length; i++) {
+            productAccept[i] = accept[pairs.get(i)[0]] && other.accept[pairs.get(i)[1]];
+        }
+        return new PatternAutomaton(0, productAccept, productTargets.toArray(new int[productTargets.size()][]),
+                productLabels.toArray(new CharSet[productLabels.size()][])).trim();
+    }
+
+    private static long pair(int a, int b) {
+        return ((long) a << 32) | (b & 0xffffffffL);
+    }
+
+    /**
+     * @return true if the automaton matches the whole string
+     */
+    boolean matches(String s) {
+        int state = start;
+        for (int i = 0; i < s.length(); ) {
+            int cp = s.codePointAt(i);
+            i += Character.charCount(cp);
+            int next = -1;
+            CharSet[] stateLabels = labels[state];
+            for (int t = 0; t < stateLabels.length; t++) {
+                if (stateLabels[t].contains(cp)) {
+                    next = targets[state][t];
+                    break;
+                }
+            }
+            if (next < 0) {
+                return false;
+            }
+            state = next;
+        }
+        return accept[state];
+    }
+
+    /**
+     * @param minLength minimum number of characters
+     * @param maxLength maximum number of characters
+     * @return a deterministic matching string of about the shortest length (built from the lowest allowed
+     *         characters, preferring letters and digits), or null if no matching string with a length in the given range was found
+     */
+    String getDefault(int minLength, int maxLength) {
+        String value = walk(null, minLength, maxLength, Math.max(minLength, dist[start]));
+        SeededRandom random = new SeededRandom(0);
+        for (int i = 0; value == null && i < MAX_ATTEMPTS; i++) {
+            value = generate(random, minLength, maxLength);
+        }
+        return value;
+    }
+
+    /**
+     * @param random    the random generator to draw the string from
+     * @param minLength minimum number of characters
+     * @param maxLength maximum number of characters
+     * @return a random matching string, or null if no matching string with a length in the given range was found
+     */
+    String generate(SeededRandom random, int minLength, int maxLength) {
+        int shortest = Math.max(minLength, dist[start]);
+        int longest = (int) Math.min((long) maxLength, (long) shortest + RANDOM_EXTRA_LENGTH);
+        for (int i = 0; i < MAX_ATTEMPTS && shortest <= longest; i++) {
+            String value = walk(random, minLength, maxLength, shortest + random.nextInt(longest - shortest + 1));
+            if (value != null) {
+                return value;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Walk from the start state, choosing any transition until the target length is reached and then following a
+     * shortest path to an accepting state
+     *
+     * @param random the random generator, or null to always choose the first transition and the lowest character
+     * @return the string, or null if the walk got stuck before reaching the minimum length
+     */
+    private String walk(SeededRandom random, int minLength, int maxLength, int targetLength) {
+        StringBuilder sb = new StringBuilder(targetLength + 4);
+        int state = start;
+        int[] candidates = new int[maxTransitions()];
+        for (int length = 0; ; length++) {
+            boolean canStop = accept[state] && length >= minLength;
+            if (canStop && length >= targetLength) {
+                return sb.toString();
+            }
+
+            int[] stateTargets = targets[state];
+            int count = 0;
+            for (int t = 0; t < stateTargets.length; t++) {
+                int next = stateTargets[t];
+                if ((long) length + 1 + dist[next] > maxLength || generated[state][t].isEmpty()) {
+                    continue;
+                }
+                //once the target length is reached, only move closer to an accepting state
+                if (length >= targetLength && length >= minLength && dist[next] >= dist[state]) {
+                    continue;
+                }
+                candidates[count++] = t;
+            }
+            if (count == 0) {
+                return canStop ? sb.toString() : null;
+            }
+
+            int t = random != null ? candidates[random.nextInt(count)] : firstChoice(state, candidates, count, length, minLength);
+            CharSet chars = generated[state][t];
+            if (random != null) {
+                sb.appendCodePoint(chars.get(random.nextInt(chars.size())));
+            } else {
+                CharSet alphanumeric = chars.intersect(CharSet.ALPHANUMERIC);
+                sb.appendCodePoint(!alphanumeric.isEmpty() ? alphanumeric.get(0) : chars.get(0));
+            }
+            state = stateTargets[t];
+        }
+    }
+
+    /**
+     * @return the transition of a deterministic walk: the first one that leads closest to an accepting state, or
+     *         the first one while the string is shorter than the minimum length
+     */
+    private int firstChoice(int state, int[] candidates, int count, int length, int minLength) {
+        int best = candidates[0];
+        for (int i = 1; i < count && length >= minLength; i++) {
+            if (dist[targets[state][candidates[i]]] < dist[targets[state][best]]) {
+                best = candidates[i];
+            }
+        }
+        return best;
+    }
+
+    private int maxTransitions() {
+        int max = 0;
+        for (int[] stateTargets : targets) {
+            max = Math.max(max, stateTargets.length);
+        }
+        return max;
+    }
+
+    /**
+     * @return the automaton without the states from which no accepting state can be reached
+     */
+    private PatternAutomaton trim() {
+        int[] stateDist = distances(accept, targets);
+        if (stateDist[start] == Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("pattern does not match any value");
+        }
+
+        //renumber the live states reachable from the start state
+        int[] ids = new int[accept.length];
+        Arrays.fill(ids, -1);
+        List<Integer> order = new ArrayList<>();
+        ids[start] = 0;
+        order.add(start);
+        for (int i = 0; i < order.size(); i++) {
+            for (int next : targets[order.get(i)]) {
+                if (stateDist[next] != Integer.MAX_VALUE && ids[next] < 0) {
+                    ids[next] = order.size();
+                    order.add(next);
+                }
+            }
+        }
+
+        boolean[] newAccept = new boolean[order.size()];
+        int[][] newTargets = new int[order.size()][];
+        CharSet[][] newLabels = new CharSet[order.size()][];
+        for (int i = 0; i < order.size(); i++) {
+            int s = order.get(i);
+            newAccept[i] = accept[s];
+            List<Integer> stateTargets = new ArrayList<>();
+            List<CharSet> stateLabels = new ArrayList<>();
+            for (int t = 0; t < targets[s].length; t++) {
+                if (ids[targets[s][t]] >= 0) {
+                    stateTargets.add(ids[targets[s][t]]);
+                    stateLabels.add(labels[s][t]);
+                }
+            }
+            newTargets[i] = toIntArray(stateTargets);
+            newLabels[i] = stateLabels.toArray(new CharSet[stateLabels.size()]);
+        }
+        return new PatternAutomaton(0, newAccept, newTargets, newLabels);
+    }
+
+    /**
+     * @return the length of the shortest path from each state to an accepting state, or
+     *         {@link Integer#MAX_VALUE} if there is none
+     */
+    private static int[] distances(boolean[] accept, int[][] targets) {
+        int n = accept.length;
+        List<List<Integer>> sources = new ArrayList<>(n);
+        for (int s = 0; s < n; s++) {
+            sources.add(new ArrayList<Integer>());
+        }
+        for (int s = 0; s < n; s++) {
+            for (int next : targets[s]) {
+                sources.get(next).add(s);
+            }
+        }
+
+        int[] dist = new int[n];
+        Arrays.fill(dist, Integer.MAX_VALUE);
+        Deque<Integer> queue = new ArrayDeque<>();
+        for (int s = 0; s < n; s++) {
+            if (accept[s]) {
+                dist[s] = 0;
+                queue.add(s);
+            }
+        }
+        while (!queue.isEmpty()) {
+            int s = queue.poll();
+            for (int source : sources.get(s)) {
+                if (dist[source] == Integer.MAX_VALUE) {
+                    dist[source] = dist[s] + 1;
+                    queue.add(source);
+                }
+            }
+        }
+        return dist;
+    }
+
+    private static int[] toIntArray(List<Integer> list) {
+        int[] array = new int[list.size()];
+        for (int i = 0; i < array.length; i++) {
+            array[i] = list.get(i);
+        }
+        return array;
+    }
+
+    ///////////////////////////////////////// regex syntax /////////////////////////////////////////
+
+    private abstract static class Node {
+    }
+
+    private static final class CharNode extends Node {
+        final CharSet chars;
+
+        CharNode(CharSet chars) {
+            this.chars = chars;
+        }
+    }
+
+    private static final class SeqNode extends Node {
+        final List<Node> items = new ArrayList<>();
+    }
+
+    private static final class AltNode extends Node {
+        final List<Node> branches = new ArrayList<>();
+    }
+
+    private static final class RepeatNode extends Node {
+        final Node item;
+        final int min;
+        final int max;      //-1 if unbounded
+
+        RepeatNode(Node item, int min, int max) {
+            this.item = item;
+            this.min = min;
+            this.max = max;
+        }
+    }
+
+    /**
+     * Recursive descent parser for the regular expressions of XML Schema part 2, appendix F
+     */
+    private static final class Parser {
+        private final String regex;
+        private int pos;
+
+        Parser(String regex) {
+            this.regex = regex;
+        }
+
+        Node parse() {
+            Node node = regExp();
+            if (pos < regex.length()) {
+                throw error("unexpected '" + regex.charAt(pos) + "'");
+            }
+            return node;
+        }
+
+        private IllegalArgumentException error(String message) {
+            return new IllegalArgumentException(message + " at " + pos + " in pattern " + regex);
+        }
+
+        private boolean more() {
+            return pos < regex.length();
+        }
+
+        private int peek() {
+            return regex.codePointAt(pos);
+        }
+
+        private int next() {
+            int cp = regex.codePointAt(pos);
+            pos += Character.charCount(cp);
+            return cp;
+        }
+
+        private void expect(char c) {
+            if (!more() || next() != c) {
+                throw error("expected '" + c + "'");
+            }
+        }
+
+        private Node regExp() {
+            AltNode alt = new AltNode();
+            alt.branches.add(branch());
+            while (more() && peek() == '|') {
+                pos++;
+                alt.branches.add(branch());
+            }
+            return alt.branches.size() == 1 ? alt.branches.get(0) : alt;
+        }
+
+        private Node branch() {
+            SeqNode seq = new SeqNode();
+            while (more() && peek() != '|' && peek() != ')') {
+                seq.items.add(piece());
+            }
+            return seq.items.size() == 1 ? seq.items.get(0) : seq;
+        }
+
+        private Node piece() {
+            Node atom = atom();
+            if (!more()) {
+                return atom;
+            }
+            switch (peek()) {
+                case '?':
+                    pos++;
+                    return new RepeatNode(atom, 0, 1);
+                case '*':
+                    pos++;
+                    return new RepeatNode(atom, 0, -1);
+                case '+':
+                    pos++;
+                    return new RepeatNode(atom, 1, -1);
+                case '{':
+                    pos++;
+                    int min = number();
+                    int max = min;
+                    if (more() && peek() == ',') {
+                        pos++;
+                        max = more() && peek() != '}' ? number() : -1;
+                    }
+                    expect('}');
+                    if (max != -1 && max < min) {
+                        throw error("invalid quantifier");
+                    }
+                    return new RepeatNode(atom, min, max);
+                default:
+                    return atom;
+            }
+        }
+
+        private int number() {
+            int begin = pos;
+            while (more() && peek() >= '0' && peek() <= '9') {
+                pos++;
+            }
+            if (begin == pos) {
+                throw error("expected a number");
+            }
+            try {
+                return Integer.parseInt(regex.substring(begin, pos));
+            } catch (NumberFormatException e) {
+                throw error("quantifier is too large");
+            }
+        }
+
+        private Node atom() {
+            int cp = next();
+            switch (cp) {
+                case '(':
+                    Node node = regExp();
+                    expect(')');
+                    return node;
+                case '[':
+                    return new CharNode(charClass());
+                case '.':
+                    return new CharNode(CharSet.DOT);
+                case '\\':
+                    return new CharNode(escape());
+                case '?':
+                case '*':
+                case '+':
+                case '{':
+                case '}':
+                case ')':
+                case ']':
+                    pos--;
+                    throw error("unexpected '" + (char) cp + "'");
+                default:
+                    return new CharNode(CharSet.of(cp, cp));
+            }
+        }
+
+        /**
+         * Parse a character class expression, after its opening bracket
+         */
+        private CharSet charClass() {
+            boolean isNegated = more() && peek() == '^';
+            if (isNegated) {
+                pos++;
+            }
+            CharSet set = CharSet.EMPTY;
+            boolean isFirst = true;
+            while (true) {
+                if (!more()) {
+                    throw error("unterminated character class");
+                }
+                int cp = peek();
+                if (cp == ']' && !isFirst) {
+                    pos++;
+                    return isNegated ? set.complement() : set;
+                }
+                if (cp == '-' && pos + 1 < regex.length() && regex.charAt(pos + 1) == '[' && !isFirst) {
+                    pos += 2;
+                    CharSet subtracted = charClass();
+                    expect(']');
+                    return (isNegated ? set.complement() : set).subtract(subtracted);
+                }
+                isFirst = false;
+
+                pos += Character.charCount(cp);
+                if (cp == '\\') {
+                    CharSet escaped = escape();
+                    if (!escaped.isSingle() || !isRangeNext()) {
+                        set = set.union(escaped);
+                        continue;
+                    }
+                    cp = escaped.get(0);
+                } else if (cp == '[') {
+                    throw error("unescaped '['");
+                }
+
+                int last = cp;
+                if (isRangeNext()) {
+                    pos++;
+                    last = next();
+                    if (last == '\\') {
+                        CharSet escaped = escape();
+                        if (!escaped.isSingle()) {
+                            throw error("invalid character range");
+                        }
+                        last = escaped.get(0);
+                    }
+                    if (last < cp) {
+                        throw error("invalid character range");
+                    }
+                }
+                set = set.union(CharSet.of(cp, last));
+            }
+        }
+
+        /**
+         * @return true if a '-' that starts the end of a character range follows
+         */
+        private boolean isRangeNext() {
+            return pos + 1 < regex.length() && regex.charAt(pos) == '-'
+                    && regex.charAt(pos + 1) != ']' && regex.charAt(pos + 1) != '[';
+        }
+
+        /**
+         * Parse an escape, after its backslash
+         */
+        private CharSet escape() {
+            if (!more()) {
+                throw error("incomplete escape");
+            }
+            int cp = next();
+            switch (cp) {
+                case 'n':
+                    return CharSet.of('\n', '\n');
+                case 'r':
+                    return CharSet.of('\r', '\r');
+                case 't':
+                    return CharSet.of('\t', '\t');
+                case '\\':
+                case '|':
+                case '.':
+                case '?':
+                case '*':
+                case '+':
+                case '(':
+                case ')':
+                case '{':
+                case '}':
+                case '-':
+                case '[':
+                case ']':
+                case '^':
+                    return CharSet.of(cp, cp);
+                case 's':
+                    return CharSet.SPACE;
+                case 'S':
+                    return CharSet.SPACE.complement();
+                case 'i':
+                    return CharSet.NAME_START;
+                case 'I':
+                    return CharSet.NAME_START.complement();
+                case 'c':
+                    return CharSet.NAME_CHAR;
+                case 'C':
+                    return CharSet.NAME_CHAR.complement();
+                case 'd':
+                    return CharSet.category("Nd"); //NON-NLS
+                case 'D':
+                    return CharSet.category("Nd").complement(); //NON-NLS
+                case 'w':
+                    return CharSet.WORD;
+                case 'W':
+                    return CharSet.WORD.complement();
+                case 'p':
+                case 'P':
+                    expect('{');
+                    int end = regex.indexOf('}', pos);
+                    if (end < 0) {
+                        throw error("unterminated category escape");
+                    }
+                    String name = regex.substring(pos, end);
+                    pos = end + 1;
+                    CharSet set = name.startsWith("Is") ? CharSet.block(name.substring(2)) //NON-NLS
+                            : CharSet.category(name);
+                    if (set == null) {
+                        throw error("unknown category " + name);
+                    }
+                    return cp == 'p' ? set : set.complement();
+                default:
+                    throw error("unknown escape '\\" + new String(Character.toChars(cp)) + "'");
+            }
+        }
+    }
+
+    ///////////////////////////////////////// construction /////////////////////////////////////////
+
+    /**
+     * A Thompson NFA with a single accepting state
+     */
+    private static final class Nfa {
+        final List<List<CharSet>> edgeSets = new ArrayList<>();
+        final List<List<Integer>> edgeTargets = new ArrayList<>();
+        final int start = newState();
+        int accept;
+
+        int newState() {
+            if (edgeSets.size() >= MAX_NFA_STATES) {
+                throw new IllegalArgumentException("pattern is too complex");
+            }
+            edgeSets.add(new ArrayList<CharSet>(2));
+            edgeTargets.add(new ArrayList<Integer>(2));
+            return edgeSets.size() - 1;
+        }
+
+        /**
+         * @param chars the characters of the edge, or null for an epsilon edge
+         */
+        void edge(int from, CharSet chars, int to) {
+            edgeSets.get(from).add(chars);
+            edgeTargets.get(from).add(to);
+        }
+
+        /**
+         * Add the states for the given node, starting from the given state
+         *
+         * @return the state reached at the end of the node
+         */
+        int build(Node node, int from) {
+            if (node instanceof CharNode) {
+                int to = newState();
+                edge(from, ((CharNode) node).chars, to);
+                return to;
+            } else if (node instanceof SeqNode) {
+                int current = from;
+                for (Node item : ((SeqNode) node).items) {
+                    current = build(item, current);
+                }
+                return current;
+            } else if (node instanceof AltNode) {
+                int end = newState();
+                for (Node branch : ((AltNode) node).branches) {
+                    int branchStart = newState();
+                    edge(from, null, branchStart);
+                    edge(build(branch, branchStart), null, end);
+                }
+                return end;
+            }
+
+            RepeatNode repeat = (RepeatNode) node;
+            int current = from;
+            for (int i = 0; i < repeat.min; i++) {
+                current = build(repeat.item, current);
+            }
+            if (repeat.max < 0) {
+                int loop = newState();
+                edge(current, null, loop);
+                edge(build(repeat.item, loop), null, loop);
+                return loop;
+            }
+            int end = newState();
+            for (int i = repeat.min; i < repeat.max; i++) {
+                edge(current, null, end);
+                current = build(repeat.item, current);
+            }
+            edge(current, null, end);
+            return end;
+        }
+
+        private void closure(BitSet states) {
+            Deque<Integer> stack = new ArrayDeque<>();
+            for (int s = states.nextSetBit(0); s >= 0; s = states.nextSetBit(s + 1)) {
+                stack.push(s);
+            }
+            while (!stack.isEmpty()) {
+                int s = stack.pop();
+                List<CharSet> sets = edgeSets.get(s);
+                for (int e = 0; e < sets.size(); e++) {
+                    int to = edgeTargets.get(s).get(e);
+                    if (sets.get(e) == null && !states.get(to)) {
+                        states.set(to);
+                        stack.push(to);
+                    }
+                }
+            }
+        }
+
+        /**
+         * Determinize over the elementary intervals of the character sets of the edges, and minimize the result
+         */
+        PatternAutomaton toDfa() {
+            TreeSet<Integer> boundarySet = new TreeSet<>();
+            for (List<CharSet> sets : edgeSets) {
+                for (CharSet set : sets) {
+                    if (set != null) {
+                        set.addBoundaries(boundarySet);
+                    }
+                }
+            }
+            int[] bounds = toIntArray(new ArrayList<>(boundarySet));
+            int classCount = Math.max(bounds.length - 1, 0);
+
+            //the elementary intervals of each edge
+            Map<CharSet, int[]> edgeClasses = new HashMap<>();
+            for (List<CharSet> sets : edgeSets) {
+                for (CharSet set : sets) {
+                    if (set != null && !edgeClasses.containsKey(set)) {
+                        edgeClasses.put(set, set.classes(bounds));
+                    }
+                }
+            }
+
+            Map<BitSet, Integer> ids = new HashMap<>();
+            List<BitSet> dfaStates = new ArrayList<>();
+            List<int[]> dfaTargets = new ArrayList<>();
+            BitSet initial = new BitSet();
+            initial.set(start);
+            closure(initial);
+            ids.put(initial, 0);
+            dfaStates.add(initial);
+
+            for (int i = 0; i < dfaStates.size(); i++) {
+                BitSet[] moves = new BitSet[classCount];
+                BitSet current = dfaStates.get(i);
+                for (int s = current.nextSetBit(0); s >= 0; s = current.nextSetBit(s + 1)) {
+                    List<CharSet> sets = edgeSets.get(s);
+                    for (int e = 0; e < sets.size(); e++) {
+                        if (sets.get(e) == null) {
+                            continue;
+                        }
+                        for (int c : edgeClasses.get(sets.get(e))) {
+                            if (moves[c] == null) {
+                                moves[c] = new BitSet();
+                            }
+                            moves[c].set(edgeTargets.get(s).get(e));
+                        }
+                    }
+                }
+
+                int[] stateTargets = new int[classCount];
+                for (int c = 0; c < classCount; c++) {
+                    if (moves[c] == null) {
+                        stateTargets[c] = -1;
+                        continue;
+                    }
+                    closure(moves[c]);
+                    Integer id = ids.get(moves[c]);
+                    if (id == null) {
+                        id = dfaStates.size();
+                        if (id >= MAX_DFA_STATES) {
+                            throw new IllegalArgumentException("pattern is too complex");
+                        }
+                        ids.put(moves[c], id);
+                        dfaStates.add(moves[c]);
+                    }
+                    stateTargets[c] = id;
+                }
+                dfaTargets.add(stateTargets);
+            }
+
+            boolean[] dfaAccept = new boolean[dfaStates.size()];
+            for (int i = 0; i < dfaAccept.length; i++) {
+                dfaAccept[i] = dfaStates.get(i).get(accept);
+            }
+            return minimize(dfaAccept, dfaTargets, bounds);
+        }
+
+        /**
+         * Merge the equivalent states of a DFA by partition refinement
+         */
+        private static PatternAutomaton minimize(boolean[] dfaAccept, List<int[]> dfaTargets, int[] bounds) {
+            int n = dfaAccept.length;
+            int classCount = Math.max(bounds.length - 1, 0);
+            int[] block = new int[n];
+            for (int s = 0; s < n; s++) {
+                block[s] = dfaAccept[s] ? 1 : 0;
+            }
+
+            int blockCount = 0;
+            while (true) {
+                Map<IntArrayKey, Integer> signatures = new HashMap<>();
+                int[] newBlock = new int[n];
+                for (int s = 0; s < n; s++) {
+                    int[] signature = new int[classCount + 1];
+                    signature[0] = block[s];
+                    int[] stateTargets = dfaTargets.get(s);
+                    for (int c = 0; c < classCount; c++) {
+                        signature[c + 1] = stateTargets[c] >= 0 ? block[stateTargets[c]] : -1;
+                    }
+                    IntArrayKey key = new IntArrayKey(signature);
+                    Integer id = signatures.get(key);
+                    if (id == null) {
+                        id = signatures.size();
+                        signatures.put(key, id);
+                    }
+                    newBlock[s] = id;
+                }
+                block = newBlock;
+                if (signatures.size() == blockCount) {
+                    break;
+                }
+                blockCount = signatures.size();
+            }
+
+            //one state per block, with the transitions to each target merged into one character set
+            boolean[] minAccept = new boolean[blockCount];
+            int[][] minTargets = new int[blockCount][];
+            CharSet[][] minLabels = new CharSet[blockCount][];
+            for (int s = 0; s < n; s++) {
+                int b = block[s];
+                if (minTargets[b] != null) {
+                    continue;
+                }
+                minAccept[b] = dfaAccept[s];
+                Map<Integer, CharSet.Builder> byTarget = new LinkedHashMap<>();
+                int[] stateTargets = dfaTargets.get(s);
+                for (int c = 0; c < classCount; c++) {
+                    if (stateTargets[c] < 0) {
+                        continue;
+                    }
+                    Integer target = block[stateTargets[c]];
+                    CharSet.Builder builder = byTarget.get(target);
+                    if (builder == null) {
+                        builder = new CharSet.Builder();
+                        byTarget.put(target, builder);
+                    }
+                    builder.add(bounds[c], bounds[c + 1] - 1);
+                }
+                minTargets[b] = new int[byTarget.size()];
+                minLabels[b] = new CharSet[byTarget.size()];
+                int t = 0;
+                for (Map.Entry<Integer, CharSet.Builder> entry : byTarget.entrySet()) {
+                    minTargets[b][t] = entry.getKey();
+                    minLabels[b][t++] = entry.getValue().build();
+                }
+            }
+            return new PatternAutomaton(block[0], minAccept, minTargets, minLabels);
+        }
+    }
+
+    private static final class IntArrayKey {
+        final int[] values;
+        final int hash;
+
+        IntArrayKey(int[] values) {
+            this.values = values;
+            this.hash = Arrays.hashCode(values);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof IntArrayKey && Arrays.equals(values, ((IntArrayKey) o).values);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    ///////////////////////////////////////// character sets /////////////////////////////////////////
+
+    /**
+     * An immutable set of code points, as sorted disjoint inclusive ranges
+     */
+    static final class CharSet {
+        static final int MAX_CODE_POINT = Character.MAX_CODE_POINT;
+
+        static final CharSet EMPTY = new CharSet(new int[0]);
+        static final CharSet PRINTABLE = of(0x21, 0x7e);
+        static final CharSet ALPHANUMERIC = new CharSet(new int[]{'0', '9', 'A', 'Z', 'a', 'z'});
+        static final CharSet XML_CHARS = new CharSet(new int[]{0x9, 0xa, 0xd, 0xd, 0x20, 0xd7ff, 0xe000, 0xfffd});
+        static final CharSet DOT = new CharSet(new int[]{0, 0x9, 0xb, 0xc, 0xe, MAX_CODE_POINT});
+        static final CharSet SPACE = new CharSet(new int[]{0x9, 0xa, 0xd, 0xd, 0x20, 0x20});
+
+        private static final ConcurrentMap<String, CharSet> CATEGORIES = new ConcurrentHashMap<>();
+
+        /**
+         * Unicode general categories by their one and two letter names
+         */
+        private static final Map<String, byte[]> CATEGORY_TYPES = new HashMap<>();
+
+        static {
+            category("Lu", Character.UPPERCASE_LETTER); //NON-NLS
+            category("Ll", Character.LOWERCASE_LETTER); //NON-NLS
+            category("Lt", Character.TITLECASE_LETTER); //NON-NLS
+            category("Lm", Character.MODIFIER_LETTER); //NON-NLS
+            category("Lo", Character.OTHER_LETTER); //NON-NLS
+            category("Mn", Character.NON_SPACING_MARK); //NON-NLS
+            category("Mc", Character.COMBINING_SPACING_MARK); //NON-NLS
+            category("Me", Character.ENCLOSING_MARK); //NON-NLS
+            category("Nd", Character.DECIMAL_DIGIT_NUMBER); //NON-NLS
+            category("Nl", Character.LETTER_NUMBER); //NON-NLS
+            category("No", Character.OTHER_NUMBER); //NON-NLS
+            category("Pc", Character.CONNECTOR_PUNCTUATION); //NON-NLS
+            category("Pd", Character.DASH_PUNCTUATION); //NON-NLS
+            category("Ps", Character.START_PUNCTUATION); //NON-NLS
+            category("Pe", Character.END_PUNCTUATION); //NON-NLS
+            category("Pi", Character.INITIAL_QUOTE_PUNCTUATION); //NON-NLS
+            category("Pf", Character.FINAL_QUOTE_PUNCTUATION); //NON-NLS
+            category("Po", Character.OTHER_PUNCTUATION); //NON-NLS
+            category("Zs", Character.SPACE_SEPARATOR); //NON-NLS
+            category("Zl", Character.LINE_SEPARATOR); //NON-NLS
+            category("Zp", Character.PARAGRAPH_SEPARATOR); //NON-NLS
+            category("Sm", Character.MATH_SYMBOL); //NON-NLS
+            category("Sc", Character.CURRENCY_SYMBOL); //NON-NLS
+            category("Sk", Character.MODIFIER_SYMBOL); //NON-NLS
+            category("So", Character.OTHER_SYMBOL); //NON-NLS
+            category("Cc", Character.CONTROL); //NON-NLS
+            category("Cf", Character.FORMAT); //NON-NLS
+            category("Co", Character.PRIVATE_USE); //NON-NLS
+            category("Cn", Character.UNASSIGNED); //NON-NLS
+            category("Cs", Character.SURROGATE); //NON-NLS
+        }
+
+        private static void category(String name, byte type) {
+            CATEGORY_TYPES.put(name, new byte[]{type});
+            String group = name.substring(0, 1);
+            byte[] types = CATEGORY_TYPES.get(group);
+            byte[] groupTypes = types != null ? Arrays.copyOf(types, types.length + 1) : new byte[1];
+            groupTypes[groupTypes.length - 1] = type;
+            CATEGORY_TYPES.put(group, groupTypes);
+        }
+
+        static final CharSet NAME_START = category("L").subtract(category("Lm")) //NON-NLS
+                .union(category("Nl")).union(of('_', '_')).union(of(':', ':')); //NON-NLS
+        static final CharSet NAME_CHAR = NAME_START.union(category("Mc")).union(category("Me")) //NON-NLS
+                .union(category("Mn")).union(category("Lm")).union(category("Nd")) //NON-NLS
+                .union(of('-', '.')).union(of(0xb7, 0xb7));
+        static final CharSet WORD = category("P").union(category("Z")).union(category("C")).complement(); //NON-NLS
+
+        /**
+         * lo0, hi0, lo1, hi1, ...
+         */
+        private final int[] ranges;
+
+        private final int size;
+
+        private CharSet(int[] ranges) {
+            this.ranges = ranges;
+            long count = 0;
+            for (int i = 0; i < ranges.length; i += 2) {
+                count += ranges[i + 1] - ranges[i] + 1;
+            }
+            this.size = (int) Math.min(count, Integer.MAX_VALUE);
+        }
+
+        static CharSet of(int lo, int hi) {
+            return new CharSet(new int[]{lo, hi});
+        }
+
+        /**
+         * @param name a one or two letter Unicode general category, e.g. <code>L</code> or <code>Nd</code>
+         * @return the characters of the category in the basic multilingual plane, or null for an unknown category
+         */
+        static CharSet category(String name) {
+            CharSet set = CATEGORIES.get(name);
+            if (set == null) {
+                final byte[] types = CATEGORY_TYPES.get(name);
+                if (types == null) {
+                    return null;
+                }
+                set = scan(new CharFilter() {
+                    @Override
+                    public boolean accept(int cp) {
+                        int type = Character.getType(cp);
+                        for (byte t : types) {
+                            if (t == type) {
+                                return true;
+                            }
+                        }
+                        return false;
+                    }
+                });
+                CATEGORIES.putIfAbsent(name, set);
+            }
+            return set;
+        }
+
+        /**
+         * @param name the name of a Unicode block, e.g. <code>BasicLatin</code>
+         * @return the characters of the block in the basic multilingual plane, or null for an unknown block
+         */
+        static CharSet block(String name) {
+            String key = "Is" + name; //NON-NLS
+            CharSet set = CATEGORIES.get(key);
+            if (set == null) {
+                final Character.UnicodeBlock block;
+                try {
+                    block = Character.UnicodeBlock.forName(name);
+                } catch (IllegalArgumentException e) {
+                    return null;
+                }
+                set = scan(new CharFilter() {
+                    @Override
+                    public boolean accept(int cp) {
+                        return Character.UnicodeBlock.of(cp) == block;
+                    }
+                });
+                CATEGORIES.putIfAbsent(key, set);
+            }
+            return set;
+        }
+
+        private interface CharFilter {
+            boolean accept(int cp);
+        }
+
+        private static CharSet scan(CharFilter filter) {
+            Builder builder = new Builder();
+            for (int cp = 0; cp <= 0xffff; cp++) {
+                if (filter.accept(cp)) {
+                    builder.add(cp, cp);
+                }
+            }
+            return builder.build();
+        }
+
+        boolean isEmpty() {
+            return ranges.length == 0;
+        }
+
+        boolean isSingle() {
+            return size == 1;
+        }
+
+        int size() {
+            return size;
+        }
+
+        /**
+         * @param index index of a code point in the set, in ascending order
+         * @return the code point
+         */
+        int get(int index) {
+            for (int i = 0; i < ranges.length; i += 2) {
+                int rangeSize = ranges[i + 1] - ranges[i] + 1;
+                if (index < rangeSize) {
+                    return ranges[i] + index;
+                }
+                index -= rangeSize;
+            }
+            throw new IndexOutOfBoundsException(String.valueOf(index));
+        }
+
+        boolean contains(int cp) {
+            int lo = 0;
+            int hi = ranges.length / 2 - 1;
+            while (lo <= hi) {
+                int mid = (lo + hi) >>> 1;
+                if (cp < ranges[2 * mid]) {
+                    hi = mid - 1;
+                } else if (cp > ranges[2 * mid + 1]) {
+                    lo = mid + 1;
+                } else {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        CharSet union(CharSet other) {
+            Builder builder = new Builder();
+            builder.addAll(this);
+            builder.addAll(other);
+            return builder.build();
+        }
+
+        CharSet complement() {
+            Builder builder = new Builder();
+            int next = 0;
+            for (int i = 0; i < ranges.length; i += 2) {
+                if (ranges[i] > next) {
+                    builder.add(next, ranges[i] - 1);
+                }
+                next = ranges[i + 1] + 1;
+            }
+            if (next <= MAX_CODE_POINT) {
+                builder.add(next, MAX_CODE_POINT);
+            }
+            return builder.build();
+        }
+
+        CharSet intersect(CharSet other) {
+            Builder builder = new Builder();
+            int i = 0;
+            int j = 0;
+            while (i < ranges.length && j < other.ranges.length) {
+                int lo = Math.max(ranges[i], other.ranges[j]);
+                int hi = Math.min(ranges[i + 1], other.ranges[j + 1]);
+                if (lo <= hi) {
+                    builder.add(lo, hi);
+                }
+                if (ranges[i + 1] < other.ranges[j + 1]) {
+                    i += 2;
+                } else {
+                    j += 2;
+                }
+            }
+            return builder.build();
+        }
+
+        CharSet subtract(CharSet other) {
+            return intersect(other.complement());
+        }
+
+        void addBoundaries(TreeSet<Integer> boundaries) {
+            for (int i = 0; i < ranges.length; i += 2) {
+                boundaries.add(ranges[i]);
+                boundaries.add(ranges[i + 1] + 1);
+            }
+        }
+
+        /**
+         * @param bounds the sorted boundaries of the elementary intervals, including the ones of this set
+         * @return the indexes of the elementary intervals that make up this set
+         */
+        int[] classes(int[] bounds) {
+            List<Integer> classes = new ArrayList<>();
+            for (int i = 0; i < ranges.length; i += 2) {
+                int first = Arrays.binarySearch(bounds, ranges[i]);
+                int last = Arrays.binarySearch(bounds, ranges[i + 1] + 1);
+                for (int c = first; c < last; c++) {
+                    classes.add(c);
+                }
+            }
+            return toIntArray(classes);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof CharSet && Arrays.equals(ranges, ((CharSet) o).ranges);
+        }
+
+        @Override
+        public int hashCode() {
+            return Arrays.hashCode(ranges);
+        }
+
+        /**
+         * Collects ranges in any order and merges them
+         */
+        static final class Builder {
+            private int[] ranges = new int[16];
+            private int length;
+
+            void add(int lo, int hi) {
+                if (length == ranges.length) {
+                    ranges = Arrays.copyOf(ranges, length * 2);
+                }
+                ranges[length++] = lo;
+                ranges[length++] = hi;
+            }
+
+            void addAll(CharSet set) {
+                for (int i = 0; i < set.ranges.length; i += 2) {
+                    add(set.ranges[i], set.ranges[i + 1]);
+                }
+            }
+
+            CharSet build() {
+                int count = length / 2;
+                long[] packed = new long[count];
+                for (int i = 0; i < count; i++) {
+                    packed[i] = ((long) ranges[2 * i] << 32) | (ranges[2 * i + 1] & 0xffffffffL);
+                }
+                Arrays.sort(packed);
+                int[] merged = new int[length];
+                int n = 0;
+                for (long range : packed) {
+                    int lo = (int) (range >>> 32);
+                    int hi = (int) range;
+                    if (n > 0 && lo <= merged[n - 1] + 1) {
+                        merged[n - 1] = Math.max(merged[n - 1], hi);
+                    } else {
+                        merged[n++] = lo;
+                        merged[n++] = hi;
+                    }
+                }
+                return new CharSet(Arrays.copyOf(merged, n));
+            }
+        }
+    }
+}
@@ -0,0 +1,1190 @@
+/*
+ * Copyright (c) 2010-2014 Stratumsoft Technologies Pvt. Ltd.
+ *
+ * This file (PlanCompiler.java) is part of xsd2xml.
+ *
+ * xsd2xml is a Java program to generate XML instances from an XML Schema document
+ *
+ * xsd2xml is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * xsd2xml is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; If not, see <http://www.gnu.org/licenses/>.
+ *
+ * To use xsd2xml in your non-GPL licensed software, contact Stratumsoft Technologies
+ * support at support@stratumsoft.com or visit http://www.stratumsoft.com to obtain
+ * a commercial license.
+ */
+
+package com.stratumsoft.xmlgen;
+
+import com.stratumsoft.xmlgen.GenerationPlan.AttributeNode;
+import com.stratumsoft.xmlgen.GenerationPlan.ChoiceNode;
+import com.stratumsoft.xmlgen.GenerationPlan.ElementNode;
+import com.stratumsoft.xmlgen.GenerationPlan.RepeatNode;
+import com.stratumsoft.xmlgen.SimpleTypeValues.ValueGenerator;
+import org.apache.commons.lang.StringUtils;
+import org.apache.ws.commons.schema.*;
+import org.apache.ws.commons.schema.constants.Constants;
+import org.apache.ws.commons.schema.utils.XmlSchemaRef;
+import org.dom4j.DocumentFactory;
+import org.dom4j.Element;
+import org.dom4j.Namespace;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.xml.namespace.QName;
+import java.text.MessageFormat;
+import java.util.*;
+
+/**
+ * Walks the schema for a root element and compiles it into a {@link GenerationPlan}. The traversal state is kept
+ * in the {@link GenerationContext} of the call, so a compiler instance must not be shared between calls.
+ *
+ * @author murakris@stratumsoft.com
+ * @since 1.0 (Feb 22, 2010)
+ */
+class PlanCompiler {
+
+    private static final Logger logger = LoggerFactory.getLogger(PlanCompiler.class);
+
+    private final XmlGenEngine engine;
+
+    private final SchemaRegistry registry;
+
+    private final GenerationContext ctx;
+
+    private final XmlGenOptions options;
+
+    private final ValueProviders values;
+
+    private final SimpleTypeValues simpleTypeValues;
+
+    private final DocumentFactory factory = DocumentFactory.getInstance();
+
+    /**
+     * @param engine the engine whose schema collection is compiled
+     * @param ctx    state of the current call
+     */
+    PlanCompiler(XmlGenEngine engine, GenerationContext ctx) {
+        this.engine = engine;
+        this.registry = engine.getRegistry();
+        this.ctx = ctx;
+        this.options = ctx.getOptions();
+        this.values = engine.getValueProviders();
+        this.simpleTypeValues = engine.getSimpleTypeValues();
+    }
+
+    /**
+     * Compile the plan for the given global element
+     *
+     * @param elName qname of the element for which the xml structure must be generated
+     * @return the compiled plan
+     */
+    GenerationPlan compile(QName elName) {
+        XmlSchemaElement schEl = registry.getElement(elName);
+        if (schEl == null) {
+            String err = MessageFormat.format("Could not get schema element for QName: {0}", elName);
+            logger.error(err);
+            throw new RuntimeException(err);
+        }
+
+        return new GenerationPlan(elName, handleElement(schEl), values);
+    }
+
+    /**
+     * Compile the attributes and content of the given complex type into an element node
+     *
+     * @param complexType the type to process
+     * @param name        name of the element node, or null for a nameless node
+     * @return the node holding the type's attributes and content
+     */
+    ElementNode compileType(XmlSchemaComplexType complexType, org.dom4j.QName name) {
+        ElementNode node = new ElementNode(name);
+        handleComplexType(complexType, node);
+        node.freeze();
+        return node;
+    }
+
+    private ElementNode createNodeFromSchemaElem(XmlSchemaElement schEl) {
+        ElementNode el = null;
+        if (schEl != null) {
+            el = new ElementNode(createDom4jQName(schEl.getQName(), registry.getElementForm(schEl)));
+        }
+        return el;
+    }
+
+    private org.dom4j.QName createDom4jQName(QName qname, XmlSchemaForm form) {
+        org.dom4j.QName dom4jQname = null;
+
+        if (qname != null) {
+            String nsUri = qname.getNamespaceURI();
+            Namespace ns = null;
+            if (StringUtils.isNotEmpty(nsUri)) {
+                if (form == XmlSchemaForm.QUALIFIED) {
+                    ns = new Namespace(engine.getPrefix(nsUri, ctx), nsUri);
+                }
+            }
+            dom4jQname = new org.dom4j.QName(qname.getLocalPart(), ns);
+        }
+        return dom4jQname;
+    }
+
+    /**
+     * Return the maximum number of element's to generate based on the element's minOccurs, maxOccurs
+     * and max repeating elements option
+     *
+     * @param minOccurs
+     * @param maxOccurs
+     * @return
+     */
+    private long getMaxElementsToGenerate(long minOccurs, long maxOccurs) {
+        int maxRpt = options.getMaxRepeatingElements();
+
+        return options.isGenOptionalElements() ?
+                Math.max(minOccurs, Math.min(maxRpt, maxOccurs)) : minOccurs;
+    }
+
+
+    /**
+     * Handle the XmlSchema Element by processing its type and returning a plan node equivalent
+     * for it to be added to the parent node
+     *
+     * @param schEl the xml schema element to process
+     * @return the fully constructed element node, or null if the element is a recursion cut point
+     */
+    private ElementNode handleElement(XmlSchemaElement schEl) {
+
+        XmlSchemaRef<XmlSchemaElement> ref = schEl.getRef();
+        XmlSchemaElement refEl = ref.getTarget();
+        if (refEl != null) {
+            logger.debug("Handling schema element reference {}", refEl.getName());
+
+            schEl = refEl;
+        }
+
+        //check for recursivity of this element
+        XmlSchemaType type = schEl.getSchemaType();
+        boolean isComplex = type instanceof XmlSchemaComplexType;
+
+        if (isComplex && !ctx.enterType((XmlSchemaComplexType) type)) {
+            logger.debug("recursive type exceeded max recursive depth on this path; Schema el= {}", schEl.getQName());
+            ctx.recursionCutoffs++;
+            return null;
+        }
+
+        SchemaProfiler.Recorder profile = ctx.profile;
+        if (profile != null) {
+            profile.enter(schEl, type);
+        }
+
+        //keep track of the current schema we are working with
+        //this is required when processing local attributes whose form value is set to 'qualified'
+        XmlSchema sch = registry.getSchemaByTargetNamespace(schEl.getQName().getNamespaceURI());
+
+        //if the schema for this element is null, it could be a local element otherwise keep track of it
+        if (sch != null) {
+            logger.trace("---> Pushed schema with tns\\: {} into stack", sch.getTargetNamespace());
+            ctx.schemaStack.push(sch);
+        }
+
+        //create a plan node for this schema element
+        ElementNode node = createNodeFromSchemaElem(schEl);
+
+        //process the schema type for this element
+        if (type != null) {
+            if (type instanceof XmlSchemaSimpleType) {
+                logger.debug("Handling simple type: {}",
+                        type.getName() != null ? type.getName() : "anonymous");
+                handleSimpleType((XmlSchemaSimpleType) type, node);
+
+            } else if (type instanceof XmlSchemaComplexType) {
+                logger.debug("Handling complex type: {}", type.getName() != null ? type.getName() : "anonymous"); //NON-NLS
+                XmlSchemaComplexType complexType = (XmlSchemaComplexType) type;
+
+                if (complexType.isAbstract()) {
+                    //cannot instantiate an abstract type - so search for another type that
+                    //'extends' it
+                    //todo: handle abstract complex type
+                    logger.warn("Cannot instantiate an abstract complext type!");
+                } else if (profile == null && ctx.isRecursionStateKnown()) {
+                    handleComplexTypeMemoized(complexType, node);
+                } else {
+                    handleComplexType(complexType, node);
+                }
+            }
+        }
+
+        //like an attribute, an element with a fixed value always gets it, and its default is its sample value
+        if (hasSimpleContent(type)) {
+            String fixedVal = schEl.getFixedValue();
+            String defVal = schEl.getDefaultValue();
+            if (StringUtils.isNotEmpty(fixedVal)) {
+                logger.debug("using fixed value {} for element: {}", fixedVal, schEl.getName());
+                node.setText(fixedVal, null);
+            } else if (StringUtils.isNotEmpty(defVal) && options.getDefVals() == DefaultValues.DEFAULT) {
+                logger.debug("using default value {} for element: {}", defVal, schEl.getName());
+                node.setText(defVal, null);
+            }
+        }
+
+        if (!ctx.schemaStack.isEmpty()) {
+            XmlSchema sc = ctx.schemaStack.pop();
+            logger.trace("<--- Popped schema with tns: {} from stack", sc.getTargetNamespace());
+        }
+
+        if (isComplex) {
+            ctx.exitType((XmlSchemaComplexType) type);
+        }
+
+        if (profile != null) {
+            profile.exit();
+        }
+        return node;
+    }
+
+    /**
+     * @return true if the elements of the given type have a text value, which a fixed or default value can replace
+     */
+    private static boolean hasSimpleContent(XmlSchemaType type) {
+        return type instanceof XmlSchemaSimpleType || (type instanceof XmlSchemaComplexType
+                && ((XmlSchemaComplexType) type).getContentModel() instanceof XmlSchemaSimpleContent);
+    }
+
+    /**
+     * Add the element to the parent node. The min number of times to add it is determined by the element's minOccurs
+     * value and the max no. of times to add it is determined by the minimum of the max repeating elements option
+     * and the element's maxOccurs value. The element is added once along with its repeat count; the copies are only
+     * created when the plan is replayed
+     * <p/>
+     * Note: the element may again be added multiple times based on its container minOccurs and maxOccurs values
+     *
+     * @param parent
+     * @param elemToAdd
+     * @param schElemOfElemToAdd
+     */
+    private void addElement(ElementNode parent, ElementNode elemToAdd, XmlSchemaElement schElemOfElemToAdd) {
+
+        long minCount = schElemOfElemToAdd.getMinOccurs();
+        long maxCount = schElemOfElemToAdd.getMaxOccurs();
+
+        //determine how many times to add this element to the parent
+        if (parent != null) {
+
+            if (maxCount > 0) {
+                long maxEls = getMaxElementsToGenerate(minCount, maxCount);
+
+                if (maxEls > 0) {
+                    logger.trace("Adding element: {} to node: {} {} times", new Object[]{elemToAdd.name, parent.name, maxEls});
+                    elemToAdd.minCount = minCount;
+                    elemToAdd.count = maxEls;
+                    elemToAdd.maxCount = maxCount;
+                    elemToAdd.isCommentOptional = options.isGenCommentsForParticles();
+                    parent.addElement(elemToAdd);
+                }
+            }
+        }
+
+
+    }
+
+    /**
+     * Handle the passed in complex type. this involves processing any attributes defined in this type
+     * and processing the content model (simple/complex) if any. If content model is absent, process
+     * any particle that is part of this complex type
+     *
+     * @param complexType
+     * @param node
+     */
+    private void handleComplexType(XmlSchemaComplexType complexType, ElementNode node) {
+
+        //first process the attributes for this type
+        handleComplexTypeAttributes(node, complexType);
+
+        //process the content type for this complex type
+        //content model can be complex or simple content
+        XmlSchemaContentModel model = complexType.getContentModel();
+        if (model != null) {
+            if (model instanceof XmlSchemaSimpleContent) {
+                logger.debug("Handling simple content model for complex type {}", complexType.getName());
+                handleSimpleContent(((XmlSchemaSimpleContent) model), node);
+            } else {
+                logger.debug("Handling complex content model for complex type {}", complexType.getName());
+                handleComplexContent(((XmlSchemaComplexContent) model), node);
+            }
+        } else {
+            //check if content is a particle instead
+            XmlSchemaParticle particle = complexType.getParticle();
+            if (particle != null) {
+                logger.debug("handling complex type particle");
+                handleParticle(particle, node);
+            } else {
+                logger.debug("complex type has no particle or content model!");
+            }
+        }
+    }
+
+    /**
+     * Handle the complex type of an element, splicing in the fragment compiled for the type at an earlier occurrence
+     * in the same state if there is one. A fragment that looked up a prefix generated in this run is only reused
+     * within the run, since another run may generate other prefixes.
+     *
+     * @param complexType the type of the element, entered on the current path
+     * @param node        the node of the element
+     */
+    private void handleComplexTypeMemoized(XmlSchemaComplexType complexType, ElementNode node) {
+        FragmentCache.Key key = FragmentCache.key(complexType, ctx.schemaStack.peek(),
+                ctx.getRecursionState(complexType));
+        FragmentCache shared = ctx.sharedFragments;
+
+        FragmentCache.Fragment fragment = shared != null ? shared.get(key) : null;
+        if (fragment == null) {
+            fragment = ctx.fragments.get(key);
+        }
+        if (fragment != null) {
+            logger.trace("Reusing compiled fragment of complex type {}", complexType.getName());
+            fragment.applyTo(node);
+            ctx.recursionCutoffs += fragment.cutoffs;
+            ctx.firstChoices += fragment.firstChoices;
+            return;
+        }
+
+        int cutoffs = ctx.recursionCutoffs;
+        int firstChoices = ctx.firstChoices;
+        int prefixLookups = ctx.generatedPrefixLookups;
+        handleComplexType(complexType, node);
+
+        FragmentCache cache = shared != null && ctx.generatedPrefixLookups == prefixLookups ? shared : ctx.fragments;
+        cache.put(key, node, ctx.recursionCutoffs - cutoffs, ctx.firstChoices - firstChoices).applyTo(node);
+    }
+
+    /**
+     * Handle the complex type attributes - this can be a straight attribute or an attribute group reference
+     *
+     * @param node
+     * @param complexType
+     */
+    private void handleComplexTypeAttributes(ElementNode node, XmlSchemaComplexType complexType) {
+        if (complexType != null) {
+            List<XmlSchemaAttributeOrGroupRef> attributes = complexType.getAttributes();
+            if (attributes != null) {
+                for (XmlSchemaAttributeOrGroupRef o : attributes) {
+                    if (o instanceof XmlSchemaAttribute) {
+                        XmlSchemaAttribute attr = (XmlSchemaAttribute) o;
+                        logger.debug("handling attribute {}", attr.getName());
+                        handleAttribute(attr, node);
+                    } else if (o instanceof XmlSchemaAttributeGroupRef) {
+                        XmlSchemaAttributeGroupRef attrGrpRef = (XmlSchemaAttributeGroupRef) o;
+                        logger.debug("handling attribute group ref");
+                        handleAttributeGroupRef(attrGrpRef, node);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Handle the complex contentModel for the complex type. This can be either an extension or restriction
+     *
+     * @param contentModel
+     * @param node
+     */
+    private void handleComplexContent(XmlSchemaComplexContent contentModel, ElementNode node) {
+        if (contentModel != null) {
+
+            XmlSchemaContent content = contentModel.getContent();
+            if (content != null) {
+
+                if (content instanceof XmlSchemaComplexContentExtension) {
+                    logger.debug("complex type content model content is 'extension'");
+                    handleComplexContentExtension((XmlSchemaComplexContentExtension) content, node);
+
+                } else if (content instanceof XmlSchemaComplexContentRestriction) {
+                    logger.debug("complex type content model content is 'restriction'");
+                    handleComplexContentRestriction((XmlSchemaComplexContentRestriction) content, node);
+
+                }
+            } else {
+                logger.warn("Complex type content model content is null!");
+            }
+        }
+    }
+
+    /**
+     * Handle complex type complex restriction model
+     *
+     * @param restriction
+     * @param node
+     */
+    private void handleComplexContentRestriction(XmlSchemaComplexContentRestriction restriction, ElementNode node) {
+        logger.debug("Handling complex content restriction...");
+
+        if (restriction != null) {
+            XmlSchemaParticle particle = restriction.getParticle();
+            if (particle != null) {
+                handleParticle(particle, node);
+            }
+
+            //attributes from base type only need to be specified if they are being restricted in some way.
+            //so to generate all the attributes, we have to process the parent complex types and generate all the
+            //attributes they have, unless they are being restricted in some way in this restriction, in which
+            //case the restricted attr should be generated
+
+            QName baseTypeName = restriction.getBaseTypeName();
+            XmlSchemaType type = registry.getType(baseTypeName);
+
+            handleComplexTypeAttributes(node, (XmlSchemaComplexType) type);
+
+            List<XmlSchemaAttributeOrGroupRef> attributeOrGroupRefs = restriction.getAttributes();
+            for (XmlSchemaAttributeOrGroupRef o : attributeOrGroupRefs) {
+                if (o instanceof XmlSchemaAttribute) {
+                    XmlSchemaAttribute attribute = (XmlSchemaAttribute) o;
+                    addRestrictedAttributesToElement(node, attribute);
+
+                } else if (o instanceof XmlSchemaAttributeGroupRef) {
+                    XmlSchemaAttributeGroupRef groupRef = (XmlSchemaAttributeGroupRef) o;
+                    XmlSchemaRef<XmlSchemaAttributeGroup> ref = groupRef.getRef();
+
+                    XmlSchemaAttributeGroup attrGrp = ref.getTarget();
+
+                    if (attrGrp != null) {
+                        List<XmlSchemaAttributeGroupMember> grpMembers = attrGrp.getAttributes();
+                        if (grpMembers != null) {
+                            for (XmlSchemaAttributeGroupMember grpMember : grpMembers) {
+                                if (grpMember instanceof XmlSchemaAttribute) {
+                                    addRestrictedAttributesToElement(node, (XmlSchemaAttribute) grpMember);
+                                }
+                            }
+                        }
+                    }//end if
+                }//end else if
+            }//end for
+        }//end if
+
+    }
+
+    private void addRestrictedAttributesToElement(ElementNode elementToAddOn, XmlSchemaAttribute attribute) {
+        logger.debug("Adding restricted attribute: {}", attribute.getName());
+        QName attrQName = attribute.getQName();
+        if (attrQName != null) {
+            org.dom4j.QName dom4jQName = createDom4jQName(attrQName, attribute.getForm());
+            AttributeNode attr = elementToAddOn.attribute(dom4jQName);
+            if (attr != null) {
+                //already exists, so remove it, so we can add the restricted version of it
+                logger.debug("Removing existing attribute\\: {} to add the restricted attribute", dom4jQName.getName());
+                elementToAddOn.removeAttribute(attr);
+            }
+
+            elementToAddOn.addAttribute(new AttributeNode(dom4jQName, "", null));
+        }
+
+    }
+
+
+    /**
+     * Handle complex type complex content extension model
+     *
+     * @param extension
+     * @param node
+     */
+    private void handleComplexContentExtension(XmlSchemaComplexContentExtension extension, ElementNode node) {
+
+        logger.debug("Handling complex content extension...");
+
+        if (extension != null) {
+            //handle the attributes and attributeRef
+            List<XmlSchemaAttributeOrGroupRef> attributeOrGroupRefs = extension.getAttributes();
+            processAttributeCollection(node, attributeOrGroupRefs);
+
+            QName baseTypeName = extension.getBaseTypeName();
+            if (baseTypeName != null) {
+                logger.debug("Processing complex content base type: {}", baseTypeName);
+                XmlSchemaType type = registry.getType(baseTypeName);
+                handleComplexType((XmlSchemaComplexType) type, node);
+            } else {
+                logger.warn("Complex content base type is null!");
+            }
+
+            //handle the complex content particle
+            XmlSchemaParticle particle = extension.getParticle();
+            handleParticle(particle, node);
+
+        }
+
+    }
+
+    /**
+     * Handle the given xml schema particle - the particle can be all, any, choice, sequence,
+     * group ref or an element
+     *
+     * @param particle
+     * @param node
+     */
+    private void handleParticle(XmlSchemaParticle particle, ElementNode node) {
+
+        if (particle != null) {
+            if (particle instanceof XmlSchemaAll) {
+                logger.debug("handling particle 'all'...");
+                handleParticleAll(((XmlSchemaAll) particle), node);
+
+            } else if (particle instanceof XmlSchemaAny) {
+                handleParticleAny(((XmlSchemaAny) particle), node);
+                logger.debug("handling particle 'any'...");
+
+            } else if (particle instanceof XmlSchemaChoice) {
+                logger.debug("handling particle 'choice'...");
+                handleParticleChoice(((XmlSchemaChoice) particle), node);
+
+            } else if (particle instanceof XmlSchemaSequence) {
+                logger.debug("handling particle 'sequence'...");
+                handleParticleSequence(((XmlSchemaSequence) particle), node);
+
+            } else if (particle instanceof XmlSchemaGroupRef) {
+                logger.debug("handling particle 'GroupRef'...");
+                handleParticleGroupRef(((XmlSchemaGroupRef) particle), node);
+
+            } else if (particle instanceof XmlSchemaElement) {
+                XmlSchemaElement schEl = (XmlSchemaElement) particle;
+                logger.debug("handling particle 'element' {}", schEl.getName());
+                ElementNode elem = handleElement(schEl);
+                if (elem != null) {
+                    addElement(node, elem, schEl);
+                }
+            }
+
+        } else {
+            logger.warn("Schema particle is null!");
+        }
+    }
+
+    private void handleParticleGroupRef(XmlSchemaGroupRef groupRef, ElementNode node) {
+        if (groupRef != null) {
+            long minCount = groupRef.getMinOccurs();
+            long maxCount = groupRef.getMaxOccurs();
+
+            logger.debug("Group reference minOccurs = {} and maxOccurs = {}", minCount, maxCount);
+            QName refName = groupRef.getRefName();
+            XmlSchemaGroup group = registry.getGroup(refName);
+            if (group != null) {
+                logger.debug("Processing group with name: {}", refName);
+
+                XmlSchemaGroupParticle grpParticle = group.getParticle();
+
+                handleParticleRepeated(grpParticle, minCount, maxCount, node);
+            }
+        }
+    }
+
+    /**
+     * Handle the choice particle - Depending on the option {@link XmlGenOptions#getChoiceOptions()} set,
+     * either the first child particle or a random particle within choice will be processed.
+     * Other elements may be generated as comments if the option
+     * {@link XmlGenOptions#isGenChoiceOptionsAsComments()} is set to do so.
+     * <p/>
+     * For a random choice, every branch is compiled and one of them is picked each time the plan is replayed
+     *
+     * @param choice
+     * @param node
+     */
+    private void handleParticleChoice(XmlSchemaChoice choice, ElementNode node) {
+        if (choice != null) {
+
+            List<XmlSchemaObject> choiceItems = choice.getItems();
+            int count = choiceItems.size();
+            if (count > 0) {
+                long minOccurs = choice.getMinOccurs();
+                long maxOccurs = choice.getMaxOccurs();
+                logger.debug("Choice minOccurs = {} maxOccurs = {}", minOccurs, maxOccurs);
+
+                long maxCount = getMaxElementsToGenerate(minOccurs, maxOccurs);
+                logger.debug("Adding choice particle contents: {}  times", maxCount);
+
+                if (options.getChoiceOptions() == ChoiceOptions.RANDOM && count > 1) {
+                    //the recursion state is scoped to the path, so every branch starts from the same state
+                    ChoiceNode choiceNode = new ChoiceNode();
+                    for (XmlSchemaObject item : choiceItems) {
+                        ElementNode branch = new ElementNode(null);
+                        handleChoiceBranch(choiceItems, (XmlSchemaParticle) item, minOccurs, maxOccurs, maxCount,
+                                branch);
+                        choiceNode.branches.add(branch.content);
+                    }
+                    node.addChoice(choiceNode);
+                } else {
+                    handleChoiceBranch(choiceItems, (XmlSchemaParticle) choiceItems.get(0), minOccurs, maxOccurs,
+                            maxCount, node);
+                    ctx.firstChoices++;
+                }
+            }
+
+        }
+    }
+
+    private void handleChoiceBranch(List<XmlSchemaObject> choiceItems, XmlSchemaParticle childParticle,
+                                    long minOccurs, long maxOccurs, long maxCount, ElementNode node) {
+        ElementNode target = isRepeated(maxOccurs, maxCount) ? new ElementNode(null) : node;
+        if (maxCount > 0) {
+
+            handleParticle(childParticle, target);
+
+            //generate other elements as comments?
+            if (options.isGenChoiceOptionsAsComments()) {
+                logger.trace("Adding other elements in choice as comments");
+                for (XmlSchemaObject obj : choiceItems) {
+                    if (obj != childParticle) {     //already handled
+                        //generating only if the other choice is an element!
+                        if (obj instanceof XmlSchemaElement) {
+                            ElementNode optEl = handleElement((XmlSchemaElement) obj);
+                            if (optEl != null) {
+                                logger.trace("Adding element: {} as comment to choice compositor", optEl.name);
+
+                                String comment = GenerationPlan.render(optEl, factory, values,
+                                        ctx.newCompileRandom()).asXML();
+                                comment = comment.replace("--", "- -");  // -- is invalid within a comment, so escape it
+                                target.addComment(comment);
+                            }
+                        }
+                    }
+                }
+
+            }
+        }
+        if (target != node) {
+            node.addRepeat(new RepeatNode(minOccurs, maxOccurs, maxCount, target.content));
+        }
+    }
+
+    /**
+     * A particle that may occur more than once gets a repeat node even if it is generated once, so that its count can
+     * be changed when the plan is resized
+     */
+    private static boolean isRepeated(long maxOccurs, long times) {
+        return times > 1 || (times == 1 && maxOccurs > 1);
+    }
+
+    /**
+     * Handle the particle the given number of times. A repeated particle is compiled only once and its content is
+     * shared by all the repetitions
+     *
+     * @param particle  the particle to handle
+     * @param minOccurs the minOccurs of the particle or of its container
+     * @param maxOccurs the maxOccurs of the particle or of its container
+     * @param node      the node to add the content to
+     */
+    private void handleParticleRepeated(XmlSchemaParticle particle, long minOccurs, long maxOccurs, ElementNode node) {
+        long times = getMaxElementsToGenerate(minOccurs, maxOccurs);
+        logger.debug("handling particle {} times", times);
+
+        if (isRepeated(maxOccurs, times)) {
+            ElementNode once = new ElementNode(null);
+            handleParticle(particle, once);
+            node.addRepeat(new RepeatNode(minOccurs, maxOccurs, times, once.content));
+        } else if (times == 1) {
+            handleParticle(particle, node);
+        }
+    }
+
+    /**
+     * Handle the 'any' particle - since any element can be present, this just adds a commented
+     * element if the gen comments option is set
+     *
+     * @param any
+     * @param node
+     */
+    private void handleParticleAny(XmlSchemaAny any, ElementNode node) {
+        if (any != null) {
+            if (options.isGenCommentsForParticles()) {
+                node.addComment("Any element can be present here");
+
+                Element el = factory.createElement("SomeElement");
+                node.addComment(el.asXML());
+            }
+        }
+    }
+
+    /**
+     * Handle the 'sequence' particle - sequence can inturn contain XmlSchemaElement, XmlSchemaGroupRef, XmlSchemaChoice,
+     * XmlSchemaSequence, or XmlSchemaAny.
+     *
+     * @param seq
+     * @param node
+     */
+    private void handleParticleSequence(XmlSchemaSequence seq, ElementNode node) {
+        if (seq != null) {
+            List<XmlSchemaSequenceMember> seqItems = seq.getItems();
+
+            if (seqItems.size() > 0) {
+
+                if (options.isGenCommentsForParticles()) {
+                    node.addComment("sequence");
+                }
+
+                for (XmlSchemaSequenceMember seqMember : seqItems) {
+                    logger.trace("Processing sequence collection particle");
+
+                    if (seqMember instanceof XmlSchemaParticle) {
+
+                        long min = seq.getMinOccurs();
+                        long max = seq.getMaxOccurs();
+                        logger.debug("sequence particle minOccurs = {}; maxOccurs = {}", min, max);
+
+                        handleParticleRepeated((XmlSchemaParticle) seqMember, min, max, node);
+
+                    } else {
+                        logger.error("sequence collection particle is not an instanceof XmlSchemaParticle!");
+                    }
+                }
+            } else {
+                logger.warn("sequence compositor is empty!");
+            }
+        }
+    }
+
+    /**
+     * Handle the 'all' particle
+     *
+     * @param all
+     * @param node
+     */
+    private void handleParticleAll(XmlSchemaAll all, ElementNode node) {
+        if (all != null) {
+            List<XmlSchemaElement> allItems = all.getItems();
+
+            if (options.isGenCommentsForParticles()) {
+                //add a comment to indicate that this is an 'all' particle
+                node.addComment("following elements can appear in any order (all)");
+            }
+
+            logger.debug("Handling [{}] elements in 'all' particle", allItems.size());
+            for (XmlSchemaElement schEl : allItems) {
+                logger.trace("Processing element {}", schEl.getName());
+
+                ElementNode elem = handleElement(schEl);
+                if (elem != null) {
+                    addElement(node, elem, schEl);
+                }
+            }
+
+        }
+    }
+
+
+    /**
+     * Handle the complex type simple content
+     *
+     * @param contentModel
+     * @param node
+     */
+    private void handleSimpleContent(XmlSchemaSimpleContent contentModel, ElementNode node) {
+        if (contentModel != null) {
+            XmlSchemaContent content = contentModel.getContent();
+            if (content != null) {
+                if (content instanceof XmlSchemaSimpleContentExtension) {
+                    handleSimpleContentExtension((XmlSchemaSimpleContentExtension) content, node);
+                } else if (content instanceof XmlSchemaSimpleContentRestriction) {
+                    handleSimpleContentRestriction(((XmlSchemaSimpleContentRestriction) content), node);
+                }
+            }
+        }
+    }
+
+    /**
+     * Handle the complex type simple content restriction
+     *
+     * @param restriction
+     * @param node
+     */
+    private void handleSimpleContentRestriction(XmlSchemaSimpleContentRestriction restriction, ElementNode node) {
+        logger.debug("Handling simple content restriction");
+
+//        restriction.getBaseType(); //todo: process the base schema simpletype if present
+
+        QName baseTypeName = restriction.getBaseTypeName();
+        logger.debug("Simple content restriction base type name = {}", baseTypeName);
+
+        XmlSchemaType type = registry.getType(baseTypeName);
+        if (type != null) {
+            if (type instanceof XmlSchemaSimpleType) {
+                logger.trace("Simple content restriction base type is simple type");
+            } else if (type instanceof XmlSchemaComplexType) {
+                logger.trace("Simple content restriction base type is complex type");
+                handleComplexType((XmlSchemaComplexType) type, node);
+
+                //for restriction if there are any attributes specified, they are restrictions of the
+                //base complex type attributes - so removing any attributes added in the prev step
+                //and specified again and re-process it
+
+                List<XmlSchemaAttributeOrGroupRef> attributeOrGroupRefs = restriction.getAttributes();
+                if (attributeOrGroupRefs != null) {
+                    logger.debug("simple content restriction is overriding base type attributes");
+
+                    //collect all attributes that are being overridden
+                    List<XmlSchemaAttribute> attributes = new ArrayList<>();
+
+                    for (XmlSchemaAttributeOrGroupRef o : attributeOrGroupRefs) {
+
+                        if (o instanceof XmlSchemaAttribute) {
+                            attributes.add((XmlSchemaAttribute) o);
+
+                        } else if (o instanceof XmlSchemaAttributeGroupRef) {
+
+                            XmlSchemaRef<XmlSchemaAttributeGroup> ref = ((XmlSchemaAttributeGroupRef) o).getRef();
+                            if (ref != null) {
+                                XmlSchemaAttributeGroup attrGroup = ref.getTarget();
+                                if (attrGroup != null) {
+                                    List<XmlSchemaAttributeGroupMember> attrGroupMembers = attrGroup.getAttributes();
+                                    for (XmlSchemaAttributeGroupMember attrGroupMember : attrGroupMembers) {
+                                        if (attrGroupMember instanceof XmlSchemaAttribute) {
+                                            attributes.add((XmlSchemaAttribute) attrGroupMember);
+                                        }
+                                        //else todo: check if we need to handle group refs within group?
+                                    }
+                                }
+                            }
+
+                        }// end else if
+                    }//end while
+
+                    //now if any attribute with the same name as the overridden attribute was added from the base type
+                    //remove it and add it again
+                    for (XmlSchemaAttribute schAttr : attributes) {
+                        QName qname = schAttr.getQName();
+                        org.dom4j.QName dom4jQName = createDom4jQName(qname, schAttr.getForm());
+                        logger.debug("Created dom4j qname: {} from XmlSchema qname: {}", dom4jQName, qname);
+
+                        //remove this attribute
+                        AttributeNode attr = node.attribute(dom4jQName);
+                        node.removeAttribute(attr);
+
+                        //handle this attribute again - but this time with the restrictions defined for it
+                        handleAttribute(schAttr, node);
+                    }
+
+                }//end if
+
+            }//end else if
+        }//end if
+
+        //the text must satisfy the facets of the restriction as well as those of its base types
+        if (options.getDefVals() != DefaultValues.NONE) {
+            handleValue(simpleTypeValues.get(restriction), baseTypeName, node);
+        }
+    }
+
+    private void handleSimpleContentExtension(XmlSchemaSimpleContentExtension extension, ElementNode node) {
+        logger.debug("Handling simple content extension");
+
+        //process the attributes if any
+        List<XmlSchemaAttributeOrGroupRef> attributeOrGroupRefs = extension.getAttributes();
+        if (attributeOrGroupRefs != null) {
+            logger.debug("Processing attributes for simple content extension");
+            processAttributeCollection(node, attributeOrGroupRefs);
+        } else {
+            logger.trace("Simple content extension does not have any attributes");
+        }
+
+        //process the base type
+        QName baseTypeName = extension.getBaseTypeName();
+        XmlSchemaType type = registry.getType(baseTypeName);
+        if (type != null) {
+            if (type instanceof XmlSchemaSimpleType) {
+                logger.debug("Processing base simple type {} for simple content extension", type.getName());
+                handleSimpleType((XmlSchemaSimpleType) type, node);
+            } else if (type instanceof XmlSchemaComplexType) {
+                logger.debug("Processing base complex {} type for simple content extension", type.getName());
+                handleComplexType((XmlSchemaComplexType) type, node);
+            }
+        }
+
+    }
+
+    private void processAttributeCollection(ElementNode node, List<XmlSchemaAttributeOrGroupRef> attributeOrGroupRefList) {
+        if (attributeOrGroupRefList != null) {
+
+            for (XmlSchemaAttributeOrGroupRef attributeOrGroupRef : attributeOrGroupRefList) {
+                if (attributeOrGroupRef instanceof XmlSchemaAttribute) {
+                    XmlSchemaAttribute attr = (XmlSchemaAttribute) attributeOrGroupRef;
+                    logger.debug("Handling attribute {}", attr.getName());
+                    handleAttribute(attr, node);
+                } else {
+                    XmlSchemaAttributeGroupRef attrGrpRef = (XmlSchemaAttributeGroupRef) attributeOrGroupRef;
+                    logger.debug("Handling attribute group reference {}", attrGrpRef.getTargetQName());
+                    handleAttributeGroupRef(attrGrpRef, node);
+                }
+            }
+        }
+    }
+
+    /**
+     * Handle the attribute ref present within the complex type
+     *
+     * @param attrGroupRef
+     * @param node
+     */
+    private void handleAttributeGroupRef(XmlSchemaAttributeGroupRef attrGroupRef, ElementNode node) {
+
+        XmlSchemaRef<XmlSchemaAttributeGroup> ref = attrGroupRef.getRef();
+        if (ref != null) {
+            logger.debug("Processing attribute group ref: {}", ref.getTargetQName());
+
+            XmlSchemaAttributeGroup attrGrp = ref.getTarget();
+            if (attrGrp != null) {
+                List<XmlSchemaAttributeGroupMember> attributeGroupMembers = attrGrp.getAttributes();
+
+                for (XmlSchemaAttributeGroupMember attributeGroupMember : attributeGroupMembers) {
+                    if (attributeGroupMember instanceof XmlSchemaAttribute) {
+                        XmlSchemaAttribute attr = (XmlSchemaAttribute) attributeGroupMember;
+                        logger.debug("Processing attribute[{}] within attribute group", attr.getName());
+                        handleAttribute(attr, node);
+                    }
+                }
+            }
+        }
+
+    }
+
+    /**
+     * Handle the attribute for the schema type
+     *
+     * @param attribute
+     * @param node
+     */
+    private void handleAttribute(XmlSchemaAttribute attribute, ElementNode node) {
+        AttributeNode attr = null;
+        if (attribute != null) {
+            if (attribute.getRef().getTarget() != null) {
+                attr = handleAttributeRef(attribute);
+            } else {
+                attr = handleLocalAttribute(attribute);
+            }
+
+            //add this attr to this element
+            if (attr != null) {
+                node.addAttribute(attr);
+            }
+        }
+    }
+
+    private AttributeNode handleLocalAttribute(XmlSchemaAttribute attribute) {
+        AttributeNode attr = null;
+
+        XmlSchemaUse use = attribute.getUse();
+        if (use != null) {
+            String name = attribute.getName();
+
+            if (use == XmlSchemaUse.PROHIBITED) {
+                logger.debug("Attribute {}'s 'use' attribute value is 'prohibited'", name);
+                return null;
+
+            } else if (use == XmlSchemaUse.REQUIRED ||
+                    ((use == XmlSchemaUse.OPTIONAL || use == XmlSchemaUse.NONE)
+                            && options.isGenOptionalAttributes())
+                    ) {
+
+                //if form value is NONE, check the schema's attributeFormDefault
+                //if that is also NONE, default to 'unqualified'
+                XmlSchemaForm form = attribute.getForm();
+                logger.debug("Handling local attribute {} ; form = {}", new Object[]{name, form});
+
+                if (form == XmlSchemaForm.NONE) {
+                    //check the schema attributeFormDefault value
+                    XmlSchema currentSchema = (!ctx.schemaStack.isEmpty() ? ctx.schemaStack.peek() : null);
+                    if (currentSchema != null) {
+                        form = currentSchema.getAttributeFormDefault();
+                        logger.debug("Default attribute form to '{}'", form);
+                    }
+                }
+
+                org.dom4j.QName qname = null;
+                if (form == XmlSchemaForm.QUALIFIED) {
+                    qname = getDom4jQNameForAttribute(attribute);
+                } else {
+                    qname = org.dom4j.QName.get(name);
+                }
+
+                attr = createAttributeNode(qname, attribute);
+            }
+
+        }
+
+
+        return attr;
+    }
+
+    /**
+     * Handle a reference inside a complex type to a globally declared attribute
+     *
+     * @param attribute the attribute declaration with reference to another attr
+     * @return
+     */
+    private AttributeNode handleAttributeRef(XmlSchemaAttribute attribute) {
+        AttributeNode attr = null;
+        XmlSchemaUse use = attribute.getUse();
+        String name = attribute.getName();
+        if (use != null) {
+
+            if (use == XmlSchemaUse.PROHIBITED) {
+                logger.debug("Attribute {}'s 'use' attribute value is 'prohibited'", name);
+                attr = null;
+
+            } else if (use == XmlSchemaUse.REQUIRED ||
+                    ((use == XmlSchemaUse.OPTIONAL || use == XmlSchemaUse.NONE)
+                            && options.isGenOptionalAttributes())
+                    ) {
+
+                XmlSchemaRef<XmlSchemaAttribute> ref = attribute.getRef();
+
+                if (ref.getTarget() != null) {
+                    logger.trace("Processing attribute reference");
+
+                    XmlSchema refSchema = registry.getSchemaByTargetNamespace(ref.getTargetQName().getNamespaceURI());
+                    boolean isPushed = false;
+                    if (refSchema != null) {
+                        logger.trace("---> Pushed schema with tns: {} into stack", refSchema.getTargetNamespace());
+                        ctx.schemaStack.push(refSchema);
+                        isPushed = true;
+                    }
+
+                    logger.debug("Handling attribute reference {} with use value  {}", name, use);
+
+                    XmlSchemaAttribute refAttr = ref.getTarget();
+
+                    org.dom4j.QName qname = getDom4jQNameForAttribute(refAttr);
+                    attr = createAttributeNode(qname, refAttr);
+
+                    if (isPushed) {
+                        XmlSchema sc = ctx.schemaStack.pop();
+                        logger.trace("<--- Popped schema with tns\\: {} from stack", sc.getTargetNamespace());
+                    }
+
+                }
+            }
+
+        }
+        return attr;
+    }
+
+    /**
+     * Generate an appropriate value for the given xmlschema attribute based on either
+     * its default / fixed attribute. If neither are present and the xml gen options indicates
+     * generation of optional attribute (#DefaultValues.DEFAULT or #DefaultValues.RANDOM), then create a value based
+     * on the attribute type
+     *
+     * @param qname     the name of the attribute
+     * @param attribute the attribute declaration
+     * @return the attribute node; a node without a value is not added to its element
+     */
+    private AttributeNode createAttributeNode(org.dom4j.QName qname, XmlSchemaAttribute attribute) {
+        String defVal = attribute.getDefaultValue();
+        String fixedVal = attribute.getFixedValue();
+        String name = attribute.getName();
+        //if attr has a fixed value, set it
+        if (StringUtils.isNotEmpty(fixedVal)) {
+            logger.debug("using fixed value {} for attr: {}", fixedVal, name);
+            return new AttributeNode(qname, fixedVal, null);
+        }
+        //if there is already a default value
+        if (StringUtils.isNotEmpty(defVal)) {
+            logger.debug("using default value {} for attr: {}", defVal, name);
+            return new AttributeNode(qname, defVal, null);
+        }
+        if (options.getDefVals() == DefaultValues.NONE) {
+            return new AttributeNode(qname, "", null);
+        }
+
+        //generate a value
+        ValueGenerator generator = attribute.getSchemaType() != null
+                ? simpleTypeValues.get(attribute.getSchemaType()) : simpleTypeValues.get(attribute.getSchemaTypeName());
+        if (generator == null) {
+            logger.debug("no value for attr {} of type {}", name, attribute.getSchemaTypeName());
+            return new AttributeNode(qname, null, null);
+        } else if (options.getDefVals() == DefaultValues.RANDOM && generator.hasValue()) {
+            logger.debug("generating random values for attr {}", name);
+            return new AttributeNode(qname, null, generator);
+        } else if (generator.getVolatileDefault() != null) {
+            logger.debug("generating volatile values for attr {}", name);
+            return new AttributeNode(qname, null, generator.getVolatileDefault());
+        }
+        logger.debug("generating new value {}  for attr {}:", generator.getDefault(), name);
+        return new AttributeNode(qname, generator.getDefault(), null);
+    }
+
+    /**
+     * Create a Dom4j QName value using the given XMLSchema attribute instance data
+     * The attribute's form value is qualified or is a globally-declared attribute
+     *
+     * @param attribute local attribute with form = qualified / global attribute
+     * @return
+     */
+
+    private org.dom4j.QName getDom4jQNameForAttribute(XmlSchemaAttribute attribute) {
+        QName attrQName = attribute.getQName();
+        String name = attribute.getName();
+        String nsUri = attrQName.getNamespaceURI();
+
+        XmlSchema currentSchema = (!ctx.schemaStack.isEmpty() ? ctx.schemaStack.peek() : null);
+
+        if (StringUtils.isEmpty(nsUri)) {
+            nsUri = (currentSchema != null ? currentSchema.getTargetNamespace() : "");
+            logger.debug("Attribute ns was empty; Setting it to current schema tns [{}]", nsUri);
+        }
+
+        org.dom4j.QName dom4jQName = null;
+        if (StringUtils.isEmpty(nsUri)) {
+            dom4jQName = org.dom4j.QName.get(name);
+        } else {
+
+            String prefix = engine.getPrefix(nsUri, ctx);
+            logger.trace("Qualifying attribute with prefix [{}] and ns [{}]", prefix, nsUri);
+            dom4jQName = org.dom4j.QName.get(name, prefix, nsUri);
+        }
+
+        return dom4jQName;
+    }
+
+
+    /**
+     * Handle the simple type: the restriction chain of the type is resolved to a value generator, which
+     * provides either the (facet-valid) default value or random values for the element
+     *
+     * @param simpleType
+     * @param node
+     */
+    private void handleSimpleType(XmlSchemaSimpleType simpleType, ElementNode node) {
+        if (options.getDefVals() == DefaultValues.NONE) {
+            return;
+        }
+
+        handleValue(simpleTypeValues.get(simpleType), simpleType.getQName(), node);
+    }
+
+    /**
+     * Set the text of the element to the value of the given generator
+     *
+     * @param generator the generator of the values of the element's type
+     * @param name      the name of the type, for the log
+     * @param node      the node of the element
+     */
+    private void handleValue(ValueGenerator generator, QName name, ElementNode node) {
+        DefaultValues defVals = options.getDefVals();
+        if (defVals == DefaultValues.RANDOM && generator.hasValue()) {
+            node.setText(null, generator);
+            logger.debug("Adding random values for simple type {}", name);
+        } else if (generator.getVolatileDefault() != null) {
+            node.setText(null, generator.getVolatileDefault());
+            logger.debug("Adding volatile value for simple type {}", name);
+        } else if (StringUtils.isNotEmpty(generator.getDefault())) {
+            node.setText(generator.getDefault(), null);
+            logger.debug("Adding sample value '{}' for simple type {}", generator.getDefault(), name);
+        } else {
+            logger.warn("Could not get sample value for simple type {}", name);
+        }
+    }
+
+}
@@ -0,0 +1,174 @@
+/*
+ * Copyright (c) 2010-2014 Stratumsoft Technologies Pvt. Ltd.
+ *
+ * This file (PlanCursor.java) is part of xsd2xml.
+ *
+ * xsd2xml is a Java program to generate XML instances from an XML Schema document
+ *
+ * xsd2xml is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * xsd2xml is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; If not, see <http://www.gnu.org/licenses/>.
+ *
+ * To use xsd2xml in your non-GPL licensed software, contact Stratumsoft Technologies
+ * support at support@stratumsoft.com or visit http://www.stratumsoft.com to obtain
+ * a commercial license.
+ */
+
+
+package com.stratumsoft.xmlgen;
+
+import com.stratumsoft.xmlgen.GenerationPlan.AttributeNode;
+import com.stratumsoft.xmlgen.GenerationPlan.ChoiceNode;
+import com.stratumsoft.xmlgen.GenerationPlan.CommentNode;
+import com.stratumsoft.xmlgen.GenerationPlan.ElementNode;
+import com.stratumsoft.xmlgen.GenerationPlan.Node;
+import com.stratumsoft.xmlgen.GenerationPlan.RepeatNode;
+import com.stratumsoft.xmlgen.GenerationPlan.TextNode;
+
+import javax.xml.stream.XMLStreamException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Replays a plan one step at a time, so that the caller decides when to generate more of the document. The recursive
+ * replay of {@link GenerationPlan} is unrolled into an explicit stack of content frames; a step writes one node (an
+ * element start tag with its attributes, a text, a comment or an element end tag) to the sink. The per-document values
+ * are drawn in the same order as by the recursive replay, so both write the same xml for the same generator.
+ *
+ * @author murakris@stratumsoft.com
+ */
+final class PlanCursor {
+
+    private final PlanSink sink;
+
+    private final ValueProviders values;
+
+    /**
+     * the content lists being replayed, innermost last
+     */
+    private final List<Frame> frames = new ArrayList<>();
+
+    private ElementNode start;
+
+    private SeededRandom startRandom;
+
+    /**
+     * @param random generator for the per-document values, or null to use unseeded values
+     */
+    PlanCursor(GenerationPlan plan, PlanSink sink, SeededRandom random) {
+        this.sink = sink;
+        this.values = plan.getValues();
+        this.start = plan.getRoot();
+        this.startRandom = random != null ? random : new SeededRandom();
+    }
+
+    /**
+     * @return true if the whole plan was replayed
+     */
+    boolean isDone() {
+        return start == null && frames.isEmpty();
+    }
+
+    /**
+     * Replay the next node of the plan
+     *
+     * @throws XMLStreamException if the sink fails
+     */
+    void step() throws XMLStreamException {
+        if (start != null) {
+            ElementNode root = start;
+            start = null;
+            startElement(root, false, startRandom);
+            return;
+        }
+        if (frames.isEmpty()) {
+            return;
+        }
+
+        Frame frame = frames.get(frames.size() - 1);
+        if (frame.index == frame.content.size()) {
+            frames.remove(frames.size() - 1);
+            if (frame.isElementContent) {
+                sink.endElement();
+            }
+            return;
+        }
+
+        Node node = frame.content.get(frame.index);
+        if (node instanceof ElementNode) {
+            ElementNode elNode = (ElementNode) node;
+            if (frame.iteration < elNode.count) {
+                long i = ++frame.iteration;
+                if (i > elNode.minCount && elNode.isCommentOptional) {
+                    sink.comment("optional");
+                }
+                startElement(elNode, i > 1, frame.random);
+            } else {
+                frame.next();
+            }
+        } else if (node instanceof RepeatNode) {
+            RepeatNode repeat = (RepeatNode) node;
+            if (frame.iteration < repeat.count) {
+                frame.iteration++;
+                frames.add(new Frame(repeat.content, frame.random, false));
+            } else {
+                frame.next();
+            }
+        } else {
+            frame.next();
+            if (node instanceof TextNode) {
+                String text = ((TextNode) node).value(frame.random);
+                if (text != null) {
+                    sink.text(text);
+                }
+            } else if (node instanceof CommentNode) {
+                sink.comment(((CommentNode) node).text);
+            } else if (node instanceof ChoiceNode) {
+                frames.add(new Frame(((ChoiceNode) node).pickBranch(frame.random), frame.random, false));
+            }
+        }
+    }
+
+    private void startElement(ElementNode node, boolean isCopy, SeededRandom parentRandom)
+            throws XMLStreamException {
+        SeededRandom random = node.isRandom ? parentRandom.split() : parentRandom;
+        sink.startElement(node.name);
+        List<AttributeNode> attributes = node.attributes;
+        for (int i = 0, n = attributes.size(); i < n; i++) {
+            AttributeNode attr = attributes.get(i);
+            sink.attribute(attr.name, attr.value(isCopy, values, random));
+        }
+        frames.add(new Frame(node.content, random, true));
+    }
+
+    /**
+     * A content list, the position within it and the occurrence of the repeated node at that position
+     */
+    private static final class Frame {
+        final List<Node> content;
+        final SeededRandom random;
+        final boolean isElementContent;
+        int index;
+        long iteration;
+
+        Frame(List<Node> content, SeededRandom random, boolean isElementContent) {
+            this.content = content;
+            this.random = random;
+            this.isElementContent = isElementContent;
+        }
+
+        void next() {
+            index++;
+            iteration = 0;
+        }
+    }
+}
@@ -0,0 +1,112 @@
+/*
+ * Copyright (c) 2010-2014 Stratumsoft Technologies Pvt. Ltd.
+ *
+ * This file (PlanKey.java) is part of xsd2xml.
+ *
+ * xsd2xml is a Java program to generate XML instances from an XML Schema document
+ *
+ * xsd2xml is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * xsd2xml is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; If not, see <http://www.gnu.org/licenses/>.
+ *
+ * To use xsd2xml in your non-GPL licensed software, contact Stratumsoft Technologies
+ * support at support@stratumsoft.com or visit http://www.stratumsoft.com to obtain
+ * a commercial license.
+ */
+
+package com.stratumsoft.xmlgen;
+
+import javax.xml.namespace.QName;
+
+/**
+ * Cache key for a {@link GenerationPlan}: the root element qname and a snapshot of the {@link XmlGenOptions}
+ * that affect the structure of the generated xml. The output format is not part of the key since it is only
+ * used when serializing.
+ *
+ * @author murakris@stratumsoft.com
+ */
+final class PlanKey {
+
+    private final QName rootName;
+    private final boolean isGenOptionalAttributes;
+    private final boolean isGenOptionalElements;
+    private final boolean isGenChoiceOptionsAsComments;
+    private final boolean isGenCommentsForParticles;
+    private final int maxRepeatingElements;
+    private final int maxRecursiveDepth;
+    private final ChoiceOptions choiceOptions;
+    private final DefaultValues defVals;
+    private final long targetSize;
+    private final SizeUnit targetSizeUnit;
+
+    PlanKey(QName rootName, XmlGenOptions options) {
+        this.rootName = rootName;
+        this.isGenOptionalAttributes = options.isGenOptionalAttributes();
+        this.isGenOptionalElements = options.isGenOptionalElements();
+        this.isGenChoiceOptionsAsComments = options.isGenChoiceOptionsAsComments();
+        this.isGenCommentsForParticles = options.isGenCommentsForParticles();
+        this.maxRepeatingElements = options.getMaxRepeatingElements();
+        this.maxRecursiveDepth = options.getMaxRecursiveDepth();
+        this.choiceOptions = options.getChoiceOptions();
+        this.defVals = options.getDefVals();
+        this.targetSize = options.getTargetSize();
+        this.targetSizeUnit = options.getTargetSizeUnit();
+    }
+
+    QName getRootName() {
+        return rootName;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof PlanKey)) return false;
+
+        PlanKey that = (PlanKey) o;
+        return isGenOptionalAttributes == that.isGenOptionalAttributes
+                && isGenOptionalElements == that.isGenOptionalElements
+                && isGenChoiceOptionsAsComments == that.isGenChoiceOptionsAsComments
+                && isGenCommentsForParticles == that.isGenCommentsForParticles
+                && maxRepeatingElements == that.maxRepeatingElements
+                && maxRecursiveDepth == that.maxRecursiveDepth
+                && choiceOptions == that.choiceOptions
+                && defVals == that.defVals
+                && targetSize == that.targetSize
+                && targetSizeUnit == that.targetSizeUnit
+                && rootName.equals(that.rootName);
+    }
+
+    @Override
+    public int hashCode() {
+        int result = rootName.hashCode();
+        result = 31 * result + (isGenOptionalAttributes ? 1 : 0);
+        result = 31 * result + (isGenOptionalElements ? 1 : 0);
+        result = 31 * result + (isGenChoiceOptionsAsComments ? 1 : 0);
+        result = 31 * result + (isGenCommentsForParticles ? 1 : 0);
+        result = 31 * result + maxRepeatingElements;
+        result = 31 * result + maxRecursiveDepth;
+        result = 31 * result + (choiceOptions != null ? choiceOptions.hashCode() : 0);
+        result = 31 * result + (defVals != null ? defVals.hashCode() : 0);
+        result = 31 * result + (int) (targetSize ^ (targetSize >>> 32));
+        result = 31 * result + targetSizeUnit.hashCode();
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return "PlanKey{" + rootName + ", optAttrs=" + isGenOptionalAttributes + ", optEls=" + isGenOptionalElements
+                + ", choiceComments=" + isGenChoiceOptionsAsComments + ", particleComments=" + isGenCommentsForParticles
+                + ", maxRepeat=" + maxRepeatingElements + ", maxRecursion=" + maxRecursiveDepth
+                + ", choice=" + choiceOptions + ", defVals=" + defVals + ", targetSize=" + targetSize
+                + (targetSize > 0 ? " " + targetSizeUnit : "") + '}';
+    }
+}
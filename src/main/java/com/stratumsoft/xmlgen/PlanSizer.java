@@ -0,0 +1,570 @@
+/*
+ * Copyright (c) 2010-2014 Stratumsoft Technologies Pvt. Ltd.
+ *
+ * This file (PlanSizer.java) is part of xsd2xml.
+ *
+ * xsd2xml is a Java program to generate XML instances from an XML Schema document
+ *
+ * xsd2xml is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * xsd2xml is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; If not, see <http://www.gnu.org/licenses/>.
+ *
+ * To use xsd2xml in your non-GPL licensed software, contact Stratumsoft Technologies
+ * support at support@stratumsoft.com or visit http://www.stratumsoft.com to obtain
+ * a commercial license.
+ */
+
+
+package com.stratumsoft.xmlgen;
+
+import com.stratumsoft.xmlgen.GenerationPlan.AttributeNode;
+import com.stratumsoft.xmlgen.GenerationPlan.ChoiceNode;
+import com.stratumsoft.xmlgen.GenerationPlan.CommentNode;
+import com.stratumsoft.xmlgen.GenerationPlan.ElementNode;
+import com.stratumsoft.xmlgen.GenerationPlan.Node;
+import com.stratumsoft.xmlgen.GenerationPlan.RepeatNode;
+import com.stratumsoft.xmlgen.GenerationPlan.TextNode;
+import org.apache.commons.lang.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Estimates the size of the documents replayed from a {@link GenerationPlan} and fits the repeat counts of a plan to a
+ * target size.
+ * <p/>
+ * The plan is mirrored by a tree of parts that hold the size of one occurrence of their own markup: the tags, the
+ * namespace declarations (made on first use within a scope, as {@link StaxPlanSink} does), the attributes, texts and
+ * comments. The size of the document then only depends on the counts of the repeatable parts, i.e. the elements and
+ * repeated particles whose minOccurs and maxOccurs differ. Volatile values are sized by their mean length over a few
+ * samples and the branches of a random choice are weighted equally, so the size is the expected size of a document.
+ * <p/>
+ * Fitting first gives all the repeatable parts the same count, clamped to their bounds, and searches the largest count
+ * that keeps the document within the target. The remaining gap is then filled greedily by adding occurrences to the
+ * parts whose increments fit best, outermost counts first since they are the largest. The counts only change the plan,
+ * so a document of any size is still streamed with memory proportional to its depth.
+ *
+ * @author murakris@stratumsoft.com
+ */
+final class PlanSizer {
+
+    private static final Logger logger = LoggerFactory.getLogger(PlanSizer.class);
+
+    /**
+     * the xml declaration written by {@link GenerationPlan#writeDocument}
+     */
+    private static final int DECLARATION_BYTES = utf8Length("<?xml version=\"1.0\" encoding=\"utf-8\"?>"); //NON-NLS
+
+    private static final int OPTIONAL_COMMENT_BYTES = utf8Length("<!--optional-->"); //NON-NLS
+
+    /**
+     * number of values drawn to size a volatile value
+     */
+    private static final int SAMPLES = 32;
+
+    /**
+     * maximum number of greedy steps made to fill the gap left by the uniform count
+     */
+    private static final int MAX_FILL_STEPS = 64;
+
+    private final SizeUnit unit;
+
+    private final ValueProviders values;
+
+    private final SeededRandom sampleRandom = new SeededRandom(0);
+
+    /**
+     * the parts whose count can be changed
+     */
+    private final List<Part> repeatables = new ArrayList<>();
+
+    private final ElementPart root;
+
+    /**
+     * prefix/uri bindings in scope while the parts are built, innermost last
+     */
+    private final List<String> boundPrefixes = new ArrayList<>();
+    private final List<String> boundUris = new ArrayList<>();
+
+    private PlanSizer(GenerationPlan plan, SizeUnit unit, ValueProviders values) {
+        this.unit = unit;
+        this.values = values;
+        this.root = element(plan.getRoot());
+    }
+
+    /**
+     * @return the expected size of a document replayed from the plan, in the given unit
+     */
+    static double estimate(GenerationPlan plan, SizeUnit unit, ValueProviders values) {
+        if (plan.isEmpty()) {
+            return 0;
+        }
+        return new PlanSizer(plan, unit, values).documentSize();
+    }
+
+    /**
+     * @return a copy of the plan whose repeat counts are fitted to the target size
+     */
+    static GenerationPlan resize(GenerationPlan plan, long targetSize, SizeUnit unit, ValueProviders values) {
+        if (plan.isEmpty()) {
+            return plan;
+        }
+        PlanSizer sizer = new PlanSizer(plan, unit, values);
+        sizer.fit(targetSize);
+        return new GenerationPlan(plan.getRootName(), sizer.copy(sizer.root), values);
+    }
+
+    private double documentSize() {
+        return (unit == SizeUnit.BYTES ? DECLARATION_BYTES : 0) + root.occurrenceSize();
+    }
+
+    ///////////////////////////////////////// fitting /////////////////////////////////////////
+
+    private void fit(long targetSize) {
+        if (repeatables.isEmpty()) {
+            logger.debug("Plan for {} has no repeatable parts, its size is fixed", root.node.name);
+            return;
+        }
+
+        //largest uniform count within the target: grow exponentially, then bisect
+        long upper = 0;
+        for (Part part : repeatables) {
+            upper = Math.max(upper, part.maxCount);
+        }
+        long low = 0;
+        long high = 1;
+        while (high < upper && sizeWithUniformCount(high) <= targetSize) {
+            low = high;
+            high = high < Long.MAX_VALUE / 2 ? high * 2 : Long.MAX_VALUE;
+        }
+        high = Math.min(high, upper);
+        if (sizeWithUniformCount(high) <= targetSize) {
+            low = high;
+        }
+        while (high - low > 1) {
+            long mid = low + (high - low) / 2;
+            if (sizeWithUniformCount(mid) <= targetSize) {
+                low = mid;
+            } else {
+                high = mid;
+            }
+        }
+        double size = sizeWithUniformCount(low);
+        logger.debug("Uniform count {} gives a size of {} for a target of {}", new Object[]{low, size, targetSize});
+
+        //fill the gap with the largest increments that fit
+        for (int step = 0; step < MAX_FILL_STEPS && size < targetSize; step++) {
+            double gap = targetSize - size;
+            Increment best = null;
+            for (Increment inc : increments()) {
+                if (inc.size <= gap && (best == null || inc.size > best.size)) {
+                    best = inc;
+                }
+            }
+            if (best == null) {
+                break;
+            }
+            best.part.count += (long) Math.min(Math.floor(gap / best.size), best.part.maxCount - best.part.count);
+            size = documentSize();
+        }
+
+        //one more occurrence if overshooting is closer to the target than falling short
+        if (size < targetSize) {
+            Increment smallest = null;
+            for (Increment inc : increments()) {
+                if (smallest == null || inc.size < smallest.size) {
+                    smallest = inc;
+                }
+            }
+            if (smallest != null && size + smallest.size - targetSize < targetSize - size) {
+                smallest.part.count++;
+                size = documentSize();
+            }
+        }
+        logger.debug("Fitted plan for {} to a size of {} for a target of {} {}",
+                new Object[]{root.node.name, size, targetSize, unit});
+    }
+
+    private double sizeWithUniformCount(long count) {
+        for (Part part : repeatables) {
+            part.count = Math.max(part.minCount, Math.min(count, part.maxCount));
+        }
+        return documentSize();
+    }
+
+    /**
+     * @return the size added by one more occurrence of each repeatable part that can still grow; the sizes of the
+     *         occurrences are the ones computed by the last {@link #documentSize()}
+     */
+    private List<Increment> increments() {
+        List<Increment> increments = new ArrayList<>();
+        collectIncrements(root.content, 1, increments);
+        return increments;
+    }
+
+    private void collectIncrements(List<Part> parts, double multiplicity, List<Increment> increments) {
+        for (Part part : parts) {
+            if (part instanceof ChoicePart) {
+                List<List<Part>> branches = ((ChoicePart) part).branches;
+                for (List<Part> branch : branches) {
+                    collectIncrements(branch, multiplicity / branches.size(), increments);
+                }
+                continue;
+            }
+            if (part.isRepeatable() && part.count < part.maxCount) {
+                double size = multiplicity * part.occurrence;
+                if (part instanceof ElementPart && part.count >= ((ElementPart) part).node.minCount) {
+                    size += multiplicity * ((ElementPart) part).optionalComment;
+                }
+                if (size > 0) {
+                    increments.add(new Increment(part, size));
+                }
+            }
+            if (part.content != null) {
+                collectIncrements(part.content, multiplicity * part.count, increments);
+            }
+        }
+    }
+
+    private static final class Increment {
+        final Part part;
+        final double size;
+
+        Increment(Part part, double size) {
+            this.part = part;
+            this.size = size;
+        }
+    }
+
+    ///////////////////////////////////////// parts /////////////////////////////////////////
+
+    private ElementPart element(ElementNode node) {
+        int mark = boundPrefixes.size();
+        ElementPart part = new ElementPart(node);
+        if (unit == SizeUnit.ELEMENTS) {
+            part.own = 1;
+        } else {
+            String qname = qualifiedName(node.name);
+            double own = 2 * utf8Length(qname) + 5;             //<qname></qname>
+            own += declaration(node.name);
+            for (AttributeNode attr : node.attributes) {
+                own += declaration(attr.name);
+                own += utf8Length(qualifiedName(attr.name)) + 4 + attributeLength(attr);    // qname="value"
+            }
+            part.own = own;
+            part.optionalComment = node.isCommentOptional ? OPTIONAL_COMMENT_BYTES : 0;
+        }
+        part.content = content(node.content);
+        for (int i = boundPrefixes.size() - 1; i >= mark; i--) {
+            boundPrefixes.remove(i);
+            boundUris.remove(i);
+        }
+        return part;
+    }
+
+    private List<Part> content(List<Node> nodes) {
+        List<Part> parts = new ArrayList<>(nodes.size());
+        for (Node node : nodes) {
+            if (node instanceof ElementNode) {
+                ElementPart part = element((ElementNode) node);
+                part.minCount = Math.min(part.node.minCount, part.node.count);
+                part.maxCount = Math.max(part.node.maxCount, part.node.count);
+                part.count = part.node.count;
+                addPart(parts, part);
+            } else if (node instanceof RepeatNode) {
+                RepeatNode repeat = (RepeatNode) node;
+                RepeatPart part = new RepeatPart(repeat);
+                part.minCount = Math.min(repeat.minCount, repeat.count);
+                part.maxCount = Math.max(repeat.maxCount, repeat.count);
+                part.count = repeat.count;
+                part.content = content(repeat.content);
+                addPart(parts, part);
+            } else if (node instanceof ChoiceNode) {
+                ChoicePart part = new ChoicePart((ChoiceNode) node);
+                for (List<Node> branch : ((ChoiceNode) node).branches) {
+                    part.branches.add(content(branch));
+                }
+                parts.add(part);
+            } else {
+                parts.add(new LeafPart(node, unit == SizeUnit.BYTES ? leafLength(node) : 0));
+            }
+        }
+        return parts;
+    }
+
+    private void addPart(List<Part> parts, Part part) {
+        parts.add(part);
+        if (part.isRepeatable()) {
+            repeatables.add(part);
+        }
+    }
+
+    private double leafLength(Node node) {
+        if (node instanceof CommentNode) {
+            return utf8Length(((CommentNode) node).text) + 7;      //<!--text-->
+        }
+        TextNode text = (TextNode) node;
+        if (text.provider == null) {
+            return text.value != null ? escapedLength(text.value, false) : 0;
+        }
+        double length = 0;
+        for (int i = 0; i < SAMPLES; i++) {
+            String value = text.value(sampleRandom);
+            length += value != null ? escapedLength(value, false) : 0;
+        }
+        return length / SAMPLES;
+    }
+
+    private double attributeLength(AttributeNode attr) {
+        if (!attr.isVolatile()) {
+            return escapedLength(attr.value, true);
+        }
+        double length = 0;
+        for (int i = 0; i < SAMPLES; i++) {
+            length += escapedLength(attr.value(false, values, sampleRandom), true);
+        }
+        return length / SAMPLES;
+    }
+
+    /**
+     * @return the length of the namespace declaration the name needs in the current scope, which is then bound
+     */
+    private int declaration(org.dom4j.QName name) {
+        String nsUri = name.getNamespaceURI();
+        if (StringUtils.isEmpty(nsUri)) {
+            return 0;
+        }
+        String prefix = name.getNamespacePrefix();
+        for (int i = boundPrefixes.size() - 1; i >= 0; i--) {
+            if (boundPrefixes.get(i).equals(prefix)) {
+                if (boundUris.get(i).equals(nsUri)) {
+                    return 0;
+                }
+                break;
+            }
+        }
+        boundPrefixes.add(prefix);
+        boundUris.add(nsUri);
+        int length = escapedLength(nsUri, true) + 9;                    // xmlns="uri"
+        return StringUtils.isEmpty(prefix) ? length : length + utf8Length(prefix) + 1;
+    }
+
+    private static String qualifiedName(org.dom4j.QName name) {
+        String prefix = name.getNamespacePrefix();
+        return StringUtils.isEmpty(prefix) || StringUtils.isEmpty(name.getNamespaceURI())
+                ? name.getName() : prefix + ':' + name.getName();
+    }
+
+    private static int utf8Length(String s) {
+        return length(s, false, false);
+    }
+
+    /**
+     * @return the number of utf-8 bytes of the text or attribute value once escaped
+     */
+    private static int escapedLength(String s, boolean isAttribute) {
+        return length(s, true, isAttribute);
+    }
+
+    private static int length(String s, boolean isEscaped, boolean isAttribute) {
+        if (s == null) {
+            return 0;
+        }
+        int length = 0;
+        for (int i = 0, n = s.length(); i < n; i++) {
+            char c = s.charAt(i);
+            if (c < 0x80) {
+                length++;
+                if (isEscaped) {
+                    if (c == '&') {
+                        length += 4;            //&amp;
+                    } else if (c == '<' || c == '>') {
+                        length += 3;            //&lt; &gt;
+                    } else if (c == '"' && isAttribute) {
+                        length += 5;            //&quot;
+                    }
+                }
+            } else if (c < 0x800) {
+                length += 2;
+            } else if (Character.isHighSurrogate(c)) {
+                length += 4;
+                i++;
+            } else {
+                length += 3;
+            }
+        }
+        return length;
+    }
+
+    ///////////////////////////////////////// copying /////////////////////////////////////////
+
+    private ElementNode copy(ElementPart part) {
+        ElementNode node = new ElementNode(part.node.name);
+        node.minCount = part.node.minCount;
+        node.maxCount = part.node.maxCount;
+        node.count = part.count;
+        node.isCommentOptional = part.node.isCommentOptional;
+        node.attributes = part.node.attributes;
+        node.content = copy(part.content);
+        return node;
+    }
+
+    private List<Node> copy(List<Part> parts) {
+        List<Node> nodes = new ArrayList<>(parts.size());
+        for (Part part : parts) {
+            if (part instanceof ElementPart) {
+                nodes.add(copy((ElementPart) part));
+            } else if (part instanceof RepeatPart) {
+                RepeatNode repeat = ((RepeatPart) part).node;
+                nodes.add(new RepeatNode(repeat.minCount, repeat.maxCount, part.count, copy(part.content)));
+            } else if (part instanceof ChoicePart) {
+                ChoiceNode choice = new ChoiceNode();
+                for (List<Part> branch : ((ChoicePart) part).branches) {
+                    choice.branches.add(copy(branch));
+                }
+                nodes.add(choice);
+            } else {
+                nodes.add(part.node());
+            }
+        }
+        return nodes;
+    }
+
+    /**
+     * A plan node along with its count while the plan is being fitted. The size of one occurrence is computed each
+     * time the size of the document is
+     */
+    private abstract static class Part {
+        long minCount = 1;
+        long maxCount = 1;
+        long count = 1;
+        List<Part> content;
+
+        /**
+         * size of one occurrence, as of the last size computation
+         */
+        double occurrence;
+
+        abstract Node node();
+
+        boolean isRepeatable() {
+            return maxCount > minCount;
+        }
+
+        /**
+         * @return the size of all the occurrences
+         */
+        double size() {
+            return count * occurrenceSize();
+        }
+
+        double occurrenceSize() {
+            occurrence = contentSize(content);
+            return occurrence;
+        }
+
+        static double contentSize(List<Part> parts) {
+            double size = 0;
+            for (Part part : parts) {
+                size += part.size();
+            }
+            return size;
+        }
+    }
+
+    private static final class ElementPart extends Part {
+        final ElementNode node;
+        double own;
+        double optionalComment;
+
+        ElementPart(ElementNode node) {
+            this.node = node;
+        }
+
+        @Override
+        Node node() {
+            return node;
+        }
+
+        @Override
+        double size() {
+            return super.size() + Math.max(0, count - node.minCount) * optionalComment;
+        }
+
+        @Override
+        double occurrenceSize() {
+            occurrence = own + contentSize(content);
+            return occurrence;
+        }
+    }
+
+    private static final class RepeatPart extends Part {
+        final RepeatNode node;
+
+        RepeatPart(RepeatNode node) {
+            this.node = node;
+        }
+
+        @Override
+        Node node() {
+            return node;
+        }
+    }
+
+    private static final class ChoicePart extends Part {
+        final ChoiceNode node;
+        final List<List<Part>> branches = new ArrayList<>();
+
+        ChoicePart(ChoiceNode node) {
+            this.node = node;
+        }
+
+        @Override
+        Node node() {
+            return node;
+        }
+
+        @Override
+        double size() {
+            double size = 0;
+            for (List<Part> branch : branches) {
+                size += contentSize(branch);
+            }
+            return size / branches.size();
+        }
+    }
+
+    /**
+     * A text or comment, whose size is fixed
+     */
+    private static final class LeafPart extends Part {
+        final Node node;
+        final double length;
+
+        LeafPart(Node node, double length) {
+            this.node = node;
+            this.length = length;
+        }
+
+        @Override
+        Node node() {
+            return node;
+        }
+
+        @Override
+        double size() {
+            return length;
+        }
+    }
+}
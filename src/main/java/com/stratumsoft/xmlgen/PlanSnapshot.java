@@ -0,0 +1,574 @@
+/*
+ * Copyright (c) 2010-2014 Stratumsoft Technologies Pvt. Ltd.
+ *
+ * This file (PlanSnapshot.java) is part of xsd2xml.
+ *
+ * xsd2xml is a Java program to generate XML instances from an XML Schema document
+ *
+ * xsd2xml is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * xsd2xml is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; If not, see <http://www.gnu.org/licenses/>.
+ *
+ * To use xsd2xml in your non-GPL licensed software, contact Stratumsoft Technologies
+ * support at support@stratumsoft.com or visit http://www.stratumsoft.com to obtain
+ * a commercial license.
+ */
+
+package com.stratumsoft.xmlgen;
+
+import com.stratumsoft.xmlgen.GenerationPlan.AttributeNode;
+import com.stratumsoft.xmlgen.GenerationPlan.ChoiceNode;
+import com.stratumsoft.xmlgen.GenerationPlan.CommentNode;
+import com.stratumsoft.xmlgen.GenerationPlan.ElementNode;
+import com.stratumsoft.xmlgen.GenerationPlan.Node;
+import com.stratumsoft.xmlgen.GenerationPlan.RepeatNode;
+import com.stratumsoft.xmlgen.GenerationPlan.TextNode;
+import org.apache.ws.commons.schema.XmlSchema;
+import org.apache.ws.commons.schema.XmlSchemaCollection;
+import org.dom4j.Namespace;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.xml.namespace.QName;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.net.URL;
+import java.net.URLConnection;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * A precompiled set of {@link GenerationPlan}s saved to a compact binary file, so that short-lived processes can
+ * generate xml without reading and parsing the schemas. The snapshot records the schema documents the plans were
+ * compiled from along with a SHA-256 hash of their content; {@link #readIfCurrent(File)} only returns a snapshot
+ * whose schema documents have not changed since it was written.
+ * <p/>
+ * The file is read through a memory mapping and all the plans are rebuilt when it is read. A snapshot is immutable
+ * and its plans can be replayed concurrently.
+ *
+ * @author murakris@stratumsoft.com
+ */
+public final class PlanSnapshot {
+
+    private static final Logger logger = LoggerFactory.getLogger(PlanSnapshot.class);
+
+    private static final int MAGIC = 0x58324750;     //"X2GP"
+
+    private static final int VERSION = 4;
+
+    private static final byte ELEMENT = 1, TEXT = 2, COMMENT = 3, CHOICE = 4, REPEAT = 5;
+
+    private final List<String> sources;
+
+    private final byte[] contentHash;
+
+    private final XmlGenOptions options;
+
+    private final Map<QName, GenerationPlan> plans;
+
+    private PlanSnapshot(List<String> sources, byte[] contentHash, XmlGenOptions options,
+                         Map<QName, GenerationPlan> plans) {
+        this.sources = Collections.unmodifiableList(sources);
+        this.contentHash = contentHash;
+        this.options = options;
+        this.plans = Collections.unmodifiableMap(plans);
+    }
+
+    /**
+     * @param rootName qname of the root element
+     * @return the plan for the root element, or null if it is not part of the snapshot
+     */
+    public GenerationPlan getPlan(QName rootName) {
+        return plans.get(rootName);
+    }
+
+    public Set<QName> getRootNames() {
+        return plans.keySet();
+    }
+
+    /**
+     * @return a copy of the options the plans were compiled with (the output format is not saved)
+     */
+    public XmlGenOptions getOptions() {
+        return new XmlGenOptions(options);
+    }
+
+    /**
+     * @return the uris of the schema documents the plans were compiled from
+     */
+    public List<String> getSources() {
+        return sources;
+    }
+
+    public byte[] getContentHash() {
+        return contentHash.clone();
+    }
+
+    /**
+     * @return true if none of the schema documents changed since the snapshot was written
+     */
+    public boolean isCurrent() {
+        try {
+            return Arrays.equals(contentHash, hash(sources));
+        } catch (IOException e) {
+            logger.debug("Could not read schema document of snapshot", e);
+            return false;
+        }
+    }
+
+    ///////////////////////////////////////// writing /////////////////////////////////////////
+
+    /**
+     * Compile the plans for the given root elements and save them to the given file
+     *
+     * @param engine    the engine to compile the plans with
+     * @param rootNames qnames of the root elements to include, or null to include all the global elements
+     * @param options   options to compile the plans with, or null to use the engine defaults
+     * @param file      the file to write to
+     * @throws IOException              if a schema document could not be read or the file could not be written
+     * @throws IllegalArgumentException if the options generate {@link DefaultValues#RANDOM random} values, whose
+     *                                  generators are compiled from the schemas and cannot be saved
+     */
+    public static void write(XmlGenEngine engine, Collection<QName> rootNames, XmlGenOptions options, File file)
+            throws IOException {
+        XmlGenOptions opts = options != null ? new XmlGenOptions(options) : engine.getDefaultOptions();
+        if (opts.getDefVals() == DefaultValues.RANDOM) {
+            throw new IllegalArgumentException("snapshots cannot be written with random values");
+        }
+        if (rootNames == null) {
+            rootNames = new ArrayList<>();
+            for (org.apache.ws.commons.schema.XmlSchemaElement el : engine.getRegistry().getElements()) {
+                rootNames.add(el.getQName());
+            }
+        }
+
+        List<String> sources = sources(engine.getSchemaCollection());
+
+        Writer writer = new Writer(engine.getValueProviders());
+        writer.body.writeInt(rootNames.size());
+        for (QName rootName : rootNames) {
+            GenerationPlan plan = engine.compile(rootName, opts);
+            writer.body.writeInt(writer.string(rootName.getNamespaceURI()));
+            writer.body.writeInt(writer.string(rootName.getLocalPart()));
+            writer.body.writeBoolean(!plan.isEmpty());
+            if (!plan.isEmpty()) {
+                writer.element(plan.getRoot());
+            }
+        }
+
+        try (DataOutputStream out = new DataOutputStream(new FileOutputStream(file))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+
+            byte[] hash = hash(sources);
+            out.writeInt(hash.length);
+            out.write(hash);
+            out.writeInt(sources.size());
+            for (String source : sources) {
+                writeString(out, source);
+            }
+
+            out.writeBoolean(opts.isGenOptionalAttributes());
+            out.writeBoolean(opts.isGenOptionalElements());
+            out.writeBoolean(opts.isGenChoiceOptionsAsComments());
+            out.writeBoolean(opts.isGenCommentsForParticles());
+            out.writeInt(opts.getMaxRepeatingElements());
+            out.writeInt(opts.getMaxRecursiveDepth());
+            out.writeInt(opts.getChoiceOptions().ordinal());
+            out.writeInt(opts.getDefVals().ordinal());
+            out.writeBoolean(opts.getSeed() != null);
+            out.writeLong(opts.getSeed() != null ? opts.getSeed() : 0);
+            out.writeLong(opts.getTargetSize());
+            out.writeInt(opts.getTargetSizeUnit().ordinal());
+
+            out.writeInt(writer.strings.size());
+            for (String s : writer.strings.keySet()) {
+                writeString(out, s);
+            }
+            out.writeInt(writer.names.size());
+            for (List<Integer> name : writer.names.keySet()) {
+                for (Integer id : name) {
+                    out.writeInt(id);
+                }
+            }
+            writer.bytes.writeTo(out);
+        }
+        logger.debug("Wrote snapshot of {} plans to {}", rootNames.size(), file);
+    }
+
+    private static void writeString(DataOutputStream out, String s) throws IOException {
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    /**
+     * Writes the plan nodes, collecting the strings and names they use into tables
+     */
+    private static final class Writer {
+        final Map<String, Integer> strings = new LinkedHashMap<>();
+        final Map<List<Integer>, Integer> names = new LinkedHashMap<>();
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final DataOutputStream body = new DataOutputStream(bytes);
+        final ValueProviders values;
+
+        Writer(ValueProviders values) {
+            this.values = values;
+        }
+
+        /**
+         * @return the slot of the provider of a volatile value, which is looked up again when the plan is read
+         */
+        int slot(ValueProvider provider) {
+            if (provider == null) {
+                return ValueProviders.NO_SLOT;
+            }
+            int slot = values.slotOf(provider);
+            if (slot == ValueProviders.NO_SLOT) {
+                throw new IllegalArgumentException("plan has a value provider that is not a built-in type provider");
+            }
+            return slot;
+        }
+
+        int string(String s) {
+            if (s == null) {
+                return -1;
+            }
+            Integer id = strings.get(s);
+            if (id == null) {
+                id = strings.size();
+                strings.put(s, id);
+            }
+            return id;
+        }
+
+        int name(org.dom4j.QName qname) {
+            if (qname == null) {
+                return -1;
+            }
+            List<Integer> key = Arrays.asList(string(qname.getNamespacePrefix()), string(qname.getNamespaceURI()),
+                    string(qname.getName()));
+            Integer id = names.get(key);
+            if (id == null) {
+                id = names.size();
+                names.put(key, id);
+            }
+            return id;
+        }
+
+        void element(ElementNode node) throws IOException {
+            body.writeInt(name(node.name));
+            body.writeLong(node.minCount);
+            body.writeLong(node.count);
+            body.writeLong(node.maxCount);
+            body.writeBoolean(node.isCommentOptional);
+            body.writeInt(node.attributes.size());
+            for (AttributeNode attr : node.attributes) {
+                body.writeInt(name(attr.name));
+                body.writeInt(string(attr.value));
+                body.writeInt(slot(attr.provider));
+            }
+            content(node.content);
+        }
+
+        void content(List<Node> content) throws IOException {
+            body.writeInt(content.size());
+            for (Node node : content) {
+                if (node instanceof ElementNode) {
+                    body.writeByte(ELEMENT);
+                    element((ElementNode) node);
+                } else if (node instanceof TextNode) {
+                    body.writeByte(TEXT);
+                    body.writeInt(string(((TextNode) node).value));
+                    body.writeInt(slot(((TextNode) node).provider));
+                } else if (node instanceof CommentNode) {
+                    body.writeByte(COMMENT);
+                    body.writeInt(string(((CommentNode) node).text));
+                } else if (node instanceof ChoiceNode) {
+                    body.writeByte(CHOICE);
+                    List<List<Node>> branches = ((ChoiceNode) node).branches;
+                    body.writeInt(branches.size());
+                    for (List<Node> branch : branches) {
+                        content(branch);
+                    }
+                } else if (node instanceof RepeatNode) {
+                    body.writeByte(REPEAT);
+                    RepeatNode repeat = (RepeatNode) node;
+                    body.writeLong(repeat.minCount);
+                    body.writeLong(repeat.maxCount);
+                    body.writeLong(repeat.count);
+                    content(repeat.content);
+                }
+            }
+        }
+    }
+
+    ///////////////////////////////////////// reading /////////////////////////////////////////
+
+    /**
+     * Read the snapshot saved in the given file, whether or not its schema documents have changed
+     *
+     * @param file the snapshot file
+     * @return the snapshot
+     * @throws IOException if the file could not be read or is not a snapshot of this version
+     */
+    public static PlanSnapshot read(File file) throws IOException {
+        return read(file, null);
+    }
+
+    /**
+     * Read the snapshot saved in the given file, whether or not its schema documents have changed
+     *
+     * @param file   the snapshot file
+     * @param values providers of the volatile values of the plans, or null to use
+     *               {@link ValueProviders#getDefaults()}; the providers themselves are not saved in the snapshot
+     * @return the snapshot
+     * @throws IOException if the file could not be read or is not a snapshot of this version
+     */
+    public static PlanSnapshot read(File file, ValueProviders values) throws IOException {
+        MappedByteBuffer buf;
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r"); //NON-NLS
+             FileChannel channel = raf.getChannel()) {
+            buf = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+
+        try {
+            return new Reader(buf, values != null ? values : ValueProviders.getDefaults()).snapshot();
+        } catch (RuntimeException e) {     //buffer underflow, bad indexes
+            throw new IOException("Corrupt plan snapshot: " + file, e);
+        }
+    }
+
+    /**
+     * Read the snapshot saved in the given file if it exists, can be read and its schema documents have not changed
+     *
+     * @param file the snapshot file
+     * @return the snapshot, or null if it is missing, unreadable or stale
+     */
+    public static PlanSnapshot readIfCurrent(File file) {
+        return readIfCurrent(file, null);
+    }
+
+    /**
+     * Read the snapshot saved in the given file if it exists, can be read and its schema documents have not changed
+     *
+     * @param file   the snapshot file
+     * @param values providers of the volatile values of the plans, or null to use
+     *               {@link ValueProviders#getDefaults()}
+     * @return the snapshot, or null if it is missing, unreadable or stale
+     */
+    public static PlanSnapshot readIfCurrent(File file, ValueProviders values) {
+        if (!file.isFile()) {
+            return null;
+        }
+        try {
+            PlanSnapshot snapshot = read(file, values);
+            if (snapshot.isCurrent()) {
+                return snapshot;
+            }
+            logger.info("Plan snapshot {} is stale", file);
+        } catch (IOException e) {
+            logger.warn("Could not read plan snapshot {}", file, e);
+        }
+        return null;
+    }
+
+    private static final class Reader {
+        final ByteBuffer buf;
+        final ValueProviders values;
+        String[] strings;
+        org.dom4j.QName[] names;
+
+        Reader(ByteBuffer buf, ValueProviders values) {
+            this.buf = buf;
+            this.values = values;
+        }
+
+        PlanSnapshot snapshot() throws IOException {
+            if (buf.getInt() != MAGIC) {
+                throw new IOException("Not a plan snapshot");
+            }
+            int version = buf.getInt();
+            if (version != VERSION) {
+                throw new IOException("Unsupported plan snapshot version: " + version);
+            }
+
+            byte[] hash = new byte[buf.getInt()];
+            buf.get(hash);
+            List<String> sources = new ArrayList<>();
+            for (int i = buf.getInt(); i > 0; i--) {
+                sources.add(readString());
+            }
+
+            XmlGenOptions options = new XmlGenOptions();
+            options.setGenOptionalAttributes(buf.get() != 0);
+            options.setGenOptionalElements(buf.get() != 0);
+            options.setGenChoiceOptionsAsComments(buf.get() != 0);
+            options.setGenCommentsForParticles(buf.get() != 0);
+            options.setMaxRepeatingElements(buf.getInt());
+            options.setMaxRecursiveDepth(buf.getInt());
+            options.setChoiceOptions(ChoiceOptions.values()[buf.getInt()]);
+            options.setDefVals(DefaultValues.values()[buf.getInt()]);
+            boolean isSeeded = buf.get() != 0;
+            long seed = buf.getLong();
+            options.setSeed(isSeeded ? seed : null);
+            long targetSize = buf.getLong();
+            options.setTargetSize(targetSize, SizeUnit.values()[buf.getInt()]);
+
+            strings = new String[buf.getInt()];
+            for (int i = 0; i < strings.length; i++) {
+                strings[i] = readString();
+            }
+            names = new org.dom4j.QName[buf.getInt()];
+            for (int i = 0; i < names.length; i++) {
+                String prefix = string(buf.getInt());
+                String uri = string(buf.getInt());
+                String local = string(buf.getInt());
+                names[i] = (uri == null || uri.isEmpty()) && (prefix == null || prefix.isEmpty())
+                        ? new org.dom4j.QName(local)
+                        : new org.dom4j.QName(local, Namespace.get(prefix, uri));
+            }
+
+            Map<QName, GenerationPlan> plans = new HashMap<>();
+            for (int i = buf.getInt(); i > 0; i--) {
+                String nsUri = string(buf.getInt());
+                QName rootName = new QName(nsUri != null ? nsUri : "", string(buf.getInt()));
+                ElementNode root = buf.get() != 0 ? element() : null;
+                plans.put(rootName, new GenerationPlan(rootName, root, values));
+            }
+            return new PlanSnapshot(sources, hash, options, plans);
+        }
+
+        String readString() {
+            byte[] bytes = new byte[buf.getInt()];
+            buf.get(bytes);
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+
+        String string(int id) {
+            return id >= 0 ? strings[id] : null;
+        }
+
+        org.dom4j.QName name(int id) {
+            return id >= 0 ? names[id] : null;
+        }
+
+        ElementNode element() {
+            ElementNode node = new ElementNode(name(buf.getInt()));
+            node.minCount = buf.getLong();
+            node.count = buf.getLong();
+            node.maxCount = buf.getLong();
+            node.isCommentOptional = buf.get() != 0;
+            for (int i = buf.getInt(); i > 0; i--) {
+                node.attributes.add(new AttributeNode(name(buf.getInt()), string(buf.getInt()), values.get(buf.getInt())));
+            }
+            node.content = content();
+            return node;
+        }
+
+        List<Node> content() {
+            int size = buf.getInt();
+            List<Node> content = new ArrayList<>(size);
+            for (int i = 0; i < size; i++) {
+                byte type = buf.get();
+                switch (type) {
+                    case ELEMENT:
+                        content.add(element());
+                        break;
+                    case TEXT:
+                        content.add(new TextNode(string(buf.getInt()), values.get(buf.getInt())));
+                        break;
+                    case COMMENT:
+                        content.add(new CommentNode(string(buf.getInt())));
+                        break;
+                    case CHOICE:
+                        ChoiceNode choice = new ChoiceNode();
+                        for (int b = buf.getInt(); b > 0; b--) {
+                            choice.branches.add(content());
+                        }
+                        content.add(choice);
+                        break;
+                    case REPEAT:
+                        long minCount = buf.getLong();
+                        long maxCount = buf.getLong();
+                        long count = buf.getLong();
+                        content.add(new RepeatNode(minCount, maxCount, count, content()));
+                        break;
+                    default:
+                        throw new IllegalStateException("Unknown plan node type: " + type);
+                }
+            }
+            return content;
+        }
+    }
+
+    ///////////////////////////////////////// content hash /////////////////////////////////////////
+
+    /**
+     * @return the sorted source uris of the schemas of the collection; schemas read without a uri are not included
+     */
+    static List<String> sources(XmlSchemaCollection schemaColl) {
+        Set<String> uris = new TreeSet<>();
+        for (XmlSchema schema : schemaColl.getXmlSchemas()) {
+            if (schema.getSourceURI() != null) {
+                uris.add(schema.getSourceURI());
+            }
+        }
+        return new ArrayList<>(uris);
+    }
+
+    /**
+     * @return the SHA-256 hash of the uris and the content of the given schema sources
+     */
+    static byte[] hash(List<String> sources) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256"); //NON-NLS
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+
+        byte[] buffer = new byte[8192];
+        for (String source : sources) {
+            digest.update(source.getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) 0);
+            URLConnection connection = new URL(source).openConnection();
+            connection.setUseCaches(false);     //jar: urls would otherwise read a cached archive
+            try (InputStream in = connection.getInputStream()) {
+                for (int n = in.read(buffer); n != -1; n = in.read(buffer)) {
+                    digest.update(buffer, 0, n);
+                }
+            }
+        }
+        return digest.digest();
+    }
+}
@@ -0,0 +1,287 @@
+/*
+ * Copyright (c) 2010-2014 Stratumsoft Technologies Pvt. Ltd.
+ *
+ * This file (RecursionAnalysis.java) is part of xsd2xml.
+ *
+ * xsd2xml is a Java program to generate XML instances from an XML Schema document
+ *
+ * xsd2xml is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * xsd2xml is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; If not, see <http://www.gnu.org/licenses/>.
+ *
+ * To use xsd2xml in your non-GPL licensed software, contact Stratumsoft Technologies
+ * support at support@stratumsoft.com or visit http://www.stratumsoft.com to obtain
+ * a commercial license.
+ */
+
+package com.stratumsoft.xmlgen;
+
+import org.apache.ws.commons.schema.*;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Static recursion analysis of the complex types of a schema collection. The type graph has an edge from a type to
+ * the complex type of every element its content can contain (including the content inherited through complex
+ * content extensions). A type is recursive when it is part of a cycle of that graph, i.e. when its strongly
+ * connected component has more than one type or the type refers to itself.
+ * <p/>
+ * Each recursive type is given a slot, so that the compiler can keep the number of times the type is nested on the
+ * current path in an array of counters instead of scanning the path. Non recursive types never need to be counted.
+ * The analysis is immutable once built.
+ *
+ * @author murakris@stratumsoft.com
+ */
+final class RecursionAnalysis {
+
+    private static final Logger logger = LoggerFactory.getLogger(RecursionAnalysis.class);
+
+    /**
+     * slot of a type that is not part of any cycle
+     */
+    static final int NOT_RECURSIVE = -1;
+
+    /**
+     * slot of a type the analysis did not see; such a type must be tracked without a slot
+     */
+    static final int UNKNOWN = -2;
+
+    private final SchemaRegistry registry;
+
+    /**
+     * complex type -> slot (or NOT_RECURSIVE)
+     */
+    private final Map<XmlSchemaComplexType, Integer> slots = new IdentityHashMap<>();
+
+    private int slotCount;
+
+    /**
+     * complex type -> complex types of the elements of its content
+     */
+    private final Map<XmlSchemaComplexType, List<XmlSchemaComplexType>> graph = new IdentityHashMap<>();
+
+    RecursionAnalysis(SchemaRegistry registry) {
+        this.registry = registry;
+
+        List<XmlSchemaComplexType> types = buildGraph();
+        findCycles(types);
+        graph.clear();      //only needed while analysing
+
+        logger.debug("Recursion analysis: {} complex types, {} recursive", types.size(), slotCount);
+    }
+
+    /**
+     * @param type a complex type
+     * @return the counter slot of the type, {@link #NOT_RECURSIVE} or {@link #UNKNOWN}
+     */
+    int slotOf(XmlSchemaComplexType type) {
+        Integer slot = slots.get(type);
+        return slot != null ? slot : UNKNOWN;
+    }
+
+    /**
+     * @return the number of recursive types, i.e. the number of counters needed to track a path
+     */
+    int getSlotCount() {
+        return slotCount;
+    }
+
+    ///////////////////////////////////////// type graph /////////////////////////////////////////
+
+    private List<XmlSchemaComplexType> buildGraph() {
+        Deque<XmlSchemaComplexType> pending = new ArrayDeque<>();
+        for (XmlSchemaType type : registry.getTypes()) {
+            if (type instanceof XmlSchemaComplexType) {
+                discover((XmlSchemaComplexType) type, pending);
+            }
+        }
+        for (XmlSchemaElement el : registry.getElements()) {
+            XmlSchemaType type = el.getSchemaType();
+            if (type instanceof XmlSchemaComplexType) {
+                discover((XmlSchemaComplexType) type, pending);
+            }
+        }
+
+        List<XmlSchemaComplexType> types = new ArrayList<>();
+        while (!pending.isEmpty()) {
+            XmlSchemaComplexType type = pending.poll();
+            types.add(type);
+
+            List<XmlSchemaComplexType> successors = graph.get(type);
+            Set<XmlSchemaGroup> visitedGroups = Collections.newSetFromMap(new IdentityHashMap<XmlSchemaGroup, Boolean>());
+            addContentEdges(type, successors, visitedGroups, Collections.newSetFromMap(
+                    new IdentityHashMap<XmlSchemaComplexType, Boolean>()));
+            for (XmlSchemaComplexType successor : successors) {
+                discover(successor, pending);
+            }
+        }
+        return types;
+    }
+
+    private void discover(XmlSchemaComplexType type, Deque<XmlSchemaComplexType> pending) {
+        if (!graph.containsKey(type)) {
+            graph.put(type, new ArrayList<XmlSchemaComplexType>());
+            pending.add(type);
+        }
+    }
+
+    /**
+     * Add an edge to the type of every element the content of the given type can contain
+     */
+    private void addContentEdges(XmlSchemaComplexType type, List<XmlSchemaComplexType> successors,
+                                 Set<XmlSchemaGroup> visitedGroups, Set<XmlSchemaComplexType> visitedBases) {
+        if (type == null || !visitedBases.add(type)) {
+            return;
+        }
+
+        XmlSchemaContentModel model = type.getContentModel();
+        if (model instanceof XmlSchemaComplexContent) {
+            XmlSchemaContent content = ((XmlSchemaComplexContent) model).getContent();
+            if (content instanceof XmlSchemaComplexContentExtension) {
+                XmlSchemaComplexContentExtension extension = (XmlSchemaComplexContentExtension) content;
+                XmlSchemaType base = registry.getType(extension.getBaseTypeName());
+                if (base instanceof XmlSchemaComplexType) {
+                    addContentEdges((XmlSchemaComplexType) base, successors, visitedGroups, visitedBases);
+                }
+                addParticleEdges(extension.getParticle(), successors, visitedGroups);
+
+            } else if (content instanceof XmlSchemaComplexContentRestriction) {
+                addParticleEdges(((XmlSchemaComplexContentRestriction) content).getParticle(), successors,
+                        visitedGroups);
+            }
+        } else if (model == null) {
+            addParticleEdges(type.getParticle(), successors, visitedGroups);
+        }
+    }
+
+    private void addParticleEdges(XmlSchemaParticle particle, List<XmlSchemaComplexType> successors,
+                                  Set<XmlSchemaGroup> visitedGroups) {
+        if (particle instanceof XmlSchemaElement) {
+            XmlSchemaElement schEl = (XmlSchemaElement) particle;
+            XmlSchemaElement refEl = schEl.getRef().getTarget();
+            XmlSchemaType type = (refEl != null ? refEl : schEl).getSchemaType();
+            if (type instanceof XmlSchemaComplexType) {
+                successors.add((XmlSchemaComplexType) type);
+            }
+
+        } else if (particle instanceof XmlSchemaSequence) {
+            for (XmlSchemaSequenceMember member : ((XmlSchemaSequence) particle).getItems()) {
+                if (member instanceof XmlSchemaParticle) {
+                    addParticleEdges((XmlSchemaParticle) member, successors, visitedGroups);
+                }
+            }
+
+        } else if (particle instanceof XmlSchemaChoice) {
+            for (XmlSchemaObject item : ((XmlSchemaChoice) particle).getItems()) {
+                if (item instanceof XmlSchemaParticle) {
+                    addParticleEdges((XmlSchemaParticle) item, successors, visitedGroups);
+                }
+            }
+
+        } else if (particle instanceof XmlSchemaAll) {
+            for (XmlSchemaElement el : ((XmlSchemaAll) particle).getItems()) {
+                addParticleEdges(el, successors, visitedGroups);
+            }
+
+        } else if (particle instanceof XmlSchemaGroupRef) {
+            XmlSchemaGroup group = registry.getGroup(((XmlSchemaGroupRef) particle).getRefName());
+            if (group != null && visitedGroups.add(group)) {
+                addParticleEdges(group.getParticle(), successors, visitedGroups);
+            }
+        }
+    }
+
+    ///////////////////////////////////////// strongly connected components /////////////////////////////////////////
+
+    /**
+     * Tarjan's algorithm, written iteratively so that deep type graphs cannot overflow the stack. Every type of a
+     * cyclic component gets a slot; all other types are marked as not recursive
+     */
+    private void findCycles(List<XmlSchemaComplexType> types) {
+        Map<XmlSchemaComplexType, Integer> index = new IdentityHashMap<>();
+        Map<XmlSchemaComplexType, Integer> lowLink = new IdentityHashMap<>();
+        Set<XmlSchemaComplexType> onStack = Collections.newSetFromMap(new IdentityHashMap<XmlSchemaComplexType, Boolean>());
+        Deque<XmlSchemaComplexType> stack = new ArrayDeque<>();
+
+        //explicit call stack: the type and the position of the next successor to visit
+        Deque<XmlSchemaComplexType> callTypes = new ArrayDeque<>();
+        Deque<Integer> callPositions = new ArrayDeque<>();
+        int counter = 0;
+
+        for (XmlSchemaComplexType start : types) {
+            if (index.containsKey(start)) {
+                continue;
+            }
+            index.put(start, counter);
+            lowLink.put(start, counter);
+            counter++;
+            stack.push(start);
+            onStack.add(start);
+            callTypes.push(start);
+            callPositions.push(0);
+
+            while (!callTypes.isEmpty()) {
+                XmlSchemaComplexType type = callTypes.peek();
+                int position = callPositions.pop();
+                List<XmlSchemaComplexType> successors = graph.get(type);
+
+                if (position < successors.size()) {
+                    callPositions.push(position + 1);
+                    XmlSchemaComplexType successor = successors.get(position);
+                    if (!index.containsKey(successor)) {
+                        index.put(successor, counter);
+                        lowLink.put(successor, counter);
+                        counter++;
+                        stack.push(successor);
+                        onStack.add(successor);
+                        callTypes.push(successor);
+                        callPositions.push(0);
+                    } else if (onStack.contains(successor)) {
+                        lowLink.put(type, Math.min(lowLink.get(type), index.get(successor)));
+                    }
+                    continue;
+                }
+
+                //all successors visited
+                callTypes.pop();
+                if (!callTypes.isEmpty()) {
+                    XmlSchemaComplexType caller = callTypes.peek();
+                    lowLink.put(caller, Math.min(lowLink.get(caller), lowLink.get(type)));
+                }
+
+                if (lowLink.get(type).equals(index.get(type))) {
+                    List<XmlSchemaComplexType> component = new ArrayList<>();
+                    XmlSchemaComplexType member;
+                    do {
+                        member = stack.pop();
+                        onStack.remove(member);
+                        component.add(member);
+                    } while (member != type);
+
+                    boolean isCyclic = component.size() > 1 || successors.contains(type);
+                    for (XmlSchemaComplexType t : component) {
+                        slots.put(t, isCyclic ? slotCount++ : NOT_RECURSIVE);
+                    }
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,596 @@
+/*
+ * Copyright (c) 2010-2014 Stratumsoft Technologies Pvt. Ltd.
+ *
+ * This file (ResultCache.java) is part of xsd2xml.
+ *
+ * xsd2xml is a Java program to generate XML instances from an XML Schema document
+ *
+ * xsd2xml is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * xsd2xml is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; If not, see <http://www.gnu.org/licenses/>.
+ *
+ * To use xsd2xml in your non-GPL licensed software, contact Stratumsoft Technologies
+ * support at support@stratumsoft.com or visit http://www.stratumsoft.com to obtain
+ * a commercial license.
+ */
+
+
+package com.stratumsoft.xmlgen;
+
+import com.stratumsoft.xmlgen.GenerationPlan.AttributeNode;
+import com.stratumsoft.xmlgen.GenerationPlan.ChoiceNode;
+import com.stratumsoft.xmlgen.GenerationPlan.ElementNode;
+import com.stratumsoft.xmlgen.GenerationPlan.Node;
+import com.stratumsoft.xmlgen.GenerationPlan.RepeatNode;
+import com.stratumsoft.xmlgen.GenerationPlan.TextNode;
+import org.apache.ws.commons.schema.constants.Constants;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.xml.namespace.QName;
+import javax.xml.stream.XMLStreamException;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * Cache of generated documents, as the compact utf-8 bytes written by
+ * {@link XmlGenEngine#generateXml(QName, XmlGenOptions, java.io.OutputStream)}, for the callers that generate the
+ * same documents over and over. Documents are keyed by a fingerprint of the schema collection (a hash of the uris and
+ * the content of its schema documents), the value providers of the engine, the root element and the options that
+ * affect the plan, and the seed; engines for unchanged schemas, such as those of a reloaded {@link SchemaRepository}
+ * entry, share their documents. A collection with schemas read without a uri is keyed by its engine instead.
+ * <p/>
+ * A seeded document, or one without per-document values, is cached as is. An unseeded document whose only
+ * per-document values are volatile values (e.g. xs:ID values) is cached with a slot for each of them, and the values
+ * are generated again and patched into the cached bytes on every hit, so that each document still gets its own ids.
+ * Unseeded documents with random choice branches have a different structure each time and are not cached.
+ * <p/>
+ * The cache keeps the most recently used documents within a budget of bytes. It is safe to use from any number of
+ * threads; two threads missing the same document at the same time both generate it.
+ *
+ * @author murakris@stratumsoft.com
+ */
+public final class ResultCache {
+
+    private static final Logger logger = LoggerFactory.getLogger(ResultCache.class);
+
+    /**
+     * estimated size of the key and the bookkeeping of an entry, added to the size of its content
+     */
+    private static final int ENTRY_OVERHEAD = 128;
+
+    /**
+     * cached entry of the documents that cannot be cached, so that their plans are only inspected once
+     */
+    private static final Entry UNCACHEABLE = new Entry(new byte[][]{new byte[0]}, new ValueProvider[0],
+            new boolean[0]);
+
+    private final long maxBytes;
+
+    /**
+     * entries in access order, eldest first; the entries and the counters are guarded by the map
+     */
+    private final LinkedHashMap<Key, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+    private long size;
+
+    private long hits;
+
+    private long misses;
+
+    private long evictions;
+
+    /**
+     * fingerprints of the schema collections of the engines, computed once per engine
+     */
+    private final Map<XmlGenEngine, Object> fingerprints = new WeakHashMap<>();
+
+    /**
+     * @param maxBytes budget of the cache, in bytes of cached documents
+     */
+    public ResultCache(long maxBytes) {
+        if (maxBytes < 0) {
+            throw new IllegalArgumentException("maxBytes cannot be negative");
+        }
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Get the document for the given element from the cache, generating and caching it if needed
+     *
+     * @param engine  the engine generating the document
+     * @param elName  the QName of the element for which the document should be generated
+     * @param options options for the document, or null to use the engine defaults
+     * @return the compact utf-8 encoded document
+     */
+    public byte[] generate(XmlGenEngine engine, QName elName, XmlGenOptions options) {
+        byte[] document = get(engine, elName, options);
+        return document.clone();
+    }
+
+    /**
+     * Write the document for the given element to a stream, from the cache if possible
+     *
+     * @param out the stream to write to, which is not closed
+     * @throws IOException if the document could not be written
+     */
+    void write(XmlGenEngine engine, QName elName, XmlGenOptions options, OutputStream out) throws IOException {
+        out.write(get(engine, elName, options));
+    }
+
+    /**
+     * @return the document, which may be the array of the cache entry and must not be modified
+     */
+    private byte[] get(XmlGenEngine engine, QName elName, XmlGenOptions options) {
+        XmlGenOptions opts = options != null ? options : engine.getDefaultOptions();
+        Key key = new Key(fingerprint(engine), engine.getValueProviders(), new PlanKey(elName, opts),
+                opts.getSeed());
+
+        Entry entry;
+        synchronized (entries) {
+            entry = entries.get(key);
+            if (entry != null && entry != UNCACHEABLE) {
+                hits++;
+            } else {
+                misses++;
+            }
+        }
+        if (entry == UNCACHEABLE) {
+            return write(engine.compile(elName, opts), opts);
+        }
+        if (entry != null) {
+            return entry.render(new SeededRandom());
+        }
+
+        GenerationPlan plan = engine.compile(elName, opts);
+        byte[] document;
+        if (opts.getSeed() != null || plan.isEmpty() || !plan.getRoot().isRandom) {
+            document = write(plan, opts);
+            entry = new Entry(new byte[][]{document}, new ValueProvider[0], new boolean[0]);
+        } else {
+            entry = new TemplateBuilder().build(plan);
+            document = entry != null ? entry.render(new SeededRandom()) : write(plan, opts);
+        }
+        put(key, entry != null ? entry : UNCACHEABLE);
+        return document;
+    }
+
+    /**
+     * Remove all the cached documents; the counters are kept
+     */
+    public void clear() {
+        synchronized (entries) {
+            entries.clear();
+            size = 0;
+        }
+    }
+
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    /**
+     * @return the bytes taken by the cached documents
+     */
+    public long getSize() {
+        synchronized (entries) {
+            return size;
+        }
+    }
+
+    public int getEntryCount() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    /**
+     * @return the number of documents served from the cache
+     */
+    public long getHitCount() {
+        synchronized (entries) {
+            return hits;
+        }
+    }
+
+    /**
+     * @return the number of documents that were generated, including those that cannot be cached
+     */
+    public long getMissCount() {
+        synchronized (entries) {
+            return misses;
+        }
+    }
+
+    /**
+     * @return the number of documents evicted to stay within the budget
+     */
+    public long getEvictionCount() {
+        synchronized (entries) {
+            return evictions;
+        }
+    }
+
+    @Override
+    public String toString() {
+        synchronized (entries) {
+            return "ResultCache{entries=" + entries.size() + ", size=" + size + '/' + maxBytes //NON-NLS
+                    + ", hits=" + hits + ", misses=" + misses + ", evictions=" + evictions + '}'; //NON-NLS
+        }
+    }
+
+    private void put(Key key, Entry entry) {
+        long entrySize = entry.size();
+        if (entrySize > maxBytes) {
+            logger.debug("Not caching document of {} bytes, over the budget of {}", entrySize, maxBytes);
+            return;
+        }
+        synchronized (entries) {
+            Entry previous = entries.put(key, entry);
+            size += entrySize - (previous != null ? previous.size() : 0);
+            Iterator<Entry> eldest = entries.values().iterator();
+            while (size > maxBytes && eldest.hasNext()) {
+                size -= eldest.next().size();
+                eldest.remove();
+                evictions++;
+            }
+        }
+    }
+
+    private Object fingerprint(XmlGenEngine engine) {
+        synchronized (fingerprints) {
+            Object fingerprint = fingerprints.get(engine);
+            if (fingerprint == null) {
+                fingerprint = computeFingerprint(engine);
+                fingerprints.put(engine, fingerprint);
+            }
+            return fingerprint;
+        }
+    }
+
+    /**
+     * @return the hash of the schema documents, or a token unique to the engine if the collection has schemas that
+     *         were not read from a uri or could not be read again
+     */
+    private static Object computeFingerprint(XmlGenEngine engine) {
+        List<String> sources = PlanSnapshot.sources(engine.getSchemaCollection());
+        int schemaCount = 0;
+        for (org.apache.ws.commons.schema.XmlSchema schema : engine.getSchemaCollection().getXmlSchemas()) {
+            if (!Constants.URI_2001_SCHEMA_XSD.equals(schema.getTargetNamespace())) {
+                schemaCount++;
+            }
+        }
+        if (sources.isEmpty() || sources.size() < schemaCount) {
+            logger.debug("Schemas without a uri, caching documents per engine");
+            return new Object();
+        }
+        try {
+            return ByteBuffer.wrap(PlanSnapshot.hash(sources));
+        } catch (IOException e) {
+            logger.debug("Could not read the schema documents, caching documents per engine", e);
+            return new Object();
+        }
+    }
+
+    private static byte[] write(GenerationPlan plan, XmlGenOptions opts) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try {
+            plan.writeDocument(out, opts.newDocumentRandom());
+        } catch (XMLStreamException e) {
+            throw new IllegalStateException("Could not write document " + plan.getRootName(), e);
+        }
+        return out.toByteArray();
+    }
+
+    private static final class Key {
+        private final Object fingerprint;
+        private final ValueProviders values;
+        private final PlanKey planKey;
+        private final Long seed;
+
+        Key(Object fingerprint, ValueProviders values, PlanKey planKey, Long seed) {
+            this.fingerprint = fingerprint;
+            this.values = values;
+            this.planKey = planKey;
+            this.seed = seed;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Key)) return false;
+
+            Key that = (Key) o;
+            return fingerprint.equals(that.fingerprint)
+                    && values == that.values
+                    && planKey.equals(that.planKey)
+                    && (seed != null ? seed.equals(that.seed) : that.seed == null);
+        }
+
+        @Override
+        public int hashCode() {
+            int result = fingerprint.hashCode();
+            result = 31 * result + System.identityHashCode(values);
+            result = 31 * result + planKey.hashCode();
+            result = 31 * result + (seed != null ? seed.hashCode() : 0);
+            return result;
+        }
+    }
+
+    /**
+     * A cached document: the constant segments of its bytes, and between each of them a slot for a volatile value
+     */
+    private static final class Entry {
+        private final byte[][] segments;
+        private final ValueProvider[] slots;
+        private final boolean[] isAttribute;
+        private final int length;
+
+        Entry(byte[][] segments, ValueProvider[] slots, boolean[] isAttribute) {
+            this.segments = segments;
+            this.slots = slots;
+            this.isAttribute = isAttribute;
+            int n = 0;
+            for (byte[] segment : segments) {
+                n += segment.length;
+            }
+            this.length = n;
+        }
+
+        long size() {
+            return length + 8L * slots.length + ENTRY_OVERHEAD;
+        }
+
+        byte[] render(SeededRandom random) {
+            if (slots.length == 0) {
+                return segments[0];
+            }
+            ByteArrayOutputStream out = new ByteArrayOutputStream(length + 16 * slots.length);
+            out.write(segments[0], 0, segments[0].length);
+            for (int i = 0; i < slots.length; i++) {
+                String value = slots[i].getValue(random);
+                if (value != null) {
+                    byte[] bytes = escape(value, isAttribute[i]).getBytes(StandardCharsets.UTF_8);
+                    out.write(bytes, 0, bytes.length);
+                }
+                out.write(segments[i + 1], 0, segments[i + 1].length);
+            }
+            return out.toByteArray();
+        }
+
+        /**
+         * Escape a value the way the stream writer does
+         */
+        private static String escape(String value, boolean isAttribute) {
+            StringBuilder sb = null;
+            for (int i = 0; i < value.length(); i++) {
+                char c = value.charAt(i);
+                String replacement;
+                if (c == '&') {
+                    replacement = "&amp;"; //NON-NLS
+                } else if (c == '<') {
+                    replacement = "&lt;"; //NON-NLS
+                } else if (c == '>') {
+                    replacement = "&gt;"; //NON-NLS
+                } else if (c == '"' && isAttribute) {
+                    replacement = "&quot;"; //NON-NLS
+                } else {
+                    if (sb != null) {
+                        sb.append(c);
+                    }
+                    continue;
+                }
+                if (sb == null) {
+                    sb = new StringBuilder(value.length() + 16).append(value, 0, i);
+                }
+                sb.append(replacement);
+            }
+            return sb != null ? sb.toString() : value;
+        }
+    }
+
+    /**
+     * Builds the cached entry of a plan with volatile values: the plan is copied with each volatile value replaced
+     * by a marker naming its provider, and the document written from the copy is split at the markers
+     */
+    private static final class TemplateBuilder {
+
+        /**
+         * private use characters, which the generated values do not contain
+         */
+        private static final char MARK_START = '\uE000';
+        private static final char MARK_END = '\uE001';
+        private static final byte[] MARK_START_BYTES = String.valueOf(MARK_START).getBytes(StandardCharsets.UTF_8);
+        private static final byte[] MARK_END_BYTES = String.valueOf(MARK_END).getBytes(StandardCharsets.UTF_8);
+
+        private final List<ValueProvider> providers = new ArrayList<>();
+
+        private final List<Boolean> isAttribute = new ArrayList<>();
+
+        private final Map<ValueProvider, Marker> attributeMarkers = new IdentityHashMap<>();
+
+        private final Map<ValueProvider, Marker> textMarkers = new IdentityHashMap<>();
+
+        /**
+         * number of markers written
+         */
+        private int markCount;
+
+        /**
+         * @return the entry, or null if the plan has random choice branches or the values contain markers
+         */
+        Entry build(GenerationPlan plan) {
+            ElementNode root = copy(plan.getRoot());
+            if (root == null) {
+                return null;
+            }
+            ValueProviders values = plan.getValues();
+            ValueProvider idProvider = values.get(Constants.XSD_ID);
+            if (idProvider != null) {
+                values = values.with(Constants.XSD_ID, marker(idProvider, true));
+            }
+
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            try {
+                new GenerationPlan(plan.getRootName(), root, values).writeDocument(out, new SeededRandom(0));
+            } catch (XMLStreamException e) {
+                throw new IllegalStateException("Could not write document " + plan.getRootName(), e);
+            }
+            return split(out.toByteArray());
+        }
+
+        private Entry split(byte[] document) {
+            List<byte[]> segments = new ArrayList<>();
+            List<ValueProvider> slots = new ArrayList<>();
+            List<Boolean> slotIsAttribute = new ArrayList<>();
+            int start = 0;
+            for (int i = indexOf(document, MARK_START_BYTES, 0); i >= 0;
+                 i = indexOf(document, MARK_START_BYTES, start)) {
+                int end = indexOf(document, MARK_END_BYTES, i);
+                if (end < 0) {
+                    return null;
+                }
+                int index;
+                try {
+                    index = Integer.parseInt(new String(document, i + MARK_START_BYTES.length,
+                            end - i - MARK_START_BYTES.length, StandardCharsets.US_ASCII));
+                } catch (NumberFormatException e) {
+                    return null;
+                }
+                if (index < 0 || index >= providers.size()) {
+                    return null;
+                }
+                segments.add(copyOfRange(document, start, i));
+                slots.add(providers.get(index));
+                slotIsAttribute.add(isAttribute.get(index));
+                start = end + MARK_END_BYTES.length;
+            }
+            segments.add(copyOfRange(document, start, document.length));
+            if (slots.size() != markCount) {
+                logger.debug("Generated values contain markers, not caching the document");
+                return null;
+            }
+
+            boolean[] isAttr = new boolean[slotIsAttribute.size()];
+            for (int i = 0; i < isAttr.length; i++) {
+                isAttr[i] = slotIsAttribute.get(i);
+            }
+            return new Entry(segments.toArray(new byte[segments.size()][]),
+                    slots.toArray(new ValueProvider[slots.size()]), isAttr);
+        }
+
+        private ElementNode copy(ElementNode node) {
+            ElementNode copy = new ElementNode(node.name);
+            copy.minCount = node.minCount;
+            copy.count = node.count;
+            copy.maxCount = node.maxCount;
+            copy.isCommentOptional = node.isCommentOptional;
+            for (AttributeNode attr : node.attributes) {
+                copy.attributes.add(attr.isVolatile()
+                        ? new AttributeNode(attr.name, null, marker(attr.provider, true)) : attr);
+            }
+            copy.content = copy(node.content);
+            return copy.content != null ? copy : null;
+        }
+
+        /**
+         * @return the copied nodes, or null if they contain a choice
+         */
+        private List<Node> copy(List<Node> nodes) {
+            List<Node> copies = new ArrayList<>(nodes.size());
+            for (Node node : nodes) {
+                if (node instanceof ElementNode) {
+                    ElementNode copy = copy((ElementNode) node);
+                    if (copy == null) {
+                        return null;
+                    }
+                    copies.add(copy);
+                } else if (node instanceof TextNode) {
+                    TextNode text = (TextNode) node;
+                    copies.add(text.provider != null ? new TextNode(null, marker(text.provider, false)) : text);
+                } else if (node instanceof ChoiceNode) {
+                    return null;
+                } else if (node instanceof RepeatNode) {
+                    RepeatNode repeat = (RepeatNode) node;
+                    List<Node> content = copy(repeat.content);
+                    if (content == null) {
+                        return null;
+                    }
+                    copies.add(new RepeatNode(repeat.minCount, repeat.maxCount, repeat.count, content));
+                } else {
+                    copies.add(node);
+                }
+            }
+            return copies;
+        }
+
+        private Marker marker(ValueProvider provider, boolean isAttr) {
+            Map<ValueProvider, Marker> markers = isAttr ? attributeMarkers : textMarkers;
+            Marker marker = markers.get(provider);
+            if (marker == null) {
+                marker = new Marker(MARK_START + String.valueOf(providers.size()) + MARK_END);
+                providers.add(provider);
+                isAttribute.add(isAttr);
+                markers.put(provider, marker);
+            }
+            return marker;
+        }
+
+        private static int indexOf(byte[] bytes, byte[] pattern, int from) {
+            outer:
+            for (int i = from, last = bytes.length - pattern.length; i <= last; i++) {
+                for (int j = 0; j < pattern.length; j++) {
+                    if (bytes[i + j] != pattern[j]) {
+                        continue outer;
+                    }
+                }
+                return i;
+            }
+            return -1;
+        }
+
+        private static byte[] copyOfRange(byte[] bytes, int from, int to) {
+            byte[] copy = new byte[to - from];
+            System.arraycopy(bytes, from, copy, 0, copy.length);
+            return copy;
+        }
+
+        private final class Marker implements ValueProvider {
+            private final String mark;
+
+            Marker(String mark) {
+                this.mark = mark;
+            }
+
+            @Override
+            public String getValue(SeededRandom random) {
+                markCount++;
+                return mark;
+            }
+
+            @Override
+            public boolean isVolatile() {
+                return true;
+            }
+        }
+    }
+}
@@ -25,122 +25,65 @@
 
 package com.stratumsoft.xmlgen;
 
-import org.apache.commons.codec.binary.Base64;
-import org.apache.ws.commons.schema.constants.Constants;
-
 import javax.xml.namespace.QName;
-import java.text.SimpleDateFormat;
-import java.util.Date;
-import java.util.HashMap;
 import java.util.Map;
-import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
+ * Static access to the default sample values.
+ *
  * @author murakris@stratumsoft.com
  * @since 7/8/11
+ * @deprecated use {@link ValueProviders} and give each engine its own providers
  */
-@SuppressWarnings("HardCodedStringLiteral")
+@Deprecated
 public class SampleValueProvider {
 
-    static Map<QName, String> qnVal = new HashMap<QName, String>();
-
-    static final SimpleDateFormat sdfYear = new SimpleDateFormat("yyyy");
-    static final SimpleDateFormat sdfYearMonth = new SimpleDateFormat("yyyy-MM");
-    static final SimpleDateFormat sdfMonthDay = new SimpleDateFormat("MM-dd");
-    static final SimpleDateFormat sdfMonth = new SimpleDateFormat("MM");
-    static final SimpleDateFormat sdfDay = new SimpleDateFormat("dd");
-    static final SimpleDateFormat sdfDate = new SimpleDateFormat("yyyy-MM-dd");
-    static final SimpleDateFormat sdfTime = new SimpleDateFormat("hh:mm:ss");
-    static final SimpleDateFormat sdfDateTime = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss Z");
-
-    static {
-        qnVal.put(Constants.XSD_STRING, "string");
-        qnVal.put(Constants.XSD_BOOLEAN, "true");
-        qnVal.put(Constants.XSD_DOUBLE, "1.0");
-        qnVal.put(Constants.XSD_FLOAT, "1.0");
-        qnVal.put(Constants.XSD_INT, "1");
-        qnVal.put(Constants.XSD_UNSIGNEDINT, "1");
-        qnVal.put(Constants.XSD_INTEGER, "1");
-        qnVal.put(Constants.XSD_POSITIVEINTEGER, "1");
-        qnVal.put(Constants.XSD_NEGATIVEINTEGER, "-1");
-        qnVal.put(Constants.XSD_NONNEGATIVEINTEGER, "1");
-        qnVal.put(Constants.XSD_NONPOSITIVEINTEGER, "-1");
-        qnVal.put(Constants.XSD_SHORT, "1");
-        qnVal.put(Constants.XSD_UNSIGNEDSHORT, "1");
-        qnVal.put(Constants.XSD_LONG, "1");
-        qnVal.put(Constants.XSD_UNSIGNEDLONG, "1");
-        qnVal.put(Constants.XSD_BYTE, "1");
-        qnVal.put(Constants.XSD_UNSIGNEDBYTE, "1");
-        qnVal.put(Constants.XSD_DECIMAL, "1.0");
-        qnVal.put(Constants.XSD_BASE64, Base64.encodeBase64String("test".getBytes()));
-        qnVal.put(Constants.XSD_HEXBIN, "0xCAFEBABE");
-
-        qnVal.put(Constants.XSD_DATE, getDateValue());
-        qnVal.put(Constants.XSD_TIME, getTimeValue());
-        qnVal.put(Constants.XSD_DATETIME, getDateTimeValue());
-        qnVal.put(Constants.XSD_YEAR, getYear());
-        qnVal.put(Constants.XSD_YEARMONTH, getYearMonth());
-        qnVal.put(Constants.XSD_MONTH, getMonth());
-        qnVal.put(Constants.XSD_MONTHDAY, getMonthDay());
-        qnVal.put(Constants.XSD_DAY, getDay());
-
-        qnVal.put(Constants.XSD_NORMALIZEDSTRING, "normalized string");
-        qnVal.put(Constants.XSD_STRING, "string value");
-        qnVal.put(Constants.XSD_TOKEN, "token");
-        qnVal.put(Constants.XSD_NAME, "Name");
-        qnVal.put(Constants.XSD_NCNAME, "NCName");
-        qnVal.put(Constants.XSD_NMTOKEN, "token");
-        qnVal.put(Constants.XSD_NMTOKENS, "token1 token2");
-        qnVal.put(Constants.XSD_LANGUAGE, "en");
-
-    }
+    /**
+     * values set for types that are not built-in; engines only take the values of the built-in types
+     */
+    private static final Map<QName, String> otherValues = new ConcurrentHashMap<>();
+
+    /**
+     * generators for the volatile values (xs:ID), one per thread so that a call neither allocates a generator nor
+     * contends with the other threads
+     */
+    private static final ThreadLocal<SeededRandom> random = new ThreadLocal<SeededRandom>() {
+        @Override
+        protected SeededRandom initialValue() {
+            return new SeededRandom();
+        }
+    };
 
+    /**
+     * Change the default value of a type. For a built-in type, only the engines created afterwards use the new value.
+     * The value of any other type is only returned by {@link #get(QName)}
+     */
     public static void set(QName qname, String value) {
-        qnVal.put(qname, value);
+        if (qname == null) {
+            return;
+        }
+        if (ValueProviders.slotOf(qname) == ValueProviders.NO_SLOT) {
+            if (value != null) {
+                otherValues.put(qname, value);
+            } else {
+                otherValues.remove(qname);
+            }
+            return;
+        }
+        synchronized (SampleValueProvider.class) {
+            ValueProviders.setDefaults(ValueProviders.getDefaults().with(qname, ValueProviders.constant(value)));
+        }
     }
 
     public static String get(QName qn) {
-        String val = "";
-        if (qn != null) {
-            if (qn.equals(Constants.XSD_ID)) {  //need to return unique values
-                val = "id-" + new Random().nextInt(Integer.MAX_VALUE);
-            } else
-                val = qnVal.get(qn);
+        if (qn == null) {
+            return "";
         }
-        return val;
-    }
-
-
-    private static String getDateValue() {
-        return sdfDate.format(new Date());
-    }
-
-    private static String getTimeValue() {
-        return sdfTime.format(new Date());
-    }
-
-    private static String getDateTimeValue() {
-        return sdfDateTime.format(new Date());
-    }
-
-    private static String getYear() {
-        return sdfYear.format(new Date());
-    }
-
-    private static String getYearMonth() {
-        return sdfYearMonth.format(new Date());
-    }
-
-    private static String getMonth() {
-        return sdfMonth.format(new Date());
-    }
-
-    private static String getMonthDay() {
-        return sdfMonthDay.format(new Date());
-    }
-
-    private static String getDay() {
-        return sdfDay.format(new Date());
+        int slot = ValueProviders.slotOf(qn);
+        if (slot == ValueProviders.NO_SLOT) {
+            return otherValues.get(qn);
+        }
+        return ValueProviders.getDefaults().getValue(slot, random.get());
     }
-
 }
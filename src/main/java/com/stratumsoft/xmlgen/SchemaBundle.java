@@ -0,0 +1,254 @@
+/*
+ * Copyright (c) 2010-2014 Stratumsoft Technologies Pvt. Ltd.
+ *
+ * This file (SchemaBundle.java) is part of xsd2xml.
+ *
+ * xsd2xml is a Java program to generate XML instances from an XML Schema document
+ *
+ * xsd2xml is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * xsd2xml is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; If not, see <http://www.gnu.org/licenses/>.
+ *
+ * To use xsd2xml in your non-GPL licensed software, contact Stratumsoft Technologies
+ * support at support@stratumsoft.com or visit http://www.stratumsoft.com to obtain
+ * a commercial license.
+ */
+
+package com.stratumsoft.xmlgen;
+
+import org.apache.ws.commons.schema.XmlSchemaCollection;
+import org.apache.ws.commons.schema.resolver.DefaultURIResolver;
+import org.apache.ws.commons.schema.resolver.URIResolver;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.xml.sax.InputSource;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+/**
+ * A set of schema documents packaged in a ZIP or JAR archive. The archive is mapped and read once when the bundle is
+ * opened, and the schema documents are kept in memory; the imports and includes of a schema read from the bundle are
+ * resolved against the bundle entries without touching the file system. Schema locations that fall outside the
+ * bundle (e.g. absolute http urls) are resolved as usual.
+ * <p/>
+ * Documents are handed to the parser as bytes, so their encoding is detected from the byte order mark or the xml
+ * declaration. The source uri of a schema read from a bundle is a <code>jar:</code> url of its entry.
+ *
+ * @author murakris@stratumsoft.com
+ */
+public final class SchemaBundle {
+
+    private static final Logger logger = LoggerFactory.getLogger(SchemaBundle.class);
+
+    private static final String ENTRY_SEPARATOR = "!/"; //NON-NLS
+
+    private final String archiveUri;
+
+    /**
+     * content of the file entries, by entry name (without a leading '/')
+     */
+    private final Map<String, byte[]> entries;
+
+    private SchemaBundle(String archiveUri, Map<String, byte[]> entries) {
+        this.archiveUri = archiveUri;
+        this.entries = Collections.unmodifiableMap(entries);
+    }
+
+    /**
+     * Read all the entries of the given archive into memory
+     *
+     * @param archive the ZIP or JAR file
+     * @return the bundle
+     * @throws FileNotFoundException if the archive does not exist
+     * @throws IOException           if the archive could not be read
+     */
+    public static SchemaBundle open(File archive) throws IOException {
+        if (!archive.isFile()) {
+            throw new FileNotFoundException(archive.getPath());
+        }
+
+        ByteBuffer buf;
+        try (RandomAccessFile raf = new RandomAccessFile(archive, "r"); //NON-NLS
+             FileChannel channel = raf.getChannel()) {
+            buf = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+
+        Map<String, byte[]> entries = new HashMap<>();
+        byte[] buffer = new byte[8192];
+        try (ZipInputStream zip = new ZipInputStream(new ByteBufferInputStream(buf))) {
+            for (ZipEntry entry = zip.getNextEntry(); entry != null; entry = zip.getNextEntry()) {
+                if (entry.isDirectory()) {
+                    continue;
+                }
+                ByteArrayOutputStream content = new ByteArrayOutputStream(
+                        entry.getSize() > 0 ? (int) entry.getSize() : buffer.length);
+                for (int n = zip.read(buffer); n != -1; n = zip.read(buffer)) {
+                    content.write(buffer, 0, n);
+                }
+                entries.put(normalize(entry.getName()), content.toByteArray());
+            }
+        }
+
+        logger.debug("Read {} entries from schema bundle {}", entries.size(), archive);
+        return new SchemaBundle("jar:" + archive.getAbsoluteFile().toURI() + ENTRY_SEPARATOR, entries); //NON-NLS
+    }
+
+    private static String normalize(String entryName) {
+        return entryName.startsWith("/") ? entryName.substring(1) : entryName;
+    }
+
+    public Set<String> getEntryNames() {
+        return entries.keySet();
+    }
+
+    public boolean contains(String entryName) {
+        return entries.containsKey(normalize(entryName));
+    }
+
+    /**
+     * @param entryName name of an entry of the bundle
+     * @return the <code>jar:</code> url of the entry
+     */
+    public String getUri(String entryName) {
+        return archiveUri + normalize(entryName);
+    }
+
+    /**
+     * Read the schema in the given entry, along with the schemas it imports and includes
+     *
+     * @param entryName name of the entry of the main schema document
+     * @return the schema collection
+     * @throws FileNotFoundException if the bundle has no such entry
+     */
+    public XmlSchemaCollection getSchemaCollection(String entryName) throws FileNotFoundException {
+        InputSource source = getInputSource(normalize(entryName));
+        if (source == null) {
+            throw new FileNotFoundException(getUri(entryName));
+        }
+        XmlSchemaCollection schColl = new XmlSchemaCollection();
+        schColl.setBaseUri(source.getSystemId());
+        schColl.setSchemaResolver(getResolver());
+        schColl.read(source);
+        return schColl;
+    }
+
+    /**
+     * @return a resolver that serves the schema locations within this bundle from memory
+     */
+    public URIResolver getResolver() {
+        return new BundleResolver();
+    }
+
+    private InputSource getInputSource(String entryName) {
+        byte[] content = entries.get(entryName);
+        if (content == null) {
+            return null;
+        }
+        InputSource source = new InputSource(new ByteArrayInputStream(content));
+        source.setSystemId(archiveUri + entryName);
+        return source;
+    }
+
+    /**
+     * @return the name of the entry the location resolves to, or null if it is outside the bundle
+     */
+    private String resolveEntryName(String schemaLocation, String baseUri) {
+        if (schemaLocation.startsWith(archiveUri)) {
+            return schemaLocation.substring(archiveUri.length());
+        }
+        try {
+            URI location = new URI(schemaLocation);
+            if (location.isAbsolute()) {
+                return null;
+            }
+            String basePath = "/";
+            if (baseUri != null && baseUri.startsWith(archiveUri)) {
+                basePath += baseUri.substring(archiveUri.length());
+            }
+            return normalize(new URI(null, null, basePath, null).resolve(location).getPath());
+        } catch (URISyntaxException e) {
+            logger.debug("Could not resolve schema location {} against {}", schemaLocation, baseUri);
+            return null;
+        }
+    }
+
+    private final class BundleResolver implements URIResolver {
+
+        private final DefaultURIResolver defaultResolver = new DefaultURIResolver();
+
+        @Override
+        public InputSource resolveEntity(String targetNamespace, String schemaLocation, String baseUri) {
+            if (schemaLocation != null) {
+                String entryName = resolveEntryName(schemaLocation, baseUri);
+                InputSource source = entryName != null ? getInputSource(entryName) : null;
+                if (source != null) {
+                    return source;
+                }
+                if (entryName != null) {
+                    logger.warn("Schema location {} is not in the bundle {}", schemaLocation, archiveUri);
+                }
+            }
+            return defaultResolver.resolveEntity(targetNamespace, schemaLocation, baseUri);
+        }
+    }
+
+    /**
+     * Reads the remaining bytes of a buffer
+     */
+    private static final class ByteBufferInputStream extends InputStream {
+
+        private final ByteBuffer buf;
+
+        ByteBufferInputStream(ByteBuffer buf) {
+            this.buf = buf;
+        }
+
+        @Override
+        public int read() {
+            return buf.hasRemaining() ? buf.get() & 0xff : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (len == 0) {
+                return 0;
+            }
+            if (!buf.hasRemaining()) {
+                return -1;
+            }
+            int n = Math.min(len, buf.remaining());
+            buf.get(b, off, n);
+            return n;
+        }
+
+        @Override
+        public int available() {
+            return buf.remaining();
+        }
+    }
+}
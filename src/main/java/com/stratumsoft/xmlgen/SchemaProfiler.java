@@ -0,0 +1,475 @@
+/*
+ * Copyright (c) 2010-2014 Stratumsoft Technologies Pvt. Ltd.
+ *
+ * This file (SchemaProfiler.java) is part of xsd2xml.
+ *
+ * xsd2xml is a Java program to generate XML instances from an XML Schema document
+ *
+ * xsd2xml is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * xsd2xml is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; If not, see <http://www.gnu.org/licenses/>.
+ *
+ * To use xsd2xml in your non-GPL licensed software, contact Stratumsoft Technologies
+ * support at support@stratumsoft.com or visit http://www.stratumsoft.com to obtain
+ * a commercial license.
+ */
+
+
+package com.stratumsoft.xmlgen;
+
+import org.apache.ws.commons.schema.XmlSchemaElement;
+import org.apache.ws.commons.schema.XmlSchemaType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.xml.namespace.QName;
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Attributes the time and the memory allocated while compiling generation plans to the schema elements and types
+ * being compiled. Each element compiled is a frame, named after the element and its type
+ * (<code>order[PurchaseOrderType]</code>), on a stack that follows the nesting of the elements, so the profile of a
+ * root element can be written as collapsed stacks (see {@link #writeCollapsed(Writer, Measure)}) for flame graph
+ * tools, or summed per type (see {@link #getTypeProfiles()}).
+ * <p/>
+ * A profiler is attached to an engine with {@link XmlGenEngine#setProfiler(SchemaProfiler)} and records every plan
+ * the engine compiles from then on; plans already in the plan cache are not compiled again unless the cache is
+ * cleared. Each compilation is recorded on its own and merged into the profile when it completes, so a profiler
+ * can be shared by concurrent compilations. Allocated bytes are only available on JVMs that support measuring
+ * the allocations of a thread, and are 0 otherwise.
+ *
+ * @author murakris@stratumsoft.com
+ */
+public final class SchemaProfiler {
+
+    private static final Logger logger = LoggerFactory.getLogger(SchemaProfiler.class);
+
+    /**
+     * The quantity a collapsed stack profile is weighted by. The weight of a stack is the self value of its top frame
+     */
+    public enum Measure {
+        /**
+         * nanoseconds spent compiling
+         */
+        TIME,
+        /**
+         * bytes allocated while compiling
+         */
+        ALLOCATED_BYTES,
+        /**
+         * number of plan elements created
+         */
+        ELEMENTS
+    }
+
+    private static final String ANONYMOUS = "anonymous"; //NON-NLS
+
+    private static final AllocationCounter allocationCounter = AllocationCounter.create();
+
+    /**
+     * merged frames of all the recorded compilations, by root frame name; guarded by this
+     */
+    private final Map<String, Frame> roots = new LinkedHashMap<>();
+
+    /**
+     * per type totals of all the recorded compilations, by type key; guarded by this
+     */
+    private final Map<String, TypeProfile> types = new HashMap<>();
+
+    /**
+     * Write the profile as collapsed stacks: one line per stack with a non zero self value, with the frames from the
+     * root separated by ';' and followed by the self value of the top frame
+     *
+     * @param out     the writer to write to; it is not closed
+     * @param measure the value the stacks are weighted by
+     * @throws IOException if the profile could not be written
+     */
+    public synchronized void writeCollapsed(Writer out, Measure measure) throws IOException {
+        StringBuilder path = new StringBuilder();
+        for (Frame root : roots.values()) {
+            writeCollapsed(out, measure, root, path);
+        }
+        out.flush();
+    }
+
+    private static void writeCollapsed(Writer out, Measure measure, Frame frame, StringBuilder path)
+            throws IOException {
+        int length = path.length();
+        if (length > 0) {
+            path.append(';');
+        }
+        path.append(frame.name);
+
+        long value = frame.getSelf(measure);
+        if (value > 0) {
+            out.write(path.toString());
+            out.write(' ');
+            out.write(Long.toString(value));
+            out.write('\n');
+        }
+        if (frame.children != null) {
+            for (Frame child : frame.children.values()) {
+                writeCollapsed(out, measure, child, path);
+            }
+        }
+        path.setLength(length);
+    }
+
+    /**
+     * @return the profiles of the types compiled, with the most self time first
+     */
+    public synchronized List<TypeProfile> getTypeProfiles() {
+        List<TypeProfile> profiles = new ArrayList<>(types.size());
+        for (TypeProfile profile : types.values()) {
+            profiles.add(new TypeProfile(profile));
+        }
+        Collections.sort(profiles, new Comparator<TypeProfile>() {
+            @Override
+            public int compare(TypeProfile p1, TypeProfile p2) {
+                return p1.selfNanos != p2.selfNanos ? (p1.selfNanos > p2.selfNanos ? -1 : 1)
+                        : p1.name.compareTo(p2.name);
+            }
+        });
+        return profiles;
+    }
+
+    /**
+     * Discard the recorded profile
+     */
+    public synchronized void reset() {
+        roots.clear();
+        types.clear();
+    }
+
+    /**
+     * @return a recorder for a single compilation, to be {@link Recorder#finish() finished} once it completes
+     */
+    Recorder newRecorder() {
+        return new Recorder();
+    }
+
+    private synchronized void merge(List<Frame> recordedRoots, Map<String, TypeProfile> recordedTypes) {
+        for (Frame root : recordedRoots) {
+            Frame existing = roots.get(root.name);
+            if (existing == null) {
+                roots.put(root.name, root);
+            } else {
+                existing.merge(root);
+            }
+        }
+        for (TypeProfile recorded : recordedTypes.values()) {
+            TypeProfile profile = types.get(recorded.name);
+            if (profile == null) {
+                types.put(recorded.name, recorded);
+            } else {
+                profile.add(recorded);
+            }
+        }
+    }
+
+    /**
+     * Records the frames of a single compilation, on the compiling thread
+     */
+    final class Recorder {
+
+        private final List<Frame> roots = new ArrayList<>(1);
+
+        private final Map<String, TypeProfile> recordedTypes = new HashMap<>();
+
+        /**
+         * frames entered and not exited yet, innermost last
+         */
+        private final List<Active> stack = new ArrayList<>();
+
+        private final long threadId = Thread.currentThread().getId();
+
+        /**
+         * Enter the frame of an element, before its type is compiled
+         */
+        void enter(XmlSchemaElement schEl, XmlSchemaType type) {
+            QName elName = schEl.getQName();
+            String typeName = type == null ? ANONYMOUS
+                    : type.getName() != null ? type.getName() : ANONYMOUS;
+            String name = (elName != null ? elName.getLocalPart() : ANONYMOUS) + '[' + typeName + ']';
+            String typeKey = type == null || type.getQName() == null
+                    ? typeName + " of " + (elName != null ? elName.toString() : ANONYMOUS) //NON-NLS
+                    : type.getQName().toString();
+
+            Frame frame;
+            if (stack.isEmpty()) {
+                frame = new Frame(name);
+                roots.add(frame);
+            } else {
+                frame = stack.get(stack.size() - 1).frame.child(name);
+            }
+            frame.calls++;
+            frame.selfElements++;
+
+            TypeProfile profile = recordedTypes.get(typeKey);
+            if (profile == null) {
+                profile = new TypeProfile(typeKey);
+                recordedTypes.put(typeKey, profile);
+            }
+            profile.calls++;
+            profile.elements++;
+
+            stack.add(new Active(frame, profile, System.nanoTime(), allocationCounter.get(threadId)));
+        }
+
+        /**
+         * Exit the innermost frame, once its element is compiled
+         */
+        void exit() {
+            long nanos = System.nanoTime();
+            long bytes = allocationCounter.get(threadId);
+            Active active = stack.remove(stack.size() - 1);
+
+            long totalNanos = nanos - active.startNanos;
+            long totalBytes = bytes - active.startBytes;
+            active.frame.add(totalNanos - active.childNanos, totalNanos, totalBytes - active.childBytes, totalBytes);
+            active.profile.selfNanos += totalNanos - active.childNanos;
+            active.profile.selfBytes += totalBytes - active.childBytes;
+
+            //the total of a recursive type is only counted at its outermost occurrence
+            boolean isOutermost = true;
+            for (Active outer : stack) {
+                if (outer.profile == active.profile) {
+                    isOutermost = false;
+                    break;
+                }
+            }
+            if (isOutermost) {
+                active.profile.totalNanos += totalNanos;
+                active.profile.totalBytes += totalBytes;
+            }
+
+            if (!stack.isEmpty()) {
+                Active parent = stack.get(stack.size() - 1);
+                parent.childNanos += totalNanos;
+                parent.childBytes += totalBytes;
+            }
+        }
+
+        /**
+         * Merge the recorded frames into the profile
+         */
+        void finish() {
+            if (!stack.isEmpty()) {
+                logger.warn("Profile recorder finished with {} frames not exited", stack.size());
+            }
+            merge(roots, recordedTypes);
+        }
+    }
+
+    private static final class Active {
+        final Frame frame;
+        final TypeProfile profile;
+        final long startNanos;
+        final long startBytes;
+        long childNanos;
+        long childBytes;
+
+        Active(Frame frame, TypeProfile profile, long startNanos, long startBytes) {
+            this.frame = frame;
+            this.profile = profile;
+            this.startNanos = startNanos;
+            this.startBytes = startBytes;
+        }
+    }
+
+    /**
+     * A node of the call tree; frames with the same name under the same parent are merged
+     */
+    private static final class Frame {
+        final String name;
+        Map<String, Frame> children;
+        long calls;
+        long selfNanos;
+        long totalNanos;
+        long selfBytes;
+        long totalBytes;
+        long selfElements;
+
+        Frame(String name) {
+            this.name = name;
+        }
+
+        Frame child(String childName) {
+            if (children == null) {
+                children = new LinkedHashMap<>();
+            }
+            Frame child = children.get(childName);
+            if (child == null) {
+                child = new Frame(childName);
+                children.put(childName, child);
+            }
+            return child;
+        }
+
+        void add(long selfNanos, long totalNanos, long selfBytes, long totalBytes) {
+            this.selfNanos += selfNanos;
+            this.totalNanos += totalNanos;
+            this.selfBytes += selfBytes;
+            this.totalBytes += totalBytes;
+        }
+
+        void merge(Frame other) {
+            calls += other.calls;
+            selfElements += other.selfElements;
+            add(other.selfNanos, other.totalNanos, other.selfBytes, other.totalBytes);
+            if (other.children != null) {
+                for (Frame otherChild : other.children.values()) {
+                    Frame existing = children != null ? children.get(otherChild.name) : null;
+                    if (existing == null) {
+                        if (children == null) {
+                            children = new LinkedHashMap<>();
+                        }
+                        children.put(otherChild.name, otherChild);
+                    } else {
+                        existing.merge(otherChild);
+                    }
+                }
+            }
+        }
+
+        long getSelf(Measure measure) {
+            switch (measure) {
+                case TIME:
+                    return selfNanos;
+                case ALLOCATED_BYTES:
+                    return selfBytes;
+                default:
+                    return selfElements;
+            }
+        }
+    }
+
+    /**
+     * The totals of a schema type over all the elements of that type. The self values exclude the nested elements;
+     * the total values include them, counting a recursive type only at its outermost occurrence.
+     */
+    public static final class TypeProfile {
+        private final String name;
+        private long calls;
+        private long elements;
+        private long selfNanos;
+        private long totalNanos;
+        private long selfBytes;
+        private long totalBytes;
+
+        TypeProfile(String name) {
+            this.name = name;
+        }
+
+        TypeProfile(TypeProfile other) {
+            this(other.name);
+            add(other);
+        }
+
+        void add(TypeProfile other) {
+            calls += other.calls;
+            elements += other.elements;
+            selfNanos += other.selfNanos;
+            totalNanos += other.totalNanos;
+            selfBytes += other.selfBytes;
+            totalBytes += other.totalBytes;
+        }
+
+        /**
+         * @return the qname of the type, or a description of the element for an anonymous type
+         */
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * @return the number of elements of this type compiled
+         */
+        public long getCalls() {
+            return calls;
+        }
+
+        public long getSelfNanos() {
+            return selfNanos;
+        }
+
+        public long getTotalNanos() {
+            return totalNanos;
+        }
+
+        public long getSelfBytes() {
+            return selfBytes;
+        }
+
+        public long getTotalBytes() {
+            return totalBytes;
+        }
+
+        @Override
+        public String toString() {
+            return name + ": calls=" + calls + ", self=" + selfNanos / 1000 + "us, total=" + totalNanos / 1000 //NON-NLS
+                    + "us, selfBytes=" + selfBytes + ", totalBytes=" + totalBytes; //NON-NLS
+        }
+    }
+
+    /**
+     * Reads the number of bytes allocated by a thread, where the JVM supports it
+     */
+    private static class AllocationCounter {
+
+        static AllocationCounter create() {
+            try {
+                ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+                if (bean instanceof com.sun.management.ThreadMXBean) {
+                    com.sun.management.ThreadMXBean sunBean = (com.sun.management.ThreadMXBean) bean;
+                    if (sunBean.isThreadAllocatedMemorySupported()) {
+                        if (!sunBean.isThreadAllocatedMemoryEnabled()) {
+                            sunBean.setThreadAllocatedMemoryEnabled(true);
+                        }
+                        return new ThreadAllocationCounter(sunBean);
+                    }
+                }
+            } catch (LinkageError | UnsupportedOperationException | SecurityException e) {
+                logger.debug("Thread allocation counters are not available", e);
+            }
+            return new AllocationCounter();
+        }
+
+        long get(long threadId) {
+            return 0;
+        }
+    }
+
+    private static final class ThreadAllocationCounter extends AllocationCounter {
+
+        private final com.sun.management.ThreadMXBean bean;
+
+        ThreadAllocationCounter(com.sun.management.ThreadMXBean bean) {
+            this.bean = bean;
+        }
+
+        @Override
+        long get(long threadId) {
+            return bean.getThreadAllocatedBytes(threadId);
+        }
+    }
+}
@@ -0,0 +1,200 @@
+/*
+ * Copyright (c) 2010-2014 Stratumsoft Technologies Pvt. Ltd.
+ *
+ * This file (SchemaRegistry.java) is part of xsd2xml.
+ *
+ * xsd2xml is a Java program to generate XML instances from an XML Schema document
+ *
+ * xsd2xml is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * xsd2xml is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; If not, see <http://www.gnu.org/licenses/>.
+ *
+ * To use xsd2xml in your non-GPL licensed software, contact Stratumsoft Technologies
+ * support at support@stratumsoft.com or visit http://www.stratumsoft.com to obtain
+ * a commercial license.
+ */
+
+package com.stratumsoft.xmlgen;
+
+import org.apache.ws.commons.schema.XmlSchema;
+import org.apache.ws.commons.schema.XmlSchemaAttribute;
+import org.apache.ws.commons.schema.XmlSchemaAttributeGroup;
+import org.apache.ws.commons.schema.XmlSchemaCollection;
+import org.apache.ws.commons.schema.XmlSchemaElement;
+import org.apache.ws.commons.schema.XmlSchemaForm;
+import org.apache.ws.commons.schema.XmlSchemaGroup;
+import org.apache.ws.commons.schema.XmlSchemaType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.xml.namespace.QName;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Read-only index of the global definitions of a schema collection. The index is built once, when the registry is
+ * created, so that lookups are hash lookups instead of scans over all the schemas of the collection. When several
+ * schemas define the same name, the first one in {@link XmlSchemaCollection#getXmlSchemas()} order wins, as it did
+ * with the scans.
+ * <p/>
+ * A registry is immutable and safe for concurrent lookups. The schema collection must not be modified once the
+ * registry has been created.
+ *
+ * @author murakris@stratumsoft.com
+ */
+public final class SchemaRegistry {
+
+    private static final Logger logger = LoggerFactory.getLogger(SchemaRegistry.class);
+
+    private final Map<String, XmlSchema> schemasByNamespace;
+
+    /**
+     * global element qname -> schema defining it
+     */
+    private final Map<QName, XmlSchema> elementSchemas;
+
+    private final Map<QName, XmlSchemaElement> elements;
+
+    private final Map<QName, XmlSchemaAttribute> attributes;
+
+    private final Map<QName, XmlSchemaType> types;
+
+    private final Map<QName, XmlSchemaGroup> groups;
+
+    private final Map<QName, XmlSchemaAttributeGroup> attributeGroups;
+
+    public SchemaRegistry(XmlSchemaCollection schemaColl) {
+        if (schemaColl == null) {
+            throw new IllegalArgumentException("schema collection cannot be null");
+        }
+
+        Map<String, XmlSchema> nsIndex = new HashMap<>();
+        Map<QName, XmlSchema> elSchemaIndex = new HashMap<>();
+        Map<QName, XmlSchemaElement> elIndex = new HashMap<>();
+        Map<QName, XmlSchemaAttribute> attrIndex = new HashMap<>();
+        Map<QName, XmlSchemaType> typeIndex = new HashMap<>();
+        Map<QName, XmlSchemaGroup> groupIndex = new HashMap<>();
+        Map<QName, XmlSchemaAttributeGroup> attrGroupIndex = new HashMap<>();
+
+        XmlSchema[] xmlSchemas = schemaColl.getXmlSchemas();
+        if (xmlSchemas != null) {
+            for (XmlSchema schema : xmlSchemas) {
+                String tns = schema.getTargetNamespace();
+                if (tns != null && !nsIndex.containsKey(tns)) {
+                    nsIndex.put(tns, schema);
+                }
+                for (Map.Entry<QName, XmlSchemaElement> entry : schema.getElements().entrySet()) {
+                    if (!elIndex.containsKey(entry.getKey())) {
+                        elIndex.put(entry.getKey(), entry.getValue());
+                        elSchemaIndex.put(entry.getKey(), schema);
+                    }
+                }
+                putAll(attrIndex, schema.getAttributes());
+                putAll(typeIndex, schema.getSchemaTypes());
+                putAll(groupIndex, schema.getGroups());
+                putAll(attrGroupIndex, schema.getAttributeGroups());
+            }
+        }
+
+        this.schemasByNamespace = Collections.unmodifiableMap(nsIndex);
+        this.elementSchemas = Collections.unmodifiableMap(elSchemaIndex);
+        this.elements = Collections.unmodifiableMap(elIndex);
+        this.attributes = Collections.unmodifiableMap(attrIndex);
+        this.types = Collections.unmodifiableMap(typeIndex);
+        this.groups = Collections.unmodifiableMap(groupIndex);
+        this.attributeGroups = Collections.unmodifiableMap(attrGroupIndex);
+
+        logger.debug("Indexed {} schemas: {} elements, {} types", new Object[]{
+                xmlSchemas != null ? xmlSchemas.length : 0, elIndex.size(), typeIndex.size()});
+    }
+
+    private static <T> void putAll(Map<QName, T> index, Map<QName, T> definitions) {
+        for (Map.Entry<QName, T> entry : definitions.entrySet()) {
+            if (!index.containsKey(entry.getKey())) {
+                index.put(entry.getKey(), entry.getValue());
+            }
+        }
+    }
+
+    /**
+     * @param namespaceURI the target namespace
+     * @return the first schema with the given target namespace, or null if there is none
+     */
+    public XmlSchema getSchemaByTargetNamespace(String namespaceURI) {
+        return namespaceURI != null ? schemasByNamespace.get(namespaceURI) : null;
+    }
+
+    /**
+     * @param elName qname of a global element
+     * @return the schema defining the global element, or null if it is not a global element
+     */
+    public XmlSchema getSchemaForElement(QName elName) {
+        return elName != null ? elementSchemas.get(elName) : null;
+    }
+
+    /**
+     * Get the form an element must be generated with: global elements are always qualified, local elements use
+     * their form attribute and default to the elementFormDefault of the schema for their namespace
+     *
+     * @param schEl the element
+     * @return the effective form of the element, either qualified or unqualified
+     */
+    public XmlSchemaForm getElementForm(XmlSchemaElement schEl) {
+        QName elName = schEl.getQName();
+        if (getSchemaForElement(elName) != null) {
+            return XmlSchemaForm.QUALIFIED;
+        }
+
+        XmlSchemaForm form = schEl.getForm();
+        if (form == XmlSchemaForm.NONE) {
+            XmlSchema sch = elName != null ? getSchemaByTargetNamespace(elName.getNamespaceURI()) : null;
+            form = sch != null ? sch.getElementFormDefault() : XmlSchemaForm.UNQUALIFIED;
+        }
+        return form;
+    }
+
+    /**
+     * @return all the global elements of the collection
+     */
+    public Collection<XmlSchemaElement> getElements() {
+        return elements.values();
+    }
+
+    /**
+     * @return all the global types of the collection, including the built-in types
+     */
+    public Collection<XmlSchemaType> getTypes() {
+        return types.values();
+    }
+
+    public XmlSchemaElement getElement(QName name) {
+        return name != null ? elements.get(name) : null;
+    }
+
+    public XmlSchemaAttribute getAttribute(QName name) {
+        return name != null ? attributes.get(name) : null;
+    }
+
+    public XmlSchemaType getType(QName name) {
+        return name != null ? types.get(name) : null;
+    }
+
+    public XmlSchemaGroup getGroup(QName name) {
+        return name != null ? groups.get(name) : null;
+    }
+
+    public XmlSchemaAttributeGroup getAttributeGroup(QName name) {
+        return name != null ? attributeGroups.get(name) : null;
+    }
+}
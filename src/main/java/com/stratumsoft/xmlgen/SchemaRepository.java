@@ -0,0 +1,358 @@
+/*
+ * Copyright (c) 2010-2014 Stratumsoft Technologies Pvt. Ltd.
+ *
+ * This file (SchemaRepository.java) is part of xsd2xml.
+ *
+ * xsd2xml is a Java program to generate XML instances from an XML Schema document
+ *
+ * xsd2xml is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * xsd2xml is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; If not, see <http://www.gnu.org/licenses/>.
+ *
+ * To use xsd2xml in your non-GPL licensed software, contact Stratumsoft Technologies
+ * support at support@stratumsoft.com or visit http://www.stratumsoft.com to obtain
+ * a commercial license.
+ */
+
+package com.stratumsoft.xmlgen;
+
+import org.apache.commons.lang.StringUtils;
+import org.apache.ws.commons.schema.XmlSchema;
+import org.apache.ws.commons.schema.XmlSchemaCollection;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.net.URI;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A thread-safe cache of parsed schema collections, keyed by the canonical path of the schema file and the base uri
+ * used to resolve its imports. Each cached collection comes with an {@link XmlGenEngine}, so the compiled plans are
+ * reused as well. A cached entry is reloaded when the last modified time or the length of the schema file changes;
+ * the imported schemas are not checked.
+ * <p/>
+ * Concurrent requests for a schema that is not cached yet wait for a single load. The least recently used entries
+ * are evicted once the number of entries or the total size of the schema documents they were read from exceeds
+ * the budget of the repository. The collections returned are shared and must not be modified.
+ *
+ * @author murakris@stratumsoft.com
+ */
+public final class SchemaRepository {
+
+    private static final Logger logger = LoggerFactory.getLogger(SchemaRepository.class);
+
+    private final int maxEntries;
+
+    private final long maxSourceBytes;
+
+    /**
+     * entries in access order, eldest first; guarded by itself
+     */
+    private final LinkedHashMap<Key, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+    private long sourceBytes;
+
+    private final AtomicLong hits = new AtomicLong();
+
+    private final AtomicLong loads = new AtomicLong();
+
+    private final AtomicLong evictions = new AtomicLong();
+
+    private volatile GenerationMetrics metrics;
+
+    /**
+     * @param maxEntries maximum number of cached schemas
+     */
+    public SchemaRepository(int maxEntries) {
+        this(maxEntries, Long.MAX_VALUE);
+    }
+
+    /**
+     * @param maxEntries     maximum number of cached schemas
+     * @param maxSourceBytes maximum total size of the schema documents (including imports and includes) of the
+     *                       cached schemas; the parsed model takes a multiple of this on the heap
+     */
+    public SchemaRepository(int maxEntries, long maxSourceBytes) {
+        if (maxEntries < 1) {
+            throw new IllegalArgumentException("maxEntries must be at least 1");
+        }
+        if (maxSourceBytes < 1) {
+            throw new IllegalArgumentException("maxSourceBytes must be positive");
+        }
+        this.maxEntries = maxEntries;
+        this.maxSourceBytes = maxSourceBytes;
+    }
+
+    /**
+     * Get the parsed collection for the given schema file, loading it if it is not cached or has changed
+     *
+     * @param schemaFilePath path to the schema file
+     * @param baseUri        base uri to use to resolve any imports/includes; if not specified, the schema file path
+     *                       is used
+     * @return the shared collection
+     * @throws FileNotFoundException if the path does not resolve to a file
+     * @throws IOException           if the canonical path of the file could not be determined
+     */
+    public XmlSchemaCollection getSchemaCollection(String schemaFilePath, String baseUri) throws IOException {
+        return get(schemaFilePath, baseUri).schemaColl;
+    }
+
+    /**
+     * Get the engine for the given schema file, loading the schema if it is not cached or has changed
+     *
+     * @param schemaFilePath path to the schema file
+     * @param baseUri        base uri to use to resolve any imports/includes; if not specified, the schema file path
+     *                       is used
+     * @return the shared engine, with default options
+     * @throws FileNotFoundException if the path does not resolve to a file
+     * @throws IOException           if the canonical path of the file could not be determined
+     */
+    public XmlGenEngine getEngine(String schemaFilePath, String baseUri) throws IOException {
+        return get(schemaFilePath, baseUri).engine;
+    }
+
+    private Loaded get(String schemaFilePath, final String baseUri) throws IOException {
+        if (StringUtils.isEmpty(schemaFilePath)) {
+            throw new IllegalArgumentException("schema file path cannot be empty");
+        }
+        final File file = new File(schemaFilePath).getCanonicalFile();
+        if (!file.isFile()) {
+            throw new FileNotFoundException(schemaFilePath);
+        }
+
+        Key key = new Key(file.getPath(), StringUtils.defaultString(baseUri));
+        long lastModified = file.lastModified();
+        long length = file.length();
+
+        Entry entry;
+        boolean isLoader = false;
+        synchronized (entries) {
+            entry = entries.get(key);
+            if (entry != null && (entry.lastModified != lastModified || entry.length != length)) {
+                logger.debug("Schema {} has changed, reloading", file);
+                remove(key, entry);
+                entry = null;
+            }
+            if (entry == null) {
+                entry = new Entry(lastModified, length, new FutureTask<>(new Callable<Loaded>() {
+                    @Override
+                    public Loaded call() throws Exception {
+                        return load(file, baseUri);
+                    }
+                }));
+                entries.put(key, entry);
+                isLoader = true;
+            } else {
+                hits.incrementAndGet();
+            }
+        }
+
+        if (isLoader) {
+            entry.task.run();
+        }
+
+        try {
+            Loaded loaded = entry.task.get();
+            if (isLoader) {
+                synchronized (entries) {
+                    if (entries.get(key) == entry) {
+                        entry.sourceBytes = loaded.sourceBytes;
+                        sourceBytes += loaded.sourceBytes;
+                        evict(key);
+                    }
+                }
+            }
+            return loaded;
+
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for schema " + file, e);
+        } catch (ExecutionException e) {
+            synchronized (entries) {
+                if (entries.get(key) == entry) {
+                    remove(key, entry);     //do not cache failures
+                }
+            }
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IOException("Could not load schema " + file, cause);
+        }
+    }
+
+    private Loaded load(File file, String baseUri) throws IOException {
+        loads.incrementAndGet();
+        logger.debug("Loading schema {}", file);
+
+        GenerationMetrics m = metrics;
+        long start = System.nanoTime();
+        XmlSchemaCollection coll = SchemaUtil.getSchemaCollection(file.getPath(), baseUri);
+        XmlGenEngine engine = new XmlGenEngine(coll);
+        engine.setMetrics(m);
+        if (m != null) {
+            m.recordSchemaLoad(System.nanoTime() - start);
+        }
+        return new Loaded(coll, engine, getSourceBytes(coll, file));
+    }
+
+    /**
+     * @return the total size of the local schema documents of the collection
+     */
+    private static long getSourceBytes(XmlSchemaCollection coll, File file) {
+        long total = 0;
+        for (XmlSchema schema : coll.getXmlSchemas()) {
+            String sourceUri = schema.getSourceURI();
+            if (sourceUri != null && sourceUri.startsWith("file:")) { //NON-NLS
+                try {
+                    total += new File(URI.create(sourceUri)).length();
+                } catch (IllegalArgumentException e) {
+                    logger.trace("Could not get size of {}", sourceUri);
+                }
+            }
+        }
+        return Math.max(total, file.length());
+    }
+
+    /**
+     * Evict the least recently used entries until the repository is within its budget. The given entry, which
+     * was just loaded, is always kept
+     */
+    private void evict(Key keep) {
+        Iterator<Map.Entry<Key, Entry>> it = entries.entrySet().iterator();
+        while ((entries.size() > maxEntries || sourceBytes > maxSourceBytes) && it.hasNext()) {
+            Map.Entry<Key, Entry> eldest = it.next();
+            if (!eldest.getKey().equals(keep)) {
+                logger.debug("Evicting schema {}", eldest.getKey().path);
+                it.remove();
+                sourceBytes -= eldest.getValue().sourceBytes;
+                evictions.incrementAndGet();
+            }
+        }
+    }
+
+    private void remove(Key key, Entry entry) {
+        entries.remove(key);
+        sourceBytes -= entry.sourceBytes;
+    }
+
+    /**
+     * Discard all cached schemas
+     */
+    public void clear() {
+        synchronized (entries) {
+            entries.clear();
+            sourceBytes = 0;
+        }
+    }
+
+    public int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    /**
+     * @return the number of requests served from the cache, including the ones that waited for a load
+     */
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    /**
+     * @return the number of schemas loaded
+     */
+    public long getLoadCount() {
+        return loads.get();
+    }
+
+    public long getEvictionCount() {
+        return evictions.get();
+    }
+
+    public GenerationMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Record the schema loads of the repository to the given metrics, which are attached to the engines it creates
+     * from then on. The engines already cached are not changed.
+     *
+     * @param metrics the metrics to record to, or null to stop recording
+     */
+    public void setMetrics(GenerationMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    private static final class Key {
+        final String path;
+        final String baseUri;
+
+        Key(String path, String baseUri) {
+            this.path = path;
+            this.baseUri = baseUri;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Key)) return false;
+            Key key = (Key) o;
+            return path.equals(key.path) && baseUri.equals(key.baseUri);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * path.hashCode() + baseUri.hashCode();
+        }
+    }
+
+    private static final class Entry {
+        final long lastModified;
+        final long length;
+        final FutureTask<Loaded> task;
+
+        /**
+         * set once loaded; guarded by the entries map
+         */
+        long sourceBytes;
+
+        Entry(long lastModified, long length, FutureTask<Loaded> task) {
+            this.lastModified = lastModified;
+            this.length = length;
+            this.task = task;
+        }
+    }
+
+    private static final class Loaded {
+        final XmlSchemaCollection schemaColl;
+        final XmlGenEngine engine;
+        final long sourceBytes;
+
+        Loaded(XmlSchemaCollection schemaColl, XmlGenEngine engine, long sourceBytes) {
+            this.schemaColl = schemaColl;
+            this.engine = engine;
+            this.sourceBytes = sourceBytes;
+        }
+    }
+}
@@ -0,0 +1,612 @@
+/*
+ * Copyright (c) 2010-2014 Stratumsoft Technologies Pvt. Ltd.
+ *
+ * This file (SchemaSynthesizer.java) is part of xsd2xml.
+ *
+ * xsd2xml is a Java program to generate XML instances from an XML Schema document
+ *
+ * xsd2xml is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * xsd2xml is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; If not, see <http://www.gnu.org/licenses/>.
+ *
+ * To use xsd2xml in your non-GPL licensed software, contact Stratumsoft Technologies
+ * support at support@stratumsoft.com or visit http://www.stratumsoft.com to obtain
+ * a commercial license.
+ */
+
+
+package com.stratumsoft.xmlgen;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.xml.namespace.QName;
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.SortedSet;
+import java.util.TreeSet;
+
+/**
+ * Writes sets of synthetic, valid schema documents to exercise the loader and the generator at scale. A set consists
+ * of a number of schema documents, each with its own target namespace, over which the global complex types (and a
+ * global element for each type) are spread, and a main schema that imports all of them. The types reference each
+ * other across the documents, so the documents import each other, circularly in general. The main schema defines
+ * the root elements:
+ * <ul>
+ * <li>{@link #WIDE_ELEMENT}: a sequence of {@link #setSequenceWidth(int) sequenceWidth} elements</li>
+ * <li>{@link #DEEP_ELEMENT}: anonymous complex types nested {@link #setNestingDepth(int) nestingDepth} levels</li>
+ * <li>{@link #RECURSIVE_ELEMENT}: a cycle of {@link #setRecursionCycle(int) recursionCycle} mutually recursive
+ * types, defined in different documents; only the element closing the cycle is optional</li>
+ * <li>{@link #DOCUMENT_ELEMENT}: a reference to a global element of every document</li>
+ * </ul>
+ * The types only reference types defined before them, apart from the recursive cycle, and the number of elements a
+ * type expands to (with at most 3 repeats) is bounded by {@link #setMaxTypeSize(int) maxTypeSize}, so the generated
+ * instances stay reasonably small whatever the number of types. The output only depends on the seed and the size
+ * parameters.
+ *
+ * @author murakris@stratumsoft.com
+ */
+public final class SchemaSynthesizer {
+
+    private static final Logger logger = LoggerFactory.getLogger(SchemaSynthesizer.class);
+
+    public static final String NAMESPACE = "urn:xsd2xml:synthetic"; //NON-NLS
+
+    public static final String MAIN_SCHEMA = "main.xsd"; //NON-NLS
+
+    public static final QName WIDE_ELEMENT = new QName(NAMESPACE, "wide"); //NON-NLS
+
+    public static final QName DEEP_ELEMENT = new QName(NAMESPACE, "deep"); //NON-NLS
+
+    public static final QName RECURSIVE_ELEMENT = new QName(NAMESPACE, "recursive"); //NON-NLS
+
+    public static final QName DOCUMENT_ELEMENT = new QName(NAMESPACE, "document"); //NON-NLS
+
+    private static final String XSD_NS = "http://www.w3.org/2001/XMLSchema"; //NON-NLS
+
+    private static final String[] BUILT_IN_TYPES = {"xs:string", "xs:int", "xs:long", "xs:boolean", "xs:decimal",
+            "xs:double", "xs:date", "xs:dateTime", "xs:token", "xs:anyURI"}; //NON-NLS
+
+    /**
+     * the simple types defined in each document, see {@link #writeSimpleTypes(Writer, int)}
+     */
+    private static final String[] SIMPLE_TYPES = {"Code", "Status", "Amount", "Name", "Codes"}; //NON-NLS
+
+    /**
+     * repeats counted per element when bounding the size of the types
+     */
+    private static final int MAX_REPEATS = 3;
+
+    private static final int UNBOUNDED = -1;
+
+    private final long seed;
+
+    private int schemaCount = 20;
+
+    private int typeCount = 500;
+
+    private int sequenceWidth = 50;
+
+    private int nestingDepth = 10;
+
+    private int recursionCycle = 3;
+
+    private int maxTypeSize = 100;
+
+    public SchemaSynthesizer(long seed) {
+        this.seed = seed;
+    }
+
+    /**
+     * @param seed the seed of the schema set
+     * @return a synthesizer of the size seen in large production schema sets: 200 imported documents, 5000 complex
+     *         types, a 500 wide sequence, 40 levels of nesting and a recursive cycle over 4 types
+     */
+    public static SchemaSynthesizer large(long seed) {
+        SchemaSynthesizer synthesizer = new SchemaSynthesizer(seed);
+        synthesizer.setSchemaCount(200);
+        synthesizer.setTypeCount(5000);
+        synthesizer.setSequenceWidth(500);
+        synthesizer.setNestingDepth(40);
+        synthesizer.setRecursionCycle(4);
+        return synthesizer;
+    }
+
+    public long getSeed() {
+        return seed;
+    }
+
+    public int getSchemaCount() {
+        return schemaCount;
+    }
+
+    /**
+     * @param schemaCount number of schema documents besides the main schema, at least 1
+     */
+    public void setSchemaCount(int schemaCount) {
+        checkAtLeast("schemaCount", schemaCount, 1); //NON-NLS
+        this.schemaCount = schemaCount;
+    }
+
+    public int getTypeCount() {
+        return typeCount;
+    }
+
+    /**
+     * @param typeCount number of global complex types over all the documents, not counting the recursive ones
+     */
+    public void setTypeCount(int typeCount) {
+        checkAtLeast("typeCount", typeCount, 1); //NON-NLS
+        this.typeCount = typeCount;
+    }
+
+    public int getSequenceWidth() {
+        return sequenceWidth;
+    }
+
+    /**
+     * @param sequenceWidth number of elements in the sequence of the wide element
+     */
+    public void setSequenceWidth(int sequenceWidth) {
+        checkAtLeast("sequenceWidth", sequenceWidth, 1); //NON-NLS
+        this.sequenceWidth = sequenceWidth;
+    }
+
+    public int getNestingDepth() {
+        return nestingDepth;
+    }
+
+    /**
+     * @param nestingDepth number of nested anonymous complex types below the deep element
+     */
+    public void setNestingDepth(int nestingDepth) {
+        checkAtLeast("nestingDepth", nestingDepth, 0); //NON-NLS
+        this.nestingDepth = nestingDepth;
+    }
+
+    public int getRecursionCycle() {
+        return recursionCycle;
+    }
+
+    /**
+     * @param recursionCycle number of types in the recursive cycle; 1 for a directly recursive type
+     */
+    public void setRecursionCycle(int recursionCycle) {
+        checkAtLeast("recursionCycle", recursionCycle, 1); //NON-NLS
+        this.recursionCycle = recursionCycle;
+    }
+
+    public int getMaxTypeSize() {
+        return maxTypeSize;
+    }
+
+    /**
+     * @param maxTypeSize maximum number of elements a complex type expands to, with at most 3 repeats per element
+     */
+    public void setMaxTypeSize(int maxTypeSize) {
+        checkAtLeast("maxTypeSize", maxTypeSize, 2); //NON-NLS
+        this.maxTypeSize = maxTypeSize;
+    }
+
+    private static void checkAtLeast(String name, int value, int min) {
+        if (value < min) {
+            throw new IllegalArgumentException(name + " must be at least " + min);
+        }
+    }
+
+    /**
+     * Write the schema set to a new temporary directory
+     *
+     * @return the main schema file
+     * @throws IOException if the schemas could not be written
+     */
+    public File writeToTempDir() throws IOException {
+        return write(Files.createTempDirectory("xsd2xml-synthetic-").toFile()); //NON-NLS
+    }
+
+    /**
+     * Write the schema set to the given directory: the main schema and the documents <code>s0.xsd</code> ...
+     * <code>s<i>n-1</i>.xsd</code>. Existing files are overwritten.
+     *
+     * @param dir the directory to write the schemas to; it is created if needed
+     * @return the main schema file
+     * @throws IOException if the schemas could not be written
+     */
+    public File write(File dir) throws IOException {
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("Could not create directory: " + dir);
+        }
+
+        SeededRandom random = new SeededRandom(seed);
+        List<ComplexType> types = createTypes(random);
+        List<Particle> wide = createWideParticles(random, types);
+
+        for (int doc = 0; doc < schemaCount; doc++) {
+            writeDocument(new File(dir, getFileName(doc)), doc, types);
+        }
+        File main = new File(dir, MAIN_SCHEMA);
+        writeMain(main, wide, types);
+
+        logger.debug("Wrote {} synthetic schemas with {} types to {}", new Object[]{
+                schemaCount + 1, types.size(), dir});
+        return main;
+    }
+
+    private static String getFileName(int doc) {
+        return "s" + doc + ".xsd"; //NON-NLS
+    }
+
+    private static String getNamespace(int doc) {
+        return NAMESPACE + ":s" + doc; //NON-NLS
+    }
+
+    private static String getPrefix(int doc) {
+        return "s" + doc; //NON-NLS
+    }
+
+    private int getDocument(int type) {
+        return type % schemaCount;
+    }
+
+    /**
+     * Create the complex types: the ordinary types first, then the recursive cycle
+     */
+    private List<ComplexType> createTypes(SeededRandom random) {
+        List<ComplexType> types = new ArrayList<>(typeCount + recursionCycle);
+        for (int i = 0; i < typeCount; i++) {
+            ComplexType type = new ComplexType("Type" + i, "item" + i, getDocument(i)); //NON-NLS
+            type.isChoice = random.nextInt(8) == 0;
+            int width = 1 + random.nextInt(Math.min(8, sequenceWidth));
+            Set<String> refs = new HashSet<>();
+            for (int k = 0; k < width; k++) {
+                Particle particle = createParticle(random, "f" + k, type.doc, types, type.size, refs); //NON-NLS
+                setOccurs(random, particle, type.isChoice);
+                type.add(particle, particle.type >= 0 ? types.get(particle.type).size : 1);
+            }
+            int attributeCount = random.nextInt(3);
+            for (int k = 0; k < attributeCount; k++) {
+                type.attributes.add(new Attribute("a" + k, getSimpleType(random, type.doc),
+                        random.nextInt(2) == 0)); //NON-NLS
+            }
+            types.add(type);
+        }
+
+        for (int i = 0; i < recursionCycle; i++) {
+            int doc = getDocument(i);
+            ComplexType type = new ComplexType("Node" + i, null, doc); //NON-NLS
+            type.add(new Particle("value", prefixed(doc, "Name")), 1); //NON-NLS
+            int next = (i + 1) % recursionCycle;
+            Particle particle = new Particle("next", typeCount + next, getDocument(next), false); //NON-NLS
+            if (next == 0) {
+                particle.minOccurs = 0;
+            }
+            type.add(particle, 1);
+            types.add(type);
+        }
+        return types;
+    }
+
+    /**
+     * Create a particle referencing an earlier complex type if the size budget of the type allows, or a simple
+     * typed element otherwise. Element references are unique within a type, as required by the unique particle
+     * attribution constraint.
+     */
+    private Particle createParticle(SeededRandom random, String name, int doc, List<ComplexType> types, int size,
+                                    Set<String> refs) {
+        if (!types.isEmpty() && random.nextInt(3) == 0) {
+            int target = random.nextInt(types.size());
+            ComplexType targetType = types.get(target);
+            if (size + MAX_REPEATS * targetType.size <= maxTypeSize) {
+                boolean isRef = random.nextInt(2) == 0 && refs.add(targetType.elementName);
+                return new Particle(isRef ? null : name, target, targetType.doc, isRef);
+            }
+        }
+        return new Particle(name, random.nextInt(2) == 0 ? getSimpleType(random, doc)
+                : BUILT_IN_TYPES[random.nextInt(BUILT_IN_TYPES.length)]);
+    }
+
+    private static void setOccurs(SeededRandom random, Particle particle, boolean isChoice) {
+        int kind = random.nextInt(10);
+        if (kind >= 6 && kind < 8) {
+            particle.minOccurs = 0;
+        } else if (kind == 8) {
+            particle.maxOccurs = 2 + random.nextInt(4);
+        } else if (kind == 9) {
+            particle.minOccurs = isChoice ? 1 : random.nextInt(2);
+            particle.maxOccurs = UNBOUNDED;
+        }
+    }
+
+    private static String getSimpleType(SeededRandom random, int doc) {
+        return prefixed(doc, SIMPLE_TYPES[random.nextInt(SIMPLE_TYPES.length)]);
+    }
+
+    private static String prefixed(int doc, String name) {
+        return getPrefix(doc) + ':' + name;
+    }
+
+    private List<Particle> createWideParticles(SeededRandom random, List<ComplexType> types) {
+        List<Particle> particles = new ArrayList<>(sequenceWidth);
+        for (int k = 0; k < sequenceWidth; k++) {
+            String name = "c" + k; //NON-NLS
+            if (random.nextInt(4) == 0) {
+                int target = random.nextInt(typeCount);
+                particles.add(new Particle(name, target, types.get(target).doc, false));
+            } else {
+                particles.add(new Particle(name, BUILT_IN_TYPES[random.nextInt(BUILT_IN_TYPES.length)]));
+            }
+        }
+        return particles;
+    }
+
+    private void writeDocument(File file, int doc, List<ComplexType> types) throws IOException {
+        List<ComplexType> docTypes = new ArrayList<>();
+        SortedSet<Integer> imports = new TreeSet<>();
+        for (ComplexType type : types) {
+            if (type.doc == doc) {
+                docTypes.add(type);
+                for (Particle particle : type.particles) {
+                    if (particle.typeDoc >= 0 && particle.typeDoc != doc) {
+                        imports.add(particle.typeDoc);
+                    }
+                }
+            }
+        }
+
+        try (Writer out = Files.newBufferedWriter(file.toPath(), StandardCharsets.UTF_8)) {
+            writeSchemaStart(out, getNamespace(doc), doc, imports);
+            writeSimpleTypes(out, doc);
+            for (ComplexType type : docTypes) {
+                writeComplexType(out, type, types);
+            }
+            out.write("</xs:schema>\n"); //NON-NLS
+        }
+    }
+
+    private void writeMain(File file, List<Particle> wide, List<ComplexType> types) throws IOException {
+        SortedSet<Integer> imports = new TreeSet<>();
+        for (int doc = 0; doc < schemaCount; doc++) {
+            imports.add(doc);
+        }
+
+        try (Writer out = Files.newBufferedWriter(file.toPath(), StandardCharsets.UTF_8)) {
+            writeSchemaStart(out, NAMESPACE, -1, imports);
+
+            out.write("  <xs:element name=\"" + WIDE_ELEMENT.getLocalPart() + "\">\n"); //NON-NLS
+            out.write("    <xs:complexType>\n      <xs:sequence>\n"); //NON-NLS
+            for (Particle particle : wide) {
+                writeParticle(out, particle, types, "        "); //NON-NLS
+            }
+            out.write("      </xs:sequence>\n    </xs:complexType>\n  </xs:element>\n"); //NON-NLS
+
+            out.write("  <xs:element name=\"" + DEEP_ELEMENT.getLocalPart() + "\">\n"); //NON-NLS
+            writeNested(out, 0, "    "); //NON-NLS
+            out.write("  </xs:element>\n"); //NON-NLS
+
+            out.write("  <xs:element name=\"" + RECURSIVE_ELEMENT.getLocalPart() + "\" type=\"" //NON-NLS
+                    + prefixed(getDocument(0), types.get(typeCount).name) + "\"/>\n"); //NON-NLS
+
+            out.write("  <xs:element name=\"" + DOCUMENT_ELEMENT.getLocalPart() + "\">\n"); //NON-NLS
+            out.write("    <xs:complexType>\n      <xs:sequence>\n"); //NON-NLS
+            for (int doc = 0; doc < schemaCount && doc < typeCount; doc++) {
+                //the last ordinary type of each document is the one most likely to reference the others
+                int last = typeCount - 1 - ((typeCount - 1 - doc) % schemaCount);
+                writeParticle(out, new Particle(null, last, doc, true), types, "        "); //NON-NLS
+            }
+            out.write("      </xs:sequence>\n    </xs:complexType>\n  </xs:element>\n"); //NON-NLS
+            out.write("</xs:schema>\n"); //NON-NLS
+        }
+    }
+
+    private static void writeSchemaStart(Writer out, String namespace, int doc, Set<Integer> imports)
+            throws IOException {
+        out.write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"); //NON-NLS
+        out.write("<xs:schema xmlns:xs=\"" + XSD_NS + "\" targetNamespace=\"" + namespace //NON-NLS
+                + "\" elementFormDefault=\"qualified\""); //NON-NLS
+        if (doc >= 0) {
+            out.write("\n           xmlns:" + getPrefix(doc) + "=\"" + namespace + "\""); //NON-NLS
+        }
+        for (int imported : imports) {
+            out.write("\n           xmlns:" + getPrefix(imported) + "=\"" + getNamespace(imported) + "\""); //NON-NLS
+        }
+        out.write(">\n"); //NON-NLS
+        for (int imported : imports) {
+            out.write("  <xs:import namespace=\"" + getNamespace(imported) + "\" schemaLocation=\"" //NON-NLS
+                    + getFileName(imported) + "\"/>\n"); //NON-NLS
+        }
+    }
+
+    private static void writeSimpleTypes(Writer out, int doc) throws IOException {
+        out.write("  <xs:simpleType name=\"Code\">\n" //NON-NLS
+                + "    <xs:restriction base=\"xs:string\">\n" //NON-NLS
+                + "      <xs:pattern value=\"[A-Z]{2}-[0-9]{3}\"/>\n" //NON-NLS
+                + "    </xs:restriction>\n" //NON-NLS
+                + "  </xs:simpleType>\n" //NON-NLS
+                + "  <xs:simpleType name=\"Status\">\n" //NON-NLS
+                + "    <xs:restriction base=\"xs:token\">\n" //NON-NLS
+                + "      <xs:enumeration value=\"active\"/>\n" //NON-NLS
+                + "      <xs:enumeration value=\"suspended\"/>\n" //NON-NLS
+                + "      <xs:enumeration value=\"closed\"/>\n" //NON-NLS
+                + "    </xs:restriction>\n" //NON-NLS
+                + "  </xs:simpleType>\n" //NON-NLS
+                + "  <xs:simpleType name=\"Amount\">\n" //NON-NLS
+                + "    <xs:restriction base=\"xs:decimal\">\n" //NON-NLS
+                + "      <xs:totalDigits value=\"10\"/>\n" //NON-NLS
+                + "      <xs:fractionDigits value=\"2\"/>\n" //NON-NLS
+                + "      <xs:minInclusive value=\"0\"/>\n" //NON-NLS
+                + "    </xs:restriction>\n" //NON-NLS
+                + "  </xs:simpleType>\n" //NON-NLS
+                + "  <xs:simpleType name=\"Name\">\n" //NON-NLS
+                + "    <xs:restriction base=\"xs:string\">\n" //NON-NLS
+                + "      <xs:minLength value=\"1\"/>\n" //NON-NLS
+                + "      <xs:maxLength value=\"32\"/>\n" //NON-NLS
+                + "    </xs:restriction>\n" //NON-NLS
+                + "  </xs:simpleType>\n" //NON-NLS
+                + "  <xs:simpleType name=\"Codes\">\n" //NON-NLS
+                + "    <xs:list itemType=\"" + prefixed(doc, "Code") + "\"/>\n" //NON-NLS
+                + "  </xs:simpleType>\n"); //NON-NLS
+    }
+
+    private static void writeComplexType(Writer out, ComplexType type, List<ComplexType> types) throws IOException {
+        String compositor = type.isChoice ? "xs:choice" : "xs:sequence"; //NON-NLS
+        out.write("  <xs:complexType name=\"" + type.name + "\">\n"); //NON-NLS
+        out.write("    <" + compositor + ">\n");
+        for (Particle particle : type.particles) {
+            writeParticle(out, particle, types, "      "); //NON-NLS
+        }
+        out.write("    </" + compositor + ">\n");
+        for (Attribute attribute : type.attributes) {
+            out.write("    <xs:attribute name=\"" + attribute.name + "\" type=\"" + attribute.type //NON-NLS
+                    + "\" use=\"" + (attribute.isRequired ? "required" : "optional") + "\"/>\n"); //NON-NLS
+        }
+        out.write("  </xs:complexType>\n"); //NON-NLS
+        if (type.elementName != null) {
+            out.write("  <xs:element name=\"" + type.elementName + "\" type=\"" //NON-NLS
+                    + prefixed(type.doc, type.name) + "\"/>\n"); //NON-NLS
+        }
+    }
+
+    private static void writeParticle(Writer out, Particle particle, List<ComplexType> types, String indent)
+            throws IOException {
+        out.write(indent);
+        if (particle.isRef) {
+            ComplexType target = types.get(particle.type);
+            out.write("<xs:element ref=\"" + prefixed(target.doc, target.elementName) + "\""); //NON-NLS
+        } else if (particle.typeDoc >= 0) {
+            out.write("<xs:element name=\"" + particle.name + "\" type=\"" //NON-NLS
+                    + prefixed(particle.typeDoc, types.get(particle.type).name) + "\""); //NON-NLS
+        } else {
+            out.write("<xs:element name=\"" + particle.name + "\" type=\"" + particle.simpleType + "\""); //NON-NLS
+        }
+        if (particle.minOccurs != 1) {
+            out.write(" minOccurs=\"" + particle.minOccurs + "\""); //NON-NLS
+        }
+        if (particle.maxOccurs != 1) {
+            out.write(" maxOccurs=\"" + (particle.maxOccurs == UNBOUNDED ? "unbounded" //NON-NLS
+                    : String.valueOf(particle.maxOccurs)) + "\""); //NON-NLS
+        }
+        out.write("/>\n"); //NON-NLS
+    }
+
+    private void writeNested(Writer out, int level, String indent) throws IOException {
+        out.write(indent + "<xs:complexType>\n"); //NON-NLS
+        out.write(indent + "  <xs:sequence>\n"); //NON-NLS
+        out.write(indent + "    <xs:element name=\"value\" type=\"xs:string\"/>\n"); //NON-NLS
+        if (level < nestingDepth) {
+            out.write(indent + "    <xs:element name=\"level" + (level + 1) + "\">\n"); //NON-NLS
+            writeNested(out, level + 1, indent + "      "); //NON-NLS
+            out.write(indent + "    </xs:element>\n"); //NON-NLS
+        }
+        out.write(indent + "  </xs:sequence>\n"); //NON-NLS
+        out.write(indent + "  <xs:attribute name=\"depth\" type=\"xs:int\" use=\"required\"/>\n"); //NON-NLS
+        out.write(indent + "</xs:complexType>\n"); //NON-NLS
+    }
+
+    private static final class ComplexType {
+
+        final String name;
+
+        /**
+         * name of the global element of the type, or null if it has none
+         */
+        final String elementName;
+
+        final int doc;
+
+        boolean isChoice;
+
+        final List<Particle> particles = new ArrayList<>();
+
+        final List<Attribute> attributes = new ArrayList<>();
+
+        /**
+         * number of elements the type expands to, counting at most {@link #MAX_REPEATS} repeats per element
+         */
+        int size = 1;
+
+        ComplexType(String name, String elementName, int doc) {
+            this.name = name;
+            this.elementName = elementName;
+            this.doc = doc;
+        }
+
+        void add(Particle particle, int particleSize) {
+            particles.add(particle);
+            int repeats = particle.maxOccurs == UNBOUNDED ? MAX_REPEATS : Math.min(particle.maxOccurs, MAX_REPEATS);
+            size += repeats * particleSize;
+        }
+    }
+
+    private static final class Particle {
+
+        /**
+         * local element name, or null for a reference to the global element of the type
+         */
+        final String name;
+
+        /**
+         * index of the complex type, or -1 for a simple type
+         */
+        final int type;
+
+        /**
+         * document defining the complex type, or -1 for a simple type
+         */
+        final int typeDoc;
+
+        final boolean isRef;
+
+        final String simpleType;
+
+        int minOccurs = 1;
+
+        int maxOccurs = 1;
+
+        Particle(String name, String simpleType) {
+            this(name, -1, -1, false, simpleType);
+        }
+
+        Particle(String name, int type, int typeDoc, boolean isRef) {
+            this(name, type, typeDoc, isRef, null);
+        }
+
+        private Particle(String name, int type, int typeDoc, boolean isRef, String simpleType) {
+            this.name = name;
+            this.type = type;
+            this.typeDoc = typeDoc;
+            this.isRef = isRef;
+            this.simpleType = simpleType;
+        }
+    }
+
+    private static final class Attribute {
+
+        final String name;
+
+        final String type;
+
+        final boolean isRequired;
+
+        Attribute(String name, String type, boolean isRequired) {
+            this.name = name;
+            this.type = type;
+            this.isRequired = isRequired;
+        }
+    }
+}
@@ -30,11 +30,16 @@ import org.apache.ws.commons.schema.XmlSchema;
 import org.apache.ws.commons.schema.XmlSchemaCollection;
 import org.apache.ws.commons.schema.XmlSchemaElement;
 import org.apache.ws.commons.schema.resolver.DefaultURIResolver;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.xml.sax.InputSource;
 
 import javax.xml.namespace.QName;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileNotFoundException;
-import java.io.FileReader;
+import java.io.IOException;
+import java.io.InputStream;
 import java.util.Collection;
 import java.util.HashSet;
 import java.util.Map;
@@ -45,6 +50,8 @@ import java.util.Map;
  */
 public class SchemaUtil {
 
+    private static final Logger logger = LoggerFactory.getLogger(SchemaUtil.class);
+
     /**
      * Get an instance of {@link XmlSchemaCollection} and read the given schema into it.
      *
@@ -53,18 +60,28 @@ public class SchemaUtil {
      *                       param will be used
      * @return
      * @throws java.io.FileNotFoundException if the input path does not resolve to an actual file on disk
+     * @see SchemaRepository for a cache of parsed collections
      */
     public static XmlSchemaCollection getSchemaCollection(String schemaFilePath, String baseUri) throws FileNotFoundException {
         XmlSchemaCollection schColl = null;
         if (StringUtils.isNotEmpty(schemaFilePath)) {
             final File schFile = new File(schemaFilePath);
-            final FileReader reader = new FileReader(schFile);
 
-            schColl = new XmlSchemaCollection();
-            schColl.setBaseUri(StringUtils.isNotEmpty(baseUri) ? baseUri : schemaFilePath);
-            schColl.setSchemaResolver(new DefaultURIResolver());
+            //read from a stream so that the parser detects the document encoding
+            try (InputStream in = new FileInputStream(schFile)) {
+                schColl = new XmlSchemaCollection();
+                schColl.setBaseUri(StringUtils.isNotEmpty(baseUri) ? baseUri : schemaFilePath);
+                schColl.setSchemaResolver(new DefaultURIResolver());
 
-            schColl.read(reader);
+                //the system id is recorded as the source uri of the schema
+                InputSource source = new InputSource(in);
+                source.setSystemId(schFile.getAbsoluteFile().toURI().toString());
+                schColl.read(source);
+            } catch (FileNotFoundException e) {
+                throw e;
+            } catch (IOException e) {
+                logger.warn("Could not close schema file {}", schemaFilePath, e);
+            }
         }
         return schColl;
     }
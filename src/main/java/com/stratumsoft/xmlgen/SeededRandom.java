@@ -0,0 +1,152 @@
+/*
+ * Copyright (c) 2010-2014 Stratumsoft Technologies Pvt. Ltd.
+ *
+ * This file (SeededRandom.java) is part of xsd2xml.
+ *
+ * xsd2xml is a Java program to generate XML instances from an XML Schema document
+ *
+ * xsd2xml is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * xsd2xml is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; If not, see <http://www.gnu.org/licenses/>.
+ *
+ * To use xsd2xml in your non-GPL licensed software, contact Stratumsoft Technologies
+ * support at support@stratumsoft.com or visit http://www.stratumsoft.com to obtain
+ * a commercial license.
+ */
+
+package com.stratumsoft.xmlgen;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A small, splittable pseudo-random generator (SplitMix64). It is not thread-safe: each thread or document uses
+ * its own instance, derived either with {@link #split()} or directly from a seed and an index with
+ * {@link #forIndex(long, long)}, so any document of a bulk run can be regenerated on its own.
+ *
+ * @author murakris@stratumsoft.com
+ */
+public final class SeededRandom {
+
+    private static final long GOLDEN_GAMMA = 0x9e3779b97f4a7c15L;
+
+    private static final AtomicLong seedUniquifier = new AtomicLong(System.nanoTime());
+
+    private long seed;
+
+    private final long gamma;
+
+    /**
+     * Create an unseeded generator, whose sequence differs from the generators created before it
+     */
+    public SeededRandom() {
+        this(mix64(seedUniquifier.addAndGet(GOLDEN_GAMMA)) ^ mix64(System.nanoTime()));
+    }
+
+    public SeededRandom(long seed) {
+        this(seed, GOLDEN_GAMMA);
+    }
+
+    private SeededRandom(long seed, long gamma) {
+        this.seed = seed;
+        this.gamma = gamma;
+    }
+
+    /**
+     * Get the generator for the document with the given index in a run started with the given seed. The result
+     * only depends on the two arguments, not on any other document of the run.
+     *
+     * @param seed  the seed of the run
+     * @param index index of the document within the run
+     * @return a new generator for the document
+     */
+    public static SeededRandom forIndex(long seed, long index) {
+        return new SeededRandom(mix64(seed + (index + 1) * GOLDEN_GAMMA));
+    }
+
+    /**
+     * @return a new generator whose sequence is independent of the remaining sequence of this one
+     */
+    public SeededRandom split() {
+        return new SeededRandom(nextLong(), mixGamma(nextSeed()));
+    }
+
+    public long nextLong() {
+        return mix64(nextSeed());
+    }
+
+    public int nextInt() {
+        return mix32(nextSeed());
+    }
+
+    /**
+     * @param bound the upper bound (exclusive); must be positive
+     * @return a value between 0 (inclusive) and the bound (exclusive)
+     */
+    public int nextInt(int bound) {
+        if (bound <= 0) {
+            throw new IllegalArgumentException("bound must be positive");
+        }
+        int r = mix32(nextSeed());
+        int m = bound - 1;
+        if ((bound & m) == 0) {
+            r &= m;
+        } else {
+            for (int u = r >>> 1; u + m - (r = u % bound) < 0; u = mix32(nextSeed()) >>> 1) {
+                //reject values from the incomplete last range
+            }
+        }
+        return r;
+    }
+
+    /**
+     * @param bound the upper bound (exclusive); must be positive
+     * @return a value between 0 (inclusive) and the bound (exclusive)
+     */
+    public long nextLong(long bound) {
+        if (bound <= 0) {
+            throw new IllegalArgumentException("bound must be positive");
+        }
+        long r = mix64(nextSeed());
+        long m = bound - 1;
+        if ((bound & m) == 0L) {
+            r &= m;
+        } else {
+            for (long u = r >>> 1; u + m - (r = u % bound) < 0L; u = mix64(nextSeed()) >>> 1) {
+                //reject values from the incomplete last range
+            }
+        }
+        return r;
+    }
+
+    private long nextSeed() {
+        return seed += gamma;
+    }
+
+    private static long mix64(long z) {
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
+    }
+
+    private static int mix32(long z) {
+        z = (z ^ (z >>> 33)) * 0x62a9d9ed799705f5L;
+        return (int) (((z ^ (z >>> 28)) * 0xcb24d0a5c88c35b3L) >>> 32);
+    }
+
+    private static long mixGamma(long z) {
+        z = (z ^ (z >>> 33)) * 0xff51afd7ed558ccdL;
+        z = (z ^ (z >>> 33)) * 0xc4ceb9fe1a85ec53L;
+        z = (z ^ (z >>> 33)) | 1L;
+        int n = Long.bitCount(z ^ (z >>> 1));
+        return (n < 24) ? z ^ 0xaaaaaaaaaaaaaaaaL : z;
+    }
+}
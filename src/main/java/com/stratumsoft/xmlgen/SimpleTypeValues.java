@@ -0,0 +1,1203 @@
+/*
+ * Copyright (c) 2010-2014 Stratumsoft Technologies Pvt. Ltd.
+ *
+ * This file (SimpleTypeValues.java) is part of xsd2xml.
+ *
+ * xsd2xml is a Java program to generate XML instances from an XML Schema document
+ *
+ * xsd2xml is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * xsd2xml is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; If not, see <http://www.gnu.org/licenses/>.
+ *
+ * To use xsd2xml in your non-GPL licensed software, contact Stratumsoft Technologies
+ * support at support@stratumsoft.com or visit http://www.stratumsoft.com to obtain
+ * a commercial license.
+ */
+
+
+package com.stratumsoft.xmlgen;
+
+import org.apache.commons.codec.binary.Base64;
+import org.apache.ws.commons.schema.XmlSchemaComplexType;
+import org.apache.ws.commons.schema.XmlSchemaContent;
+import org.apache.ws.commons.schema.XmlSchemaEnumerationFacet;
+import org.apache.ws.commons.schema.XmlSchemaFacet;
+import org.apache.ws.commons.schema.XmlSchemaFractionDigitsFacet;
+import org.apache.ws.commons.schema.XmlSchemaLengthFacet;
+import org.apache.ws.commons.schema.XmlSchemaMaxExclusiveFacet;
+import org.apache.ws.commons.schema.XmlSchemaMaxInclusiveFacet;
+import org.apache.ws.commons.schema.XmlSchemaMaxLengthFacet;
+import org.apache.ws.commons.schema.XmlSchemaMinExclusiveFacet;
+import org.apache.ws.commons.schema.XmlSchemaMinInclusiveFacet;
+import org.apache.ws.commons.schema.XmlSchemaMinLengthFacet;
+import org.apache.ws.commons.schema.XmlSchemaObject;
+import org.apache.ws.commons.schema.XmlSchemaPatternFacet;
+import org.apache.ws.commons.schema.XmlSchemaSimpleContent;
+import org.apache.ws.commons.schema.XmlSchemaSimpleContentExtension;
+import org.apache.ws.commons.schema.XmlSchemaSimpleContentRestriction;
+import org.apache.ws.commons.schema.XmlSchemaSimpleType;
+import org.apache.ws.commons.schema.XmlSchemaSimpleTypeContent;
+import org.apache.ws.commons.schema.XmlSchemaSimpleTypeList;
+import org.apache.ws.commons.schema.XmlSchemaSimpleTypeRestriction;
+import org.apache.ws.commons.schema.XmlSchemaSimpleTypeUnion;
+import org.apache.ws.commons.schema.XmlSchemaTotalDigitsFacet;
+import org.apache.ws.commons.schema.XmlSchemaType;
+import org.apache.ws.commons.schema.constants.Constants;
+import org.apache.commons.lang.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.xml.namespace.QName;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.math.RoundingMode;
+import java.nio.charset.StandardCharsets;
+import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Compiles simple types into value generators. The restriction chain of a simple type, down to its built-in base
+ * type and through list and union types, is resolved once into a {@link ValueGenerator} that is cached for the
+ * type. A generator honours the enumeration, length, minLength, maxLength, min/max inclusive/exclusive, totalDigits,
+ * fractionDigits and pattern facets; the bounds of date and time types are only honoured when they are inclusive.
+ * Patterns are compiled into {@link PatternAutomaton}s, which are shared by the types with the same pattern.
+ * The text of a complex type with simple content is generated from the facets of its simple content restrictions
+ * along with those of the simple type they restrict.
+ * <p/>
+ * The deterministic value of a generator (used with {@link DefaultValues#DEFAULT}) is the value of the engine's
+ * {@link ValueProviders} for the built-in base type, adjusted to the facets; its random values (used with
+ * {@link DefaultValues#RANDOM}) are drawn from the generator of the current document.
+ *
+ * @author murakris@stratumsoft.com
+ */
+final class SimpleTypeValues {
+
+    private static final Logger logger = LoggerFactory.getLogger(SimpleTypeValues.class);
+
+    /**
+     * restriction chains longer than this are taken to be circular
+     */
+    private static final int MAX_DERIVATION_DEPTH = 64;
+
+    /**
+     * number of integral values random numbers are drawn from when a type has no (or only one) bound
+     */
+    private static final long RANDOM_SPAN = 1000;
+
+    /**
+     * preferred number of fraction digits of random decimal values
+     */
+    private static final int RANDOM_SCALE = 2;
+
+    private static final int RANDOM_LENGTH = 8;
+
+    private static final Map<QName, Kind> KINDS = new HashMap<>();
+
+    private static final Map<QName, BigInteger[]> INTEGER_BOUNDS = new HashMap<>();
+
+    private enum Kind {
+        /**
+         * strings that random letters are valid values of
+         */
+        LETTERS,
+        /**
+         * other string based types, whose random values are their sample values
+         */
+        STRING, DECIMAL, INTEGER, BOOLEAN, DATE_TIME, HEX_BINARY, BASE64_BINARY,
+        /**
+         * xs:float and xs:double, whose random values are written in exponent notation
+         */
+        FLOAT
+    }
+
+    static {
+        for (QName type : new QName[]{Constants.XSD_STRING, Constants.XSD_NORMALIZEDSTRING, Constants.XSD_TOKEN,
+                Constants.XSD_NAME, Constants.XSD_NCNAME, Constants.XSD_NMTOKEN}) {
+            KINDS.put(type, Kind.LETTERS);
+        }
+        KINDS.put(Constants.XSD_DECIMAL, Kind.DECIMAL);
+        KINDS.put(Constants.XSD_FLOAT, Kind.FLOAT);
+        KINDS.put(Constants.XSD_DOUBLE, Kind.FLOAT);
+        for (QName type : new QName[]{Constants.XSD_DATETIME, Constants.XSD_TIME, Constants.XSD_DATE,
+                Constants.XSD_YEARMONTH, Constants.XSD_YEAR, Constants.XSD_MONTHDAY, Constants.XSD_DAY,
+                Constants.XSD_MONTH, Constants.XSD_DURATION}) {
+            KINDS.put(type, Kind.DATE_TIME);
+        }
+        KINDS.put(Constants.XSD_BOOLEAN, Kind.BOOLEAN);
+        KINDS.put(Constants.XSD_HEXBIN, Kind.HEX_BINARY);
+        KINDS.put(Constants.XSD_BASE64, Kind.BASE64_BINARY);
+
+        integer(Constants.XSD_INTEGER, null, null);
+        integer(Constants.XSD_NONPOSITIVEINTEGER, null, "0"); //NON-NLS
+        integer(Constants.XSD_NEGATIVEINTEGER, null, "-1"); //NON-NLS
+        integer(Constants.XSD_NONNEGATIVEINTEGER, "0", null); //NON-NLS
+        integer(Constants.XSD_POSITIVEINTEGER, "1", null); //NON-NLS
+        integer(Constants.XSD_LONG, String.valueOf(Long.MIN_VALUE), String.valueOf(Long.MAX_VALUE));
+        integer(Constants.XSD_INT, String.valueOf(Integer.MIN_VALUE), String.valueOf(Integer.MAX_VALUE));
+        integer(Constants.XSD_SHORT, String.valueOf(Short.MIN_VALUE), String.valueOf(Short.MAX_VALUE));
+        integer(Constants.XSD_BYTE, String.valueOf(Byte.MIN_VALUE), String.valueOf(Byte.MAX_VALUE));
+        integer(Constants.XSD_UNSIGNEDLONG, "0", "18446744073709551615"); //NON-NLS
+        integer(Constants.XSD_UNSIGNEDINT, "0", "4294967295"); //NON-NLS
+        integer(Constants.XSD_UNSIGNEDSHORT, "0", "65535"); //NON-NLS
+        integer(Constants.XSD_UNSIGNEDBYTE, "0", "255"); //NON-NLS
+    }
+
+    private static void integer(QName type, String min, String max) {
+        KINDS.put(type, Kind.INTEGER);
+        INTEGER_BOUNDS.put(type, new BigInteger[]{min != null ? new BigInteger(min) : null,
+                max != null ? new BigInteger(max) : null});
+    }
+
+    private final SchemaRegistry registry;
+
+    private final ValueProviders values;
+
+    private final ConcurrentMap<TypeKey, ValueGenerator> generators = new ConcurrentHashMap<>();
+
+    private final ConcurrentMap<QName, ValueGenerator> builtIns = new ConcurrentHashMap<>();
+
+    private final ConcurrentMap<String, PatternAutomaton> automata = new ConcurrentHashMap<>();
+
+    /**
+     * @param registry the definitions of the schema collection
+     * @param values   providers of the sample values of the built-in types
+     */
+    SimpleTypeValues(SchemaRegistry registry, ValueProviders values) {
+        this.registry = registry;
+        this.values = values;
+    }
+
+    /**
+     * @param type a simple type of the schema collection
+     * @return the generator for the type
+     */
+    ValueGenerator get(XmlSchemaSimpleType type) {
+        return get(type, 0);
+    }
+
+    /**
+     * @param typeName qname of a simple type
+     * @return the generator for the type, or null if there is no simple type with that name
+     */
+    ValueGenerator get(QName typeName) {
+        return get(typeName, 0);
+    }
+
+    /**
+     * @param restriction the simple content restriction of a complex type
+     * @return the generator for the text of the complex type, which honours the facets of the restriction along
+     *         with those of its base types
+     */
+    ValueGenerator get(XmlSchemaSimpleContentRestriction restriction) {
+        TypeKey key = new TypeKey(restriction);
+        ValueGenerator generator = generators.get(key);
+        if (generator == null) {
+            generator = compile(restriction);
+            ValueGenerator existing = generators.putIfAbsent(key, generator);
+            if (existing != null) {
+                generator = existing;
+            }
+        }
+        return generator;
+    }
+
+    private ValueGenerator get(QName typeName, int depth) {
+        if (typeName == null) {
+            return null;
+        }
+        if (Constants.URI_2001_SCHEMA_XSD.equals(typeName.getNamespaceURI())) {
+            return getBuiltIn(typeName);
+        }
+        XmlSchemaType type = registry.getType(typeName);
+        return type instanceof XmlSchemaSimpleType ? get((XmlSchemaSimpleType) type, depth) : null;
+    }
+
+    private ValueGenerator get(XmlSchemaSimpleType type, int depth) {
+        QName name = type.getQName();
+        if (name != null && Constants.URI_2001_SCHEMA_XSD.equals(name.getNamespaceURI())) {
+            return getBuiltIn(name);
+        }
+
+        TypeKey key = new TypeKey(type);
+        ValueGenerator generator = generators.get(key);
+        if (generator == null) {
+            //compiling is idempotent, so racing threads may both compile a type; one of the results is kept
+            generator = compile(type, depth);
+            ValueGenerator existing = generators.putIfAbsent(key, generator);
+            if (existing != null) {
+                generator = existing;
+            }
+        }
+        return generator;
+    }
+
+    private ValueGenerator getBuiltIn(QName typeName) {
+        ValueGenerator generator = builtIns.get(typeName);
+        if (generator == null) {
+            generator = builtIn(typeName, new Facets());
+            ValueGenerator existing = builtIns.putIfAbsent(typeName, generator);
+            if (existing != null) {
+                generator = existing;
+            }
+        }
+        return generator;
+    }
+
+    private ValueGenerator compile(XmlSchemaSimpleType type, int depth) {
+        if (depth > MAX_DERIVATION_DEPTH) {
+            logger.warn("Derivation of simple type {} is too deep or circular", type.getQName());
+            return NoValue.INSTANCE;
+        }
+
+        return compile(type.getContent(), new Facets(), type.getQName(), depth);
+    }
+
+    /**
+     * Compile the generator of a simple type whose derived types add the given facets
+     *
+     * @param content the content of the simple type
+     * @param facets  the facets of the derived types
+     * @param name    the name of the most derived type, for the log
+     * @param depth   the derivation depth of the simple type
+     */
+    private ValueGenerator compile(XmlSchemaSimpleTypeContent content, Facets facets, QName name, int depth) {
+        for (int level = 0; content instanceof XmlSchemaSimpleTypeRestriction; level++) {
+            XmlSchemaSimpleTypeRestriction restriction = (XmlSchemaSimpleTypeRestriction) content;
+            facets.addBase(restriction.getFacets());
+
+            XmlSchemaSimpleType base = restriction.getBaseType();
+            if (base == null) {
+                QName baseName = restriction.getBaseTypeName();
+                if (baseName != null && Constants.URI_2001_SCHEMA_XSD.equals(baseName.getNamespaceURI())) {
+                    return builtIn(baseName, facets);
+                }
+                XmlSchemaType baseType = baseName != null ? registry.getType(baseName) : null;
+                if (!(baseType instanceof XmlSchemaSimpleType)) {
+                    logger.warn("Could not resolve base type {} of simple type {}", baseName, name);
+                    return facets.enumeration != null ? new EnumValue(facets.enumeration) : NoValue.INSTANCE;
+                }
+                base = (XmlSchemaSimpleType) baseType;
+            }
+
+            QName baseName = base.getQName();
+            if (baseName != null && Constants.URI_2001_SCHEMA_XSD.equals(baseName.getNamespaceURI())) {
+                return builtIn(baseName, facets);
+            }
+            if (level + depth > MAX_DERIVATION_DEPTH) {
+                logger.warn("Derivation of simple type {} is too deep or circular", name);
+                return NoValue.INSTANCE;
+            }
+            content = base.getContent();
+        }
+
+        if (facets.enumeration != null) {
+            return new EnumValue(facets.enumeration);
+        } else if (content instanceof XmlSchemaSimpleTypeList) {
+            XmlSchemaSimpleTypeList list = (XmlSchemaSimpleTypeList) content;
+            ValueGenerator item = list.getItemType() != null
+                    ? get(list.getItemType(), depth + 1) : get(list.getItemTypeName(), depth + 1);
+            return item != null ? new ListValue(item, facets.minLength, facets.maxLength) : NoValue.INSTANCE;
+
+        } else if (content instanceof XmlSchemaSimpleTypeUnion) {
+            XmlSchemaSimpleTypeUnion union = (XmlSchemaSimpleTypeUnion) content;
+            List<ValueGenerator> members = new ArrayList<>();
+            QName[] memberNames = union.getMemberTypesQNames();
+            if (memberNames != null) {
+                for (QName memberName : memberNames) {
+                    addMember(members, get(memberName, depth + 1));
+                }
+            }
+            if (union.getBaseTypes() != null) {
+                for (XmlSchemaSimpleType member : union.getBaseTypes()) {
+                    addMember(members, get(member, depth + 1));
+                }
+            }
+            return members.isEmpty() ? NoValue.INSTANCE : new UnionValue(members);
+        }
+
+        logger.warn("Simple type {} has no content", name);
+        return NoValue.INSTANCE;
+    }
+
+    /**
+     * Compile the generator of a simple content restriction: the facets of the restrictions of the simple content
+     * complex types are collected down to the simple type of the text
+     */
+    private ValueGenerator compile(XmlSchemaSimpleContentRestriction restriction) {
+        Facets facets = new Facets();
+        XmlSchemaContent content = restriction;
+        for (int level = 0; level <= MAX_DERIVATION_DEPTH; level++) {
+            QName baseName;
+            if (content instanceof XmlSchemaSimpleContentRestriction) {
+                XmlSchemaSimpleContentRestriction contentRestriction = (XmlSchemaSimpleContentRestriction) content;
+                facets.addBase(contentRestriction.getFacets());
+                XmlSchemaSimpleType base = contentRestriction.getBaseType();
+                if (base != null) {
+                    return compile(base.getContent(), facets, base.getQName(), level);
+                }
+                baseName = contentRestriction.getBaseTypeName();
+            } else if (content instanceof XmlSchemaSimpleContentExtension) {
+                baseName = ((XmlSchemaSimpleContentExtension) content).getBaseTypeName();
+            } else {
+                break;
+            }
+
+            if (baseName != null && Constants.URI_2001_SCHEMA_XSD.equals(baseName.getNamespaceURI())) {
+                return builtIn(baseName, facets);
+            }
+            XmlSchemaType base = baseName != null ? registry.getType(baseName) : null;
+            if (base instanceof XmlSchemaSimpleType) {
+                return compile(((XmlSchemaSimpleType) base).getContent(), facets, baseName, level);
+            }
+            if (!(base instanceof XmlSchemaComplexType)
+                    || !(((XmlSchemaComplexType) base).getContentModel() instanceof XmlSchemaSimpleContent)) {
+                logger.warn("Could not resolve the simple type of simple content base type {}", baseName);
+                break;
+            }
+            content = ((XmlSchemaComplexType) base).getContentModel().getContent();
+        }
+        return facets.enumeration != null ? new EnumValue(facets.enumeration) : NoValue.INSTANCE;
+    }
+
+    private static void addMember(List<ValueGenerator> members, ValueGenerator member) {
+        if (member != null && member.hasValue()) {
+            members.add(member);
+        }
+    }
+
+    /**
+     * Compile the generator of a built-in type restricted by the given facets
+     */
+    private ValueGenerator builtIn(QName typeName, Facets facets) {
+        if (facets.enumeration != null) {
+            return new EnumValue(facets.enumeration);
+        }
+
+        ValueProvider provider = values.get(ValueProviders.slotOf(typeName));
+        if (provider != null && provider.isVolatile()) {
+            return new VolatileValue(provider);
+        }
+        //the sample value is part of the compiled plans, which are shared by all the seeds
+        String sample = provider != null ? provider.getValue(new SeededRandom(0)) : null;
+
+        Kind kind = KINDS.get(typeName);
+        if (kind == null) {
+            kind = Kind.STRING;
+        }
+        ValueGenerator generator = builtIn(typeName, kind, sample, facets);
+
+        PatternAutomaton automaton = facets.patterns != null ? getAutomaton(facets.patterns) : null;
+        if (automaton != null) {
+            //the length of the other types is not a number of characters
+            boolean isString = kind == Kind.LETTERS || kind == Kind.STRING;
+            return new PatternValue(automaton, generator, isString ? facets.minLength : null,
+                    isString ? facets.maxLength : null, isString);
+        }
+        return generator;
+    }
+
+    private static ValueGenerator builtIn(QName typeName, Kind kind, String sample, Facets facets) {
+        switch (kind) {
+            case LETTERS:
+            case STRING:
+                return new StringValue(sample, facets.minLength, facets.maxLength, kind == Kind.LETTERS);
+            case DECIMAL:
+            case FLOAT:
+                return DecimalValue.create(sample, facets, null, null, kind);
+            case INTEGER:
+                BigInteger[] bounds = INTEGER_BOUNDS.get(typeName);
+                return DecimalValue.create(sample, facets, bounds[0], bounds[1], kind);
+            case BOOLEAN:
+                return new BooleanValue(sample);
+            case DATE_TIME:
+                return new DateTimeValue(typeName, sample, facets.minInclusive, facets.maxInclusive);
+            case HEX_BINARY:
+            case BASE64_BINARY:
+                return new BinaryValue(sample, facets.minLength, facets.maxLength, kind == Kind.HEX_BINARY);
+            default:
+                throw new IllegalStateException(kind.name());
+        }
+    }
+
+    /**
+     * @param patterns the patterns of each level of the restriction chain
+     * @return an automaton for the strings that match all the patterns, or null if a pattern is not supported
+     */
+    private PatternAutomaton getAutomaton(List<String> patterns) {
+        PatternAutomaton result = null;
+        try {
+            for (String pattern : patterns) {
+                PatternAutomaton automaton = automata.get(pattern);
+                if (automaton == null) {
+                    automaton = PatternAutomaton.compile(pattern);
+                    PatternAutomaton existing = automata.putIfAbsent(pattern, automaton);
+                    if (existing != null) {
+                        automaton = existing;
+                    }
+                }
+                result = result != null ? result.intersect(automaton) : automaton;
+            }
+        } catch (IllegalArgumentException e) {
+            logger.warn("Ignoring pattern facets {}: {}", patterns, e.getMessage());
+            return null;
+        }
+        return result;
+    }
+
+    /**
+     * The facets of a simple type, collected from the most derived restriction to its base
+     */
+    private static final class Facets {
+        List<String> enumeration;
+        Integer minLength, maxLength;
+        String minInclusive, minExclusive, maxInclusive, maxExclusive;
+        Integer totalDigits, fractionDigits;
+
+        /**
+         * the patterns of each restriction; a value must match the patterns of all the restrictions
+         */
+        List<String> patterns;
+
+        /**
+         * Add the facets of a base restriction; a facet that was already set by a derived type is kept
+         */
+        void addBase(List<XmlSchemaFacet> facets) {
+            if (facets == null) {
+                return;
+            }
+            List<String> enumValues = null;
+            List<String> levelPatterns = null;
+            for (XmlSchemaFacet facet : facets) {
+                String value = facet.getValue() != null ? facet.getValue().toString() : null;
+                if (value == null) {
+                    continue;
+                }
+                if (facet instanceof XmlSchemaEnumerationFacet) {
+                    if (enumValues == null) {
+                        enumValues = new ArrayList<>();
+                    }
+                    enumValues.add(value);
+                } else if (facet instanceof XmlSchemaPatternFacet) {
+                    if (levelPatterns == null) {
+                        levelPatterns = new ArrayList<>();
+                    }
+                    levelPatterns.add(value);
+                } else if (facet instanceof XmlSchemaLengthFacet) {
+                    minLength = minLength != null ? minLength : toInt(value);
+                    maxLength = maxLength != null ? maxLength : toInt(value);
+                } else if (facet instanceof XmlSchemaMinLengthFacet) {
+                    minLength = minLength != null ? minLength : toInt(value);
+                } else if (facet instanceof XmlSchemaMaxLengthFacet) {
+                    maxLength = maxLength != null ? maxLength : toInt(value);
+                } else if (facet instanceof XmlSchemaMinInclusiveFacet) {
+                    minInclusive = minInclusive != null ? minInclusive : value.trim();
+                } else if (facet instanceof XmlSchemaMinExclusiveFacet) {
+                    minExclusive = minExclusive != null ? minExclusive : value.trim();
+                } else if (facet instanceof XmlSchemaMaxInclusiveFacet) {
+                    maxInclusive = maxInclusive != null ? maxInclusive : value.trim();
+                } else if (facet instanceof XmlSchemaMaxExclusiveFacet) {
+                    maxExclusive = maxExclusive != null ? maxExclusive : value.trim();
+                } else if (facet instanceof XmlSchemaTotalDigitsFacet) {
+                    totalDigits = totalDigits != null ? totalDigits : toInt(value);
+                } else if (facet instanceof XmlSchemaFractionDigitsFacet) {
+                    fractionDigits = fractionDigits != null ? fractionDigits : toInt(value);
+                }
+            }
+            if (enumeration == null && enumValues != null) {
+                enumeration = Collections.unmodifiableList(enumValues);
+            }
+            if (levelPatterns != null) {
+                if (patterns == null) {
+                    patterns = new ArrayList<>();
+                }
+                //the patterns of a single restriction are alternatives
+                patterns.add(levelPatterns.size() == 1 ? levelPatterns.get(0)
+                        : "(" + StringUtils.join(levelPatterns, ")|(") + ")"); //NON-NLS
+            }
+        }
+
+        private static Integer toInt(String value) {
+            try {
+                return Integer.valueOf(value.trim());
+            } catch (NumberFormatException e) {
+                logger.warn("Ignoring facet with invalid value {}", value);
+                return null;
+            }
+        }
+    }
+
+    /**
+     * Simple types (and simple content restrictions) are keyed by identity, since {@link XmlSchemaType#equals(Object)}
+     * only compares the source location of the type
+     */
+    private static final class TypeKey {
+        final XmlSchemaObject type;
+
+        TypeKey(XmlSchemaObject type) {
+            this.type = type;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof TypeKey && ((TypeKey) o).type == type;
+        }
+
+        @Override
+        public int hashCode() {
+            return System.identityHashCode(type);
+        }
+    }
+
+    ///////////////////////////////////////// generators /////////////////////////////////////////
+
+    /**
+     * Generates the values of a simple type. As a {@link ValueProvider} it provides random values, which are
+     * always volatile; {@link #getDefault()} is its deterministic value
+     */
+    abstract static class ValueGenerator implements ValueProvider {
+
+        /**
+         * @return the deterministic value, or null if the type has no value
+         */
+        abstract String getDefault();
+
+        /**
+         * @return the provider whose value must be generated again for each document instead of the deterministic
+         *         value (e.g. for xs:ID), or null if the deterministic value is constant
+         */
+        ValueProvider getVolatileDefault() {
+            return null;
+        }
+
+        /**
+         * @return true if the type has values; the random value is never null for a type that has values
+         */
+        boolean hasValue() {
+            return getDefault() != null || getVolatileDefault() != null;
+        }
+
+        @Override
+        public boolean isVolatile() {
+            return true;
+        }
+    }
+
+    private static final class NoValue extends ValueGenerator {
+        static final NoValue INSTANCE = new NoValue();
+
+        @Override
+        String getDefault() {
+            return null;
+        }
+
+        @Override
+        public String getValue(SeededRandom random) {
+            return null;
+        }
+    }
+
+    private static final class EnumValue extends ValueGenerator {
+        private final String[] enumeration;
+
+        EnumValue(List<String> enumeration) {
+            this.enumeration = enumeration.toArray(new String[enumeration.size()]);
+        }
+
+        @Override
+        String getDefault() {
+            return enumeration[0];
+        }
+
+        @Override
+        public String getValue(SeededRandom random) {
+            return enumeration[random.nextInt(enumeration.length)];
+        }
+    }
+
+    private static final class VolatileValue extends ValueGenerator {
+        private final ValueProvider provider;
+
+        VolatileValue(ValueProvider provider) {
+            this.provider = provider;
+        }
+
+        @Override
+        String getDefault() {
+            return null;
+        }
+
+        @Override
+        ValueProvider getVolatileDefault() {
+            return provider;
+        }
+
+        @Override
+        public String getValue(SeededRandom random) {
+            return provider.getValue(random);
+        }
+    }
+
+    /**
+     * A string whose length is restricted; with random letters as random values if they are valid for the type
+     */
+    private static final class StringValue extends ValueGenerator {
+        private final String defaultValue;
+        private final int minLength;
+        private final int maxLength;
+        private final boolean isLetters;
+
+        StringValue(String sample, Integer minLength, Integer maxLength, boolean isLetters) {
+            this.minLength = minLength != null ? minLength : 0;
+            this.maxLength = maxLength != null ? maxLength : Integer.MAX_VALUE;
+            this.isLetters = isLetters;
+            this.defaultValue = sample != null || minLength != null ? fit(sample != null ? sample : "") : null;
+        }
+
+        private String fit(String value) {
+            if (value.length() > maxLength) {
+                value = value.substring(0, maxLength).trim();
+            }
+            if (value.length() >= minLength) {
+                return value;
+            }
+            StringBuilder sb = new StringBuilder(minLength).append(value);
+            while (sb.length() < minLength) {
+                sb.append('x');
+            }
+            return sb.toString();
+        }
+
+        @Override
+        String getDefault() {
+            return defaultValue;
+        }
+
+        @Override
+        public String getValue(SeededRandom random) {
+            if (!isLetters || defaultValue == null) {
+                return defaultValue;
+            }
+            int length = randomLength(random, minLength, maxLength, RANDOM_LENGTH);
+            char[] chars = new char[length];
+            for (int i = 0; i < length; i++) {
+                chars[i] = (char) ('a' + random.nextInt(26));
+            }
+            return new String(chars);
+        }
+    }
+
+    /**
+     * @return a length between the given bounds, at most the given span above the minimum (and at least 1 if
+     *         there is no minimum)
+     */
+    private static int randomLength(SeededRandom random, int minLength, int maxLength, int span) {
+        int min = minLength > 0 ? minLength : Math.min(1, maxLength);
+        int max = (int) Math.min((long) maxLength, (long) min + span);
+        return min + random.nextInt(max - min + 1);
+    }
+
+    /**
+     * Binary data whose length in octets is restricted
+     */
+    private static final class BinaryValue extends ValueGenerator {
+        private static final char[] HEX_DIGITS = "0123456789ABCDEF".toCharArray(); //NON-NLS
+
+        private final String defaultValue;
+        private final int minLength;
+        private final int maxLength;
+        private final boolean isHex;
+
+        BinaryValue(String sample, Integer minLength, Integer maxLength, boolean isHex) {
+            this.minLength = minLength != null ? minLength : 0;
+            this.maxLength = maxLength != null ? maxLength : Integer.MAX_VALUE;
+            this.isHex = isHex;
+
+            String value = sample;
+            if (sample != null) {
+                byte[] octets = decode(sample);
+                if (octets == null) {
+                    value = encode(new byte[]{(byte) 0xCA, (byte) 0xFE, (byte) 0xBA, (byte) 0xBE});
+                    octets = decode(value);
+                }
+                if (octets.length < this.minLength || octets.length > this.maxLength) {
+                    int length = Math.max(this.minLength, Math.min(octets.length, this.maxLength));
+                    byte[] fitted = new byte[length];
+                    for (int i = 0; i < length && octets.length > 0; i++) {
+                        fitted[i] = octets[i % octets.length];
+                    }
+                    value = encode(fitted);
+                }
+            }
+            this.defaultValue = value;
+        }
+
+        private byte[] decode(String value) {
+            if (!isHex) {
+                return Base64.isBase64(value) ? Base64.decodeBase64(value) : null;
+            }
+            if (value.length() % 2 != 0) {
+                return null;
+            }
+            byte[] octets = new byte[value.length() / 2];
+            for (int i = 0; i < octets.length; i++) {
+                int hi = Character.digit(value.charAt(2 * i), 16);
+                int lo = Character.digit(value.charAt(2 * i + 1), 16);
+                if (hi < 0 || lo < 0) {
+                    return null;
+                }
+                octets[i] = (byte) (hi << 4 | lo);
+            }
+            return octets;
+        }
+
+        private String encode(byte[] octets) {
+            if (!isHex) {
+                return new String(Base64.encodeBase64(octets), StandardCharsets.US_ASCII);
+            }
+            char[] chars = new char[octets.length * 2];
+            for (int i = 0; i < octets.length; i++) {
+                chars[2 * i] = HEX_DIGITS[(octets[i] >> 4) & 0xf];
+                chars[2 * i + 1] = HEX_DIGITS[octets[i] & 0xf];
+            }
+            return new String(chars);
+        }
+
+        @Override
+        String getDefault() {
+            return defaultValue;
+        }
+
+        @Override
+        public String getValue(SeededRandom random) {
+            if (defaultValue == null) {
+                return null;
+            }
+            byte[] octets = new byte[randomLength(random, minLength, maxLength, RANDOM_LENGTH)];
+            for (int i = 0; i < octets.length; i++) {
+                octets[i] = (byte) random.nextInt(256);
+            }
+            return encode(octets);
+        }
+    }
+
+    private static final class BooleanValue extends ValueGenerator {
+        private final String defaultValue;
+
+        BooleanValue(String sample) {
+            this.defaultValue = sample;
+        }
+
+        @Override
+        String getDefault() {
+            return defaultValue;
+        }
+
+        @Override
+        public String getValue(SeededRandom random) {
+            return defaultValue != null ? String.valueOf(random.nextInt(2) == 0) : null;
+        }
+    }
+
+    /**
+     * A number in a range of values that are multiples of 10<sup>-scale</sup>; the scale is chosen so that the
+     * range is not empty and the values have no more fraction digits than allowed. Without a fractionDigits facet the
+     * scale grows with the precision of the bounds, so a range such as (0, 1E-30) still has values
+     */
+    private static final class DecimalValue extends ValueGenerator {
+        private final String defaultValue;
+        private final int scale;
+        private final BigInteger min;
+        private final BigInteger max;
+        private final boolean isFloat;
+
+        private DecimalValue(String defaultValue, int scale, BigInteger min, BigInteger max, boolean isFloat) {
+            this.defaultValue = defaultValue;
+            this.scale = scale;
+            this.min = min;
+            this.max = max;
+            this.isFloat = isFloat;
+        }
+
+        /**
+         * @param sample     the sample value of the built-in type
+         * @param facets     the facets of the type
+         * @param typeMin    lower bound of the built-in integer type, if any
+         * @param typeMax    upper bound of the built-in integer type, if any
+         * @param kind       the kind of the built-in type: {@link Kind#INTEGER}, {@link Kind#DECIMAL} or
+         *                   {@link Kind#FLOAT}
+         * @throws IllegalArgumentException if the facets do not allow any value
+         */
+        static ValueGenerator create(String sample, Facets facets, BigInteger typeMin, BigInteger typeMax,
+                                     Kind kind) {
+            BigDecimal minIncl = toDecimal(facets.minInclusive);
+            BigDecimal minExcl = toDecimal(facets.minExclusive);
+            BigDecimal maxIncl = toDecimal(facets.maxInclusive);
+            BigDecimal maxExcl = toDecimal(facets.maxExclusive);
+
+            //a non empty range between bounds with at most n fraction digits has a value with n + 1 digits
+            int maxScale = kind == Kind.INTEGER ? 0 : (facets.fractionDigits != null ? facets.fractionDigits
+                    : Math.max(RANDOM_SCALE, 1 + Math.max(Math.max(scaleOf(minIncl), scaleOf(minExcl)),
+                    Math.max(scaleOf(maxIncl), scaleOf(maxExcl)))));
+            if (facets.totalDigits != null) {
+                maxScale = Math.min(maxScale, facets.totalDigits);
+            }
+            int scale = Math.min(maxScale, RANDOM_SCALE);
+            for (; ; scale++) {
+                BigInteger min = lowerBound(scale, typeMin, minIncl, minExcl, facets.totalDigits);
+                BigInteger max = upperBound(scale, typeMax, maxIncl, maxExcl, facets.totalDigits);
+                boolean isEmpty = min != null && max != null && min.compareTo(max) > 0;
+                if (!isEmpty) {
+                    boolean isFloat = kind == Kind.FLOAT;
+                    return new DecimalValue(fit(sample, scale, min, max, isFloat), scale, min, max, isFloat);
+                } else if (scale >= maxScale) {
+                    throw new IllegalArgumentException(MessageFormat.format(
+                            "Numeric facets do not allow any value: minInclusive={0}, minExclusive={1}, " +
+                                    "maxInclusive={2}, maxExclusive={3}, totalDigits={4}, fractionDigits={5}",
+                            facets.minInclusive, facets.minExclusive, facets.maxInclusive, facets.maxExclusive,
+                            facets.totalDigits, facets.fractionDigits));
+                }
+            }
+        }
+
+        /**
+         * @return the number of fraction digits of the bound, or 0 if there is no bound
+         */
+        private static int scaleOf(BigDecimal bound) {
+            return bound != null && bound.signum() != 0 ? Math.max(0, bound.stripTrailingZeros().scale()) : 0;
+        }
+
+        private static BigDecimal toDecimal(String value) {
+            if (value == null) {
+                return null;
+            }
+            try {
+                return new BigDecimal(value);
+            } catch (NumberFormatException e) {
+                logger.warn("Ignoring numeric facet with invalid value {}", value);
+                return null;
+            }
+        }
+
+        /**
+         * @return the smallest allowed value in units of 10<sup>-scale</sup>, or null if there is no lower bound
+         */
+        private static BigInteger lowerBound(int scale, BigInteger typeMin, BigDecimal minIncl, BigDecimal minExcl,
+                                             Integer totalDigits) {
+            BigInteger bound = typeMin != null ? typeMin.multiply(BigInteger.TEN.pow(scale)) : null;
+            if (totalDigits != null) {
+                bound = max(bound, BigInteger.TEN.pow(totalDigits).subtract(BigInteger.ONE).negate());
+            }
+            if (minIncl != null) {
+                bound = max(bound, minIncl.movePointRight(scale).setScale(0, RoundingMode.CEILING).toBigInteger());
+            }
+            if (minExcl != null) {
+                bound = max(bound, minExcl.movePointRight(scale).setScale(0, RoundingMode.FLOOR).toBigInteger()
+                        .add(BigInteger.ONE));
+            }
+            return bound;
+        }
+
+        /**
+         * @return the largest allowed value in units of 10<sup>-scale</sup>, or null if there is no upper bound
+         */
+        private static BigInteger upperBound(int scale, BigInteger typeMax, BigDecimal maxIncl, BigDecimal maxExcl,
+                                             Integer totalDigits) {
+            BigInteger bound = typeMax != null ? typeMax.multiply(BigInteger.TEN.pow(scale)) : null;
+            if (totalDigits != null) {
+                bound = min(bound, BigInteger.TEN.pow(totalDigits).subtract(BigInteger.ONE));
+            }
+            if (maxIncl != null) {
+                bound = min(bound, maxIncl.movePointRight(scale).setScale(0, RoundingMode.FLOOR).toBigInteger());
+            }
+            if (maxExcl != null) {
+                bound = min(bound, maxExcl.movePointRight(scale).setScale(0, RoundingMode.CEILING).toBigInteger()
+                        .subtract(BigInteger.ONE));
+            }
+            return bound;
+        }
+
+        private static BigInteger max(BigInteger a, BigInteger b) {
+            return a == null || b.compareTo(a) > 0 ? b : a;
+        }
+
+        private static BigInteger min(BigInteger a, BigInteger b) {
+            return a == null || b.compareTo(a) < 0 ? b : a;
+        }
+
+        /**
+         * @return the sample value if it is allowed, otherwise the allowed value closest to it
+         */
+        private static String fit(String sample, int scale, BigInteger min, BigInteger max, boolean isFloat) {
+            BigDecimal value = toDecimal(sample);
+            BigDecimal units = value != null ? value.movePointRight(scale) : BigDecimal.ZERO;
+            BigInteger unit = units.setScale(0, RoundingMode.HALF_UP).toBigInteger();
+            if (value != null && units.compareTo(new BigDecimal(unit)) == 0
+                    && (min == null || unit.compareTo(min) >= 0) && (max == null || unit.compareTo(max) <= 0)) {
+                return sample;
+            }
+            if (min != null && unit.compareTo(min) < 0) {
+                unit = min;
+            } else if (max != null && unit.compareTo(max) > 0) {
+                unit = max;
+            }
+            return format(unit, scale, isFloat);
+        }
+
+        /**
+         * @return the value of the given number of units of 10<sup>-scale</sup>, in exponent notation for the float
+         *         types so that very small or large values stay short
+         */
+        private static String format(BigInteger unit, int scale, boolean isFloat) {
+            BigDecimal value = new BigDecimal(unit, scale);
+            if (!isFloat) {
+                return value.toPlainString();
+            }
+            if (value.signum() == 0) {
+                return "0.0E0"; //NON-NLS
+            }
+            value = value.stripTrailingZeros();
+            int exponent = value.precision() - value.scale() - 1;
+            return value.movePointLeft(exponent).toPlainString() + 'E' + exponent;
+        }
+
+        @Override
+        String getDefault() {
+            return defaultValue;
+        }
+
+        @Override
+        public String getValue(SeededRandom random) {
+            BigInteger span = BigInteger.valueOf(RANDOM_SPAN).multiply(BigInteger.TEN.pow(scale));
+            BigInteger lo = min;
+            BigInteger hi = max;
+            if (lo == null && hi == null) {
+                lo = BigInteger.ZERO;
+                hi = span;
+            } else if (lo == null) {
+                lo = hi.subtract(span);
+            } else if (hi == null) {
+                hi = lo.add(span);
+            }
+
+            BigInteger range = hi.subtract(lo);
+            long offset = range.bitLength() < 63
+                    ? random.nextLong(range.longValue() + 1) : random.nextLong() & Long.MAX_VALUE;
+            return format(lo.add(BigInteger.valueOf(offset)), scale, isFloat);
+        }
+    }
+
+    /**
+     * A date, time or duration. The values of the built-in types have a fixed width (without a time zone), so the
+     * inclusive bounds are checked by comparing the lexical values
+     */
+    private static final class DateTimeValue extends ValueGenerator {
+        private final QName typeName;
+        private final String defaultValue;
+        private final String minInclusive;
+        private final String maxInclusive;
+
+        DateTimeValue(QName typeName, String sample, String minInclusive, String maxInclusive) {
+            this.typeName = typeName;
+            this.minInclusive = minInclusive;
+            this.maxInclusive = maxInclusive;
+            this.defaultValue = sample != null ? fit(sample) : null;
+        }
+
+        private String fit(String value) {
+            if (Constants.XSD_DURATION.equals(typeName)) {
+                return value;
+            } else if (minInclusive != null && value.compareTo(minInclusive) < 0) {
+                return minInclusive;
+            } else if (maxInclusive != null && value.compareTo(maxInclusive) > 0) {
+                return maxInclusive;
+            }
+            return value;
+        }
+
+        @Override
+        String getDefault() {
+            return defaultValue;
+        }
+
+        @Override
+        public String getValue(SeededRandom random) {
+            if (defaultValue == null) {
+                return null;
+            }
+            String year = String.valueOf(1970 + random.nextInt(60));
+            String month = twoDigits(1 + random.nextInt(12));
+            String day = twoDigits(1 + random.nextInt(28));
+            String time = twoDigits(random.nextInt(24)) + ':' + twoDigits(random.nextInt(60)) + ':'
+                    + twoDigits(random.nextInt(60));
+
+            String value;
+            if (Constants.XSD_DATETIME.equals(typeName)) {
+                value = year + '-' + month + '-' + day + 'T' + time;
+            } else if (Constants.XSD_TIME.equals(typeName)) {
+                value = time;
+            } else if (Constants.XSD_DATE.equals(typeName)) {
+                value = year + '-' + month + '-' + day;
+            } else if (Constants.XSD_YEARMONTH.equals(typeName)) {
+                value = year + '-' + month;
+            } else if (Constants.XSD_YEAR.equals(typeName)) {
+                value = year;
+            } else if (Constants.XSD_MONTHDAY.equals(typeName)) {
+                value = "--" + month + '-' + day; //NON-NLS
+            } else if (Constants.XSD_MONTH.equals(typeName)) {
+                value = "--" + month; //NON-NLS
+            } else if (Constants.XSD_DAY.equals(typeName)) {
+                value = "---" + day; //NON-NLS
+            } else {
+                value = "P" + (1 + random.nextInt(365)) + "D"; //NON-NLS
+            }
+            return fit(value);
+        }
+
+        private static String twoDigits(int value) {
+            return value < 10 ? "0" + value : String.valueOf(value);
+        }
+    }
+
+    /**
+     * A value that matches the pattern facets of its type. The values of the type without its patterns are used when
+     * they match; string values are generated from the automaton of the patterns
+     */
+    private static final class PatternValue extends ValueGenerator {
+        private static final int BASE_ATTEMPTS = 3;
+
+        private final PatternAutomaton automaton;
+        private final ValueGenerator base;
+        private final int minLength;
+        private final int maxLength;
+        private final boolean isString;
+        private final String defaultValue;
+
+        PatternValue(PatternAutomaton automaton, ValueGenerator base, Integer minLength, Integer maxLength,
+                     boolean isString) {
+            this.automaton = automaton;
+            this.base = base;
+            this.minLength = minLength != null ? minLength : 0;
+            this.maxLength = maxLength != null ? maxLength : Integer.MAX_VALUE;
+            this.isString = isString;
+
+            String value = base.getDefault();
+            if (value == null || !automaton.matches(value)) {
+                value = automaton.getDefault(this.minLength, this.maxLength);
+                if (value == null) {
+                    logger.warn("Pattern and length facets do not allow any value, using {}", base.getDefault());
+                    value = base.getDefault();
+                }
+            }
+            this.defaultValue = value;
+        }
+
+        @Override
+        String getDefault() {
+            return defaultValue;
+        }
+
+        @Override
+        public String getValue(SeededRandom random) {
+            for (int i = 0; !isString && i < BASE_ATTEMPTS; i++) {
+                String value = base.getValue(random);
+                if (value != null && automaton.matches(value)) {
+                    return value;
+                }
+            }
+            String value = automaton.generate(random, minLength, maxLength);
+            return value != null ? value : defaultValue;
+        }
+    }
+
+    /**
+     * A list of items, whose number of items is restricted
+     */
+    private static final class ListValue extends ValueGenerator {
+        private final ValueGenerator item;
+        private final int minLength;
+        private final int maxLength;
+        private final String defaultValue;
+
+        ListValue(ValueGenerator item, Integer minLength, Integer maxLength) {
+            this.item = item;
+            this.minLength = minLength != null ? minLength : 0;
+            this.maxLength = maxLength != null ? maxLength : Integer.MAX_VALUE;
+
+            String itemValue = item.getDefault();
+            int count = Math.min(Math.max(1, this.minLength), this.maxLength);
+            if (itemValue == null && count > 0) {
+                this.defaultValue = null;
+            } else {
+                StringBuilder sb = new StringBuilder();
+                for (int i = 0; i < count; i++) {
+                    sb.append(i > 0 ? " " : "").append(itemValue);
+                }
+                this.defaultValue = sb.toString();
+            }
+        }
+
+        @Override
+        String getDefault() {
+            return defaultValue;
+        }
+
+        @Override
+        boolean hasValue() {
+            return defaultValue != null || item.hasValue();
+        }
+
+        @Override
+        public String getValue(SeededRandom random) {
+            if (!item.hasValue()) {
+                return defaultValue;
+            }
+            int count = randomLength(random, minLength, maxLength, 2);
+            StringBuilder sb = new StringBuilder();
+            for (int i = 0; i < count; i++) {
+                sb.append(i > 0 ? " " : "").append(item.getValue(random));
+            }
+            return sb.toString();
+        }
+    }
+
+    /**
+     * A union of types; the deterministic value is the one of the first member type that has values
+     */
+    private static final class UnionValue extends ValueGenerator {
+        private final ValueGenerator[] members;
+
+        UnionValue(List<ValueGenerator> members) {
+            this.members = members.toArray(new ValueGenerator[members.size()]);
+        }
+
+        @Override
+        String getDefault() {
+            return members[0].getDefault();
+        }
+
+        @Override
+        ValueProvider getVolatileDefault() {
+            return members[0].getVolatileDefault();
+        }
+
+        @Override
+        public String getValue(SeededRandom random) {
+            return members[random.nextInt(members.length)].getValue(random);
+        }
+    }
+}
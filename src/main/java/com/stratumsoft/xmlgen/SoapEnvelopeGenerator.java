@@ -0,0 +1,525 @@
+/*
+ * Copyright (c) 2010-2014 Stratumsoft Technologies Pvt. Ltd.
+ *
+ * This file (SoapEnvelopeGenerator.java) is part of xsd2xml.
+ *
+ * xsd2xml is a Java program to generate XML instances from an XML Schema document
+ *
+ * xsd2xml is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * xsd2xml is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; If not, see <http://www.gnu.org/licenses/>.
+ *
+ * To use xsd2xml in your non-GPL licensed software, contact Stratumsoft Technologies
+ * support at support@stratumsoft.com or visit http://www.stratumsoft.com to obtain
+ * a commercial license.
+ */
+
+
+package com.stratumsoft.xmlgen;
+
+import org.apache.ws.commons.schema.XmlSchemaComplexType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.xml.namespace.QName;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * Generates the SOAP envelopes of the operations of a {@link WsdlDefinition}. The markup of each message that does
+ * not depend on the schemas (the xml declaration, the envelope, header and body tags and the rpc wrapper) is
+ * rendered to bytes once, when the generator is created, so an envelope only costs the generation of its parts.
+ * The plans of the element parts are compiled by the first envelope that needs them and cached by the engine.
+ * <p/>
+ * The parts of document operations are written as their global elements. The body parts of rpc operations are
+ * wrapped in an element named after the operation (with a <code>Response</code> suffix for the response) in the
+ * namespace of the soap:body; a part defined by a type is written as an unqualified accessor element named after the
+ * part, with the content of the type. A generator owns its pool and must be closed once it is no longer needed.
+ *
+ * @author murakris@stratumsoft.com
+ */
+public final class SoapEnvelopeGenerator implements Closeable {
+
+    private static final Logger logger = LoggerFactory.getLogger(SoapEnvelopeGenerator.class);
+
+    private static final String PREFIX = "soapenv"; //NON-NLS
+
+    private static final String XML_DECLARATION = "<?xml version=\"1.0\" encoding=\"utf-8\"?>"; //NON-NLS
+
+    private final XmlGenEngine engine;
+
+    private final ForkJoinPool pool;
+
+    private final List<SoapOperation> operations;
+
+    /**
+     * the precomputed markup of the messages of the operations
+     */
+    private final Map<SoapOperation.Message, Template> templates = new IdentityHashMap<>();
+
+    public SoapEnvelopeGenerator(WsdlDefinition wsdl) {
+        this(wsdl, null, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * @param wsdl           the definition to generate the envelopes of
+     * @param defaultOptions options to use for calls that do not specify their own, or null
+     * @param parallelism    number of worker threads of {@link #generateAll(XmlGenOptions)}
+     * @throws IllegalArgumentException if a part refers to an element or type that is not in the schemas
+     */
+    public SoapEnvelopeGenerator(WsdlDefinition wsdl, XmlGenOptions defaultOptions, int parallelism) {
+        if (wsdl == null) {
+            throw new IllegalArgumentException("wsdl cannot be null");
+        }
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("parallelism must be at least 1");
+        }
+        this.engine = new XmlGenEngine(wsdl.getSchemaCollection(), defaultOptions);
+        this.operations = wsdl.getOperations();
+        for (SoapOperation operation : operations) {
+            for (boolean request : new boolean[]{true, false}) {
+                SoapOperation.Message message = operation.getMessage(request);
+                if (message != null) {
+                    templates.put(message, new Template(operation, message));
+                }
+            }
+        }
+        this.pool = new ForkJoinPool(parallelism);
+    }
+
+    /**
+     * @return the engine generating the parts, which is shared by all the operations
+     */
+    public XmlGenEngine getEngine() {
+        return engine;
+    }
+
+    /**
+     * Write the envelope of a message of an operation as a utf-8 encoded document to the given stream, which is not
+     * closed
+     *
+     * @param operation an operation of the definition of this generator
+     * @param request   true for the request message, false for the response
+     * @param options   options for the parts, or null to use the defaults
+     * @param out       the stream to write to
+     * @param random    generator for the per-document values, or null to use unseeded values
+     * @throws IOException if the envelope could not be written
+     */
+    public void writeEnvelope(SoapOperation operation, boolean request, XmlGenOptions options, OutputStream out,
+                              SeededRandom random) throws IOException {
+        getTemplate(operation, request).write(options, out, random != null ? random : new SeededRandom());
+    }
+
+    /**
+     * Generate the envelope of a message of an operation. The per-document values are taken from the seed of the
+     * options, if any.
+     *
+     * @param operation an operation of the definition of this generator
+     * @param request   true for the request message, false for the response
+     * @param options   options for the parts, or null to use the defaults
+     * @return the utf-8 encoded envelope
+     */
+    public byte[] generateEnvelope(SoapOperation operation, boolean request, XmlGenOptions options) {
+        Template template = getTemplate(operation, request);
+        return template.generate(options, snapshot(options).newDocumentRandom());
+    }
+
+    /**
+     * Generate the request and response envelopes of all the operations in parallel. With a seed in the options,
+     * envelope <i>i</i> takes its per-document values from
+     * {@link SeededRandom#forIndex(long, long) SeededRandom.forIndex(seed, i)}.
+     *
+     * @param options options for the parts, or null to use the defaults
+     * @return the envelopes, in the order of the operations, the request before the response
+     */
+    public List<Envelope> generateAll(final XmlGenOptions options) {
+        final Long seed = snapshot(options).getSeed();
+        List<Callable<Envelope>> tasks = new ArrayList<>();
+        for (final SoapOperation operation : operations) {
+            for (final boolean request : new boolean[]{true, false}) {
+                final SoapOperation.Message message = operation.getMessage(request);
+                if (message == null) {
+                    continue;
+                }
+                final long index = tasks.size();
+                tasks.add(new Callable<Envelope>() {
+                    @Override
+                    public Envelope call() {
+                        SeededRandom random = seed != null ? SeededRandom.forIndex(seed, index) : null;
+                        return new Envelope(operation, request, templates.get(message).generate(options, random));
+                    }
+                });
+            }
+        }
+
+        logger.debug("Generating {} envelopes of {} operations", tasks.size(), operations.size());
+        List<Envelope> envelopes = new ArrayList<>(tasks.size());
+        for (Future<Envelope> result : pool.invokeAll(tasks)) {
+            try {
+                envelopes.add(result.get());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while generating envelopes", e);
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof RuntimeException) {
+                    throw (RuntimeException) cause;
+                }
+                throw new IllegalStateException(cause);
+            }
+        }
+        return envelopes;
+    }
+
+    /**
+     * Shut down the worker pool
+     */
+    @Override
+    public void close() {
+        pool.shutdownNow();
+    }
+
+    private XmlGenOptions snapshot(XmlGenOptions options) {
+        return options != null ? options : engine.getDefaultOptions();
+    }
+
+    private Template getTemplate(SoapOperation operation, boolean request) {
+        SoapOperation.Message message = operation.getMessage(request);
+        Template template = message != null ? templates.get(message) : null;
+        if (template == null) {
+            throw new IllegalArgumentException("No " + (request ? "request" : "response") //NON-NLS
+                    + " message for operation " + operation);
+        }
+        return template;
+    }
+
+    private static byte[] utf8(CharSequence s) {
+        return s.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static String escape(String s) {
+        StringBuilder sb = new StringBuilder(s.length());
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            switch (c) {
+                case '&':
+                    sb.append("&amp;"); //NON-NLS
+                    break;
+                case '<':
+                    sb.append("&lt;"); //NON-NLS
+                    break;
+                case '>':
+                    sb.append("&gt;"); //NON-NLS
+                    break;
+                case '"':
+                    sb.append("&quot;"); //NON-NLS
+                    break;
+                default:
+                    sb.append(c);
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * A generated envelope
+     */
+    public static final class Envelope {
+
+        private final SoapOperation operation;
+
+        private final boolean request;
+
+        private final byte[] content;
+
+        Envelope(SoapOperation operation, boolean request, byte[] content) {
+            this.operation = operation;
+            this.request = request;
+            this.content = content;
+        }
+
+        public SoapOperation getOperation() {
+            return operation;
+        }
+
+        /**
+         * @return true for a request envelope, false for a response
+         */
+        public boolean isRequest() {
+            return request;
+        }
+
+        /**
+         * @return the utf-8 encoded envelope
+         */
+        public byte[] getContent() {
+            return content;
+        }
+    }
+
+    /**
+     * The envelope of a message: the precomputed markup around the header and body parts
+     */
+    private final class Template {
+
+        /**
+         * xml declaration, envelope start tag and header start tag
+         */
+        private final byte[] start;
+
+        /**
+         * header end tag, body start tag and rpc wrapper start tag
+         */
+        private final byte[] middle;
+
+        /**
+         * rpc wrapper end tag, body and envelope end tags
+         */
+        private final byte[] end;
+
+        private final List<PartWriter> headers = new ArrayList<>();
+
+        private final List<PartWriter> body = new ArrayList<>();
+
+        /**
+         * size of the last envelope, to presize the buffer of the next one
+         */
+        private volatile int lastSize = 1024;
+
+        Template(SoapOperation operation, SoapOperation.Message message) {
+            String envelopeNs = operation.getVersion().getEnvelopeNamespace();
+            boolean hasHeaders = !message.getHeaders().isEmpty();
+            QName wrapper = message.getWrapper();
+
+            StringBuilder sb = new StringBuilder(XML_DECLARATION);
+            sb.append('<').append(PREFIX).append(":Envelope xmlns:").append(PREFIX) //NON-NLS
+                    .append("=\"").append(escape(envelopeNs)).append("\">"); //NON-NLS
+            if (hasHeaders) {
+                sb.append('<').append(PREFIX).append(":Header>"); //NON-NLS
+            }
+            start = utf8(sb);
+
+            sb.setLength(0);
+            if (hasHeaders) {
+                sb.append("</").append(PREFIX).append(":Header>"); //NON-NLS
+            }
+            sb.append('<').append(PREFIX).append(":Body>"); //NON-NLS
+            if (wrapper != null) {
+                if (wrapper.getNamespaceURI().isEmpty()) {
+                    sb.append('<').append(wrapper.getLocalPart()).append('>');
+                } else {
+                    sb.append("<ns:").append(wrapper.getLocalPart()) //NON-NLS
+                            .append(" xmlns:ns=\"").append(escape(wrapper.getNamespaceURI())).append("\">"); //NON-NLS
+                }
+            }
+            middle = utf8(sb);
+
+            sb.setLength(0);
+            if (wrapper != null) {
+                sb.append("</").append(wrapper.getNamespaceURI().isEmpty() ? "" : "ns:") //NON-NLS
+                        .append(wrapper.getLocalPart()).append('>');
+            }
+            sb.append("</").append(PREFIX).append(":Body></").append(PREFIX).append(":Envelope>"); //NON-NLS
+            end = utf8(sb);
+
+            for (SoapOperation.Part part : message.getHeaders()) {
+                headers.add(partWriter(operation, part));
+            }
+            for (SoapOperation.Part part : message.getBody()) {
+                body.add(partWriter(operation, part));
+            }
+        }
+
+        private PartWriter partWriter(SoapOperation operation, SoapOperation.Part part) {
+            SchemaRegistry registry = engine.getRegistry();
+            if (part.getElement() != null) {
+                if (registry.getElement(part.getElement()) == null) {
+                    throw new IllegalArgumentException("Unknown element " + part.getElement() //NON-NLS
+                            + " of part " + part.getName() + " of operation " + operation);
+                }
+                return new ElementPart(part.getElement());
+            }
+            if (registry.getType(part.getType()) instanceof XmlSchemaComplexType) {
+                return new ComplexTypePart(part.getName(), part.getType());
+            }
+            SimpleTypeValues.ValueGenerator generator = engine.getSimpleTypeValues().get(part.getType());
+            if (generator == null) {
+                throw new IllegalArgumentException("Unknown type " + part.getType() //NON-NLS
+                        + " of part " + part.getName() + " of operation " + operation);
+            }
+            return new SimpleTypePart(part.getName(), generator);
+        }
+
+        byte[] generate(XmlGenOptions options, SeededRandom random) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream(lastSize);
+            try {
+                write(options, out, random != null ? random : new SeededRandom());
+            } catch (IOException e) {
+                throw new IllegalStateException("Could not write envelope", e); //NON-NLS
+            }
+            lastSize = out.size();
+            return out.toByteArray();
+        }
+
+        void write(XmlGenOptions options, OutputStream out, SeededRandom random) throws IOException {
+            out.write(start);
+            for (PartWriter part : headers) {
+                part.write(options, out, random);
+            }
+            out.write(middle);
+            for (PartWriter part : body) {
+                part.write(options, out, random);
+            }
+            out.write(end);
+        }
+    }
+
+    /**
+     * Writes the content of a message part
+     */
+    private interface PartWriter {
+
+        void write(XmlGenOptions options, OutputStream out, SeededRandom random) throws IOException;
+    }
+
+    /**
+     * A part defined by an element, replayed from its plan
+     */
+    private final class ElementPart implements PartWriter {
+
+        private final QName element;
+
+        ElementPart(QName element) {
+            this.element = element;
+        }
+
+        @Override
+        public void write(XmlGenOptions options, OutputStream out, SeededRandom random) throws IOException {
+            GenerationPlan plan = engine.compile(element, options);
+            try {
+                XMLStreamWriter writer = GenerationPlan.createWriter(out);
+                try {
+                    plan.write(writer, random);
+                    writer.flush();
+                } finally {
+                    writer.close();
+                }
+            } catch (XMLStreamException e) {
+                throw new IOException("Could not write part " + element, e);
+            }
+        }
+    }
+
+    /**
+     * An rpc part defined by a complex type, replayed from the plan of its accessor element
+     */
+    private final class ComplexTypePart implements PartWriter {
+
+        private final QName name;
+
+        private final QName type;
+
+        /**
+         * the plan compiled with the options of the last call, which are usually the same for all envelopes
+         */
+        private volatile CompiledPart compiled;
+
+        ComplexTypePart(String name, QName type) {
+            this.name = new QName(name);
+            this.type = type;
+        }
+
+        @Override
+        public void write(XmlGenOptions options, OutputStream out, SeededRandom random) throws IOException {
+            PlanKey key = new PlanKey(type, snapshot(options));
+            CompiledPart part = compiled;
+            if (part == null || !part.key.equals(key)) {
+                part = new CompiledPart(key, engine.compileType(type, name, options));
+                compiled = part;
+            }
+            try {
+                XMLStreamWriter writer = GenerationPlan.createWriter(out);
+                try {
+                    part.plan.write(writer, random);
+                    writer.flush();
+                } finally {
+                    writer.close();
+                }
+            } catch (XMLStreamException e) {
+                throw new IOException("Could not write part " + name, e);
+            }
+        }
+    }
+
+    private static final class CompiledPart {
+        final PlanKey key;
+        final GenerationPlan plan;
+
+        CompiledPart(PlanKey key, GenerationPlan plan) {
+            this.key = key;
+            this.plan = plan;
+        }
+    }
+
+    /**
+     * An rpc part defined by a simple type, written as its accessor element with a sample value
+     */
+    private final class SimpleTypePart implements PartWriter {
+
+        private final byte[] startTag;
+
+        private final byte[] endTag;
+
+        private final SimpleTypeValues.ValueGenerator generator;
+
+        SimpleTypePart(String name, SimpleTypeValues.ValueGenerator generator) {
+            this.startTag = utf8("<" + name + ">");
+            this.endTag = utf8("</" + name + ">");
+            this.generator = generator;
+        }
+
+        @Override
+        public void write(XmlGenOptions options, OutputStream out, SeededRandom random) throws IOException {
+            String value;
+            switch (snapshot(options).getDefVals()) {
+                case NONE:
+                    value = null;
+                    break;
+                case RANDOM:
+                    value = generator.hasValue() ? generator.getValue(random) : null;
+                    break;
+                default:
+                    value = generator.getVolatileDefault() != null
+                            ? generator.getVolatileDefault().getValue(random) : generator.getDefault();
+            }
+            out.write(startTag);
+            if (value != null) {
+                out.write(utf8(escape(value)));
+            }
+            out.write(endTag);
+        }
+    }
+}
@@ -0,0 +1,191 @@
+/*
+ * Copyright (c) 2010-2014 Stratumsoft Technologies Pvt. Ltd.
+ *
+ * This file (SoapOperation.java) is part of xsd2xml.
+ *
+ * xsd2xml is a Java program to generate XML instances from an XML Schema document
+ *
+ * xsd2xml is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * xsd2xml is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; If not, see <http://www.gnu.org/licenses/>.
+ *
+ * To use xsd2xml in your non-GPL licensed software, contact Stratumsoft Technologies
+ * support at support@stratumsoft.com or visit http://www.stratumsoft.com to obtain
+ * a commercial license.
+ */
+
+
+package com.stratumsoft.xmlgen;
+
+import javax.xml.namespace.QName;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * An operation of a SOAP binding of a WSDL 1.1 document, with the parts of its request and response messages, see
+ * {@link WsdlDefinition}
+ *
+ * @author murakris@stratumsoft.com
+ */
+public final class SoapOperation {
+
+    private final QName binding;
+
+    private final String name;
+
+    private final SoapVersion version;
+
+    private final String soapAction;
+
+    private final boolean rpc;
+
+    private final Message input;
+
+    private final Message output;
+
+    SoapOperation(QName binding, String name, SoapVersion version, String soapAction, boolean rpc,
+                  Message input, Message output) {
+        this.binding = binding;
+        this.name = name;
+        this.version = version;
+        this.soapAction = soapAction;
+        this.rpc = rpc;
+        this.input = input;
+        this.output = output;
+    }
+
+    /**
+     * @return the qname of the binding this operation belongs to
+     */
+    public QName getBinding() {
+        return binding;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public SoapVersion getVersion() {
+        return version;
+    }
+
+    /**
+     * @return the soapAction of the operation, or null if it has none
+     */
+    public String getSoapAction() {
+        return soapAction;
+    }
+
+    /**
+     * @return true if the operation is rpc style, i.e. the body parts are wrapped in an element named after it
+     */
+    public boolean isRpc() {
+        return rpc;
+    }
+
+    /**
+     * @return the request message, or null if the operation has no input
+     */
+    public Message getInput() {
+        return input;
+    }
+
+    /**
+     * @return the response message, or null for a one-way operation
+     */
+    public Message getOutput() {
+        return output;
+    }
+
+    /**
+     * @param request true for the request message, false for the response
+     * @return the message, or null if the operation has no such message
+     */
+    public Message getMessage(boolean request) {
+        return request ? input : output;
+    }
+
+    @Override
+    public String toString() {
+        return binding.getLocalPart() + '/' + name;
+    }
+
+    /**
+     * The parts of a message, as they are bound to the header and the body of the envelope
+     */
+    public static final class Message {
+
+        private final QName wrapper;
+
+        private final List<Part> headers;
+
+        private final List<Part> body;
+
+        Message(QName wrapper, List<Part> headers, List<Part> body) {
+            this.wrapper = wrapper;
+            this.headers = Collections.unmodifiableList(headers);
+            this.body = Collections.unmodifiableList(body);
+        }
+
+        /**
+         * @return the qname of the element wrapping the body parts of an rpc operation, or null for a document
+         *         operation
+         */
+        public QName getWrapper() {
+            return wrapper;
+        }
+
+        public List<Part> getHeaders() {
+            return headers;
+        }
+
+        public List<Part> getBody() {
+            return body;
+        }
+    }
+
+    /**
+     * A message part, defined either by a global element or by a type
+     */
+    public static final class Part {
+
+        private final String name;
+
+        private final QName element;
+
+        private final QName type;
+
+        Part(String name, QName element, QName type) {
+            this.name = name;
+            this.element = element;
+            this.type = type;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * @return the qname of the element of the part, or null if the part is defined by a type
+         */
+        public QName getElement() {
+            return element;
+        }
+
+        /**
+         * @return the qname of the type of the part, or null if the part is defined by an element
+         */
+        public QName getType() {
+            return type;
+        }
+    }
+}
@@ -0,0 +1,81 @@
+/*
+ * Copyright (c) 2010-2014 Stratumsoft Technologies Pvt. Ltd.
+ *
+ * This file (SoapVersion.java) is part of xsd2xml.
+ *
+ * xsd2xml is a Java program to generate XML instances from an XML Schema document
+ *
+ * xsd2xml is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * xsd2xml is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; If not, see <http://www.gnu.org/licenses/>.
+ *
+ * To use xsd2xml in your non-GPL licensed software, contact Stratumsoft Technologies
+ * support at support@stratumsoft.com or visit http://www.stratumsoft.com to obtain
+ * a commercial license.
+ */
+
+
+package com.stratumsoft.xmlgen;
+
+/**
+ * Version of the SOAP envelopes generated for the operations of a WSDL binding, see {@link WsdlDefinition}
+ *
+ * @author murakris@stratumsoft.com
+ */
+public enum SoapVersion {
+    SOAP_11("http://schemas.xmlsoap.org/wsdl/soap/", "http://schemas.xmlsoap.org/soap/envelope/", //NON-NLS
+            "text/xml"), //NON-NLS
+    SOAP_12("http://schemas.xmlsoap.org/wsdl/soap12/", "http://www.w3.org/2003/05/soap-envelope", //NON-NLS
+            "application/soap+xml"); //NON-NLS
+
+    private final String bindingNamespace;
+
+    private final String envelopeNamespace;
+
+    private final String contentType;
+
+    SoapVersion(String bindingNamespace, String envelopeNamespace, String contentType) {
+        this.bindingNamespace = bindingNamespace;
+        this.envelopeNamespace = envelopeNamespace;
+        this.contentType = contentType;
+    }
+
+    /**
+     * @return the namespace of the WSDL binding extension elements (soap:binding, soap:body...) of this version
+     */
+    public String getBindingNamespace() {
+        return bindingNamespace;
+    }
+
+    public String getEnvelopeNamespace() {
+        return envelopeNamespace;
+    }
+
+    /**
+     * @return the media type of the messages of this version
+     */
+    public String getContentType() {
+        return contentType;
+    }
+
+    /**
+     * @return the version whose binding extension elements have the given namespace, or null if there is none
+     */
+    static SoapVersion forBindingNamespace(String namespaceURI) {
+        for (SoapVersion version : values()) {
+            if (version.bindingNamespace.equals(namespaceURI)) {
+                return version;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,132 @@
+/*
+ * Copyright (c) 2010-2014 Stratumsoft Technologies Pvt. Ltd.
+ *
+ * This file (StaxPlanSink.java) is part of xsd2xml.
+ *
+ * xsd2xml is a Java program to generate XML instances from an XML Schema document
+ *
+ * xsd2xml is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * xsd2xml is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; If not, see <http://www.gnu.org/licenses/>.
+ *
+ * To use xsd2xml in your non-GPL licensed software, contact Stratumsoft Technologies
+ * support at support@stratumsoft.com or visit http://www.stratumsoft.com to obtain
+ * a commercial license.
+ */
+
+package com.stratumsoft.xmlgen;
+
+import org.apache.commons.lang.StringUtils;
+import org.dom4j.QName;
+
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Writes the replayed plan events straight to an {@link XMLStreamWriter}. Namespace declarations are added on the
+ * first element that uses a namespace, just like the dom4j XMLWriter does; only the bindings in scope are kept, so
+ * memory is proportional to the nesting depth.
+ *
+ * @author murakris@stratumsoft.com
+ */
+class StaxPlanSink implements PlanSink {
+
+    private final XMLStreamWriter writer;
+
+    /**
+     * prefix/uri bindings currently in scope, innermost last
+     */
+    private final List<String> boundPrefixes = new ArrayList<>();
+    private final List<String> boundUris = new ArrayList<>();
+
+    /**
+     * number of bindings in scope when each open element was started
+     */
+    private int[] scopeMarks = new int[32];
+    private int depth;
+
+    StaxPlanSink(XMLStreamWriter writer) {
+        this.writer = writer;
+    }
+
+    @Override
+    public void startElement(QName name) throws XMLStreamException {
+        if (depth == scopeMarks.length) {
+            scopeMarks = Arrays.copyOf(scopeMarks, depth * 2);
+        }
+        scopeMarks[depth++] = boundPrefixes.size();
+
+        String nsUri = name.getNamespaceURI();
+        if (StringUtils.isEmpty(nsUri)) {
+            writer.writeStartElement(name.getName());
+        } else {
+            String prefix = name.getNamespacePrefix();
+            writer.writeStartElement(prefix, name.getName(), nsUri);
+            declare(prefix, nsUri);
+        }
+    }
+
+    @Override
+    public void attribute(QName name, String value) throws XMLStreamException {
+        String nsUri = name.getNamespaceURI();
+        if (StringUtils.isEmpty(nsUri)) {
+            writer.writeAttribute(name.getName(), value);
+        } else {
+            String prefix = name.getNamespacePrefix();
+            declare(prefix, nsUri);
+            writer.writeAttribute(prefix, nsUri, name.getName(), value);
+        }
+    }
+
+    @Override
+    public void text(String value) throws XMLStreamException {
+        writer.writeCharacters(value);
+    }
+
+    @Override
+    public void comment(String text) throws XMLStreamException {
+        writer.writeComment(text);
+    }
+
+    @Override
+    public void endElement() throws XMLStreamException {
+        writer.writeEndElement();
+
+        int mark = scopeMarks[--depth];
+        for (int i = boundPrefixes.size() - 1; i >= mark; i--) {
+            boundPrefixes.remove(i);
+            boundUris.remove(i);
+        }
+    }
+
+    private void declare(String prefix, String nsUri) throws XMLStreamException {
+        for (int i = boundPrefixes.size() - 1; i >= 0; i--) {
+            if (boundPrefixes.get(i).equals(prefix)) {
+                if (boundUris.get(i).equals(nsUri)) {
+                    return;     //already in scope
+                }
+                break;          //prefix is re-bound to another namespace
+            }
+        }
+
+        if (StringUtils.isEmpty(prefix)) {
+            writer.writeDefaultNamespace(nsUri);
+        } else {
+            writer.writeNamespace(prefix, nsUri);
+        }
+        boundPrefixes.add(prefix);
+        boundUris.add(nsUri);
+    }
+}
@@ -0,0 +1,49 @@
+/*
+ * Copyright (c) 2010-2014 Stratumsoft Technologies Pvt. Ltd.
+ *
+ * This file (ValueProvider.java) is part of xsd2xml.
+ *
+ * xsd2xml is a Java program to generate XML instances from an XML Schema document
+ *
+ * xsd2xml is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * xsd2xml is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; If not, see <http://www.gnu.org/licenses/>.
+ *
+ * To use xsd2xml in your non-GPL licensed software, contact Stratumsoft Technologies
+ * support at support@stratumsoft.com or visit http://www.stratumsoft.com to obtain
+ * a commercial license.
+ */
+
+
+package com.stratumsoft.xmlgen;
+
+/**
+ * Provides the sample values generated for a built-in schema type, see {@link ValueProviders}. Implementations are
+ * shared by all the threads using an engine and must be thread-safe; any randomness must be taken from the
+ * generator that is passed in, which belongs to the current call.
+ *
+ * @author murakris@stratumsoft.com
+ */
+public interface ValueProvider {
+
+    /**
+     * @param random generator of the current call
+     * @return a sample value
+     */
+    String getValue(SeededRandom random);
+
+    /**
+     * @return true if a new value must be generated for every document (e.g. for xs:ID), false if a value can be
+     *         generated once when a plan is compiled and reused by all the documents generated from the plan
+     */
+    boolean isVolatile();
+}
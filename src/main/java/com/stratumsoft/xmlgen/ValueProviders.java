@@ -0,0 +1,290 @@
+/*
+ * Copyright (c) 2010-2014 Stratumsoft Technologies Pvt. Ltd.
+ *
+ * This file (ValueProviders.java) is part of xsd2xml.
+ *
+ * xsd2xml is a Java program to generate XML instances from an XML Schema document
+ *
+ * xsd2xml is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * xsd2xml is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; If not, see <http://www.gnu.org/licenses/>.
+ *
+ * To use xsd2xml in your non-GPL licensed software, contact Stratumsoft Technologies
+ * support at support@stratumsoft.com or visit http://www.stratumsoft.com to obtain
+ * a commercial license.
+ */
+
+
+package com.stratumsoft.xmlgen;
+
+import org.apache.commons.codec.binary.Base64;
+import org.apache.commons.lang.time.FastDateFormat;
+import org.apache.ws.commons.schema.constants.Constants;
+
+import javax.xml.namespace.QName;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * An immutable set of {@link ValueProvider}s for the built-in schema types. Each built-in type has a fixed slot, so
+ * the type name of a simple type is resolved to its slot once when a plan is compiled and the provider is then
+ * looked up by index. A set is changed by deriving a new one with {@link #with(QName, ValueProvider)}, so reading
+ * it from any number of threads needs no locking.
+ * <p/>
+ * An engine takes its providers when it is created; {@link #getDefaults()} provides the same values as
+ * earlier versions.
+ *
+ * @author murakris@stratumsoft.com
+ */
+public final class ValueProviders {
+
+    static final int NO_SLOT = -1;
+
+    private static final QName[] TYPES = {
+            Constants.XSD_STRING, Constants.XSD_BOOLEAN, Constants.XSD_FLOAT, Constants.XSD_DOUBLE,
+            Constants.XSD_DECIMAL, Constants.XSD_DURATION, Constants.XSD_DATETIME, Constants.XSD_TIME,
+            Constants.XSD_DATE, Constants.XSD_YEARMONTH, Constants.XSD_YEAR, Constants.XSD_MONTHDAY,
+            Constants.XSD_DAY, Constants.XSD_MONTH, Constants.XSD_HEXBIN, Constants.XSD_BASE64,
+            Constants.XSD_ANYURI, Constants.XSD_QNAME, Constants.XSD_NOTATION, Constants.XSD_NORMALIZEDSTRING,
+            Constants.XSD_TOKEN, Constants.XSD_LANGUAGE, Constants.XSD_NMTOKEN, Constants.XSD_NMTOKENS,
+            Constants.XSD_NAME, Constants.XSD_NCNAME, Constants.XSD_ID, Constants.XSD_IDREF, Constants.XSD_IDREFS,
+            Constants.XSD_ENTITY, Constants.XSD_ENTITIES, Constants.XSD_INTEGER, Constants.XSD_NONPOSITIVEINTEGER,
+            Constants.XSD_NEGATIVEINTEGER, Constants.XSD_LONG, Constants.XSD_INT, Constants.XSD_SHORT,
+            Constants.XSD_BYTE, Constants.XSD_NONNEGATIVEINTEGER, Constants.XSD_UNSIGNEDLONG,
+            Constants.XSD_UNSIGNEDINT, Constants.XSD_UNSIGNEDSHORT, Constants.XSD_UNSIGNEDBYTE,
+            Constants.XSD_POSITIVEINTEGER, Constants.XSD_ANYSIMPLETYPE, Constants.XSD_ANYTYPE
+    };
+
+    private static final Map<QName, Integer> SLOTS;
+
+    static {
+        Map<QName, Integer> slots = new HashMap<>();
+        for (int i = 0; i < TYPES.length; i++) {
+            slots.put(TYPES[i], i);
+        }
+        SLOTS = Collections.unmodifiableMap(slots);
+    }
+
+    static final int ID_SLOT = slotOf(Constants.XSD_ID);
+
+    private static volatile ValueProviders defaults = createDefaults();
+
+    private final ValueProvider[] providers;
+
+    private ValueProviders(ValueProvider[] providers) {
+        this.providers = providers;
+    }
+
+    /**
+     * @return an empty set, with no value for any type
+     */
+    public static ValueProviders empty() {
+        return new ValueProviders(new ValueProvider[TYPES.length]);
+    }
+
+    /**
+     * @return the providers used by the engines that are not given their own
+     */
+    public static ValueProviders getDefaults() {
+        return defaults;
+    }
+
+    static void setDefaults(ValueProviders providers) {
+        defaults = providers;
+    }
+
+    /**
+     * @param typeName qname of a built-in schema type
+     * @param provider the provider for the type, or null to generate no value for the type
+     * @return a new set with the given provider for the type and the providers of this set for the other types
+     * @throws IllegalArgumentException if the type is not a built-in schema type
+     */
+    public ValueProviders with(QName typeName, ValueProvider provider) {
+        int slot = slotOf(typeName);
+        if (slot == NO_SLOT) {
+            throw new IllegalArgumentException("Not a built-in schema type: " + typeName);
+        }
+        ValueProvider[] copy = providers.clone();
+        copy[slot] = provider;
+        return new ValueProviders(copy);
+    }
+
+    /**
+     * @param typeName qname of a built-in schema type
+     * @return the provider for the type, or null if there is none
+     */
+    public ValueProvider get(QName typeName) {
+        return get(slotOf(typeName));
+    }
+
+    /**
+     * @param typeName qname of a schema type
+     * @return the slot of the type, or {@link #NO_SLOT} if it is not a built-in type
+     */
+    static int slotOf(QName typeName) {
+        Integer slot = typeName != null ? SLOTS.get(typeName) : null;
+        return slot != null ? slot : NO_SLOT;
+    }
+
+    /**
+     * @param provider a provider of this set
+     * @return the slot of the given provider, or {@link #NO_SLOT} if it is not one of the providers of this set
+     */
+    int slotOf(ValueProvider provider) {
+        for (int slot = 0; slot < providers.length; slot++) {
+            if (providers[slot] == provider) {
+                return slot;
+            }
+        }
+        return NO_SLOT;
+    }
+
+    ValueProvider get(int slot) {
+        return slot != NO_SLOT ? providers[slot] : null;
+    }
+
+    /**
+     * @return true if the type in the given slot has a volatile provider
+     */
+    boolean isVolatile(int slot) {
+        ValueProvider provider = get(slot);
+        return provider != null && provider.isVolatile();
+    }
+
+    /**
+     * @return a value for the type in the given slot, or null if there is no provider for it
+     */
+    String getValue(int slot, SeededRandom random) {
+        ValueProvider provider = get(slot);
+        return provider != null ? provider.getValue(random) : null;
+    }
+
+    /**
+     * @param value the value
+     * @return a provider that always returns the given value
+     */
+    public static ValueProvider constant(String value) {
+        return new ConstantValue(value);
+    }
+
+    /**
+     * @param pattern a {@link java.text.SimpleDateFormat} pattern
+     * @return a provider of the current date and time in the given format
+     */
+    public static ValueProvider currentDate(String pattern) {
+        return new CurrentDateValue(pattern);
+    }
+
+    @SuppressWarnings("HardCodedStringLiteral")
+    private static ValueProviders createDefaults() {
+        return empty()
+                .with(Constants.XSD_STRING, constant("string value"))
+                .with(Constants.XSD_BOOLEAN, constant("true"))
+                .with(Constants.XSD_DOUBLE, constant("1.0"))
+                .with(Constants.XSD_FLOAT, constant("1.0"))
+                .with(Constants.XSD_INT, constant("1"))
+                .with(Constants.XSD_UNSIGNEDINT, constant("1"))
+                .with(Constants.XSD_INTEGER, constant("1"))
+                .with(Constants.XSD_POSITIVEINTEGER, constant("1"))
+                .with(Constants.XSD_NEGATIVEINTEGER, constant("-1"))
+                .with(Constants.XSD_NONNEGATIVEINTEGER, constant("1"))
+                .with(Constants.XSD_NONPOSITIVEINTEGER, constant("-1"))
+                .with(Constants.XSD_SHORT, constant("1"))
+                .with(Constants.XSD_UNSIGNEDSHORT, constant("1"))
+                .with(Constants.XSD_LONG, constant("1"))
+                .with(Constants.XSD_UNSIGNEDLONG, constant("1"))
+                .with(Constants.XSD_BYTE, constant("1"))
+                .with(Constants.XSD_UNSIGNEDBYTE, constant("1"))
+                .with(Constants.XSD_DECIMAL, constant("1.0"))
+                .with(Constants.XSD_BASE64,
+                        constant(Base64.encodeBase64String("test".getBytes(StandardCharsets.UTF_8))))
+                .with(Constants.XSD_HEXBIN, constant("CAFEBABE"))
+                .with(Constants.XSD_ANYURI, constant("http://www.example.com/"))
+
+                .with(Constants.XSD_DATE, currentDate("yyyy-MM-dd"))
+                .with(Constants.XSD_TIME, currentDate("HH:mm:ss"))
+                .with(Constants.XSD_DATETIME, currentDate("yyyy-MM-dd'T'HH:mm:ss"))
+                .with(Constants.XSD_YEAR, currentDate("yyyy"))
+                .with(Constants.XSD_YEARMONTH, currentDate("yyyy-MM"))
+                .with(Constants.XSD_MONTH, currentDate("--MM"))
+                .with(Constants.XSD_MONTHDAY, currentDate("--MM-dd"))
+                .with(Constants.XSD_DAY, currentDate("---dd"))
+                .with(Constants.XSD_DURATION, constant("P1D"))
+
+                .with(Constants.XSD_NORMALIZEDSTRING, constant("normalized string"))
+                .with(Constants.XSD_TOKEN, constant("token"))
+                .with(Constants.XSD_NAME, constant("Name"))
+                .with(Constants.XSD_NCNAME, constant("NCName"))
+                .with(Constants.XSD_NMTOKEN, constant("token"))
+                .with(Constants.XSD_NMTOKENS, constant("token1 token2"))
+                .with(Constants.XSD_LANGUAGE, constant("en"))
+
+                .with(Constants.XSD_ID, new IdValue());
+    }
+
+    private static final class ConstantValue implements ValueProvider {
+        private final String value;
+
+        ConstantValue(String value) {
+            this.value = value;
+        }
+
+        @Override
+        public String getValue(SeededRandom random) {
+            return value;
+        }
+
+        @Override
+        public boolean isVolatile() {
+            return false;
+        }
+    }
+
+    /**
+     * Formats the current date with a thread-safe formatter
+     */
+    private static final class CurrentDateValue implements ValueProvider {
+        private final FastDateFormat format;
+
+        CurrentDateValue(String pattern) {
+            this.format = FastDateFormat.getInstance(pattern);
+        }
+
+        @Override
+        public String getValue(SeededRandom random) {
+            return format.format(new Date());
+        }
+
+        @Override
+        public boolean isVolatile() {
+            return false;
+        }
+    }
+
+    /**
+     * xs:ID values must be unique within a document, so a new one is generated for every occurrence
+     */
+    private static final class IdValue implements ValueProvider {
+        @Override
+        public String getValue(SeededRandom random) {
+            return "id-" + random.nextInt(Integer.MAX_VALUE); //NON-NLS
+        }
+
+        @Override
+        public boolean isVolatile() {
+            return true;
+        }
+    }
+}
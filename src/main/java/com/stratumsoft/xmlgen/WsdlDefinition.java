@@ -0,0 +1,480 @@
+/*
+ * Copyright (c) 2010-2014 Stratumsoft Technologies Pvt. Ltd.
+ *
+ * This file (WsdlDefinition.java) is part of xsd2xml.
+ *
+ * xsd2xml is a Java program to generate XML instances from an XML Schema document
+ *
+ * xsd2xml is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * xsd2xml is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; If not, see <http://www.gnu.org/licenses/>.
+ *
+ * To use xsd2xml in your non-GPL licensed software, contact Stratumsoft Technologies
+ * support at support@stratumsoft.com or visit http://www.stratumsoft.com to obtain
+ * a commercial license.
+ */
+
+
+package com.stratumsoft.xmlgen;
+
+import org.apache.commons.lang.StringUtils;
+import org.apache.ws.commons.schema.XmlSchemaCollection;
+import org.apache.ws.commons.schema.constants.Constants;
+import org.apache.ws.commons.schema.resolver.DefaultURIResolver;
+import org.apache.ws.commons.schema.resolver.URIResolver;
+import org.dom4j.Document;
+import org.dom4j.DocumentException;
+import org.dom4j.Element;
+import org.dom4j.Namespace;
+import org.dom4j.io.OutputFormat;
+import org.dom4j.io.SAXReader;
+import org.dom4j.io.XMLWriter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.xml.sax.InputSource;
+
+import javax.xml.namespace.QName;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The SOAP operations of a WSDL 1.1 document and the schemas of their messages. The schemas embedded in the
+ * <code>types</code> of the document, and of the documents it imports, are read into one schema collection; an
+ * import of an embedded schema by namespace only is resolved from memory. The in-scope namespace declarations of
+ * the WSDL document are copied to each embedded schema, so that qnames with a prefix declared on the
+ * <code>definitions</code> element resolve.
+ * <p/>
+ * Each operation of a SOAP 1.1 or SOAP 1.2 binding is mapped to the parts of its request and response messages, as
+ * they are bound to the header and the body of the envelope. Other bindings (e.g. http) are ignored. Use a
+ * {@link SoapEnvelopeGenerator} to generate the envelopes of the operations.
+ *
+ * @author murakris@stratumsoft.com
+ */
+public final class WsdlDefinition {
+
+    private static final Logger logger = LoggerFactory.getLogger(WsdlDefinition.class);
+
+    static final String WSDL_NS = "http://schemas.xmlsoap.org/wsdl/"; //NON-NLS
+
+    private static final String RPC = "rpc"; //NON-NLS
+
+    private final String uri;
+
+    private final XmlSchemaCollection schemaColl;
+
+    private final List<SoapOperation> operations;
+
+    private WsdlDefinition(String uri, XmlSchemaCollection schemaColl, List<SoapOperation> operations) {
+        this.uri = uri;
+        this.schemaColl = schemaColl;
+        this.operations = Collections.unmodifiableList(operations);
+    }
+
+    /**
+     * Read a WSDL document, along with the documents and schemas it imports
+     *
+     * @param wsdl the WSDL file
+     * @return the definition
+     * @throws FileNotFoundException if the file does not exist
+     * @throws IOException           if a document could not be read or is not a valid WSDL 1.1 document
+     */
+    public static WsdlDefinition read(File wsdl) throws IOException {
+        if (!wsdl.isFile()) {
+            throw new FileNotFoundException(wsdl.getPath());
+        }
+        return read(wsdl.getAbsoluteFile().toURI().toString());
+    }
+
+    /**
+     * @param uri the uri of the WSDL document
+     */
+    public static WsdlDefinition read(String uri) throws IOException {
+        DefinitionReader reader = new DefinitionReader();
+        reader.load(uri);
+        XmlSchemaCollection schemaColl = reader.readSchemas(uri);
+        List<SoapOperation> operations = reader.readOperations();
+        logger.debug("Read {} SOAP operations and {} embedded schemas from {}",
+                new Object[]{operations.size(), reader.schemas.size(), uri});
+        return new WsdlDefinition(uri, schemaColl, operations);
+    }
+
+    public String getUri() {
+        return uri;
+    }
+
+    /**
+     * @return the collection of the embedded and imported schemas
+     */
+    public XmlSchemaCollection getSchemaCollection() {
+        return schemaColl;
+    }
+
+    /**
+     * @return the operations of all the SOAP bindings, in document order
+     */
+    public List<SoapOperation> getOperations() {
+        return operations;
+    }
+
+    /**
+     * @param name name of an operation
+     * @return the first operation with that name, or null if there is none
+     */
+    public SoapOperation getOperation(String name) {
+        for (SoapOperation operation : operations) {
+            if (operation.getName().equals(name)) {
+                return operation;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * A schema embedded in a WSDL document, as a standalone document
+     */
+    private static final class EmbeddedSchema {
+
+        final String systemId;
+
+        final String targetNamespace;
+
+        final byte[] content;
+
+        EmbeddedSchema(String systemId, String targetNamespace, byte[] content) {
+            this.systemId = systemId;
+            this.targetNamespace = targetNamespace;
+            this.content = content;
+        }
+
+        InputSource getInputSource() {
+            InputSource source = new InputSource(new ByteArrayInputStream(content));
+            source.setSystemId(systemId);
+            return source;
+        }
+    }
+
+    /**
+     * Collects the definitions of a WSDL document and of the documents it imports
+     */
+    private static final class DefinitionReader {
+
+        private final Set<String> loaded = new HashSet<>();
+
+        private final Map<QName, Element> messages = new LinkedHashMap<>();
+
+        private final Map<QName, Element> portTypes = new LinkedHashMap<>();
+
+        private final Map<QName, Element> bindings = new LinkedHashMap<>();
+
+        private final List<EmbeddedSchema> schemas = new ArrayList<>();
+
+        void load(String uri) throws IOException {
+            if (!loaded.add(uri)) {
+                return;
+            }
+            Document doc;
+            try {
+                doc = new SAXReader().read(uri);
+            } catch (DocumentException e) {
+                throw new IOException("Could not read WSDL document " + uri, e);
+            }
+            Element definitions = doc.getRootElement();
+            if (!WSDL_NS.equals(definitions.getNamespaceURI()) || !"definitions".equals(definitions.getName())) { //NON-NLS
+                throw new IOException("Not a WSDL 1.1 document: " + uri);
+            }
+
+            String targetNamespace = definitions.attributeValue("targetNamespace", ""); //NON-NLS
+            for (Object o : definitions.elements()) {
+                Element el = (Element) o;
+                if (!WSDL_NS.equals(el.getNamespaceURI())) {
+                    continue;
+                }
+                String name = el.getName();
+                if ("import".equals(name)) { //NON-NLS
+                    String location = el.attributeValue("location"); //NON-NLS
+                    if (StringUtils.isNotEmpty(location)) {
+                        load(resolve(uri, location));
+                    }
+                } else if ("types".equals(name)) { //NON-NLS
+                    for (Object s : el.elements()) {
+                        Element schema = (Element) s;
+                        if (Constants.URI_2001_SCHEMA_XSD.equals(schema.getNamespaceURI())
+                                && "schema".equals(schema.getName())) { //NON-NLS
+                            addSchema(uri, schema);
+                        }
+                    }
+                } else if ("message".equals(name)) { //NON-NLS
+                    messages.put(new QName(targetNamespace, el.attributeValue("name")), el); //NON-NLS
+                } else if ("portType".equals(name)) { //NON-NLS
+                    portTypes.put(new QName(targetNamespace, el.attributeValue("name")), el); //NON-NLS
+                } else if ("binding".equals(name)) { //NON-NLS
+                    bindings.put(new QName(targetNamespace, el.attributeValue("name")), el); //NON-NLS
+                }
+            }
+        }
+
+        private void addSchema(String uri, Element schema) throws IOException {
+            Element copy = schema.createCopy();
+            Set<String> prefixes = new HashSet<>();
+            for (Object o : schema.declaredNamespaces()) {
+                prefixes.add(((Namespace) o).getPrefix());
+            }
+            for (Element parent = schema.getParent(); parent != null; parent = parent.getParent()) {
+                for (Object o : parent.declaredNamespaces()) {
+                    Namespace ns = (Namespace) o;
+                    if (prefixes.add(ns.getPrefix())) {
+                        copy.add(ns);
+                    }
+                }
+            }
+
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            XMLWriter writer = new XMLWriter(out, OutputFormat.createCompactFormat());
+            writer.write(copy);
+            writer.flush();
+
+            //the fragment keeps the system ids of the schemas of a document distinct, and is ignored when
+            //resolving the relative locations of their imports and includes
+            String systemId = uri + "#types" + schemas.size(); //NON-NLS
+            schemas.add(new EmbeddedSchema(systemId, schema.attributeValue("targetNamespace", ""), //NON-NLS
+                    out.toByteArray()));
+        }
+
+        XmlSchemaCollection readSchemas(String uri) {
+            XmlSchemaCollection schemaColl = new XmlSchemaCollection();
+            schemaColl.setBaseUri(uri);
+            schemaColl.setSchemaResolver(new EmbeddedSchemaResolver(schemas));
+            for (EmbeddedSchema schema : schemas) {
+                //an embedded schema may already have been read as the import of another one
+                if (schemaColl.getXmlSchema(schema.systemId).length == 0) {
+                    schemaColl.read(schema.getInputSource());
+                }
+            }
+            return schemaColl;
+        }
+
+        List<SoapOperation> readOperations() throws IOException {
+            List<SoapOperation> operations = new ArrayList<>();
+            for (Map.Entry<QName, Element> entry : bindings.entrySet()) {
+                Element binding = entry.getValue();
+                SoapVersion version = null;
+                Element soapBinding = null;
+                for (Object o : binding.elements("binding")) { //NON-NLS
+                    soapBinding = (Element) o;
+                    version = SoapVersion.forBindingNamespace(soapBinding.getNamespaceURI());
+                    if (version != null) {
+                        break;
+                    }
+                }
+                if (version == null) {
+                    logger.debug("Skipping binding {} which is not a SOAP binding", entry.getKey());
+                    continue;
+                }
+
+                Element portType = portTypes.get(qname(binding, binding.attributeValue("type"))); //NON-NLS
+                if (portType == null) {
+                    throw new IOException("Unknown port type of binding " + entry.getKey());
+                }
+                String defaultStyle = soapBinding.attributeValue("style", "document"); //NON-NLS
+                for (Object o : binding.elements("operation")) { //NON-NLS
+                    Element operation = (Element) o;
+                    if (WSDL_NS.equals(operation.getNamespaceURI())) {
+                        operations.add(readOperation(entry.getKey(), operation, portType, version, defaultStyle));
+                    }
+                }
+            }
+            return operations;
+        }
+
+        private SoapOperation readOperation(QName bindingName, Element operation, Element portType,
+                                            SoapVersion version, String defaultStyle) throws IOException {
+            String name = operation.attributeValue("name"); //NON-NLS
+            Element abstractOperation = null;
+            for (Object o : portType.elements("operation")) { //NON-NLS
+                Element el = (Element) o;
+                if (name.equals(el.attributeValue("name"))) { //NON-NLS
+                    abstractOperation = el;
+                    break;
+                }
+            }
+            if (abstractOperation == null) {
+                throw new IOException("Operation " + name + " of binding " + bindingName + " is not in its port type");
+            }
+
+            Element soapOperation = child(operation, version, "operation"); //NON-NLS
+            String soapAction = soapOperation != null ? soapOperation.attributeValue("soapAction") : null; //NON-NLS
+            String style = soapOperation != null ? soapOperation.attributeValue("style", defaultStyle) : defaultStyle; //NON-NLS
+            boolean rpc = RPC.equals(style);
+
+            SoapOperation.Message input = readMessage(operation, abstractOperation, "input", version, //NON-NLS
+                    rpc ? name : null);
+            SoapOperation.Message output = readMessage(operation, abstractOperation, "output", version, //NON-NLS
+                    rpc ? name + "Response" : null); //NON-NLS
+            return new SoapOperation(bindingName, name, version, StringUtils.trimToNull(soapAction), rpc,
+                    input, output);
+        }
+
+        /**
+         * @param wrapperName local name of the rpc wrapper element, or null for a document operation
+         */
+        private SoapOperation.Message readMessage(Element operation, Element abstractOperation, String direction,
+                                                  SoapVersion version, String wrapperName) throws IOException {
+            Element abstractMessage = abstractOperation.element(direction);
+            if (abstractMessage == null) {
+                return null;
+            }
+            Element message = getMessage(abstractMessage, abstractMessage.attributeValue("message")); //NON-NLS
+            Element bound = operation.element(direction);
+
+            List<SoapOperation.Part> headers = new ArrayList<>();
+            Set<String> headerParts = new HashSet<>();
+            Element body = null;
+            if (bound != null) {
+                body = child(bound, version, "body"); //NON-NLS
+                for (Object o : bound.elements("header")) { //NON-NLS
+                    Element header = (Element) o;
+                    if (version.getBindingNamespace().equals(header.getNamespaceURI())) {
+                        Element headerMessage = getMessage(header, header.attributeValue("message")); //NON-NLS
+                        SoapOperation.Part part = getPart(headerMessage, header.attributeValue("part")); //NON-NLS
+                        headers.add(part);
+                        if (headerMessage == message) {
+                            headerParts.add(part.getName());
+                        }
+                    }
+                }
+            }
+
+            List<SoapOperation.Part> parts = new ArrayList<>();
+            String boundParts = body != null ? body.attributeValue("parts") : null; //NON-NLS
+            if (boundParts != null) {
+                for (String partName : StringUtils.split(boundParts)) {
+                    parts.add(getPart(message, partName));
+                }
+            } else {
+                //all the parts that are not bound to the header
+                for (Object o : message.elements("part")) { //NON-NLS
+                    SoapOperation.Part part = readPart((Element) o);
+                    if (!headerParts.contains(part.getName())) {
+                        parts.add(part);
+                    }
+                }
+            }
+
+            QName wrapper = null;
+            if (wrapperName != null) {
+                String namespace = body != null ? body.attributeValue("namespace", "") : ""; //NON-NLS
+                wrapper = new QName(namespace, wrapperName);
+            }
+            return new SoapOperation.Message(wrapper, headers, parts);
+        }
+
+        private Element getMessage(Element el, String name) throws IOException {
+            Element message = messages.get(qname(el, name));
+            if (message == null) {
+                throw new IOException("Unknown message " + name);
+            }
+            return message;
+        }
+
+        private SoapOperation.Part getPart(Element message, String name) throws IOException {
+            for (Object o : message.elements("part")) { //NON-NLS
+                Element part = (Element) o;
+                if (name != null && name.equals(part.attributeValue("name"))) { //NON-NLS
+                    return readPart(part);
+                }
+            }
+            throw new IOException("Unknown part " + name + " of message " + message.attributeValue("name")); //NON-NLS
+        }
+
+        private SoapOperation.Part readPart(Element part) throws IOException {
+            String element = part.attributeValue("element"); //NON-NLS
+            String type = part.attributeValue("type"); //NON-NLS
+            if (element == null && type == null) {
+                throw new IOException("Part " + part.attributeValue("name") + " has neither an element nor a type"); //NON-NLS
+            }
+            return new SoapOperation.Part(part.attributeValue("name"), //NON-NLS
+                    element != null ? qname(part, element) : null, element == null ? qname(part, type) : null);
+        }
+
+        private static Element child(Element parent, SoapVersion version, String name) {
+            for (Object o : parent.elements(name)) {
+                Element el = (Element) o;
+                if (version.getBindingNamespace().equals(el.getNamespaceURI())) {
+                    return el;
+                }
+            }
+            return null;
+        }
+
+        /**
+         * Resolve a prefixed name against the namespaces in scope of the element it appears in
+         */
+        private static QName qname(Element el, String prefixedName) throws IOException {
+            if (prefixedName == null) {
+                throw new IOException("Missing qname in element " + el.getName());
+            }
+            int colon = prefixedName.indexOf(':');
+            String prefix = colon > 0 ? prefixedName.substring(0, colon) : "";
+            Namespace ns = el.getNamespaceForPrefix(prefix);
+            if (ns == null && !prefix.isEmpty()) {
+                throw new IOException("Undeclared prefix in qname " + prefixedName);
+            }
+            return new QName(ns != null ? ns.getURI() : "", prefixedName.substring(colon + 1));
+        }
+
+        private static String resolve(String base, String location) throws IOException {
+            try {
+                return new URI(base).resolve(location).toString();
+            } catch (URISyntaxException | IllegalArgumentException e) {
+                throw new IOException("Could not resolve location " + location + " against " + base, e);
+            }
+        }
+    }
+
+    /**
+     * Serves the imports of the embedded schemas by namespace from memory
+     */
+    private static final class EmbeddedSchemaResolver implements URIResolver {
+
+        private final List<EmbeddedSchema> schemas;
+
+        private final DefaultURIResolver defaultResolver = new DefaultURIResolver();
+
+        EmbeddedSchemaResolver(List<EmbeddedSchema> schemas) {
+            this.schemas = schemas;
+        }
+
+        @Override
+        public InputSource resolveEntity(String targetNamespace, String schemaLocation, String baseUri) {
+            if (StringUtils.isEmpty(schemaLocation)) {
+                for (EmbeddedSchema schema : schemas) {
+                    if (schema.targetNamespace.equals(targetNamespace)) {
+                        return schema.getInputSource();
+                    }
+                }
+            }
+            return defaultResolver.resolveEntity(targetNamespace, schemaLocation, baseUri);
+        }
+    }
+}
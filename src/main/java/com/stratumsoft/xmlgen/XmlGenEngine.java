@@ -0,0 +1,653 @@
+/*
+ * Copyright (c) 2010-2014 Stratumsoft Technologies Pvt. Ltd.
+ *
+ * This file (XmlGenEngine.java) is part of xsd2xml.
+ *
+ * xsd2xml is a Java program to generate XML instances from an XML Schema document
+ *
+ * xsd2xml is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * xsd2xml is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; If not, see <http://www.gnu.org/licenses/>.
+ *
+ * To use xsd2xml in your non-GPL licensed software, contact Stratumsoft Technologies
+ * support at support@stratumsoft.com or visit http://www.stratumsoft.com to obtain
+ * a commercial license.
+ */
+
+package com.stratumsoft.xmlgen;
+
+import org.apache.commons.lang.StringUtils;
+import org.apache.ws.commons.schema.XmlSchema;
+import org.apache.ws.commons.schema.XmlSchemaCollection;
+import org.apache.ws.commons.schema.XmlSchemaComplexType;
+import org.apache.ws.commons.schema.XmlSchemaType;
+import org.apache.ws.commons.schema.utils.NamespaceMap;
+import org.apache.ws.commons.schema.utils.NamespacePrefixList;
+import org.dom4j.Document;
+import org.dom4j.DocumentFactory;
+import org.dom4j.Element;
+import org.dom4j.io.OutputFormat;
+import org.dom4j.io.XMLWriter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.xml.namespace.QName;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.StringWriter;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+/**
+ * Thread-safe xml generation engine for an {@link XmlSchemaCollection}. An engine is built once per schema
+ * collection and can be shared by any number of concurrent callers: the namespace map is resolved when the engine
+ * is created, the compiled {@link GenerationPlan}s are shared through a concurrent cache and all the traversal state
+ * of a call lives in a per-call {@link GenerationContext}. Each call may override the engine's default options.
+ * <p/>
+ * The schema collection must not be modified once the engine has been created.
+ *
+ * @author murakris@stratumsoft.com
+ */
+public final class XmlGenEngine {
+
+    private static final Logger logger = LoggerFactory.getLogger(XmlGenEngine.class);
+
+    /**
+     * root name of the keys of the fragment caches, which do not depend on the root element
+     */
+    private static final QName FRAGMENT_ROOT = new QName("fragments"); //NON-NLS
+
+    private final XmlSchemaCollection schemaColl;
+
+    private final SchemaRegistry registry;
+
+    private final RecursionAnalysis recursion;
+
+    private final XmlGenOptions defaultOptions;
+
+    private final ValueProviders valueProviders;
+
+    private final SimpleTypeValues simpleTypeValues;
+
+    /**
+     * namespace uri -> prefix declared in the schemas
+     */
+    private final Map<String, String> declaredPrefixes;
+
+    private final Set<String> declaredPrefixNames;
+
+    private final ConcurrentMap<PlanKey, FutureTask<GenerationPlan>> planCache = new ConcurrentHashMap<>();
+
+    /**
+     * keys of the cached plans in the order they were added, eldest first, for eviction
+     */
+    private final Queue<PlanKey> planOrder = new ConcurrentLinkedQueue<>();
+
+    private volatile int maxCachedPlans = Integer.MAX_VALUE;
+
+    /**
+     * compiled fragments of complex types, shared by the compilations with the same options whatever their root
+     */
+    private final ConcurrentMap<PlanKey, FragmentCache> fragmentCaches = new ConcurrentHashMap<>();
+
+    private final DocumentFactory factory = DocumentFactory.getInstance();
+
+    /**
+     * metrics to record the work of the engine to, or null
+     */
+    private volatile GenerationMetrics metrics;
+
+    /**
+     * profiler to record the plan compilations to, or null
+     */
+    private volatile SchemaProfiler profiler;
+
+    /**
+     * cache of the documents written to streams, or null
+     */
+    private volatile ResultCache resultCache;
+
+    public XmlGenEngine(XmlSchemaCollection schemaColl) {
+        this(schemaColl, null);
+    }
+
+    /**
+     * @param schemaColl     the schema collection to generate xml instances from
+     * @param defaultOptions options to use for calls that do not specify their own; a copy is kept
+     */
+    public XmlGenEngine(XmlSchemaCollection schemaColl, XmlGenOptions defaultOptions) {
+        this(schemaColl, defaultOptions, null);
+    }
+
+    /**
+     * @param schemaColl     the schema collection to generate xml instances from
+     * @param defaultOptions options to use for calls that do not specify their own; a copy is kept
+     * @param valueProviders providers of the sample values of the built-in types, or null to use
+     *                       {@link ValueProviders#getDefaults()}
+     */
+    public XmlGenEngine(XmlSchemaCollection schemaColl, XmlGenOptions defaultOptions,
+                        ValueProviders valueProviders) {
+        if (schemaColl == null) {
+            throw new IllegalArgumentException("schema collection cannot be null");
+        }
+        this.schemaColl = schemaColl;
+        this.registry = new SchemaRegistry(schemaColl);
+        this.recursion = new RecursionAnalysis(registry);
+        this.valueProviders = valueProviders != null ? valueProviders : ValueProviders.getDefaults();
+        this.simpleTypeValues = new SimpleTypeValues(registry, this.valueProviders);
+
+        this.defaultOptions = new XmlGenOptions(defaultOptions != null ? defaultOptions : new XmlGenOptions());
+        this.defaultOptions.getOutputFormat().setExpandEmptyElements(true);  //expand elements into form <a></a> instead of <a/>
+
+        NamespaceMap nsMap = initNSMap();
+        Map<String, String> prefixes = new HashMap<>();
+        for (Object o : nsMap.entrySet()) {
+            Map.Entry<?, ?> entry = (Map.Entry<?, ?>) o;
+            String nsUri = entry.getValue().toString();
+            if (!prefixes.containsKey(nsUri)) {
+                prefixes.put(nsUri, (String) entry.getKey());
+            }
+        }
+        this.declaredPrefixes = Collections.unmodifiableMap(prefixes);
+        Set<String> prefixNames = new HashSet<>();
+        for (Object prefix : nsMap.keySet()) {
+            prefixNames.add((String) prefix);
+        }
+        this.declaredPrefixNames = Collections.unmodifiableSet(prefixNames);
+    }
+
+    private NamespaceMap initNSMap() {
+        NamespaceMap nsMap = new NamespaceMap();
+        NamespacePrefixList nsCtx = schemaColl.getNamespaceContext();
+        populateNSMap(nsMap, nsCtx);
+
+        XmlSchema[] xmlSchemas = schemaColl.getXmlSchemas();
+        if (xmlSchemas != null && xmlSchemas.length > 0) {
+            for (XmlSchema schema : xmlSchemas) {
+                nsCtx = schema.getNamespaceContext();
+                populateNSMap(nsMap, nsCtx);
+            }
+        }
+        logger.debug("namespace map contains {} entries", nsMap.size());
+        return nsMap;
+    }
+
+    private void populateNSMap(NamespaceMap nsMap, NamespacePrefixList nsCtx) {
+        if (nsCtx != null) {
+            String[] prefixes = nsCtx.getDeclaredPrefixes();
+            if (prefixes != null) {
+                for (String prefix : prefixes) {
+                    if (StringUtils.isNotEmpty(prefix))
+                        nsMap.add(prefix, nsCtx.getNamespaceURI(prefix));
+                }
+            }
+        }
+    }
+
+    /**
+     * Get the generation plan for the given schema element. Plans are compiled once per element and options and
+     * shared by all callers; concurrent requests for the same plan wait for a single compilation. With a
+     * {@link XmlGenOptions#getTargetSize() target size}, the plan is compiled without it and then resized.
+     *
+     * @param elName  qname of the element for which the xml structure must be generated
+     * @param options options for this call, or null to use the engine defaults
+     * @return the compiled plan
+     */
+    public GenerationPlan compile(QName elName, XmlGenOptions options) {
+        if (elName == null) {
+            throw new IllegalArgumentException("element qname cannot be null");
+        }
+        final XmlGenOptions opts = snapshot(options);
+        final PlanKey key = new PlanKey(elName, opts);
+
+        final GenerationMetrics m = metrics;
+        FutureTask<GenerationPlan> task = planCache.get(key);
+        if (task == null) {
+            final QName name = elName;
+            FutureTask<GenerationPlan> newTask = new FutureTask<>(new Callable<GenerationPlan>() {
+                @Override
+                public GenerationPlan call() throws Exception {
+                    if (opts.getTargetSize() > 0) {
+                        //fit the plan compiled with the other options, which is cached as well
+                        XmlGenOptions unsized = new XmlGenOptions(opts);
+                        unsized.setTargetSize(0, SizeUnit.BYTES);
+                        return compile(name, unsized).resize(opts.getTargetSize(), opts.getTargetSizeUnit());
+                    }
+                    logger.debug("Compiling generation plan for {}", key);
+                    GenerationContext ctx = newContext(opts);
+                    long start = m != null ? System.nanoTime() : 0;
+                    GenerationPlan plan = new PlanCompiler(XmlGenEngine.this, ctx).compile(name);
+                    if (m != null) {
+                        m.recordCompile(System.nanoTime() - start, ctx.recursionCutoffs, ctx.firstChoices);
+                    }
+                    if (ctx.profile != null) {
+                        ctx.profile.finish();
+                    }
+                    return plan;
+                }
+            });
+            task = planCache.putIfAbsent(key, newTask);
+            if (task == null) {
+                task = newTask;
+                planOrder.add(key);
+                evictPlans();
+                task.run();
+            } else if (m != null) {
+                m.recordPlanCacheHit();
+            }
+        } else if (m != null) {
+            m.recordPlanCacheHit();
+        }
+
+        try {
+            return task.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for plan compilation", e);
+        } catch (ExecutionException e) {
+            if (planCache.remove(key, task)) {     //do not cache failures
+                planOrder.remove(key);
+            }
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IllegalStateException(cause);
+        }
+    }
+
+    /**
+     * Discard the eldest plans while more plans than allowed are cached
+     */
+    private void evictPlans() {
+        while (planCache.size() > maxCachedPlans) {
+            PlanKey eldest = planOrder.poll();
+            if (eldest == null) {
+                break;
+            }
+            planCache.remove(eldest);
+        }
+    }
+
+    /**
+     * Generate a dom4j element representing the dom structure for the given schema element qname
+     *
+     * @param elName  qname of the element for which the xml structure must be generated
+     * @param options options for this call, or null to use the engine defaults
+     * @return the generated element, or null if the element is cut off
+     */
+    public Element generateElement(QName elName, XmlGenOptions options) {
+        XmlGenOptions opts = snapshot(options);
+        GenerationPlan plan = compile(elName, opts);
+        GenerationMetrics m = metrics;
+        if (m == null) {
+            return plan.toElement(opts.newDocumentRandom());
+        }
+
+        GenerationMetrics.DocumentCounts counts = new GenerationMetrics.DocumentCounts();
+        long start = System.nanoTime();
+        Element el = plan.toElement(opts.newDocumentRandom(), counts);
+        m.recordBuild(System.nanoTime() - start);
+        m.recordDocument(counts);
+        return el;
+    }
+
+    /**
+     * Generate an xml representation of the dom structure of the schema element
+     *
+     * @param elName        the QName of the element for which the XML should be generated
+     * @param options       options for this call, or null to use the engine defaults
+     * @param isPrettyPrint if true formats and indents the generated xml
+     * @return the xml instance for the schema element
+     */
+    public String generateXml(QName elName, XmlGenOptions options, boolean isPrettyPrint) {
+        XmlGenOptions opts = snapshot(options);
+
+        Document doc = factory.createDocument("utf-8"); //NON-NLS
+        Element el = generateElement(elName, opts);
+        if (el != null) {
+            doc.add(el);
+        } else {
+            logger.warn("got null for element generated for qname: {}", elName);
+        }
+
+        OutputFormat outputFormat = isPrettyPrint ? OutputFormat.createPrettyPrint() : opts.getOutputFormat();
+
+        String xml = "";
+        GenerationMetrics m = metrics;
+        long start = m != null ? System.nanoTime() : 0;
+        StringWriter sw = new StringWriter();
+        XMLWriter writer = new XMLWriter(sw, outputFormat);
+        try {
+            writer.write(doc);
+            xml = sw.toString();
+            logger.trace("Serialized dom4j doc to xml string: {}", xml);
+
+        } catch (IOException e) {
+            logger.error("dom4j Document to xml creation error", e);
+        }
+        if (m != null) {
+            m.recordSerialization(System.nanoTime() - start);
+        }
+        return xml;
+    }
+
+    /**
+     * Generate the xml for the schema element and write it as a utf-8 encoded document to the given stream,
+     * without building a dom4j document. The output is always compact and the stream is not closed. With a
+     * {@link #setResultCache(ResultCache) result cache}, the document is served from the cache when possible.
+     *
+     * @param elName  the QName of the element for which the XML should be generated
+     * @param options options for this call, or null to use the engine defaults
+     * @param out     the stream to write the xml document to
+     * @throws XMLStreamException if the xml could not be written to the stream
+     */
+    public void generateXml(QName elName, XmlGenOptions options, OutputStream out) throws XMLStreamException {
+        XmlGenOptions opts = snapshot(options);
+        ResultCache cache = resultCache;
+        if (cache != null) {
+            try {
+                cache.write(this, elName, opts, out);
+            } catch (IOException e) {
+                throw new XMLStreamException(e);
+            }
+            return;
+        }
+        GenerationPlan plan = compile(elName, opts);
+        if (plan.isEmpty()) {
+            logger.warn("got null for element generated for qname: {}", elName);
+        }
+        GenerationMetrics m = metrics;
+        if (m == null) {
+            plan.writeDocument(out, opts.newDocumentRandom());
+            return;
+        }
+
+        GenerationMetrics.DocumentCounts counts = new GenerationMetrics.DocumentCounts();
+        long start = System.nanoTime();
+        plan.writeDocument(out, opts.newDocumentRandom(), counts);
+        m.recordSerialization(System.nanoTime() - start);
+        m.recordDocument(counts);
+    }
+
+    /**
+     * Get a publisher of the xml document of the schema element, which generates the document in chunks as they are
+     * requested by its subscribers
+     *
+     * @param elName    the QName of the element for which the XML should be generated
+     * @param options   options for this call, or null to use the engine defaults
+     * @param chunkSize number of bytes in each chunk
+     * @return the publisher
+     */
+    public DocumentPublisher publish(QName elName, XmlGenOptions options, int chunkSize) {
+        XmlGenOptions opts = snapshot(options);
+        GenerationPlan plan = compile(elName, opts);
+        if (plan.isEmpty()) {
+            logger.warn("got null for element generated for qname: {}", elName);
+        }
+        return new DocumentPublisher(plan, opts.getSeed(), chunkSize);
+    }
+
+    /**
+     * Generate the xml for the schema element by writing its events to the given stream writer. Only the element
+     * is written (no start or end document), so it can be embedded in a larger document.
+     *
+     * @param elName  the QName of the element for which the XML should be generated
+     * @param options options for this call, or null to use the engine defaults
+     * @param writer  the stream writer to write the element to
+     * @throws XMLStreamException if the xml could not be written
+     */
+    public void generateXml(QName elName, XmlGenOptions options, XMLStreamWriter writer) throws XMLStreamException {
+        XmlGenOptions opts = snapshot(options);
+        GenerationPlan plan = compile(elName, opts);
+        if (plan.isEmpty()) {
+            logger.warn("got null for element generated for qname: {}", elName);
+        }
+        GenerationMetrics m = metrics;
+        if (m == null) {
+            plan.write(writer, opts.newDocumentRandom());
+            return;
+        }
+
+        GenerationMetrics.DocumentCounts counts = new GenerationMetrics.DocumentCounts();
+        long start = System.nanoTime();
+        plan.write(writer, opts.newDocumentRandom(), counts);
+        m.recordSerialization(System.nanoTime() - start);
+        m.recordDocument(counts);
+    }
+
+    /**
+     * Processes the given complex type and adds elements/attributes to the given root element
+     *
+     * @param typeName qname of the complex type
+     * @param rootEl   element to add the type's attributes and content to
+     * @param options  options for this call, or null to use the engine defaults
+     */
+    public void generateXmlForType(QName typeName, Element rootEl, XmlGenOptions options) {
+        if (typeName != null && rootEl != null) {
+
+            XmlSchemaType schemaType = registry.getType(typeName);
+            if (schemaType != null) {
+
+                if (schemaType instanceof XmlSchemaComplexType) {
+                    XmlGenOptions opts = snapshot(options);
+                    GenerationPlan.ElementNode node = compileType((XmlSchemaComplexType) schemaType, null, opts);
+                    SeededRandom random = opts.newDocumentRandom();
+                    GenerationPlan.renderInto(node, rootEl, factory, valueProviders,
+                            random != null ? random : new SeededRandom());
+                }
+            } else {
+                logger.warn("Could not locate any type with name: {}", typeName);
+            }
+        } else {
+            logger.warn("Either type name or root element is null, cannot generate xml");
+        }
+    }
+
+    /**
+     * Compile a plan whose root element has the given name and the attributes and content of the given complex
+     * type. Type plans are not cached.
+     *
+     * @param typeName qname of the complex type
+     * @param rootName name of the root element of the plan
+     * @param options  options for this call, or null to use the engine defaults
+     * @return the compiled plan
+     */
+    GenerationPlan compileType(QName typeName, QName rootName, XmlGenOptions options) {
+        XmlSchemaType schemaType = registry.getType(typeName);
+        if (!(schemaType instanceof XmlSchemaComplexType)) {
+            throw new IllegalArgumentException("Not a complex type: " + typeName);
+        }
+        org.dom4j.QName name = factory.createQName(rootName.getLocalPart(), rootName.getPrefix(),
+                rootName.getNamespaceURI());
+        return new GenerationPlan(rootName, compileType((XmlSchemaComplexType) schemaType, name, snapshot(options)),
+                valueProviders);
+    }
+
+    private GenerationPlan.ElementNode compileType(XmlSchemaComplexType type, org.dom4j.QName name,
+                                                   XmlGenOptions opts) {
+        GenerationContext ctx = newContext(opts);
+        GenerationPlan.ElementNode node = new PlanCompiler(this, ctx).compileType(type, name);
+        if (ctx.profile != null) {
+            ctx.profile.finish();
+        }
+        return node;
+    }
+
+    private GenerationContext newContext(XmlGenOptions opts) {
+        GenerationContext ctx = new GenerationContext(opts, recursion);
+        ctx.sharedFragments = getFragmentCache(opts);
+        SchemaProfiler p = profiler;
+        if (p != null) {
+            ctx.profile = p.newRecorder();
+        }
+        return ctx;
+    }
+
+    /**
+     * @return the compiled fragments of complex types shared by the compilations with the given options
+     */
+    FragmentCache getFragmentCache(XmlGenOptions opts) {
+        PlanKey key = new PlanKey(FRAGMENT_ROOT, opts);
+        FragmentCache cache = fragmentCaches.get(key);
+        if (cache == null) {
+            if (fragmentCaches.size() >= maxCachedPlans) {
+                fragmentCaches.clear();     //compiled again on demand
+            }
+            FragmentCache newCache = new FragmentCache();
+            cache = fragmentCaches.putIfAbsent(key, newCache);
+            if (cache == null) {
+                cache = newCache;
+            }
+        }
+        return cache;
+    }
+
+    public XmlSchema getSchemaByTargetNamespace(String namespaceURI) {
+        return registry.getSchemaByTargetNamespace(namespaceURI);
+    }
+
+    /**
+     * Get the prefix to use for the given namespace uri: the prefix declared in the schemas if there is one,
+     * otherwise a prefix generated for the current call
+     */
+    String getPrefix(String nsUri, GenerationContext ctx) {
+        String prefix = declaredPrefixes.get(nsUri);
+        if (StringUtils.isEmpty(prefix)) {
+            prefix = ctx.getGeneratedPrefix(nsUri, declaredPrefixNames);
+            logger.debug("Generated prefix {} for ns uri: {}", prefix, nsUri);
+        }
+        return prefix;
+    }
+
+    /**
+     * @return the metrics the engine records its work to, or null if it does not record any
+     */
+    public GenerationMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Attach metrics to the engine; calls started after this one record their work to them. Several engines may
+     * share the same metrics.
+     *
+     * @param metrics the metrics to record to, or null to stop recording
+     */
+    public void setMetrics(GenerationMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    public SchemaProfiler getProfiler() {
+        return profiler;
+    }
+
+    /**
+     * Attach a profiler to the engine; the plans compiled from then on are recorded to it. Clear the plan cache to
+     * profile the plans that are already compiled.
+     *
+     * @param profiler the profiler to record to, or null to stop profiling
+     */
+    public void setProfiler(SchemaProfiler profiler) {
+        this.profiler = profiler;
+    }
+
+    public ResultCache getResultCache() {
+        return resultCache;
+    }
+
+    /**
+     * Attach a result cache to the engine; the documents written to streams by
+     * {@link #generateXml(QName, XmlGenOptions, OutputStream)} are then served from it. Documents served from the
+     * cache are not recorded to the metrics. Several engines may share the same cache.
+     *
+     * @param resultCache the cache to use, or null to generate every document
+     */
+    public void setResultCache(ResultCache resultCache) {
+        this.resultCache = resultCache;
+    }
+
+    /**
+     * Discard all cached generation plans and compiled fragments
+     */
+    public void clearPlanCache() {
+        planCache.clear();
+        planOrder.clear();
+        fragmentCaches.clear();
+    }
+
+    public int getMaxCachedPlans() {
+        return maxCachedPlans;
+    }
+
+    /**
+     * Limit the number of cached generation plans; the eldest plans are discarded when more are compiled. A plan
+     * with a target size counts twice, as the plan it is resized from is cached as well. Unlimited by default.
+     *
+     * @param maxCachedPlans maximum number of cached plans, and of the option sets whose fragments are cached
+     */
+    public void setMaxCachedPlans(int maxCachedPlans) {
+        if (maxCachedPlans < 1) {
+            throw new IllegalArgumentException("maxCachedPlans must be at least 1");
+        }
+        this.maxCachedPlans = maxCachedPlans;
+        evictPlans();
+    }
+
+    public XmlSchemaCollection getSchemaCollection() {
+        return schemaColl;
+    }
+
+    /**
+     * @return the index of the global definitions of the schema collection
+     */
+    public SchemaRegistry getRegistry() {
+        return registry;
+    }
+
+    public ValueProviders getValueProviders() {
+        return valueProviders;
+    }
+
+    SimpleTypeValues getSimpleTypeValues() {
+        return simpleTypeValues;
+    }
+
+    /**
+     * @return a copy of the options used when a call does not specify its own
+     */
+    public XmlGenOptions getDefaultOptions() {
+        return new XmlGenOptions(defaultOptions);
+    }
+
+    /**
+     * @return a copy of the options of a call; options without an output format get the format of the engine defaults
+     */
+    private XmlGenOptions snapshot(XmlGenOptions options) {
+        XmlGenOptions opts = new XmlGenOptions(options != null ? options : defaultOptions);
+        if (!opts.hasOutputFormat()) {
+            opts.setOutputFormat(XmlGenOptions.copy(defaultOptions.getOutputFormat()));
+        }
+        return opts;
+    }
+}
@@ -48,8 +48,52 @@ public class XmlGenOptions {
 
     private DefaultValues defVals = DefaultValues.DEFAULT;
 
+    private Long seed;                              //seed of the per-document values, or null for unseeded values
+
+    private long targetSize;                        //size the repeat counts are fitted to, or 0 to use maxRepeatingElements
+
+    private SizeUnit targetSizeUnit = SizeUnit.BYTES;
+
     private OutputFormat outputFormat;
 
+    public XmlGenOptions() {
+    }
+
+    /**
+     * Create a copy of the given options; the output format is copied as well
+     *
+     * @param other the options to copy
+     */
+    public XmlGenOptions(XmlGenOptions other) {
+        this.isGenOptionalAttributes = other.isGenOptionalAttributes;
+        this.isGenOptionalElements = other.isGenOptionalElements;
+        this.isGenChoiceOptionsAsComments = other.isGenChoiceOptionsAsComments;
+        this.isGenCommentsForParticles = other.isGenCommentsForParticles;
+        this.maxRepeatingElements = other.maxRepeatingElements;
+        this.maxRecursiveDepth = other.maxRecursiveDepth;
+        this.choiceOptions = other.choiceOptions;
+        this.defVals = other.defVals;
+        this.seed = other.seed;
+        this.targetSize = other.targetSize;
+        this.targetSizeUnit = other.targetSizeUnit;
+        this.outputFormat = other.outputFormat != null ? copy(other.outputFormat) : null;
+    }
+
+    static OutputFormat copy(OutputFormat format) {
+        OutputFormat copy = new OutputFormat(format.getIndent(), format.isNewlines(), format.getEncoding());
+        copy.setLineSeparator(format.getLineSeparator());
+        copy.setOmitEncoding(format.isOmitEncoding());
+        copy.setSuppressDeclaration(format.isSuppressDeclaration());
+        copy.setNewLineAfterDeclaration(format.isNewLineAfterDeclaration());
+        copy.setExpandEmptyElements(format.isExpandEmptyElements());
+        copy.setTrimText(format.isTrimText());
+        copy.setPadText(format.isPadText());
+        copy.setXHTML(format.isXHTML());
+        copy.setNewLineAfterNTags(format.getNewLineAfterNTags());
+        copy.setAttributeQuoteCharacter(format.getAttributeQuoteCharacter());
+        return copy;
+    }
+
     public OutputFormat getOutputFormat() {
         if (outputFormat == null) {
             outputFormat = OutputFormat.createCompactFormat();   //default to compact format
@@ -61,6 +105,13 @@ public class XmlGenOptions {
         this.outputFormat = outputFormat;
     }
 
+    /**
+     * @return true if an output format was set or obtained, false if the default one would be used
+     */
+    boolean hasOutputFormat() {
+        return outputFormat != null;
+    }
+
     public boolean isGenCommentsForParticles() {
         return isGenCommentsForParticles;
     }
@@ -117,6 +168,63 @@ public class XmlGenOptions {
         this.defVals = defVals;
     }
 
+    /**
+     * @return the seed of the per-document values (xs:ID values, random choice branches and random values), or
+     *         null if they are not seeded
+     */
+    public Long getSeed() {
+        return seed;
+    }
+
+    /**
+     * With a seed, each call generates the document with index 0 of a {@link CorpusGenerator} run with that seed.
+     * The seed is only used when a plan is replayed, so options that only differ in their seed share compiled plans.
+     *
+     * @param seed the seed of the per-document values, or null for unseeded values
+     */
+    public void setSeed(Long seed) {
+        this.seed = seed;
+    }
+
+    /**
+     * @return the generator for the per-document values of a single document, or null if the values are not seeded
+     */
+    SeededRandom newDocumentRandom() {
+        return seed != null ? SeededRandom.forIndex(seed, 0) : null;
+    }
+
+    /**
+     * @return the size the generated documents are fitted to, or 0 if the repeat counts are only bounded by
+     *         {@link #getMaxRepeatingElements()}
+     */
+    public long getTargetSize() {
+        return targetSize;
+    }
+
+    public SizeUnit getTargetSizeUnit() {
+        return targetSizeUnit;
+    }
+
+    /**
+     * Fit the generated documents to the given size. The plan compiled with the other options is resized by spreading
+     * repetitions over its repeatable elements and particles, within their minOccurs and maxOccurs, until its expected
+     * size is as close to the target as the counts allow. Sizes in bytes are those of the compact utf-8 document;
+     * random values and choice branches make the size of each document vary around the target.
+     *
+     * @param targetSize the size to fit the documents to, or 0 to turn it off
+     * @param unit       the unit of the size
+     */
+    public void setTargetSize(long targetSize, SizeUnit unit) {
+        if (targetSize < 0) {
+            throw new IllegalArgumentException("target size cannot be negative");
+        }
+        if (unit == null) {
+            throw new IllegalArgumentException("unit cannot be null");
+        }
+        this.targetSize = targetSize;
+        this.targetSizeUnit = unit;
+    }
+
     public boolean isGenChoiceOptionsAsComments() {
         return isGenChoiceOptionsAsComments;
     }
@@ -48,6 +48,7 @@ import javax.xml.validation.Schema;
 import javax.xml.validation.SchemaFactory;
 import javax.xml.validation.Validator;
 import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.InputStream;
 import java.net.URL;
@@ -131,6 +132,18 @@ public class SchemaTypeXmlGeneratorTest {
         validateGenXml(xml);
     }
 
+    @Test
+    public void testGenXmlStreaming() throws Exception {
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        generator.generateXml(elName, out);
+
+        String xml = out.toString("utf-8");
+        assertTrue(xml.length() > 0);
+
+        validateGenXml(xml);
+    }
+
     /**
      * validate the generated xml to make sure it complies with the schema!
      *
@@ -0,0 +1,167 @@
+/*
+ * Copyright (c) 2010-2014 Stratumsoft Technologies Pvt. Ltd.
+ *
+ * This file (BatchGeneratorTest.java) is part of xsd2xml.
+ *
+ * xsd2xml is a Java program to generate XML instances from an XML Schema document
+ *
+ * xsd2xml is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * xsd2xml is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; If not, see <http://www.gnu.org/licenses/>.
+ *
+ * To use xsd2xml in your non-GPL licensed software, contact Stratumsoft Technologies
+ * support at support@stratumsoft.com or visit http://www.stratumsoft.com to obtain
+ * a commercial license.
+ */
+
+
+package com.stratumsoft.xmlgen;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.xml.namespace.QName;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author murakris@stratumsoft.com
+ */
+public class BatchGeneratorTest {
+
+    private File dir;
+
+    private File schemaDir;
+
+    @Before
+    public void setup() throws Exception {
+        dir = Files.createTempDirectory("xsd2xml-batch").toFile();
+        schemaDir = new File(getClass().getResource("/schemas").toURI());
+    }
+
+    @After
+    public void cleanup() throws Exception {
+        delete(dir);
+    }
+
+    @Test
+    public void testRunManifest() throws Exception {
+        File manifestFile = writeManifest(
+                "<batch outputDir='" + new File(dir, "out").getPath() + "' threads='3'>",
+                "  <profile name='random' values='random' choice='random' maxRepeat='2'/>",
+                "  <job schema='" + schema("company/Company.xsd") + "' element='{http://www.company.org}Company'",
+                "       profile='random' count='12' seed='5'/>",
+                "  <job schema='" + schema("company/Company.xsd") + "' element='{http://www.company.org}Company'",
+                "       count='3' output='company-default'/>",
+                "  <job schema='" + schema("personal.xsd") + "' element='{http://example.com}personnel' count='2'/>",
+                "  <job schema='" + schema("personal.xsd") + "' element='{http://example.com}unknown'/>",
+                "</batch>");
+
+        BatchGenerator.Manifest manifest = BatchGenerator.readManifest(manifestFile);
+        assertEquals(3, manifest.threads);
+        assertEquals(4, manifest.jobs.size());
+
+        BatchGenerator generator = new BatchGenerator(manifest.threads);
+        List<BatchGenerator.JobResult> results = generator.run(manifest.jobs);
+        assertEquals(2, generator.repository.getLoadCount());
+
+        assertNull(results.get(0).error);
+        assertEquals(12, results.get(0).documents);
+        assertNull(results.get(1).error);
+        assertNull(results.get(2).error);
+        assertNotNull(results.get(3).error);
+
+        //the documents of a job are the documents of a corpus with the same seed
+        XmlGenEngine engine = generator.repository.getEngine(schema("company/Company.xsd"), null);
+        QName company = new QName("http://www.company.org", "Company");
+        GenerationPlan plan = engine.compile(company, manifest.jobs.get(0).options);
+        try (CorpusGenerator corpus = new CorpusGenerator(engine, 1)) {
+            assertArrayEquals(corpus.generateDocument(plan, 5, 11),
+                    read(new File(dir, "out/Company/Company-11.xml")));
+        }
+        assertTrue(new File(dir, "out/company-default/Company-2.xml").isFile());
+        assertTrue(new File(dir, "out/personnel/personnel-1.xml").isFile());
+
+        File summary = new File(dir, "out/summary.tsv");
+        BatchGenerator.writeSummary(results, manifest.summary);
+        List<String> lines = Files.readAllLines(summary.toPath(), StandardCharsets.UTF_8);
+        assertEquals(5, lines.size());
+        assertTrue(lines.get(1).contains("\tOK\t"));
+        assertTrue(lines.get(4).contains("\tFAILED\t"));
+    }
+
+    @Test
+    public void testInvalidManifest() throws Exception {
+        assertInvalid("<batch><profile name='p' colour='red'/></batch>");
+        assertInvalid("<batch><job element='{urn:a}b'/></batch>");
+        assertInvalid("<batch><job schema='a.xsd' element='b' profile='missing'/></batch>");
+        assertInvalid("<batch><job schema='a.xsd' element='b' count='many'/></batch>");
+        assertInvalid("<batch><job schema='a.xsd' element='b'/><job schema='c.xsd' element='{urn:c}b'/></batch>");
+        assertInvalid("<batch><job schema='a.xsd' element='b' output='x'/><job schema='a.xsd' element='x'/></batch>");
+    }
+
+    private void assertInvalid(String manifest) throws IOException {
+        try {
+            BatchGenerator.readManifest(writeManifest(manifest));
+            fail("manifest is not valid: " + manifest);
+        } catch (IOException e) {
+            //expected
+        }
+    }
+
+    private String schema(String path) {
+        return new File(schemaDir, path).getPath();
+    }
+
+    private File writeManifest(String... lines) throws IOException {
+        File file = new File(dir, "manifest.xml");
+        try (Writer out = new FileWriter(file)) {
+            for (String line : Arrays.asList(lines)) {
+                out.write(line);
+                out.write('\n');
+            }
+        }
+        return file;
+    }
+
+    private static byte[] read(File file) throws IOException {
+        try (InputStream in = new FileInputStream(file)) {
+            byte[] bytes = new byte[(int) file.length()];
+            int n = 0;
+            while (n < bytes.length) {
+                n += in.read(bytes, n, bytes.length - n);
+            }
+            return bytes;
+        }
+    }
+
+    private static void delete(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+}
@@ -0,0 +1,145 @@
+/*
+ * Copyright (c) 2010-2014 Stratumsoft Technologies Pvt. Ltd.
+ *
+ * This file (CorpusGeneratorTest.java) is part of xsd2xml.
+ *
+ * xsd2xml is a Java program to generate XML instances from an XML Schema document
+ *
+ * xsd2xml is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * xsd2xml is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; If not, see <http://www.gnu.org/licenses/>.
+ *
+ * To use xsd2xml in your non-GPL licensed software, contact Stratumsoft Technologies
+ * support at support@stratumsoft.com or visit http://www.stratumsoft.com to obtain
+ * a commercial license.
+ */
+
+package com.stratumsoft.xmlgen;
+
+import org.apache.ws.commons.schema.XmlSchemaCollection;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.xml.namespace.QName;
+import javax.xml.transform.stream.StreamSource;
+import java.io.File;
+import java.io.IOException;
+import java.net.URL;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author murakris@stratumsoft.com
+ */
+public class CorpusGeneratorTest {
+
+    private static final int COUNT = 40;
+
+    private static final long SEED = 42L;
+
+    private QName rootEl = new QName("http://example.com", "personnel");
+
+    private XmlGenEngine engine;
+
+    private XmlGenOptions options;
+
+    @Before
+    public void setup() throws Exception {
+        URL xsdUrl = getClass().getResource("/schemas/personal.xsd");
+        assertNotNull(xsdUrl);
+
+        XmlSchemaCollection coll = new XmlSchemaCollection();
+        coll.setBaseUri(xsdUrl.toString());
+        coll.read(new StreamSource(xsdUrl.openStream()));
+        engine = new XmlGenEngine(coll);
+
+        options = new XmlGenOptions();
+        options.setMaxRepeatingElements(3);
+        options.setChoiceOptions(ChoiceOptions.RANDOM);
+    }
+
+    @Test
+    public void testOutputIndependentOfParallelism() throws Exception {
+        List<byte[]> single = generate(1);
+        List<byte[]> parallel = generate(4);
+
+        assertEquals(COUNT, single.size());
+        assertEquals(COUNT, parallel.size());
+        for (int i = 0; i < COUNT; i++) {
+            assertArrayEquals("document " + i, single.get(i), parallel.get(i));
+        }
+        assertFalse("documents must get their own ids", Arrays.equals(single.get(0), single.get(1)));
+    }
+
+    @Test
+    public void testDirectorySink() throws Exception {
+        File dir = new File(System.getProperty("java.io.tmpdir"), "xsd2xml-corpus-" + System.nanoTime());
+        try (CorpusGenerator generator = new CorpusGenerator(engine, 3)) {
+            generator.generate(rootEl, options, COUNT, SEED, dir);
+
+            File[] files = dir.listFiles();
+            assertNotNull(files);
+            assertEquals(COUNT, files.length);
+
+            GenerationPlan plan = engine.compile(rootEl, options);
+            assertArrayEquals(generator.generateDocument(plan, SEED, 7),
+                    Files.readAllBytes(new File(dir, "personnel-07.xml").toPath()));
+        } finally {
+            File[] files = dir.listFiles();
+            if (files != null) {
+                for (File file : files) {
+                    assertTrue(file.delete());
+                }
+            }
+            assertTrue(dir.delete());
+        }
+    }
+
+    @Test
+    public void testFailureStopsOtherWorkers() throws Exception {
+        long count = 10000;
+        File dir = new File(System.getProperty("java.io.tmpdir"), "xsd2xml-corpus-" + System.nanoTime());
+        //a directory in place of the first document makes its worker fail
+        assertTrue(new File(dir, String.format(CorpusGenerator.fileFormat(rootEl, count), 0)).mkdirs());
+        try (CorpusGenerator generator = new CorpusGenerator(engine, 2)) {
+            generator.generate(rootEl, options, count, SEED, dir);
+            fail("the first document cannot be written");
+        } catch (IOException e) {
+            File[] files = dir.listFiles();
+            assertNotNull(files);
+            assertTrue("the other worker stops: " + files.length, files.length < count / 2);
+        } finally {
+            File[] files = dir.listFiles();
+            if (files != null) {
+                for (File file : files) {
+                    assertTrue(file.delete());
+                }
+            }
+            assertTrue(dir.delete());
+        }
+    }
+
+    private List<byte[]> generate(int parallelism) {
+        List<byte[]> docs = new ArrayList<>();
+        try (CorpusGenerator generator = new CorpusGenerator(engine, parallelism)) {
+            CorpusGenerator.DocumentIterator it = generator.generate(rootEl, options, COUNT, SEED);
+            while (it.hasNext()) {
+                docs.add(it.next());
+            }
+        }
+        return docs;
+    }
+}
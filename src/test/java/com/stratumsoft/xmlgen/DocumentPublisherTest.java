@@ -0,0 +1,209 @@
+/*
+ * Copyright (c) 2010-2014 Stratumsoft Technologies Pvt. Ltd.
+ *
+ * This file (DocumentPublisherTest.java) is part of xsd2xml.
+ *
+ * xsd2xml is a Java program to generate XML instances from an XML Schema document
+ *
+ * xsd2xml is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * xsd2xml is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; If not, see <http://www.gnu.org/licenses/>.
+ *
+ * To use xsd2xml in your non-GPL licensed software, contact Stratumsoft Technologies
+ * support at support@stratumsoft.com or visit http://www.stratumsoft.com to obtain
+ * a commercial license.
+ */
+
+
+package com.stratumsoft.xmlgen;
+
+import org.apache.ws.commons.schema.XmlSchemaCollection;
+import org.junit.Before;
+import org.junit.Test;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
+import javax.xml.namespace.QName;
+import javax.xml.transform.stream.StreamSource;
+import java.io.ByteArrayOutputStream;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author murakris@stratumsoft.com
+ */
+public class DocumentPublisherTest {
+
+    private QName companyEl = new QName("http://www.company.org", "Company");
+
+    private XmlGenEngine engine;
+
+    @Before
+    public void setup() throws Exception {
+        URL xsdUrl = getClass().getResource("/schemas/company/Company.xsd");
+        assertNotNull(xsdUrl);
+
+        XmlSchemaCollection coll = new XmlSchemaCollection();
+        coll.setBaseUri(xsdUrl.toString());
+        coll.read(new StreamSource(xsdUrl.openStream()));
+        engine = new XmlGenEngine(coll);
+    }
+
+    @Test
+    public void testChunksMatchWrittenDocument() throws Exception {
+        XmlGenOptions options = new XmlGenOptions();
+        options.setDefVals(DefaultValues.RANDOM);
+        options.setChoiceOptions(ChoiceOptions.RANDOM);
+        options.setGenCommentsForParticles(true);
+        options.setSeed(42L);
+        options.setTargetSize(20000, SizeUnit.BYTES);
+
+        ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        engine.generateXml(companyEl, options, expected);
+
+        for (int chunkSize : new int[]{1, 100, 4096, 1 << 20}) {
+            CollectingSubscriber subscriber = new CollectingSubscriber(Long.MAX_VALUE);
+            engine.publish(companyEl, options, chunkSize).subscribe(subscriber);
+
+            assertTrue(subscriber.isComplete);
+            assertNull(subscriber.error);
+            assertArrayEquals(expected.toByteArray(), subscriber.bytes.toByteArray());
+            for (int i = 0; i < subscriber.chunkSizes.size() - 1; i++) {
+                assertEquals(chunkSize, (int) subscriber.chunkSizes.get(i));
+            }
+        }
+    }
+
+    @Test
+    public void testChunksAreGeneratedOnDemand() throws Exception {
+        CollectingSubscriber subscriber = new CollectingSubscriber(0);
+        engine.publish(companyEl, null, 64).subscribe(subscriber);
+        assertEquals(0, subscriber.chunkSizes.size());
+
+        subscriber.subscription.request(1);
+        assertEquals(1, subscriber.chunkSizes.size());
+        subscriber.subscription.request(2);
+        assertEquals(3, subscriber.chunkSizes.size());
+        assertFalse(subscriber.isComplete);
+
+        subscriber.subscription.cancel();
+        subscriber.subscription.request(10);
+        assertEquals(3, subscriber.chunkSizes.size());
+        assertFalse(subscriber.isComplete);
+    }
+
+    @Test
+    public void testRequestFromOnNextDoesNotRecurse() throws Exception {
+        XmlGenOptions options = new XmlGenOptions();
+        options.setTargetSize(1000000, SizeUnit.BYTES);
+
+        CollectingSubscriber subscriber = new CollectingSubscriber(1) {
+            @Override
+            public void onNext(ByteBuffer chunk) {
+                super.onNext(chunk);
+                subscription.request(1);
+            }
+        };
+        engine.publish(companyEl, options, 16).subscribe(subscriber);
+
+        assertTrue(subscriber.isComplete);
+        assertEquals(engine.compile(companyEl, options).estimateSize(SizeUnit.BYTES), subscriber.bytes.size());
+    }
+
+    @Test
+    public void testInvalidRequest() throws Exception {
+        CollectingSubscriber subscriber = new CollectingSubscriber(0);
+        engine.publish(companyEl, null, 64).subscribe(subscriber);
+
+        subscriber.subscription.request(0);
+        assertTrue(subscriber.error instanceof IllegalArgumentException);
+        subscriber.subscription.request(1);
+        assertEquals(0, subscriber.chunkSizes.size());
+    }
+
+    @Test
+    public void testExecutor() throws Exception {
+        ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        engine.generateXml(companyEl, null, expected);
+
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            final CountDownLatch done = new CountDownLatch(1);
+            CollectingSubscriber subscriber = new CollectingSubscriber(1) {
+                @Override
+                public void onNext(ByteBuffer chunk) {
+                    super.onNext(chunk);
+                    subscription.request(1);
+                }
+
+                @Override
+                public void onComplete() {
+                    super.onComplete();
+                    done.countDown();
+                }
+            };
+            new DocumentPublisher(engine.compile(companyEl, null), null, 10, executor).subscribe(subscriber);
+
+            assertTrue(done.await(10, TimeUnit.SECONDS));
+            assertArrayEquals(expected.toByteArray(), subscriber.bytes.toByteArray());
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    private static class CollectingSubscriber implements Subscriber<ByteBuffer> {
+        final long initialRequest;
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final List<Integer> chunkSizes = new ArrayList<>();
+        Subscription subscription;
+        Throwable error;
+        boolean isComplete;
+
+        CollectingSubscriber(long initialRequest) {
+            this.initialRequest = initialRequest;
+        }
+
+        @Override
+        public void onSubscribe(Subscription subscription) {
+            this.subscription = subscription;
+            if (initialRequest > 0) {
+                subscription.request(initialRequest);
+            }
+        }
+
+        @Override
+        public void onNext(ByteBuffer chunk) {
+            chunkSizes.add(chunk.remaining());
+            byte[] b = new byte[chunk.remaining()];
+            chunk.get(b);
+            bytes.write(b, 0, b.length);
+        }
+
+        @Override
+        public void onError(Throwable t) {
+            error = t;
+        }
+
+        @Override
+        public void onComplete() {
+            isComplete = true;
+        }
+    }
+}
@@ -0,0 +1,61 @@
+/*
+ * Copyright (c) 2010-2014 Stratumsoft Technologies Pvt. Ltd.
+ *
+ * This file (EngineFixtures.java) is part of xsd2xml.
+ *
+ * xsd2xml is a Java program to generate XML instances from an XML Schema document
+ *
+ * xsd2xml is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * xsd2xml is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; If not, see <http://www.gnu.org/licenses/>.
+ *
+ * To use xsd2xml in your non-GPL licensed software, contact Stratumsoft Technologies
+ * support at support@stratumsoft.com or visit http://www.stratumsoft.com to obtain
+ * a commercial license.
+ */
+
+
+package com.stratumsoft.xmlgen;
+
+import javax.xml.namespace.QName;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+
+/**
+ * Engines and documents of the test schemas, shared by the cache tests
+ *
+ * @author murakris@stratumsoft.com
+ */
+
+final class EngineFixtures {
+
+    private EngineFixtures() {
+    }
+
+    /**
+     * @param schema path of the schema under the test schemas directory
+     * @return a new engine for the schema
+     */
+    static XmlGenEngine engine(String schema) throws Exception {
+        File file = new File(EngineFixtures.class.getResource("/schemas/" + schema).toURI());
+        return new XmlGenEngine(SchemaUtil.getSchemaCollection(file.getPath(), null));
+    }
+
+    /**
+     * @return the document written to a stream by the engine
+     */
+    static byte[] generate(XmlGenEngine engine, QName elName, XmlGenOptions options) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        engine.generateXml(elName, options, out);
+        return out.toByteArray();
+    }
+}
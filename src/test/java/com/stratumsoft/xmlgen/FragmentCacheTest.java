@@ -0,0 +1,160 @@
+/*
+ * Copyright (c) 2010-2014 Stratumsoft Technologies Pvt. Ltd.
+ *
+ * This file (FragmentCacheTest.java) is part of xsd2xml.
+ *
+ * xsd2xml is a Java program to generate XML instances from an XML Schema document
+ *
+ * xsd2xml is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * xsd2xml is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; If not, see <http://www.gnu.org/licenses/>.
+ *
+ * To use xsd2xml in your non-GPL licensed software, contact Stratumsoft Technologies
+ * support at support@stratumsoft.com or visit http://www.stratumsoft.com to obtain
+ * a commercial license.
+ */
+
+
+package com.stratumsoft.xmlgen;
+
+import com.stratumsoft.xmlgen.GenerationPlan.ElementNode;
+import com.stratumsoft.xmlgen.GenerationPlan.Node;
+import org.apache.ws.commons.schema.XmlSchemaElement;
+import org.junit.Test;
+
+import javax.xml.namespace.QName;
+import java.nio.charset.StandardCharsets;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static com.stratumsoft.xmlgen.EngineFixtures.engine;
+import static com.stratumsoft.xmlgen.EngineFixtures.generate;
+import static org.junit.Assert.*;
+
+/**
+ * @author murakris@stratumsoft.com
+ */
+public class FragmentCacheTest {
+
+    private static final QName ORDER = new QName("", "order");
+
+    private static final QName ADDRESS = new QName("", "address");
+
+    private static final Pattern ID = Pattern.compile(" id=\"([^\"]*)\"");
+
+    @Test
+    public void testRepeatedTypeIsCompiledOnce() throws Exception {
+        XmlGenEngine engine = engine("TestFragments.xsd");
+        ElementNode root = engine.compile(ORDER, null).getRoot();
+
+        ElementNode billTo = child(root, "billTo");
+        ElementNode shipTo = child(root, "shipTo");
+        assertNotSame(billTo, shipTo);
+        assertEquals(billTo.content.size(), shipTo.content.size());
+        for (int i = 0; i < billTo.content.size(); i++) {
+            assertSame("content of the type is shared", billTo.content.get(i), shipTo.content.get(i));
+        }
+
+        XmlGenOptions options = new XmlGenOptions();
+        options.setMaxRepeatingElements(3);
+        String xml = new String(generate(engine, ORDER, options), StandardCharsets.UTF_8);
+        Set<String> ids = new HashSet<>();
+        int count = 0;
+        for (Matcher m = ID.matcher(xml); m.find(); count++) {
+            ids.add(m.group(1));
+        }
+        assertEquals(4, count);
+        assertEquals("each occurrence gets its own id", count, ids.size());
+    }
+
+    @Test
+    public void testFragmentsAreSharedAcrossRoots() throws Exception {
+        XmlGenEngine engine = engine("TestFragments.xsd");
+        FragmentCache cache = engine.getFragmentCache(new XmlGenOptions());
+
+        ElementNode order = engine.compile(ORDER, null).getRoot();
+        long hits = cache.getHitCount();
+        ElementNode address = engine.compile(ADDRESS, null).getRoot();
+        assertEquals(hits + 1, cache.getHitCount());
+        assertSame(child(order, "billTo").content.get(0), address.content.get(0));
+
+        engine.clearPlanCache();
+        assertEquals(0, engine.getFragmentCache(new XmlGenOptions()).size());
+    }
+
+    @Test
+    public void testSameDocumentsAsWithoutMemoization() throws Exception {
+        XmlGenOptions options = new XmlGenOptions();
+        options.setMaxRecursiveDepth(2);
+        options.setGenCommentsForParticles(true);
+        options.setSeed(5L);
+
+        assertSameDocuments("TestFragments.xsd", options);
+        assertSameDocuments("TestRecursion.xsd", options);
+        assertSameDocuments("personal.xsd", options);
+        assertSameDocuments("TestElementForm.xsd", options);
+
+        options.setChoiceOptions(ChoiceOptions.RANDOM);
+        options.setDefVals(DefaultValues.RANDOM);
+        options.setGenChoiceOptionsAsComments(true);
+        assertSameDocuments("TestGroup.xsd", options);
+        assertSameDocuments("catalog.xsd", options);
+    }
+
+    @Test
+    public void testRecursiveTypeIsKeyedByDepth() throws Exception {
+        XmlGenOptions options = new XmlGenOptions();
+        options.setMaxRecursiveDepth(2);
+        XmlGenEngine engine = engine("TestRecursion.xsd");
+        ElementNode root = engine.compile(new QName("", "root"), options).getRoot();
+
+        //both references to root within b are nested at the same depth
+        ElementNode b = child(root, "b");
+        ElementNode first = (ElementNode) b.content.get(1);
+        ElementNode second = (ElementNode) b.content.get(2);
+        assertNotSame(first, second);
+        assertSame(first.content.get(0), second.content.get(0));
+        assertTrue(engine.getFragmentCache(options).getHitCount() > 0);
+
+        //a level up the same type has more recursion budget left, so it is compiled on its own
+        assertNotSame(root.content.get(0), first.content.get(0));
+    }
+
+    private void assertSameDocuments(String schema, XmlGenOptions options) throws Exception {
+        XmlGenEngine memoized = engine(schema);
+        XmlGenEngine plain = engine(schema);
+        plain.setProfiler(new SchemaProfiler());        //types are not memoized while profiling
+        GenerationMetrics memoizedMetrics = new GenerationMetrics();
+        GenerationMetrics plainMetrics = new GenerationMetrics();
+        memoized.setMetrics(memoizedMetrics);
+        plain.setMetrics(plainMetrics);
+
+        for (XmlSchemaElement el : memoized.getRegistry().getElements()) {
+            QName name = el.getQName();
+            assertArrayEquals(schema + " " + name, generate(plain, name, options), generate(memoized, name, options));
+        }
+        assertEquals(plainMetrics.getRecursionCutoffCount(), memoizedMetrics.getRecursionCutoffCount());
+        assertEquals(plainMetrics.getChoiceBranchCount(), memoizedMetrics.getChoiceBranchCount());
+    }
+
+    private static ElementNode child(ElementNode node, String localName) {
+        for (Node child : node.content) {
+            if (child instanceof ElementNode && ((ElementNode) child).name.getName().equals(localName)) {
+                return (ElementNode) child;
+            }
+        }
+        fail("No child element " + localName);
+        return null;
+    }
+}
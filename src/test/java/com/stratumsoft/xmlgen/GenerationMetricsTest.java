@@ -0,0 +1,192 @@
+/*
+ * Copyright (c) 2010-2014 Stratumsoft Technologies Pvt. Ltd.
+ *
+ * This file (GenerationMetricsTest.java) is part of xsd2xml.
+ *
+ * xsd2xml is a Java program to generate XML instances from an XML Schema document
+ *
+ * xsd2xml is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * xsd2xml is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; If not, see <http://www.gnu.org/licenses/>.
+ *
+ * To use xsd2xml in your non-GPL licensed software, contact Stratumsoft Technologies
+ * support at support@stratumsoft.com or visit http://www.stratumsoft.com to obtain
+ * a commercial license.
+ */
+
+
+package com.stratumsoft.xmlgen;
+
+import org.apache.ws.commons.schema.XmlSchemaCollection;
+import org.dom4j.Element;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.xml.namespace.QName;
+import javax.xml.transform.stream.StreamSource;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.net.URL;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author murakris@stratumsoft.com
+ */
+public class GenerationMetricsTest {
+
+    private QName rootEl = new QName("http://example.com", "personnel");
+
+    private XmlGenEngine engine;
+
+    private GenerationMetrics metrics;
+
+    @Before
+    public void setup() throws Exception {
+        URL xsdUrl = getClass().getResource("/schemas/personal.xsd");
+        assertNotNull(xsdUrl);
+
+        XmlSchemaCollection coll = new XmlSchemaCollection();
+        coll.setBaseUri(xsdUrl.toString());
+        coll.read(new StreamSource(xsdUrl.openStream()));
+        engine = new XmlGenEngine(coll);
+        metrics = new GenerationMetrics();
+        engine.setMetrics(metrics);
+    }
+
+    @After
+    public void cleanup() throws Exception {
+        metrics.unregister();
+    }
+
+    @Test
+    public void testDocumentCounts() throws Exception {
+        Element el = engine.generateElement(rootEl, null);
+
+        assertEquals(1, metrics.getDocumentCount());
+        assertEquals(countElements(el), metrics.getElementCount());
+        assertEquals(countAttributes(el), metrics.getAttributeCount());
+        assertEquals(1, metrics.getCompileCount());
+        assertEquals(1, metrics.getBuildCount());
+        assertEquals(0, metrics.getSerializationCount());
+        assertEquals(0, metrics.getPlanCacheHitCount());
+        assertTrue(metrics.getRepeatedElementCount() > 0);
+
+        engine.generateXml(rootEl, null, new ByteArrayOutputStream());
+        engine.generateXml(rootEl, null, true);
+
+        assertEquals(3, metrics.getDocumentCount());
+        assertEquals(3 * countElements(el), metrics.getElementCount());
+        assertEquals(countElements(el), metrics.getElementsPerDocument(), 0.0);
+        assertEquals(1, metrics.getCompileCount());
+        assertEquals(2, metrics.getPlanCacheHitCount());
+        assertEquals(2, metrics.getBuildCount());
+        assertEquals(2, metrics.getSerializationCount());
+        assertTrue(metrics.getMaxCompileMillis() > 0);
+        assertTrue(metrics.getCompileMillis() >= metrics.getMaxCompileMillis());
+
+        metrics.reset();
+        assertEquals(0, metrics.getDocumentCount());
+        assertEquals(0, metrics.getElementCount());
+        assertEquals(0.0, metrics.getMaxCompileMillis(), 0.0);
+    }
+
+    @Test
+    public void testChoicesAndRecursion() throws Exception {
+        XmlGenEngine repeats = load("/schemas/TestRepeats.xsd");
+        QName test = new QName("test");
+
+        //the choice is compiled once to its first branch
+        repeats.generateElement(test, null);
+        assertEquals(1, metrics.getChoiceBranchCount());
+
+        //a random choice picks a branch for each of the 3 occurrences of its sequence in every document
+        metrics.reset();
+        XmlGenOptions options = new XmlGenOptions();
+        options.setChoiceOptions(ChoiceOptions.RANDOM);
+        repeats.generateElement(test, options);
+        assertEquals(3, metrics.getChoiceBranchCount());
+        repeats.generateElement(test, options);
+        assertEquals(6, metrics.getChoiceBranchCount());
+
+        XmlGenEngine recursive = load("/schemas/TestRecursion.xsd");
+        for (QName name : recursive.getSchemaCollection().getXmlSchemas()[0].getElements().keySet()) {
+            recursive.compile(name, null);
+        }
+        assertTrue(metrics.getRecursionCutoffCount() > 0);
+    }
+
+    @Test
+    public void testNoMetrics() throws Exception {
+        engine.setMetrics(null);
+        engine.generateXml(rootEl, null, false);
+        assertEquals(0, metrics.getDocumentCount());
+        assertEquals(0, metrics.getCompileCount());
+    }
+
+    @Test
+    public void testRepositoryLoads() throws Exception {
+        SchemaRepository repository = new SchemaRepository(10);
+        repository.setMetrics(metrics);
+        String path = new File(getClass().getResource("/schemas/personal.xsd").toURI()).getPath();
+
+        XmlGenEngine loaded = repository.getEngine(path, null);
+        repository.getEngine(path, null);
+        assertEquals(1, metrics.getSchemaLoadCount());
+        assertTrue(metrics.getSchemaLoadMillis() > 0);
+        assertSame(metrics, loaded.getMetrics());
+    }
+
+    @Test
+    public void testMBean() throws Exception {
+        ObjectName name = metrics.register("personal.xsd");
+        engine.generateXml(rootEl, null, false);
+
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        assertTrue(server.isRegistered(name));
+        assertEquals(1L, server.getAttribute(name, "DocumentCount"));
+        assertEquals(metrics.getElementCount(), server.getAttribute(name, "ElementCount"));
+
+        server.invoke(name, "reset", null, null);
+        assertEquals(0L, server.getAttribute(name, "DocumentCount"));
+
+        metrics.unregister();
+        assertFalse(server.isRegistered(name));
+    }
+
+    private XmlGenEngine load(String resource) throws Exception {
+        String path = new File(getClass().getResource(resource).toURI()).getPath();
+        XmlGenEngine loaded = new XmlGenEngine(SchemaUtil.getSchemaCollection(path, null));
+        loaded.setMetrics(metrics);
+        return loaded;
+    }
+
+    private static long countElements(Element el) {
+        long count = 1;
+        for (Object o : el.elements()) {
+            count += countElements((Element) o);
+        }
+        return count;
+    }
+
+    private static long countAttributes(Element el) {
+        long count = el.attributeCount();
+        for (Object o : el.elements()) {
+            count += countAttributes((Element) o);
+        }
+        return count;
+    }
+}
@@ -0,0 +1,112 @@
+/*
+ * Copyright (c) 2010-2014 Stratumsoft Technologies Pvt. Ltd.
+ *
+ * This file (GenerationPlanTest.java) is part of xsd2xml.
+ *
+ * xsd2xml is a Java program to generate XML instances from an XML Schema document
+ *
+ * xsd2xml is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * xsd2xml is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; If not, see <http://www.gnu.org/licenses/>.
+ *
+ * To use xsd2xml in your non-GPL licensed software, contact Stratumsoft Technologies
+ * support at support@stratumsoft.com or visit http://www.stratumsoft.com to obtain
+ * a commercial license.
+ */
+
+package com.stratumsoft.xmlgen;
+
+import org.apache.ws.commons.schema.XmlSchemaCollection;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.xml.namespace.QName;
+import javax.xml.transform.stream.StreamSource;
+import java.io.InputStream;
+import java.net.URL;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author murakris@stratumsoft.com
+ */
+public class GenerationPlanTest {
+
+    private String companyXsd = "/schemas/company/Company.xsd";
+
+    private QName companyEl = new QName("http://www.company.org", "Company");
+
+    private XmlSchemaCollection coll;
+
+    @Before
+    public void setup() throws Exception {
+        InputStream is = getClass().getResourceAsStream(companyXsd);
+        assertNotNull(is);
+
+        URL xsdUrl = getClass().getResource(companyXsd);
+        coll = new XmlSchemaCollection();
+        coll.setBaseUri(xsdUrl.toString());
+        coll.read(new StreamSource(is));
+    }
+
+    @Test
+    public void testPlanIsCachedPerOptions() throws Exception {
+        XmlGenOptions options = new XmlGenOptions();
+        SchemaTypeXmlGenerator generator = new SchemaTypeXmlGenerator(coll, options);
+
+        GenerationPlan plan = generator.compile(companyEl);
+        assertNotNull(plan);
+        assertFalse(plan.isEmpty());
+        assertSame(plan, generator.compile(companyEl));
+
+        options.setMaxRepeatingElements(1);
+        GenerationPlan otherPlan = generator.compile(companyEl);
+        assertNotSame(plan, otherPlan);
+        assertSame(otherPlan, generator.compile(companyEl));
+    }
+
+    @Test
+    public void testReplayMatchesFirstGeneration() throws Exception {
+        XmlGenOptions options = new XmlGenOptions();
+        options.setGenCommentsForParticles(true);
+
+        SchemaTypeXmlGenerator generator = new SchemaTypeXmlGenerator(coll, options);
+
+        String first = generator.generateXml(companyEl);
+        String replayed = generator.generateXml(companyEl);
+        assertTrue(first.length() > 0);
+        assertEquals(first, replayed);
+
+        String fresh = new SchemaTypeXmlGenerator(coll, options).generateXml(companyEl);
+        assertEquals(first, fresh);
+    }
+
+    @Test
+    public void testRepeatedGroupIsSharedInPlan() throws Exception {
+        URL xsdUrl = getClass().getResource("/schemas/TestGroup.xsd");
+        XmlSchemaCollection groupColl = new XmlSchemaCollection();
+        groupColl.setBaseUri(xsdUrl.toString());
+        groupColl.read(new StreamSource(xsdUrl.openStream()));
+
+        XmlGenEngine engine = new XmlGenEngine(groupColl);
+        GenerationPlan plan = engine.compile(new QName("", "test"), null);
+
+        //group1 has minOccurs=maxOccurs=2: compiled once and repeated
+        GenerationPlan.Node first = plan.getRoot().content.get(0);
+        assertTrue(first instanceof GenerationPlan.RepeatNode);
+        assertEquals(2, ((GenerationPlan.RepeatNode) first).count);
+
+        String xml = engine.generateXml(new QName("", "test"), null, false);
+        assertEquals("<a>string value</a><b>token</b><a>string value</a><b>token</b><y></y>",
+                xml.substring(xml.indexOf("<test>") + 6, xml.indexOf("</test>")));
+    }
+}
@@ -0,0 +1,200 @@
+/*
+ * Copyright (c) 2010-2014 Stratumsoft Technologies Pvt. Ltd.
+ *
+ * This file (GenerationServiceTest.java) is part of xsd2xml.
+ *
+ * xsd2xml is a Java program to generate XML instances from an XML Schema document
+ *
+ * xsd2xml is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * xsd2xml is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; If not, see <http://www.gnu.org/licenses/>.
+ *
+ * To use xsd2xml in your non-GPL licensed software, contact Stratumsoft Technologies
+ * support at support@stratumsoft.com or visit http://www.stratumsoft.com to obtain
+ * a commercial license.
+ */
+
+
+package com.stratumsoft.xmlgen;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.xml.namespace.QName;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author murakris@stratumsoft.com
+ */
+public class GenerationServiceTest {
+
+    private static final String COMPANY = "schema=company/Company.xsd&ns=http://www.company.org&element=Company";
+
+    private File schemaDir;
+
+    private SchemaRepository repository;
+
+    private GenerationService service;
+
+    @Before
+    public void setup() throws Exception {
+        schemaDir = new File(getClass().getResource("/schemas").toURI());
+        repository = new SchemaRepository(10);
+        service = new GenerationService(repository, schemaDir);
+        service.setThreads(4);
+        service.setMaxRequestsPerTenant(1);
+        service.addTenant("a");
+        service.addTenant("b");
+        service.start(new InetSocketAddress("localhost", 0));
+    }
+
+    @After
+    public void cleanup() throws Exception {
+        service.close();
+    }
+
+    @Test
+    public void testGenerateWithEtag() throws Exception {
+        HttpURLConnection conn = open(COMPANY + "&seed=7&values=random");
+        assertEquals(200, conn.getResponseCode());
+        assertEquals("application/xml; charset=utf-8", conn.getContentType());
+        String etag = conn.getHeaderField("ETag");
+        assertNotNull(etag);
+        String body = read(conn);
+
+        XmlGenOptions options = new XmlGenOptions();
+        options.setSeed(7L);
+        options.setDefVals(DefaultValues.RANDOM);
+        ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        repository.getEngine(new File(schemaDir, "company/Company.xsd").getPath(), null)
+                .generateXml(new QName("http://www.company.org", "Company"), options, expected);
+        assertEquals(expected.toString("utf-8"), body);
+
+        conn = open(COMPANY + "&seed=7&values=random");
+        conn.setRequestProperty("If-None-Match", etag);
+        assertEquals(304, conn.getResponseCode());
+        assertEquals(etag, conn.getHeaderField("ETag"));
+
+        conn = open(COMPANY + "&seed=8&values=random");
+        assertEquals(200, conn.getResponseCode());
+        assertFalse(etag.equals(conn.getHeaderField("ETag")));
+        read(conn);
+        assertEquals(1, service.getCacheHitCount());
+    }
+
+    @Test
+    public void testSequentialRequests() throws Exception {
+        //the permit of a request is released before its body is sent, so the next request is not rejected
+        for (int i = 0; i < 50; i++) {
+            HttpURLConnection conn = open(COMPANY + "&seed=7");
+            assertEquals(200, conn.getResponseCode());
+            read(conn);
+        }
+        assertEquals(0, service.getRejectedCount());
+    }
+
+    @Test
+    public void testUnseededResponseIsNotCached() throws Exception {
+        HttpURLConnection conn = open(COMPANY + "&values=random&pretty=true");
+        assertEquals(200, conn.getResponseCode());
+        assertNull(conn.getHeaderField("ETag"));
+        assertEquals("no-store", conn.getHeaderField("Cache-Control"));
+        assertTrue(read(conn).contains("\n"));
+    }
+
+    @Test
+    public void testBadRequests() throws Exception {
+        assertEquals(400, open("schema=../../pom.xml&element=project").getResponseCode());
+        assertEquals(400, open(COMPANY + "&maxRepeat=many").getResponseCode());
+        assertEquals(400, open(COMPANY + "&maxRepeat=-1").getResponseCode());
+        assertEquals(400, open(COMPANY + "&maxRepeat=101").getResponseCode());
+        assertEquals(400, open(COMPANY + "&maxRecursion=11").getResponseCode());
+        assertEquals(400, open(COMPANY + "&size=2000000000").getResponseCode());
+        assertEquals(400, open(COMPANY + "&size=100&unit=pages").getResponseCode());
+        assertEquals(400, open(COMPANY + "&size=200000000&pretty=true").getResponseCode());
+        assertEquals(400, open(COMPANY + "&colour=red").getResponseCode());
+        assertEquals(400, open("element=Company").getResponseCode());
+        assertEquals(404, open("schema=missing.xsd&element=Company").getResponseCode());
+        assertEquals(404, open("schema=company/Company.xsd&element=Unknown").getResponseCode());
+    }
+
+    @Test
+    public void testTenantLimit() throws Exception {
+        //a large streamed document that is not read keeps the request of tenant 'a' in progress
+        HttpURLConnection slow = open(COMPANY + "&size=200000000");
+        slow.setRequestProperty(GenerationService.TENANT_HEADER, "a");
+        assertEquals(200, slow.getResponseCode());
+        InputStream slowIn = slow.getInputStream();
+        assertTrue(slowIn.read() != -1);
+
+        HttpURLConnection conn = open(COMPANY);
+        conn.setRequestProperty(GenerationService.TENANT_HEADER, "a");
+        assertEquals(429, conn.getResponseCode());
+        assertEquals("1", conn.getHeaderField("Retry-After"));
+
+        conn = open(COMPANY);
+        conn.setRequestProperty(GenerationService.TENANT_HEADER, "b");
+        assertEquals(200, conn.getResponseCode());
+        read(conn);
+        assertEquals(1, service.getRejectedCount());
+
+        slow.disconnect();
+    }
+
+    @Test
+    public void testUnknownTenantsShareDefaultLimit() throws Exception {
+        HttpURLConnection slow = open(COMPANY + "&size=200000000");
+        slow.setRequestProperty(GenerationService.TENANT_HEADER, "x");
+        assertEquals(200, slow.getResponseCode());
+        InputStream slowIn = slow.getInputStream();
+        assertTrue(slowIn.read() != -1);
+
+        //naming another unknown tenant does not get around the limit
+        HttpURLConnection conn = open(COMPANY);
+        conn.setRequestProperty(GenerationService.TENANT_HEADER, "y");
+        assertEquals(429, conn.getResponseCode());
+        assertEquals(429, open(COMPANY).getResponseCode());
+
+        conn = open(COMPANY);
+        conn.setRequestProperty(GenerationService.TENANT_HEADER, "a");
+        assertEquals(200, conn.getResponseCode());
+        read(conn);
+
+        slow.disconnect();
+    }
+
+    private HttpURLConnection open(String query) throws IOException {
+        URL url = new URL("http://localhost:" + service.getPort() + GenerationService.GENERATE_PATH + "?" + query);
+        return (HttpURLConnection) url.openConnection();
+    }
+
+    private static String read(HttpURLConnection conn) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (InputStream in = conn.getInputStream()) {
+            byte[] buffer = new byte[8192];
+            for (int n = in.read(buffer); n != -1; n = in.read(buffer)) {
+                out.write(buffer, 0, n);
+            }
+        }
+        return new String(out.toByteArray(), StandardCharsets.UTF_8);
+    }
+}
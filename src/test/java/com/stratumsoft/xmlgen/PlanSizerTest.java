@@ -0,0 +1,134 @@
+/*
+ * Copyright (c) 2010-2014 Stratumsoft Technologies Pvt. Ltd.
+ *
+ * This file (PlanSizerTest.java) is part of xsd2xml.
+ *
+ * xsd2xml is a Java program to generate XML instances from an XML Schema document
+ *
+ * xsd2xml is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * xsd2xml is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; If not, see <http://www.gnu.org/licenses/>.
+ *
+ * To use xsd2xml in your non-GPL licensed software, contact Stratumsoft Technologies
+ * support at support@stratumsoft.com or visit http://www.stratumsoft.com to obtain
+ * a commercial license.
+ */
+
+
+package com.stratumsoft.xmlgen;
+
+import org.apache.ws.commons.schema.XmlSchemaCollection;
+import org.dom4j.Element;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.xml.namespace.QName;
+import javax.xml.transform.stream.StreamSource;
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.net.URL;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author murakris@stratumsoft.com
+ */
+public class PlanSizerTest {
+
+    private QName companyEl = new QName("http://www.company.org", "Company");
+
+    private XmlGenEngine engine;
+
+    @Before
+    public void setup() throws Exception {
+        URL xsdUrl = getClass().getResource("/schemas/company/Company.xsd");
+        assertNotNull(xsdUrl);
+
+        XmlSchemaCollection coll = new XmlSchemaCollection();
+        coll.setBaseUri(xsdUrl.toString());
+        coll.read(new StreamSource(xsdUrl.openStream()));
+        engine = new XmlGenEngine(coll);
+    }
+
+    @Test
+    public void testEstimateMatchesWrittenDocument() throws Exception {
+        XmlGenOptions options = new XmlGenOptions();
+        options.setGenCommentsForParticles(true);
+        GenerationPlan plan = engine.compile(companyEl, options);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        plan.writeDocument(out, new SeededRandom(1));
+        assertEquals(out.size(), plan.estimateSize(SizeUnit.BYTES));
+        assertEquals(countElements(plan.toElement()), plan.estimateSize(SizeUnit.ELEMENTS));
+    }
+
+    @Test
+    public void testByteTargets() throws Exception {
+        XmlGenOptions options = new XmlGenOptions();
+        for (long target : new long[]{1000, 100000, 10000000}) {
+            options.setTargetSize(target, SizeUnit.BYTES);
+            GenerationPlan plan = engine.compile(companyEl, options);
+
+            CountingOutputStream out = new CountingOutputStream();
+            plan.writeDocument(out, new SeededRandom(1));
+            assertEquals(plan.estimateSize(SizeUnit.BYTES), out.count);
+            assertEquals("size for target " + target, target, out.count, Math.max(target * 0.01, 50));
+        }
+    }
+
+    @Test
+    public void testElementTarget() throws Exception {
+        XmlGenOptions options = new XmlGenOptions();
+        options.setDefVals(DefaultValues.RANDOM);
+        options.setTargetSize(5000, SizeUnit.ELEMENTS);
+        GenerationPlan plan = engine.compile(companyEl, options);
+
+        assertEquals(5000, countElements(plan.toElement(new SeededRandom(7))), 5);
+        assertSame(plan, engine.compile(companyEl, options));
+    }
+
+    @Test
+    public void testResizeKeepsPlanAndBounds() throws Exception {
+        GenerationPlan plan = engine.compile(companyEl, null);
+        String xml = engine.generateXml(companyEl, null, false);
+
+        GenerationPlan small = plan.resize(0, SizeUnit.BYTES);
+        assertTrue(small.estimateSize(SizeUnit.BYTES) < plan.estimateSize(SizeUnit.BYTES));
+        assertEquals(xml, engine.generateXml(companyEl, null, false));
+
+        //the plan with every count at its minimum is the smallest one
+        assertEquals(small.estimateSize(SizeUnit.ELEMENTS), plan.resize(1, SizeUnit.ELEMENTS)
+                .estimateSize(SizeUnit.ELEMENTS));
+    }
+
+    private static int countElements(Element el) {
+        int count = 1;
+        for (Object child : el.elements()) {
+            count += countElements((Element) child);
+        }
+        return count;
+    }
+
+    private static final class CountingOutputStream extends OutputStream {
+        long count;
+
+        @Override
+        public void write(int b) {
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            count += len;
+        }
+    }
+}
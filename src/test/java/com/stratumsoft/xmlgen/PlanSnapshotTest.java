@@ -0,0 +1,122 @@
+/*
+ * Copyright (c) 2010-2014 Stratumsoft Technologies Pvt. Ltd.
+ *
+ * This file (PlanSnapshotTest.java) is part of xsd2xml.
+ *
+ * xsd2xml is a Java program to generate XML instances from an XML Schema document
+ *
+ * xsd2xml is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * xsd2xml is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; If not, see <http://www.gnu.org/licenses/>.
+ *
+ * To use xsd2xml in your non-GPL licensed software, contact Stratumsoft Technologies
+ * support at support@stratumsoft.com or visit http://www.stratumsoft.com to obtain
+ * a commercial license.
+ */
+
+package com.stratumsoft.xmlgen;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.xml.namespace.QName;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author murakris@stratumsoft.com
+ */
+public class PlanSnapshotTest {
+
+    private File dir;
+
+    private File formXsd;
+
+    private File importXsd;
+
+    @Before
+    public void setup() throws Exception {
+        dir = Files.createTempDirectory("xsd2xml-snapshot").toFile();
+        formXsd = copy("TestElementForm.xsd");
+        importXsd = copy("TestElementFormImport.xsd");
+    }
+
+    @After
+    public void cleanup() throws Exception {
+        File[] files = dir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                assertTrue(file.delete());
+            }
+        }
+        assertTrue(dir.delete());
+    }
+
+    private File copy(String name) throws Exception {
+        File file = new File(dir, name);
+        Files.copy(new File(getClass().getResource("/schemas/" + name).toURI()).toPath(), file.toPath(),
+                StandardCopyOption.REPLACE_EXISTING);
+        return file;
+    }
+
+    private static byte[] write(GenerationPlan plan, long seed) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        plan.writeDocument(out, new SeededRandom(seed));
+        return out.toByteArray();
+    }
+
+    @Test
+    public void testRoundTrip() throws Exception {
+        XmlGenEngine engine = new XmlGenEngine(SchemaUtil.getSchemaCollection(formXsd.getPath(), null));
+        XmlGenOptions options = new XmlGenOptions();
+        options.setGenChoiceOptionsAsComments(false);
+        options.setChoiceOptions(ChoiceOptions.RANDOM);
+
+        File file = new File(dir, "form.plans");
+        PlanSnapshot.write(engine, null, options, file);
+
+        PlanSnapshot snapshot = PlanSnapshot.readIfCurrent(file);
+        assertNotNull(snapshot);
+        assertEquals(2, snapshot.getSources().size());
+        assertEquals(ChoiceOptions.RANDOM, snapshot.getOptions().getChoiceOptions());
+        assertEquals(engine.getRegistry().getElements().size(), snapshot.getRootNames().size());
+
+        for (QName rootName : snapshot.getRootNames()) {
+            GenerationPlan plan = engine.compile(rootName, options);
+            assertArrayEquals(rootName.toString(), write(plan, 42), write(snapshot.getPlan(rootName), 42));
+        }
+    }
+
+    @Test
+    public void testStaleSnapshot() throws Exception {
+        XmlGenEngine engine = new XmlGenEngine(SchemaUtil.getSchemaCollection(formXsd.getPath(), null));
+        File file = new File(dir, "form.plans");
+        PlanSnapshot.write(engine, null, null, file);
+        PlanSnapshot snapshot = PlanSnapshot.read(file);
+        assertTrue(snapshot.isCurrent());
+
+        //a change to an imported schema is detected as well
+        try (OutputStream out = new FileOutputStream(importXsd, true)) {
+            out.write("<!-- changed -->".getBytes("UTF-8"));
+        }
+        assertFalse(snapshot.isCurrent());
+        assertNull(PlanSnapshot.readIfCurrent(file));
+        assertNull(PlanSnapshot.readIfCurrent(new File(dir, "missing.plans")));
+    }
+}
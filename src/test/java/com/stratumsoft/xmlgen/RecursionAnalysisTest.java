@@ -0,0 +1,93 @@
+/*
+ * Copyright (c) 2010-2014 Stratumsoft Technologies Pvt. Ltd.
+ *
+ * This file (RecursionAnalysisTest.java) is part of xsd2xml.
+ *
+ * xsd2xml is a Java program to generate XML instances from an XML Schema document
+ *
+ * xsd2xml is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * xsd2xml is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; If not, see <http://www.gnu.org/licenses/>.
+ *
+ * To use xsd2xml in your non-GPL licensed software, contact Stratumsoft Technologies
+ * support at support@stratumsoft.com or visit http://www.stratumsoft.com to obtain
+ * a commercial license.
+ */
+
+package com.stratumsoft.xmlgen;
+
+import org.apache.commons.lang.StringUtils;
+import org.apache.ws.commons.schema.XmlSchemaCollection;
+import org.apache.ws.commons.schema.XmlSchemaComplexType;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.xml.namespace.QName;
+import javax.xml.transform.stream.StreamSource;
+import java.net.URL;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author murakris@stratumsoft.com
+ */
+public class RecursionAnalysisTest {
+
+    private XmlSchemaCollection coll;
+
+    private SchemaRegistry registry;
+
+    @Before
+    public void setup() throws Exception {
+        URL xsdUrl = getClass().getResource("/schemas/TestRecursion.xsd");
+        assertNotNull(xsdUrl);
+
+        coll = new XmlSchemaCollection();
+        coll.setBaseUri(xsdUrl.toString());
+        coll.read(new StreamSource(xsdUrl.openStream()));
+        registry = new SchemaRegistry(coll);
+    }
+
+    @Test
+    public void testRecursiveTypes() throws Exception {
+        RecursionAnalysis analysis = new RecursionAnalysis(registry);
+
+        XmlSchemaComplexType rootType = (XmlSchemaComplexType) registry.getType(new QName("", "rootType"));
+        XmlSchemaComplexType base = (XmlSchemaComplexType) registry.getType(new QName("", "base"));
+        XmlSchemaComplexType anonRoot = (XmlSchemaComplexType) registry.getElement(new QName("", "root")).getSchemaType();
+
+        assertTrue(analysis.slotOf(rootType) >= 0);
+        assertTrue(analysis.slotOf(base) >= 0);
+        assertTrue(analysis.slotOf(anonRoot) >= 0);
+        assertEquals(RecursionAnalysis.UNKNOWN, analysis.slotOf(new XmlSchemaComplexType(null, false)));
+
+        //rootType and its anonymous 'b' type form one cycle, as do the anonymous 'root' and 'b' types
+        assertEquals(5, analysis.getSlotCount());
+    }
+
+    @Test
+    public void testRecursionDepthPerPath() throws Exception {
+        XmlGenEngine engine = new XmlGenEngine(coll);
+        XmlGenOptions options = new XmlGenOptions();
+
+        for (int depth = 0; depth <= 3; depth++) {
+            options.setMaxRecursiveDepth(depth);
+
+            String xml = engine.generateXml(new QName("", "root2"), options, false);
+            assertEquals(depth, StringUtils.countMatches(xml, "<beginRecursion>"));
+
+            //both sibling references to 'root' are expanded at every level
+            xml = engine.generateXml(new QName("", "root"), options, false);
+            assertEquals((1 << (depth + 1)) - 1, StringUtils.countMatches(xml, "<root>"));
+        }
+    }
+}
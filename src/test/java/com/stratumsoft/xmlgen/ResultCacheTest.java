@@ -0,0 +1,158 @@
+/*
+ * Copyright (c) 2010-2014 Stratumsoft Technologies Pvt. Ltd.
+ *
+ * This file (ResultCacheTest.java) is part of xsd2xml.
+ *
+ * xsd2xml is a Java program to generate XML instances from an XML Schema document
+ *
+ * xsd2xml is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * xsd2xml is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; If not, see <http://www.gnu.org/licenses/>.
+ *
+ * To use xsd2xml in your non-GPL licensed software, contact Stratumsoft Technologies
+ * support at support@stratumsoft.com or visit http://www.stratumsoft.com to obtain
+ * a commercial license.
+ */
+
+
+package com.stratumsoft.xmlgen;
+
+import org.junit.Test;
+
+import javax.xml.namespace.QName;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import static com.stratumsoft.xmlgen.EngineFixtures.engine;
+import static com.stratumsoft.xmlgen.EngineFixtures.generate;
+import static org.junit.Assert.*;
+
+/**
+ * @author murakris@stratumsoft.com
+ */
+public class ResultCacheTest {
+
+    private static final QName PERSONNEL = new QName("http://example.com", "personnel");
+
+    private static final QName TEST = new QName("", "test");
+
+    @Test
+    public void testDeterministicDocument() throws Exception {
+        XmlGenEngine engine = engine("TestRepeats.xsd");
+        ResultCache cache = new ResultCache(1024 * 1024);
+
+        byte[] first = cache.generate(engine, TEST, null);
+        byte[] second = cache.generate(engine, TEST, null);
+        assertArrayEquals(generate(engine, TEST, null), first);
+        assertArrayEquals(first, second);
+        assertEquals(1, cache.getHitCount());
+        assertEquals(1, cache.getMissCount());
+        assertEquals(1, cache.getEntryCount());
+
+        XmlGenOptions options = new XmlGenOptions();
+        options.setGenCommentsForParticles(true);
+        cache.generate(engine, TEST, options);
+        assertEquals("options are part of the key", 2, cache.getMissCount());
+    }
+
+    @Test
+    public void testVolatileValuesArePatched() throws Exception {
+        XmlGenEngine engine = engine("personal.xsd");
+        XmlGenOptions options = new XmlGenOptions();
+        options.setMaxRepeatingElements(3);
+        ResultCache cache = new ResultCache(1024 * 1024);
+
+        String generated = new String(generate(engine, PERSONNEL, options), StandardCharsets.UTF_8);
+        String first = new String(cache.generate(engine, PERSONNEL, options), StandardCharsets.UTF_8);
+        String second = new String(cache.generate(engine, PERSONNEL, options), StandardCharsets.UTF_8);
+        assertEquals(1, cache.getHitCount());
+
+        assertFalse("each document gets its own ids", first.equals(second));
+        assertEquals(withoutIds(generated), withoutIds(first));
+        assertEquals(withoutIds(generated), withoutIds(second));
+        assertEquals(3, second.split(" id=\"id-").length - 1);
+    }
+
+    @Test
+    public void testSeededDocument() throws Exception {
+        XmlGenEngine engine = engine("personal.xsd");
+        XmlGenOptions options = new XmlGenOptions();
+        options.setMaxRepeatingElements(3);
+        options.setSeed(7L);
+        ResultCache cache = new ResultCache(1024 * 1024);
+
+        byte[] generated = generate(engine, PERSONNEL, options);
+        assertArrayEquals(generated, cache.generate(engine, PERSONNEL, options));
+        assertArrayEquals(generated, cache.generate(engine, PERSONNEL, options));
+        assertEquals(1, cache.getHitCount());
+
+        options.setSeed(8L);
+        assertFalse(Arrays.equals(generated, cache.generate(engine, PERSONNEL, options)));
+    }
+
+    @Test
+    public void testRandomChoicesAreNotCached() throws Exception {
+        XmlGenEngine engine = engine("TestRepeats.xsd");
+        XmlGenOptions options = new XmlGenOptions();
+        options.setChoiceOptions(ChoiceOptions.RANDOM);
+        ResultCache cache = new ResultCache(1024 * 1024);
+
+        for (int i = 0; i < 3; i++) {
+            cache.generate(engine, TEST, options);
+        }
+        assertEquals(0, cache.getHitCount());
+        assertEquals(3, cache.getMissCount());
+    }
+
+    @Test
+    public void testByteBudget() throws Exception {
+        XmlGenEngine engine = engine("TestRepeats.xsd");
+        ResultCache sizer = new ResultCache(1024 * 1024);
+        sizer.generate(engine, TEST, null);
+        long entrySize = sizer.getSize();
+        ResultCache cache = new ResultCache(2 * entrySize);
+
+        for (int depth = 1; depth <= 4; depth++) {
+            XmlGenOptions options = new XmlGenOptions();
+            options.setMaxRecursiveDepth(depth);     //same document, different keys
+            cache.generate(engine, TEST, options);
+        }
+        assertEquals(2, cache.getEntryCount());
+        assertEquals(2, cache.getEvictionCount());
+        assertTrue(cache.getSize() <= cache.getMaxBytes());
+
+        ResultCache tiny = new ResultCache(entrySize - 1);
+        tiny.generate(engine, TEST, null);
+        assertEquals("documents over the budget are not cached", 0, tiny.getEntryCount());
+    }
+
+    @Test
+    public void testEnginesShareDocumentsOfTheSameSchemas() throws Exception {
+        ResultCache cache = new ResultCache(1024 * 1024);
+        XmlGenEngine engine = engine("TestRepeats.xsd");
+        engine.setResultCache(cache);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        engine.generateXml(TEST, null, out);
+        assertArrayEquals(cache.generate(engine, TEST, null), out.toByteArray());
+
+        engine("TestRepeats.xsd").setResultCache(cache);
+        cache.generate(engine("TestRepeats.xsd"), TEST, null);
+        assertEquals(1, cache.getMissCount());
+        assertEquals(2, cache.getHitCount());
+    }
+
+    private static String withoutIds(String xml) {
+        return xml.replaceAll(" id=\"[^\"]*\"", " id=\"\"");
+    }
+}
@@ -0,0 +1,109 @@
+/*
+ * Copyright (c) 2010-2014 Stratumsoft Technologies Pvt. Ltd.
+ *
+ * This file (SchemaBundleTest.java) is part of xsd2xml.
+ *
+ * xsd2xml is a Java program to generate XML instances from an XML Schema document
+ *
+ * xsd2xml is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * xsd2xml is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; If not, see <http://www.gnu.org/licenses/>.
+ *
+ * To use xsd2xml in your non-GPL licensed software, contact Stratumsoft Technologies
+ * support at support@stratumsoft.com or visit http://www.stratumsoft.com to obtain
+ * a commercial license.
+ */
+
+package com.stratumsoft.xmlgen;
+
+import org.apache.ws.commons.schema.XmlSchema;
+import org.apache.ws.commons.schema.XmlSchemaCollection;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.xml.namespace.QName;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.nio.file.Files;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author murakris@stratumsoft.com
+ */
+public class SchemaBundleTest {
+
+    //library.xsd imports ../../TestElementForm.xsd
+    private static final String[] SCHEMAS = {"company/Company.xsd", "company/Person.xsd", "company/Product.xsd",
+            "company/dummy/library.xsd", "company/dummy/library2.xsd", "TestElementForm.xsd",
+            "TestElementFormImport.xsd"};
+
+    private File archive;
+
+    @Before
+    public void setup() throws Exception {
+        archive = File.createTempFile("xsd2xml-bundle", ".zip");
+        try (ZipOutputStream zip = new ZipOutputStream(new FileOutputStream(archive))) {
+            for (String name : SCHEMAS) {
+                zip.putNextEntry(new ZipEntry("xsd/" + name));
+                Files.copy(schemaFile(name).toPath(), zip);
+                zip.closeEntry();
+            }
+        }
+    }
+
+    @After
+    public void cleanup() {
+        assertTrue(archive.delete());
+    }
+
+    private File schemaFile(String name) throws Exception {
+        return new File(getClass().getResource("/schemas/" + name).toURI());
+    }
+
+    private static String generate(XmlSchemaCollection coll, QName elName) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new XmlGenEngine(coll).compile(elName, null).writeDocument(out, new SeededRandom(7));
+        return out.toString("UTF-8");
+    }
+
+    @Test
+    public void testImportsResolvedFromBundle() throws Exception {
+        SchemaBundle bundle = SchemaBundle.open(archive);
+        assertEquals(SCHEMAS.length, bundle.getEntryNames().size());
+        assertTrue(bundle.contains("/xsd/company/dummy/library.xsd"));
+
+        XmlSchemaCollection coll = bundle.getSchemaCollection("xsd/company/Company.xsd");
+        int sources = 0;
+        for (XmlSchema schema : coll.getXmlSchemas()) {
+            if (schema.getSourceURI() != null) {
+                assertTrue(schema.getSourceURI(), schema.getSourceURI().startsWith("jar:file:"));
+                sources++;
+            }
+        }
+        assertEquals(SCHEMAS.length, sources);
+
+        XmlSchemaCollection fileColl = SchemaUtil.getSchemaCollection(schemaFile("company/Company.xsd").getPath(), null);
+        QName company = new QName("http://www.company.org", "Company");
+        assertEquals(generate(fileColl, company), generate(coll, company));
+    }
+
+    @Test(expected = FileNotFoundException.class)
+    public void testMissingEntry() throws Exception {
+        SchemaBundle.open(archive).getSchemaCollection("Company.xsd");
+    }
+}
@@ -0,0 +1,136 @@
+/*
+ * Copyright (c) 2010-2014 Stratumsoft Technologies Pvt. Ltd.
+ *
+ * This file (SchemaProfilerTest.java) is part of xsd2xml.
+ *
+ * xsd2xml is a Java program to generate XML instances from an XML Schema document
+ *
+ * xsd2xml is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * xsd2xml is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; If not, see <http://www.gnu.org/licenses/>.
+ *
+ * To use xsd2xml in your non-GPL licensed software, contact Stratumsoft Technologies
+ * support at support@stratumsoft.com or visit http://www.stratumsoft.com to obtain
+ * a commercial license.
+ */
+
+
+package com.stratumsoft.xmlgen;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.xml.namespace.QName;
+import java.io.File;
+import java.io.StringWriter;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author murakris@stratumsoft.com
+ */
+public class SchemaProfilerTest {
+
+    private XmlGenEngine engine;
+
+    private SchemaProfiler profiler;
+
+    @Before
+    public void setup() throws Exception {
+        String path = new File(getClass().getResource("/schemas/TestRecursion.xsd").toURI()).getPath();
+        engine = new XmlGenEngine(SchemaUtil.getSchemaCollection(path, null));
+        profiler = new SchemaProfiler();
+        engine.setProfiler(profiler);
+    }
+
+    @Test
+    public void testCollapsedStacks() throws Exception {
+        XmlGenOptions options = new XmlGenOptions();
+        options.setMaxRecursiveDepth(2);
+        engine.compile(new QName("root2"), options);
+
+        String elements = collapsed(SchemaProfiler.Measure.ELEMENTS);
+        Map<String, Long> stacks = new HashMap<>();
+        long total = 0;
+        for (String line : elements.split("\n")) {
+            int space = line.lastIndexOf(' ');
+            assertTrue(line, space > 0);
+            long value = Long.parseLong(line.substring(space + 1));
+            stacks.put(line.substring(0, space), value);
+            total += value;
+            assertTrue(line, line.startsWith("root2[rootType]"));
+        }
+        assertEquals(Long.valueOf(1), stacks.get("root2[rootType]"));
+        assertEquals(Long.valueOf(1), stacks.get("root2[rootType];b[anonymous];beginRecursion[rootType]"));
+        assertEquals(Long.valueOf(1), stacks.get(
+                "root2[rootType];b[anonymous];beginRecursion[rootType];b[anonymous];beginRecursion[rootType]"));
+
+        long calls = 0;
+        for (SchemaProfiler.TypeProfile profile : profiler.getTypeProfiles()) {
+            calls += profile.getCalls();
+        }
+        assertEquals(total, calls);
+
+        assertFalse(collapsed(SchemaProfiler.Measure.TIME).isEmpty());
+    }
+
+    @Test
+    public void testTypeProfiles() throws Exception {
+        XmlGenOptions options = new XmlGenOptions();
+        options.setMaxRecursiveDepth(2);
+        engine.compile(new QName("root2"), options);
+
+        SchemaProfiler.TypeProfile rootType = find(profiler.getTypeProfiles(), "rootType");
+        assertNotNull(rootType);
+        assertEquals(3, rootType.getCalls());
+        assertTrue(rootType.getTotalNanos() >= rootType.getSelfNanos());
+
+        //only compilations are profiled
+        engine.compile(new QName("root2"), options);
+        assertEquals(3, find(profiler.getTypeProfiles(), "rootType").getCalls());
+
+        engine.clearPlanCache();
+        engine.compile(new QName("root2"), options);
+        SchemaProfiler.TypeProfile twice = find(profiler.getTypeProfiles(), "rootType");
+        assertEquals(6, twice.getCalls());
+        assertTrue(twice.getTotalNanos() >= rootType.getTotalNanos());
+
+        profiler.reset();
+        assertTrue(profiler.getTypeProfiles().isEmpty());
+        assertEquals("", collapsed(SchemaProfiler.Measure.TIME));
+    }
+
+    @Test
+    public void testNotProfiled() throws Exception {
+        engine.setProfiler(null);
+        engine.compile(new QName("root2"), null);
+        assertTrue(profiler.getTypeProfiles().isEmpty());
+    }
+
+    private String collapsed(SchemaProfiler.Measure measure) throws Exception {
+        StringWriter out = new StringWriter();
+        profiler.writeCollapsed(out, measure);
+        return out.toString();
+    }
+
+    private static SchemaProfiler.TypeProfile find(List<SchemaProfiler.TypeProfile> profiles, String localName) {
+        for (SchemaProfiler.TypeProfile profile : profiles) {
+            if (profile.getName().endsWith("}" + localName) || profile.getName().equals(localName)) {
+                return profile;
+            }
+        }
+        return null;
+    }
+}
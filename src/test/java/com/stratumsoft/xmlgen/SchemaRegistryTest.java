@@ -0,0 +1,99 @@
+/*
+ * Copyright (c) 2010-2014 Stratumsoft Technologies Pvt. Ltd.
+ *
+ * This file (SchemaRegistryTest.java) is part of xsd2xml.
+ *
+ * xsd2xml is a Java program to generate XML instances from an XML Schema document
+ *
+ * xsd2xml is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * xsd2xml is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; If not, see <http://www.gnu.org/licenses/>.
+ *
+ * To use xsd2xml in your non-GPL licensed software, contact Stratumsoft Technologies
+ * support at support@stratumsoft.com or visit http://www.stratumsoft.com to obtain
+ * a commercial license.
+ */
+
+package com.stratumsoft.xmlgen;
+
+import org.apache.ws.commons.schema.XmlSchema;
+import org.apache.ws.commons.schema.XmlSchemaCollection;
+import org.apache.ws.commons.schema.XmlSchemaComplexType;
+import org.apache.ws.commons.schema.XmlSchemaElement;
+import org.apache.ws.commons.schema.XmlSchemaForm;
+import org.apache.ws.commons.schema.XmlSchemaSequence;
+import org.apache.ws.commons.schema.XmlSchemaSequenceMember;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.xml.namespace.QName;
+import javax.xml.transform.stream.StreamSource;
+import java.net.URL;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author murakris@stratumsoft.com
+ */
+public class SchemaRegistryTest {
+
+    private static final String TNS = "http://www.XMLSchemaReference.com/examples";
+
+    private static final String IMPORT_TNS = "http://example.com/";
+
+    private XmlSchemaCollection coll;
+
+    private SchemaRegistry registry;
+
+    @Before
+    public void setup() throws Exception {
+        URL xsdUrl = getClass().getResource("/schemas/TestElementForm.xsd");
+        assertNotNull(xsdUrl);
+
+        coll = new XmlSchemaCollection();
+        coll.setBaseUri(xsdUrl.toString());
+        coll.read(new StreamSource(xsdUrl.openStream()));
+        registry = new SchemaRegistry(coll);
+    }
+
+    @Test
+    public void testLookupsMatchCollection() throws Exception {
+        for (XmlSchema schema : coll.getXmlSchemas()) {
+            if (schema.getTargetNamespace() != null) {
+                assertNotNull(registry.getSchemaByTargetNamespace(schema.getTargetNamespace()));
+            }
+            for (QName name : schema.getElements().keySet()) {
+                assertSame(coll.getElementByQName(name), registry.getElement(name));
+                assertSame(schema, registry.getSchemaForElement(name));
+            }
+            for (QName name : schema.getSchemaTypes().keySet()) {
+                assertSame(coll.getTypeByQName(name), registry.getType(name));
+            }
+        }
+
+        assertNotNull(registry.getElement(new QName(IMPORT_TNS, "TestElFormImport")));
+        assertNotNull(registry.getType(new QName("http://www.w3.org/2001/XMLSchema", "string")));
+        assertNull(registry.getElement(new QName(TNS, "missing")));
+        assertNull(registry.getSchemaByTargetNamespace(null));
+    }
+
+    @Test
+    public void testElementForm() throws Exception {
+        XmlSchemaElement demo = registry.getElement(new QName(TNS, "formElementDemo"));
+        assertNotNull(demo);
+        assertEquals(XmlSchemaForm.QUALIFIED, registry.getElementForm(demo));
+
+        XmlSchemaComplexType type = (XmlSchemaComplexType) demo.getSchemaType();
+        XmlSchemaSequenceMember local = ((XmlSchemaSequence) type.getParticle()).getItems().get(0);
+        assertEquals(XmlSchemaForm.QUALIFIED, registry.getElementForm((XmlSchemaElement) local));
+    }
+}
@@ -0,0 +1,163 @@
+/*
+ * Copyright (c) 2010-2014 Stratumsoft Technologies Pvt. Ltd.
+ *
+ * This file (SchemaRepositoryTest.java) is part of xsd2xml.
+ *
+ * xsd2xml is a Java program to generate XML instances from an XML Schema document
+ *
+ * xsd2xml is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * xsd2xml is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; If not, see <http://www.gnu.org/licenses/>.
+ *
+ * To use xsd2xml in your non-GPL licensed software, contact Stratumsoft Technologies
+ * support at support@stratumsoft.com or visit http://www.stratumsoft.com to obtain
+ * a commercial license.
+ */
+
+package com.stratumsoft.xmlgen;
+
+import org.apache.ws.commons.schema.XmlSchemaCollection;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.xml.namespace.QName;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author murakris@stratumsoft.com
+ */
+public class SchemaRepositoryTest {
+
+    private File dir;
+
+    private File formXsd;
+
+    private File personalXsd;
+
+    @Before
+    public void setup() throws Exception {
+        dir = Files.createTempDirectory("xsd2xml-repo").toFile();
+        formXsd = copy("TestElementForm.xsd");
+        copy("TestElementFormImport.xsd");
+        personalXsd = copy("personal.xsd");
+    }
+
+    @After
+    public void cleanup() throws Exception {
+        File[] files = dir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                assertTrue(file.delete());
+            }
+        }
+        assertTrue(dir.delete());
+    }
+
+    private File copy(String name) throws Exception {
+        File file = new File(dir, name);
+        Files.copy(new File(getClass().getResource("/schemas/" + name).toURI()).toPath(), file.toPath(),
+                StandardCopyOption.REPLACE_EXISTING);
+        return file;
+    }
+
+    @Test
+    public void testCollectionIsShared() throws Exception {
+        SchemaRepository repository = new SchemaRepository(10);
+
+        XmlSchemaCollection coll = repository.getSchemaCollection(formXsd.getPath(), null);
+        assertNotNull(coll.getElementByQName(new QName("http://example.com/", "TestElFormImport")));
+
+        String otherPath = new File(dir, "../" + dir.getName() + "/TestElementForm.xsd").getPath();
+        assertSame(coll, repository.getSchemaCollection(otherPath, null));
+        assertSame(repository.getEngine(formXsd.getPath(), null), repository.getEngine(otherPath, null));
+        assertEquals(1, repository.getLoadCount());
+        assertEquals(3, repository.getHitCount());
+    }
+
+    @Test
+    public void testConcurrentRequestsLoadOnce() throws Exception {
+        final SchemaRepository repository = new SchemaRepository(10);
+        final CountDownLatch start = new CountDownLatch(1);
+
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<XmlSchemaCollection>> results = new ArrayList<>();
+            for (int i = 0; i < 32; i++) {
+                results.add(executor.submit(new Callable<XmlSchemaCollection>() {
+                    @Override
+                    public XmlSchemaCollection call() throws Exception {
+                        start.await();
+                        return repository.getSchemaCollection(personalXsd.getPath(), null);
+                    }
+                }));
+            }
+            start.countDown();
+
+            XmlSchemaCollection first = results.get(0).get();
+            for (Future<XmlSchemaCollection> result : results) {
+                assertSame(first, result.get());
+            }
+        } finally {
+            executor.shutdown();
+        }
+        assertEquals(1, repository.getLoadCount());
+    }
+
+    @Test
+    public void testChangedFileIsReloaded() throws Exception {
+        SchemaRepository repository = new SchemaRepository(10);
+
+        XmlSchemaCollection coll = repository.getSchemaCollection(personalXsd.getPath(), null);
+        assertTrue(personalXsd.setLastModified(personalXsd.lastModified() - 10000));
+
+        assertNotSame(coll, repository.getSchemaCollection(personalXsd.getPath(), null));
+        assertEquals(2, repository.getLoadCount());
+        assertEquals(1, repository.size());
+    }
+
+    @Test
+    public void testLeastRecentlyUsedIsEvicted() throws Exception {
+        SchemaRepository repository = new SchemaRepository(1);
+
+        XmlSchemaCollection form = repository.getSchemaCollection(formXsd.getPath(), null);
+        repository.getSchemaCollection(personalXsd.getPath(), null);
+        assertEquals(1, repository.size());
+        assertEquals(1, repository.getEvictionCount());
+
+        assertNotSame(form, repository.getSchemaCollection(formXsd.getPath(), null));
+        assertEquals(3, repository.getLoadCount());
+
+        //a budget smaller than any schema still keeps the last one loaded
+        repository = new SchemaRepository(10, 1);
+        repository.getSchemaCollection(formXsd.getPath(), null);
+        repository.getSchemaCollection(personalXsd.getPath(), null);
+        assertEquals(1, repository.size());
+    }
+
+    @Test(expected = FileNotFoundException.class)
+    public void testMissingFile() throws Exception {
+        new SchemaRepository(10).getSchemaCollection(new File(dir, "missing.xsd").getPath(), null);
+    }
+}
@@ -0,0 +1,144 @@
+/*
+ * Copyright (c) 2010-2014 Stratumsoft Technologies Pvt. Ltd.
+ *
+ * This file (SchemaSynthesizerTest.java) is part of xsd2xml.
+ *
+ * xsd2xml is a Java program to generate XML instances from an XML Schema document
+ *
+ * xsd2xml is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * xsd2xml is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; If not, see <http://www.gnu.org/licenses/>.
+ *
+ * To use xsd2xml in your non-GPL licensed software, contact Stratumsoft Technologies
+ * support at support@stratumsoft.com or visit http://www.stratumsoft.com to obtain
+ * a commercial license.
+ */
+
+
+package com.stratumsoft.xmlgen;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.xml.XMLConstants;
+import javax.xml.namespace.QName;
+import javax.xml.transform.stream.StreamSource;
+import javax.xml.validation.Schema;
+import javax.xml.validation.SchemaFactory;
+import java.io.File;
+import java.io.StringReader;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author murakris@stratumsoft.com
+ */
+public class SchemaSynthesizerTest {
+
+    private static final long SEED = 42L;
+
+    private final List<File> dirs = new ArrayList<>();
+
+    private SchemaSynthesizer synthesizer;
+
+    @Before
+    public void setup() {
+        synthesizer = new SchemaSynthesizer(SEED);
+        synthesizer.setSchemaCount(8);
+        synthesizer.setTypeCount(200);
+        synthesizer.setSequenceWidth(60);
+        synthesizer.setNestingDepth(40);
+        synthesizer.setRecursionCycle(3);
+    }
+
+    @After
+    public void cleanup() {
+        for (File dir : dirs) {
+            File[] files = dir.listFiles();
+            if (files != null) {
+                for (File file : files) {
+                    assertTrue(file.delete());
+                }
+            }
+            assertTrue(dir.delete());
+        }
+    }
+
+    private File write(SchemaSynthesizer synthesizer) throws Exception {
+        File main = synthesizer.writeToTempDir();
+        dirs.add(main.getParentFile());
+        return main;
+    }
+
+    @Test
+    public void testSameSeedSameSchemas() throws Exception {
+        File first = write(synthesizer);
+        File second = write(synthesizer);
+
+        String[] names = first.getParentFile().list();
+        assertEquals(synthesizer.getSchemaCount() + 1, names.length);
+        for (String name : names) {
+            assertArrayEquals(name, Files.readAllBytes(new File(first.getParentFile(), name).toPath()),
+                    Files.readAllBytes(new File(second.getParentFile(), name).toPath()));
+        }
+
+        SchemaSynthesizer other = new SchemaSynthesizer(SEED + 1);
+        File third = write(other);
+        assertFalse(new String(Files.readAllBytes(new File(first.getParentFile(), "s0.xsd").toPath()), "UTF-8")
+                .equals(new String(Files.readAllBytes(new File(third.getParentFile(), "s0.xsd").toPath()), "UTF-8")));
+    }
+
+    @Test
+    public void testSchemasLoadAndGenerateValidInstances() throws Exception {
+        File main = write(synthesizer);
+
+        //the schema set must be valid for a validating processor too
+        Schema schema = SchemaFactory.newInstance(XMLConstants.W3C_XML_SCHEMA_NS_URI).newSchema(main);
+
+        XmlGenEngine engine = new XmlGenEngine(SchemaUtil.getSchemaCollection(main.getPath(), null));
+        SchemaRegistry registry = engine.getRegistry();
+        for (int i = 0; i < synthesizer.getTypeCount(); i++) {
+            String ns = SchemaSynthesizer.NAMESPACE + ":s" + (i % synthesizer.getSchemaCount());
+            assertNotNull("Type" + i, registry.getType(new QName(ns, "Type" + i)));
+            assertNotNull("item" + i, registry.getSchemaForElement(new QName(ns, "item" + i)));
+        }
+
+        XmlGenOptions options = new XmlGenOptions();
+        options.setGenOptionalElements(false);
+        for (QName root : new QName[]{SchemaSynthesizer.WIDE_ELEMENT, SchemaSynthesizer.DEEP_ELEMENT,
+                SchemaSynthesizer.RECURSIVE_ELEMENT, SchemaSynthesizer.DOCUMENT_ELEMENT}) {
+            String xml = engine.generateXml(root, options, false);
+            assertNotNull(root.toString(), xml);
+            schema.newValidator().validate(new StreamSource(new StringReader(xml)));
+        }
+
+        String deep = engine.generateXml(SchemaSynthesizer.DEEP_ELEMENT, options, false);
+        assertTrue(deep.contains("level" + synthesizer.getNestingDepth() + " "));
+    }
+
+    @Test
+    public void testRecursionIsBounded() throws Exception {
+        XmlGenEngine engine = new XmlGenEngine(SchemaUtil.getSchemaCollection(write(synthesizer).getPath(), null));
+
+        XmlGenOptions options = new XmlGenOptions();
+        options.setMaxRecursiveDepth(2);
+        String xml = engine.generateXml(SchemaSynthesizer.RECURSIVE_ELEMENT, options, false);
+
+        int nodes = xml.split("<s[0-9]+:next[ >]", -1).length - 1;
+        assertTrue(xml, nodes > synthesizer.getRecursionCycle());
+        assertTrue(xml, nodes < 4 * synthesizer.getRecursionCycle());
+    }
+}
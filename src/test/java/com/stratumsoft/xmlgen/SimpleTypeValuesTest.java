@@ -0,0 +1,202 @@
+/*
+ * Copyright (c) 2010-2014 Stratumsoft Technologies Pvt. Ltd.
+ *
+ * This file (SimpleTypeValuesTest.java) is part of xsd2xml.
+ *
+ * xsd2xml is a Java program to generate XML instances from an XML Schema document
+ *
+ * xsd2xml is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * xsd2xml is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; If not, see <http://www.gnu.org/licenses/>.
+ *
+ * To use xsd2xml in your non-GPL licensed software, contact Stratumsoft Technologies
+ * support at support@stratumsoft.com or visit http://www.stratumsoft.com to obtain
+ * a commercial license.
+ */
+
+
+package com.stratumsoft.xmlgen;
+
+import org.apache.ws.commons.schema.XmlSchemaCollection;
+import org.dom4j.Element;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.xml.XMLConstants;
+import javax.xml.namespace.QName;
+import javax.xml.transform.stream.StreamSource;
+import javax.xml.validation.SchemaFactory;
+import javax.xml.validation.Validator;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.StringReader;
+import java.net.URL;
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author murakris@stratumsoft.com
+ */
+public class SimpleTypeValuesTest {
+
+    private static final String NS = "http://www.stratumsoft.com/xmlgen/facets";
+
+    private QName rootEl = new QName(NS, "facets");
+
+    private XmlGenEngine engine;
+
+    private Validator validator;
+
+    @Before
+    public void setup() throws Exception {
+        URL xsdUrl = getClass().getResource("/schemas/TestFacets.xsd");
+        assertNotNull(xsdUrl);
+
+        XmlSchemaCollection coll = new XmlSchemaCollection();
+        coll.setBaseUri(xsdUrl.toString());
+        coll.read(new StreamSource(xsdUrl.openStream()));
+        engine = new XmlGenEngine(coll);
+
+        validator = SchemaFactory.newInstance(XMLConstants.W3C_XML_SCHEMA_NS_URI).newSchema(xsdUrl).newValidator();
+    }
+
+    @Test
+    public void testDefaultValuesAreFacetValid() throws Exception {
+        GenerationPlan plan = engine.compile(rootEl, null);
+        validate(plan, new SeededRandom(1));
+
+        Element root = plan.toElement();
+        assertEquals("red", root.elementText("color"));
+        assertEquals("string", root.elementText("code"));                   //truncated to maxLength
+        assertEquals("string", root.elementText("longCode"));
+        assertEquals("string valuexxxxxxxx", root.elementText("fixed"));     //padded to length
+        assertEquals("10", root.elementText("percent"));                    //sample value raised to the minimum
+        assertEquals("1000.01", root.elementText("price"));
+        assertEquals("0.009", root.elementText("small"));                   //closest to the sample value at 3 digits
+        assertEquals("9E-31", root.elementText("tiny"));
+        assertEquals("-1", root.elementText("negative"));
+        assertEquals("red red", root.elementText("colors"));
+        assertEquals("10", root.elementText("percentOrCode"));
+        assertEquals("2100-01-01", root.elementText("since"));
+        assertEquals("000-AA", root.elementText("partNumber"));
+        assertEquals("900-AA", root.elementText("sku"));
+        assertEquals("(000) 000-0000", root.elementText("phone"));
+        assertEquals("00000", root.elementText("zip"));
+        assertEquals("10", root.attributeValue("level"));
+        assertEquals("NC", root.attributeValue("tag"));
+    }
+
+    @Test
+    public void testRandomValuesAreFacetValid() throws Exception {
+        XmlGenOptions options = new XmlGenOptions();
+        options.setDefVals(DefaultValues.RANDOM);
+        GenerationPlan plan = engine.compile(rootEl, options);
+
+        Set<String> percents = new HashSet<>();
+        for (int i = 0; i < 200; i++) {
+            validate(plan, SeededRandom.forIndex(7L, i));
+            percents.add(plan.toElement().elementText("percent"));
+        }
+        assertTrue(percents.size() > 10);
+    }
+
+    /**
+     * catalog.xsd has a simple content restriction with a maxInclusive facet (clearancePriceType, from pricing.xsd)
+     * and elements with fixed and default values
+     */
+    @Test
+    public void testRandomCatalogIsValid() throws Exception {
+        XmlGenOptions options = new XmlGenOptions();
+        options.setDefVals(DefaultValues.RANDOM);
+        options.setChoiceOptions(ChoiceOptions.RANDOM);
+
+        assertRandomDocumentsAreValid("catalog.xsd", new QName("", "catalog"), options);
+        assertRandomDocumentsAreValid("pricing.xsd", new QName("", "price"), options);
+    }
+
+    @Test
+    public void testRandomValuesDependOnSeed() throws Exception {
+        XmlGenOptions options = new XmlGenOptions();
+        options.setDefVals(DefaultValues.RANDOM);
+        GenerationPlan plan = engine.compile(rootEl, options);
+
+        assertEquals(write(plan, SeededRandom.forIndex(3L, 5)), write(plan, SeededRandom.forIndex(3L, 5)));
+        assertFalse(write(plan, SeededRandom.forIndex(3L, 5)).equals(write(plan, SeededRandom.forIndex(3L, 6))));
+    }
+
+    @Test
+    public void testPatternAutomaton() throws Exception {
+        PatternAutomaton automaton = PatternAutomaton.compile("[A-Z]{2}(-\\d+)*");
+        assertTrue(automaton.matches("AB-1-23"));
+        assertFalse(automaton.matches("AB-"));
+        assertEquals("AA", automaton.getDefault(0, Integer.MAX_VALUE));
+        assertEquals("AA-0", automaton.getDefault(4, Integer.MAX_VALUE));
+
+        SeededRandom random = new SeededRandom(11);
+        Set<String> values = new HashSet<>();
+        for (int i = 0; i < 1000; i++) {
+            String value = automaton.generate(random, 3, 10);
+            assertTrue(value, automaton.matches(value) && value.length() >= 3 && value.length() <= 10);
+            values.add(value);
+        }
+        assertTrue(values.size() > 900);
+
+        assertNull(automaton.generate(random, 3, 3));       //no value of length 3
+        assertFalse(PatternAutomaton.compile("[a-z-[aeiou]]").matches("e"));
+        assertTrue(PatternAutomaton.compile("\\p{Lu}\\P{Lu}").matches("Ab"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testEmptyRange() throws Exception {
+        XmlSchemaCollection coll = new XmlSchemaCollection();
+        coll.read(new StringReader("<xs:schema xmlns:xs='http://www.w3.org/2001/XMLSchema'>"
+                + "<xs:element name='empty'><xs:simpleType><xs:restriction base='xs:float'>"
+                + "<xs:minExclusive value='1'/><xs:maxInclusive value='1'/>"
+                + "</xs:restriction></xs:simpleType></xs:element></xs:schema>"));
+        new XmlGenEngine(coll).compile(new QName("", "empty"), null);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidPattern() {
+        PatternAutomaton.compile("a{2");
+    }
+
+    private void assertRandomDocumentsAreValid(String schema, QName elName, XmlGenOptions options) throws Exception {
+        URL xsdUrl = getClass().getResource("/schemas/" + schema);
+        XmlSchemaCollection coll = new XmlSchemaCollection();
+        coll.setBaseUri(xsdUrl.toString());
+        coll.read(new StreamSource(xsdUrl.openStream()));
+        GenerationPlan plan = new XmlGenEngine(coll).compile(elName, options);
+
+        validator = SchemaFactory.newInstance(XMLConstants.W3C_XML_SCHEMA_NS_URI).newSchema(xsdUrl).newValidator();
+        for (int i = 0; i < 50; i++) {
+            validate(plan, SeededRandom.forIndex(11L, i));
+        }
+    }
+
+    private void validate(GenerationPlan plan, SeededRandom random) throws Exception {
+        String xml = write(plan, random);
+        try {
+            validator.validate(new StreamSource(new ByteArrayInputStream(xml.getBytes("UTF-8"))));
+        } catch (Exception e) {
+            fail(e.getMessage() + " in " + xml);
+        }
+    }
+
+    private static String write(GenerationPlan plan, SeededRandom random) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        plan.writeDocument(out, random);
+        return out.toString("UTF-8");
+    }
+}
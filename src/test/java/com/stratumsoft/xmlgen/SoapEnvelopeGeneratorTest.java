@@ -0,0 +1,196 @@
+/*
+ * Copyright (c) 2010-2014 Stratumsoft Technologies Pvt. Ltd.
+ *
+ * This file (SoapEnvelopeGeneratorTest.java) is part of xsd2xml.
+ *
+ * xsd2xml is a Java program to generate XML instances from an XML Schema document
+ *
+ * xsd2xml is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * xsd2xml is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; If not, see <http://www.gnu.org/licenses/>.
+ *
+ * To use xsd2xml in your non-GPL licensed software, contact Stratumsoft Technologies
+ * support at support@stratumsoft.com or visit http://www.stratumsoft.com to obtain
+ * a commercial license.
+ */
+
+
+package com.stratumsoft.xmlgen;
+
+import org.dom4j.Document;
+import org.dom4j.DocumentHelper;
+import org.dom4j.Element;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.xml.namespace.QName;
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author murakris@stratumsoft.com
+ */
+public class SoapEnvelopeGeneratorTest {
+
+    private static final String SAMPLES_NS = "http://services.samples/xsd";
+
+    private WsdlDefinition wsdl;
+
+    @Before
+    public void setup() throws Exception {
+        wsdl = WsdlDefinition.read(new File(getClass().getResource("/schemas/StockQuote.wsdl").toURI()));
+    }
+
+    @Test
+    public void testOperations() {
+        List<SoapOperation> operations = wsdl.getOperations();
+        assertEquals("the http binding is skipped", 5, operations.size());
+
+        SoapOperation getQuote = operations.get(0);
+        assertEquals("getQuote", getQuote.getName());
+        assertEquals(SoapVersion.SOAP_11, getQuote.getVersion());
+        assertEquals("urn:getQuote", getQuote.getSoapAction());
+        assertFalse(getQuote.isRpc());
+        assertEquals(1, getQuote.getInput().getHeaders().size());
+        assertEquals(new QName("urn:samples:headers", "session"),
+                getQuote.getInput().getHeaders().get(0).getElement());
+        assertEquals("header parts are not in the body", 1, getQuote.getInput().getBody().size());
+        assertEquals(new QName(SAMPLES_NS, "getQuote"), getQuote.getInput().getBody().get(0).getElement());
+        assertNull(getQuote.getInput().getWrapper());
+
+        assertNull("placeOrder is one-way", operations.get(1).getOutput());
+
+        SoapOperation getQuote12 = operations.get(2);
+        assertEquals(SoapVersion.SOAP_12, getQuote12.getVersion());
+        assertTrue(getQuote12.getInput().getHeaders().isEmpty());
+        assertEquals(1, getQuote12.getInput().getBody().size());
+
+        SoapOperation rpc = wsdl.getOperation("getLastPrice");
+        assertTrue(rpc.isRpc());
+        assertNull(rpc.getSoapAction());
+        assertEquals(new QName("urn:samples:price", "getLastPrice"), rpc.getInput().getWrapper());
+        assertEquals(new QName("urn:samples:price", "getLastPriceResponse"), rpc.getOutput().getWrapper());
+        assertEquals(3, rpc.getInput().getBody().size());
+        assertEquals(new QName("urn:samples:types", "Symbol"), rpc.getInput().getBody().get(0).getType());
+    }
+
+    @Test
+    public void testEnvelopes() throws Exception {
+        List<SoapEnvelopeGenerator.Envelope> envelopes;
+        try (SoapEnvelopeGenerator generator = new SoapEnvelopeGenerator(wsdl)) {
+            envelopes = generator.generateAll(null);
+        }
+        assertEquals(8, envelopes.size());
+
+        Element envelope = parse(envelopes.get(0));
+        assertTrue(envelopes.get(0).isRequest());
+        assertEquals(SoapVersion.SOAP_11.getEnvelopeNamespace(), envelope.getNamespaceURI());
+        Element session = child(child(envelope, "Header"), "session");
+        assertEquals("urn:samples:headers", session.getNamespaceURI());
+        assertNotNull("type of an embedded schema imported by namespace", child(session, "user"));
+        Element getQuote = child(child(envelope, "Body"), "getQuote");
+        assertEquals(SAMPLES_NS, getQuote.getNamespaceURI());
+        assertNotNull(child(child(getQuote, "request"), "symbol"));
+
+        assertFalse(envelopes.get(1).isRequest());
+        Element responseBody = child(parse(envelopes.get(1)), "Body");
+        assertEquals(1, responseBody.elements().size());
+        assertNotNull(child(responseBody, "getQuoteResponse"));
+
+        Element soap12 = parse(envelopes.get(3));
+        assertEquals(SoapVersion.SOAP_12.getEnvelopeNamespace(), soap12.getNamespaceURI());
+        assertNull(child(soap12, "Header"));
+
+        Element rpc = child(child(parse(envelopes.get(6)), "Body"), "getLastPrice");
+        assertEquals("urn:samples:price", rpc.getNamespaceURI());
+        assertEquals("IBM", child(rpc, "symbol").getText());
+        assertEquals("", child(rpc, "session").getNamespaceURI());
+        assertNotNull(child(child(rpc, "session"), "id"));
+        assertNotNull(child(rpc, "count"));
+        Element rpcResponse = child(child(parse(envelopes.get(7)), "Body"), "getLastPriceResponse");
+        assertFalse(child(rpcResponse, "price").getText().isEmpty());
+    }
+
+    @Test
+    public void testSeededEnvelopes() throws Exception {
+        XmlGenOptions options = new XmlGenOptions();
+        options.setDefVals(DefaultValues.RANDOM);
+        options.setSeed(42L);
+
+        List<SoapEnvelopeGenerator.Envelope> single;
+        List<SoapEnvelopeGenerator.Envelope> parallel;
+        byte[] first;
+        try (SoapEnvelopeGenerator generator = new SoapEnvelopeGenerator(wsdl, null, 1)) {
+            single = generator.generateAll(options);
+            first = generator.generateEnvelope(wsdl.getOperations().get(0), true, options);
+        }
+        try (SoapEnvelopeGenerator generator = new SoapEnvelopeGenerator(wsdl, null, 4)) {
+            parallel = generator.generateAll(options);
+        }
+
+        assertEquals(single.size(), parallel.size());
+        for (int i = 0; i < single.size(); i++) {
+            assertArrayEquals("envelope " + i, single.get(i).getContent(), parallel.get(i).getContent());
+        }
+        assertArrayEquals(single.get(0).getContent(), first);
+    }
+
+    @Test
+    public void testSeededTypePart() throws Exception {
+        XmlGenOptions options = new XmlGenOptions();
+        options.setDefVals(DefaultValues.RANDOM);
+        options.setSeed(42L);
+
+        SoapOperation rpc = wsdl.getOperation("getLastPrice");
+        List<SoapEnvelopeGenerator.Envelope> envelopes;
+        byte[] single;
+        try (SoapEnvelopeGenerator generator = new SoapEnvelopeGenerator(wsdl)) {
+            envelopes = generator.generateAll(options);
+            single = generator.generateEnvelope(rpc, true, options);
+            assertArrayEquals(single, generator.generateEnvelope(rpc, true, options));
+        }
+
+        //the part of a complex type takes its values from the random of its envelope, as element parts do
+        Element session = child(child(child(parse(envelopes.get(6)), "Body"), "getLastPrice"), "session");
+        Element singleSession = child(child(child(parse(single), "Body"), "getLastPrice"), "session");
+        assertFalse(child(session, "id").getText().equals(child(singleSession, "id").getText()));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNoResponse() {
+        try (SoapEnvelopeGenerator generator = new SoapEnvelopeGenerator(wsdl)) {
+            generator.generateEnvelope(wsdl.getOperation("placeOrder"), false, null);
+        }
+    }
+
+    private static Element parse(SoapEnvelopeGenerator.Envelope envelope) throws Exception {
+        return parse(envelope.getContent());
+    }
+
+    private static Element parse(byte[] content) throws Exception {
+        Document doc = DocumentHelper.parseText(new String(content, StandardCharsets.UTF_8));
+        return doc.getRootElement();
+    }
+
+    private static Element child(Element parent, String name) {
+        for (Object o : parent.elements()) {
+            Element el = (Element) o;
+            if (el.getName().equals(name)) {
+                return el;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,124 @@
+/*
+ * Copyright (c) 2010-2014 Stratumsoft Technologies Pvt. Ltd.
+ *
+ * This file (ValueProvidersTest.java) is part of xsd2xml.
+ *
+ * xsd2xml is a Java program to generate XML instances from an XML Schema document
+ *
+ * xsd2xml is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * xsd2xml is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; If not, see <http://www.gnu.org/licenses/>.
+ *
+ * To use xsd2xml in your non-GPL licensed software, contact Stratumsoft Technologies
+ * support at support@stratumsoft.com or visit http://www.stratumsoft.com to obtain
+ * a commercial license.
+ */
+
+package com.stratumsoft.xmlgen;
+
+import org.apache.commons.lang.StringUtils;
+import org.apache.ws.commons.schema.XmlSchemaCollection;
+import org.apache.ws.commons.schema.constants.Constants;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.xml.namespace.QName;
+import javax.xml.transform.stream.StreamSource;
+import java.net.URL;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author murakris@stratumsoft.com
+ */
+public class ValueProvidersTest {
+
+    private QName rootEl = new QName("http://example.com", "person");
+
+    private XmlSchemaCollection coll;
+
+    @Before
+    public void setup() throws Exception {
+        URL xsdUrl = getClass().getResource("/schemas/personal.xsd");
+        assertNotNull(xsdUrl);
+
+        coll = new XmlSchemaCollection();
+        coll.setBaseUri(xsdUrl.toString());
+        coll.read(new StreamSource(xsdUrl.openStream()));
+    }
+
+    @Test
+    public void testProvidersArePerEngine() throws Exception {
+        ValueProviders values = ValueProviders.getDefaults()
+                .with(Constants.XSD_STRING, ValueProviders.constant("custom"));
+        assertNotSame(values, ValueProviders.getDefaults());
+
+        String xml = new XmlGenEngine(coll, null, values).generateXml(rootEl, null, false);
+        assertEquals(5, StringUtils.countMatches(xml, ">custom<"));     //family, given and 3 emails
+
+        xml = new XmlGenEngine(coll).generateXml(rootEl, null, false);
+        assertEquals(0, StringUtils.countMatches(xml, ">custom<"));
+    }
+
+    @Test
+    public void testVolatileProviderIsCalledOnReplay() throws Exception {
+        final AtomicInteger counter = new AtomicInteger();
+        ValueProviders values = ValueProviders.getDefaults().with(Constants.XSD_ID, new ValueProvider() {
+            @Override
+            public String getValue(SeededRandom random) {
+                return "key" + counter.incrementAndGet();
+            }
+
+            @Override
+            public boolean isVolatile() {
+                return true;
+            }
+        });
+
+        XmlGenEngine engine = new XmlGenEngine(coll, null, values);
+        GenerationPlan plan = engine.compile(rootEl, null);
+        assertEquals(0, counter.get());
+
+        assertTrue(plan.toElement().asXML().contains("id=\"key1\""));
+        assertTrue(plan.toElement().asXML().contains("id=\"key2\""));
+    }
+
+    @Test
+    public void testMissingProviderGeneratesNoValue() throws Exception {
+        ValueProviders values = ValueProviders.getDefaults().with(Constants.XSD_STRING, null);
+        assertNull(values.get(Constants.XSD_STRING));
+
+        String xml = new XmlGenEngine(coll, null, values).generateXml(rootEl, null, false);
+        assertFalse(xml.contains("string value"));
+        assertFalse(xml.contains("note="));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testOnlyBuiltInTypes() throws Exception {
+        ValueProviders.empty().with(new QName("http://example.com", "myType"), ValueProviders.constant("x"));
+    }
+
+    @Test
+    @SuppressWarnings("deprecation")
+    public void testDeprecatedFacadeAcceptsOtherTypes() throws Exception {
+        QName myType = new QName("http://example.com", "myType");
+        SampleValueProvider.set(myType, "x");
+        try {
+            assertEquals("x", SampleValueProvider.get(myType));
+            assertNull(ValueProviders.getDefaults().get(myType));
+        } finally {
+            SampleValueProvider.set(myType, null);
+        }
+        assertNull(SampleValueProvider.get(myType));
+    }
+}
@@ -0,0 +1,190 @@
+/*
+ * Copyright (c) 2010-2014 Stratumsoft Technologies Pvt. Ltd.
+ *
+ * This file (XmlGenEngineTest.java) is part of xsd2xml.
+ *
+ * xsd2xml is a Java program to generate XML instances from an XML Schema document
+ *
+ * xsd2xml is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * xsd2xml is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; If not, see <http://www.gnu.org/licenses/>.
+ *
+ * To use xsd2xml in your non-GPL licensed software, contact Stratumsoft Technologies
+ * support at support@stratumsoft.com or visit http://www.stratumsoft.com to obtain
+ * a commercial license.
+ */
+
+package com.stratumsoft.xmlgen;
+
+import org.apache.ws.commons.schema.XmlSchemaCollection;
+import org.dom4j.io.OutputFormat;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.xml.namespace.QName;
+import javax.xml.transform.stream.StreamSource;
+import java.io.ByteArrayOutputStream;
+import java.net.URL;
+import java.util.Arrays;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author murakris@stratumsoft.com
+ */
+public class XmlGenEngineTest {
+
+    private String recursionXsd = "/schemas/TestRecursion.xsd";
+
+    private QName rootEl = new QName("", "root2");
+
+    private XmlSchemaCollection coll;
+
+    @Before
+    public void setup() throws Exception {
+        URL xsdUrl = getClass().getResource(recursionXsd);
+        assertNotNull(xsdUrl);
+
+        coll = new XmlSchemaCollection();
+        coll.setBaseUri(xsdUrl.toString());
+        coll.read(new StreamSource(xsdUrl.openStream()));
+    }
+
+    @Test
+    public void testRepeatedCallsGenerateSameXml() throws Exception {
+        SchemaTypeXmlGenerator generator = new SchemaTypeXmlGenerator(coll);
+
+        String first = generator.generateXml(rootEl);
+        generator.clearPlanCache();
+        String second = generator.generateXml(rootEl);
+
+        assertTrue(first.length() > 0);
+        assertEquals("recursion state must not leak between calls", first, second);
+    }
+
+    @Test
+    public void testPerCallOptionOverrides() throws Exception {
+        XmlGenEngine engine = new XmlGenEngine(coll);
+
+        XmlGenOptions withComments = new XmlGenOptions();
+        withComments.setGenCommentsForParticles(true);
+
+        String plain = engine.generateXml(rootEl, null, false);
+        String commented = engine.generateXml(rootEl, withComments, false);
+
+        assertFalse(plain.contains("<!--"));
+        assertTrue(commented.contains("<!--"));
+        assertEquals(plain, engine.generateXml(rootEl, null, false));
+    }
+
+    @Test
+    public void testOptionsWithoutFormatUseEngineFormat() throws Exception {
+        URL xsdUrl = getClass().getResource("/schemas/TestGroup.xsd");
+        XmlSchemaCollection groupColl = new XmlSchemaCollection();
+        groupColl.setBaseUri(xsdUrl.toString());
+        groupColl.read(new StreamSource(xsdUrl.openStream()));
+        XmlGenEngine engine = new XmlGenEngine(groupColl);
+        QName test = new QName("", "test");
+
+        String xml = engine.generateXml(test, null, false);
+        assertTrue(xml.contains("<y></y>"));
+        assertEquals(xml, engine.generateXml(test, new XmlGenOptions(), false));
+
+        //the format of the caller is used as given, and later changes to it do not affect the engine
+        XmlGenOptions compact = new XmlGenOptions();
+        OutputFormat format = OutputFormat.createCompactFormat();
+        compact.setOutputFormat(format);
+        XmlGenEngine compactEngine = new XmlGenEngine(groupColl, compact);
+        format.setExpandEmptyElements(false);
+        assertTrue(engine.generateXml(test, compact, false).contains("<y/>"));
+        assertTrue(compactEngine.generateXml(test, null, false).contains("<y></y>"));
+    }
+
+    @Test
+    public void testSeededCallsAreReproducible() throws Exception {
+        URL xsdUrl = getClass().getResource("/schemas/TestFacets.xsd");
+        XmlSchemaCollection facetsColl = new XmlSchemaCollection();
+        facetsColl.setBaseUri(xsdUrl.toString());
+        facetsColl.read(new StreamSource(xsdUrl.openStream()));
+        XmlGenEngine engine = new XmlGenEngine(facetsColl);
+        QName facetsEl = new QName("http://www.stratumsoft.com/xmlgen/facets", "facets");
+
+        XmlGenOptions options = new XmlGenOptions();
+        options.setDefVals(DefaultValues.RANDOM);
+        options.setSeed(42L);
+        String first = engine.generateXml(facetsEl, options, false);
+        assertEquals(first, engine.generateXml(facetsEl, options, false));
+
+        options.setSeed(43L);
+        assertFalse(first.equals(engine.generateXml(facetsEl, options, false)));
+
+        //a seeded call generates the first document of a corpus with the same seed
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        engine.generateXml(facetsEl, options, out);
+        try (CorpusGenerator corpus = new CorpusGenerator(engine, 1)) {
+            byte[] doc = corpus.generateDocument(engine.compile(facetsEl, options), 43L, 0);
+            assertTrue(Arrays.equals(doc, out.toByteArray()));
+        }
+    }
+
+    @Test
+    public void testPlanCacheLimit() throws Exception {
+        XmlGenEngine engine = new XmlGenEngine(coll);
+        engine.setMaxCachedPlans(2);
+
+        XmlGenOptions deep = new XmlGenOptions();
+        deep.setMaxRecursiveDepth(2);
+        XmlGenOptions sized = new XmlGenOptions();
+        sized.setTargetSize(2000, SizeUnit.BYTES);
+
+        GenerationPlan plain = engine.compile(rootEl, null);
+        assertSame(plain, engine.compile(rootEl, null));
+        engine.compile(rootEl, deep);
+        assertSame(plain, engine.compile(rootEl, null));
+
+        //the sized plan and the plan it is resized from take the place of both plans
+        GenerationPlan sizedPlan = engine.compile(rootEl, sized);
+        assertSame(sizedPlan, engine.compile(rootEl, sized));
+        assertNotSame(plain, engine.compile(rootEl, null));
+    }
+
+    @Test
+    public void testConcurrentCallers() throws Exception {
+        final XmlGenEngine engine = new XmlGenEngine(coll);
+        final String expected = engine.generateXml(rootEl, null, true);
+        engine.clearPlanCache();
+
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<String>> results = new ArrayList<>();
+            for (int i = 0; i < 200; i++) {
+                results.add(executor.submit(new Callable<String>() {
+                    @Override
+                    public String call() throws Exception {
+                        return engine.generateXml(rootEl, null, true);
+                    }
+                }));
+            }
+            for (Future<String> result : results) {
+                assertEquals(expected, result.get());
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+}